@@ -0,0 +1,292 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+
+/**
+ * Red-Black tree based <tt>SortedMap</tt> that keeps, for every subtree, the
+ * aggregate of its values under a user-supplied <tt>Monoid</tt>, so that
+ * the sum, minimum, maximum or any other associative combination of the
+ * values in a key range can be computed in log(n) time rather than by
+ * iterating over the range.  The aggregates are maintained through
+ * insertions, removals, value replacements (including through
+ * <tt>Map.Entry.setValue</tt>) and the rotations that rebalance the tree,
+ * at a cost of log(n) <tt>combine</tt> calls per update, so all of the
+ * <tt>TreeMap</tt> operations keep their time bounds.<p>
+ *
+ * The values of the map are the elements the monoid combines, so they must
+ * all be acceptable to its <tt>combine</tt> method.  Values are combined in
+ * ascending key order.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a map concurrently, and at least one of the threads
+ * modifies the map structurally, it <i>must</i> be synchronized
+ * externally.
+ *
+ * @see Monoid
+ * @see TreeMap
+ */
+public class AggregateTreeMap extends TreeMap {
+    private static final long serialVersionUID = -6109526431268376291L;
+
+    /**
+     * The monoid that combines the values.
+     *
+     * @serial
+     */
+    private final Monoid monoid;
+
+    /**
+     * Constructs a new, empty map, sorted according to the keys' natural
+     * order, that aggregates its values with the given monoid.
+     *
+     * @param monoid the monoid that combines the values of the map.
+     * @throws NullPointerException if <tt>monoid</tt> is <tt>null</tt>.
+     */
+    public AggregateTreeMap(final Monoid monoid) {
+	this(monoid, (Comparator) null);
+    }
+
+    /**
+     * Constructs a new, empty map, sorted according to the given
+     * comparator, that aggregates its values with the given monoid.
+     *
+     * @param monoid the monoid that combines the values of the map.
+     * @param c the comparator that will be used to sort this map.  A
+     *          <tt>null</tt> value indicates that the keys' <i>natural
+     *          ordering</i> should be used.
+     * @throws NullPointerException if <tt>monoid</tt> is <tt>null</tt>.
+     */
+    public AggregateTreeMap(final Monoid monoid, final Comparator c) {
+	super(c);
+	if (monoid == null) {
+	    throw new NullPointerException();
+	}
+	this.monoid = monoid;
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map,
+     * sorted in the same order if it is a <tt>SortedMap</tt> and according
+     * to the keys' natural order otherwise, that aggregates its values with
+     * the given monoid.
+     *
+     * @param monoid the monoid that combines the values of the map.
+     * @param m the map whose mappings are to be placed in this map.
+     * @throws NullPointerException if <tt>monoid</tt> is <tt>null</tt>.
+     */
+    public AggregateTreeMap(final Monoid monoid, final Map m) {
+	this(monoid, m instanceof SortedMap ? ((SortedMap) m).comparator() : null);
+	this.putAll(m);
+    }
+
+    /**
+     * Returns the monoid that combines the values of this map.
+     *
+     * @return the monoid of this map.
+     */
+    public Monoid monoid() {
+	return this.monoid;
+    }
+
+    /**
+     * Returns the aggregate of all values in this map, or the identity of
+     * the monoid if the map is empty.  This operation takes constant time.
+     *
+     * @return the aggregate of all values in this map.
+     */
+    public Object aggregate() {
+	return this.aggregateOf(this.root);
+    }
+
+    /**
+     * Returns the aggregate of the values whose keys range from
+     * <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive, or the
+     * identity of the monoid if there are none.  This operation takes
+     * log(n) time.
+     *
+     * @param fromKey low endpoint (inclusive) of the key range.
+     * @param toKey high endpoint (exclusive) of the key range.
+     * @return the aggregate of the values in the key range.
+     * @throws ClassCastException if <tt>fromKey</tt> and <tt>toKey</tt>
+     *         cannot be compared to one another using this map's comparator
+     *         (or, if the map has no comparator, using natural ordering).
+     * @throws IllegalArgumentException if <tt>fromKey</tt> is greater than
+     *         <tt>toKey</tt>.
+     * @throws NullPointerException if <tt>fromKey</tt> or <tt>toKey</tt> is
+     *         <tt>null</tt> and this map uses natural order, or its
+     *         comparator does not tolerate <tt>null</tt> keys.
+     */
+    public Object aggregate(final Object fromKey, final Object toKey) {
+	if (this.compare(fromKey, toKey) > 0) {
+	    throw new IllegalArgumentException("fromKey > toKey");
+	}
+	return this.aggregate(fromKey, false, toKey, false);
+    }
+
+    /**
+     * Returns the aggregate of the values whose keys are strictly less than
+     * <tt>toKey</tt>.  This operation takes log(n) time.
+     *
+     * @param toKey high endpoint (exclusive) of the key range.
+     * @return the aggregate of the values in the key range.
+     * @throws ClassCastException if <tt>toKey</tt> is not compatible with
+     *         this map's comparator (or, if the map has no comparator, if
+     *         <tt>toKey</tt> does not implement <tt>Comparable</tt>).
+     * @throws NullPointerException if <tt>toKey</tt> is <tt>null</tt> and
+     *         this map uses natural order, or its comparator does not
+     *         tolerate <tt>null</tt> keys.
+     */
+    public Object headAggregate(final Object toKey) {
+	return this.aggregate(null, true, toKey, false);
+    }
+
+    /**
+     * Returns the aggregate of the values whose keys are greater than or
+     * equal to <tt>fromKey</tt>.  This operation takes log(n) time.
+     *
+     * @param fromKey low endpoint (inclusive) of the key range.
+     * @return the aggregate of the values in the key range.
+     * @throws ClassCastException if <tt>fromKey</tt> is not compatible with
+     *         this map's comparator (or, if the map has no comparator, if
+     *         <tt>fromKey</tt> does not implement <tt>Comparable</tt>).
+     * @throws NullPointerException if <tt>fromKey</tt> is <tt>null</tt> and
+     *         this map uses natural order, or its comparator does not
+     *         tolerate <tt>null</tt> keys.
+     */
+    public Object tailAggregate(final Object fromKey) {
+	return this.aggregate(fromKey, false, null, true);
+    }
+
+    /**
+     * Returns a shallow copy of this map, of the same class, which
+     * aggregates its values with the same monoid.  (The keys and values
+     * themselves are not cloned.)  The tree is copied in linear time, the
+     * aggregates being recomputed as it is built.
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	return super.clone();
+    }
+
+    /**
+     * Combines the values in range along the two paths that lead from the
+     * entry where the bounds split down to each of the bounds, taking whole
+     * subtrees wherever a path leaves them entirely in range.
+     */
+    private Object aggregate(final Object fromKey, final boolean fromStart,
+			     final Object toKey, final boolean toEnd) {
+	final Monoid m = this.monoid;
+
+	// Find the highest entry in range
+	Entry p = this.root;
+	while (p != null) {
+	    if (!fromStart && this.compare(p.key, fromKey) < 0) {
+		p = p.right;
+	    } else if (!toEnd && this.compare(p.key, toKey) >= 0) {
+		p = p.left;
+	    } else {
+		break;
+	    }
+	}
+	if (p == null) {
+	    return m.identity();
+	}
+
+	// Entries at or above fromKey in the left subtree, lowest last found
+	Object low = m.identity();
+	for (Entry q = p.left; q != null; ) {
+	    if (fromStart || this.compare(q.key, fromKey) >= 0) {
+		low = m.combine(m.combine(q.value, this.aggregateOf(q.right)), low);
+		q = q.left;
+	    } else {
+		q = q.right;
+	    }
+	}
+
+	// Entries below toKey in the right subtree, highest last found
+	Object high = m.identity();
+	for (Entry q = p.right; q != null; ) {
+	    if (toEnd || this.compare(q.key, toKey) < 0) {
+		high = m.combine(high, m.combine(this.aggregateOf(q.left), q.value));
+		q = q.right;
+	    } else {
+		q = q.left;
+	    }
+	}
+
+	return m.combine(m.combine(low, p.value), high);
+    }
+
+    private Object aggregateOf(final Entry p) {
+	return p == null ? this.monoid.identity() : ((Node) p).aggregate;
+    }
+
+
+    // Hooks into the tree maintenance of TreeMap
+
+    Entry newEntry(final Object key, final Object value, final Entry parent) {
+	return new Node(key, value, parent);
+    }
+
+    void augment(final Entry p) {
+	final Monoid m = this.monoid;
+	if (m == null) {
+	    return; // deserializing: see readObject
+	}
+	((Node) p).aggregate = m.combine(m.combine(this.aggregateOf(p.left), p.value),
+					 this.aggregateOf(p.right));
+    }
+
+    void augmentPath(Entry p) {
+	for (; p != null; p = p.parent) {
+	    this.augment(p);
+	}
+    }
+
+    /**
+     * Entry that also holds the aggregate of the values in its subtree.
+     * Replacing its value updates the aggregates of its ancestors.
+     */
+    private class Node extends TreeMap.Entry {
+	Object aggregate;
+
+	Node(final Object key, final Object value, final Entry parent) {
+	    super(key, value, parent);
+	    this.aggregate = value;
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = super.setValue(value);
+	    AggregateTreeMap.this.augmentPath(this);
+	    return oldValue;
+	}
+    }
+
+    /**
+     * Computes the aggregates of all entries in the subtree of p, children
+     * first.
+     */
+    private void augmentAll(final Entry p) {
+	if (p != null) {
+	    this.augmentAll(p.left);
+	    this.augmentAll(p.right);
+	    this.augment(p);
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>AggregateTreeMap</tt> instance from a stream
+     * (i.e., deserialize it).  The entries are read by <tt>TreeMap</tt>
+     * before the monoid is, so their aggregates are computed afterwards.
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	this.augmentAll(this.root);
+    }
+}
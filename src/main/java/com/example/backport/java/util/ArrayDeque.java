@@ -0,0 +1,672 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+/**
+ * Resizable circular-array implementation of a double-ended queue, which
+ * also implements the <tt>List</tt> interface.  Elements can be added and
+ * removed at either end in amortized constant time, so the deque serves as
+ * a FIFO queue (<tt>addLast</tt> and <tt>removeFirst</tt>) or a stack
+ * (<tt>addFirst</tt> and <tt>removeFirst</tt>) without the linear cost of
+ * <tt>ArrayList.remove(0)</tt>.  Implements all optional list operations,
+ * and permits all elements, including <tt>null</tt>.<p>
+ *
+ * The elements are kept in an array whose length is a power of two,
+ * starting at a head index and wrapping around its end, so an index in the
+ * list is mapped to the array with an addition and a mask.  The
+ * <tt>size</tt>, <tt>isEmpty</tt>, <tt>get</tt>, <tt>set</tt> and
+ * <tt>iterator</tt> operations run in constant time; adding and removing at
+ * either end run in amortized constant time.  Inserting or removing at an
+ * index moves the elements on the shorter side of the index, so it runs in
+ * time proportional to the distance to the nearer end.  The array doubles
+ * when it is full, and is never shrunk.<p>
+ *
+ * Since <tt>null</tt> elements are permitted, <tt>pollFirst</tt>,
+ * <tt>pollLast</tt>, <tt>peekFirst</tt> and <tt>peekLast</tt> cannot
+ * distinguish an empty deque from a <tt>null</tt> element; the
+ * <tt>remove</tt> and <tt>get</tt> forms, which throw
+ * <tt>NoSuchElementException</tt> on an empty deque, can.<p>
+ *
+ * <strong>Note that this implementation is not synchronized.</strong> If
+ * multiple threads access a deque concurrently, and at least one of the
+ * threads modifies it structurally, it <i>must</i> be synchronized
+ * externally, for instance by wrapping it with
+ * <tt>Collections.synchronizedList</tt>.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt>,
+ * <tt>listIterator</tt> and <tt>descendingIterator</tt> methods are
+ * <i>fail-fast</i>: if the deque is structurally modified at any time
+ * after the iterator is created, in any way except through the iterator's
+ * own remove or add methods, the iterator throws a
+ * <tt>ConcurrentModificationException</tt>.
+ *
+ * @see List
+ * @see ArrayList
+ * @see Collections#synchronizedList(List)
+ */
+public class ArrayDeque extends AbstractList implements Cloneable, Serializable {
+    private static final long serialVersionUID = -1582356742139045307L;
+
+    /**
+     * The capacity of an empty deque with no specified capacity, and the
+     * least capacity of any deque.  Must be a power of two.
+     */
+    private static final int MIN_INITIAL_CAPACITY = 8;
+
+    /**
+     * The greatest capacity, a power of two.
+     */
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /**
+     * The array in which the elements of the deque are stored.  Its length
+     * is always a power of two.
+     */
+    private transient Object[] elements;
+
+    /**
+     * The index in <tt>elements</tt> of the first element of the deque, or
+     * of the next to be added at the front if it is empty.
+     */
+    private transient int head = 0;
+
+    /**
+     * The number of elements in the deque.
+     */
+    private transient int size = 0;
+
+    /**
+     * Constructs an empty deque with an initial capacity of sixteen
+     * elements.
+     */
+    public ArrayDeque() {
+	this.elements = new Object[16];
+    }
+
+    /**
+     * Constructs an empty deque with room for at least the specified
+     * number of elements.
+     *
+     * @param numElements lower bound on the initial capacity of the deque.
+     */
+    public ArrayDeque(final int numElements) {
+	this.elements = new Object[capacityFor(numElements)];
+    }
+
+    /**
+     * Constructs a deque containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection whose elements are to be placed into the
+     *          deque.
+     */
+    public ArrayDeque(final Collection c) {
+	this(c.size());
+	this.addAll(c);
+    }
+
+    /**
+     * Returns the least power of two that is at least the specified number
+     * of elements, within the capacity bounds.
+     */
+    private static int capacityFor(final int numElements) {
+	int capacity = MIN_INITIAL_CAPACITY;
+	while (capacity < numElements && capacity < MAX_CAPACITY) {
+	    capacity <<= 1;
+	}
+	return capacity;
+    }
+
+    /**
+     * Increases the capacity of this deque, if necessary, to ensure that it
+     * can hold at least the number of elements specified by the minimum
+     * capacity argument.
+     *
+     * @param minCapacity the desired minimum capacity.
+     */
+    public void ensureCapacity(final int minCapacity) {
+	if (minCapacity > this.elements.length) {
+	    this.resize(capacityFor(minCapacity));
+	}
+    }
+
+    /**
+     * Copies the elements, in order, to the start of a new array of the
+     * given capacity.
+     */
+    private void resize(final int newCapacity) {
+	final Object[] a = new Object[newCapacity];
+	this.copyTo(a);
+	this.elements = a;
+	this.head = 0;
+    }
+
+    /**
+     * Copies the elements, in order, to the start of the given array.
+     */
+    private void copyTo(final Object[] a) {
+	final int firstPart = Math.min(this.size, this.elements.length - this.head);
+	System.arraycopy(this.elements, this.head, a, 0, firstPart);
+	System.arraycopy(this.elements, 0, a, firstPart, this.size - firstPart);
+    }
+
+    /**
+     * Makes room for one more element.
+     */
+    private void grow() {
+	if (this.size == this.elements.length) {
+	    if (this.size == MAX_CAPACITY) {
+		throw new IllegalStateException("Deque too big");
+	    }
+	    this.resize(this.elements.length << 1);
+	}
+    }
+
+    /**
+     * Returns the index in <tt>elements</tt> of the element at the given
+     * index in the deque.
+     */
+    private int slot(final int index) {
+	return this.head + index & this.elements.length - 1;
+    }
+
+    // Deque operations
+
+    /**
+     * Inserts the specified element at the front of this deque.
+     *
+     * @param o the element to add.
+     */
+    public void addFirst(final Object o) {
+	this.modCount++;
+	this.grow();
+	this.head = this.head - 1 & this.elements.length - 1;
+	this.elements[this.head] = o;
+	this.size++;
+    }
+
+    /**
+     * Inserts the specified element at the end of this deque.
+     *
+     * @param o the element to add.
+     */
+    public void addLast(final Object o) {
+	this.modCount++;
+	this.grow();
+	this.elements[this.slot(this.size)] = o;
+	this.size++;
+    }
+
+    /**
+     * Removes and returns the first element of this deque.
+     *
+     * @return the first element of this deque.
+     * @throws NoSuchElementException if this deque is empty.
+     */
+    public Object removeFirst() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.pollFirst();
+    }
+
+    /**
+     * Removes and returns the last element of this deque.
+     *
+     * @return the last element of this deque.
+     * @throws NoSuchElementException if this deque is empty.
+     */
+    public Object removeLast() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.pollLast();
+    }
+
+    /**
+     * Removes and returns the first element of this deque, or returns
+     * <tt>null</tt> if this deque is empty.
+     *
+     * @return the first element of this deque, or <tt>null</tt> if it is
+     *         empty.
+     */
+    public Object pollFirst() {
+	if (this.size == 0) {
+	    return null;
+	}
+	this.modCount++;
+	final Object o = this.elements[this.head];
+	this.elements[this.head] = null; // Let gc do its work
+	this.head = this.head + 1 & this.elements.length - 1;
+	this.size--;
+	return o;
+    }
+
+    /**
+     * Removes and returns the last element of this deque, or returns
+     * <tt>null</tt> if this deque is empty.
+     *
+     * @return the last element of this deque, or <tt>null</tt> if it is
+     *         empty.
+     */
+    public Object pollLast() {
+	if (this.size == 0) {
+	    return null;
+	}
+	this.modCount++;
+	final int i = this.slot(this.size - 1);
+	final Object o = this.elements[i];
+	this.elements[i] = null; // Let gc do its work
+	this.size--;
+	return o;
+    }
+
+    /**
+     * Returns the first element of this deque.
+     *
+     * @return the first element of this deque.
+     * @throws NoSuchElementException if this deque is empty.
+     */
+    public Object getFirst() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.elements[this.head];
+    }
+
+    /**
+     * Returns the last element of this deque.
+     *
+     * @return the last element of this deque.
+     * @throws NoSuchElementException if this deque is empty.
+     */
+    public Object getLast() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.elements[this.slot(this.size - 1)];
+    }
+
+    /**
+     * Returns the first element of this deque, or <tt>null</tt> if this
+     * deque is empty.
+     *
+     * @return the first element of this deque, or <tt>null</tt> if it is
+     *         empty.
+     */
+    public Object peekFirst() {
+	return this.size == 0 ? null : this.elements[this.head];
+    }
+
+    /**
+     * Returns the last element of this deque, or <tt>null</tt> if this
+     * deque is empty.
+     *
+     * @return the last element of this deque, or <tt>null</tt> if it is
+     *         empty.
+     */
+    public Object peekLast() {
+	return this.size == 0 ? null : this.elements[this.slot(this.size - 1)];
+    }
+
+    /**
+     * Returns an iterator over the elements in this deque in reverse
+     * order, from last to first.
+     *
+     * @return an iterator over the elements in this deque in reverse
+     *         order.
+     */
+    public Iterator descendingIterator() {
+	return new DescendingIterator();
+    }
+
+    // List operations
+
+    /**
+     * Returns the number of elements in this deque.
+     *
+     * @return the number of elements in this deque.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Tests if this deque has no elements.
+     *
+     * @return <tt>true</tt> if this deque has no elements;
+     *         <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /**
+     * Returns the element at the specified position in this deque.
+     *
+     * @param  index index of element to return.
+     * @return the element at the specified position in this deque.
+     * @throws    IndexOutOfBoundsException if index is out of range <tt>(index
+     * 		  &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object get(final int index) {
+	this.RangeCheck(index);
+
+	return this.elements[this.slot(index)];
+    }
+
+    /**
+     * Replaces the element at the specified position in this deque with
+     * the specified element.
+     *
+     * @param index index of element to replace.
+     * @param element element to be stored at the specified position.
+     * @return the element previously at the specified position.
+     * @throws    IndexOutOfBoundsException if index out of range
+     *		  <tt>(index &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object set(final int index, final Object element) {
+	this.RangeCheck(index);
+
+	final int i = this.slot(index);
+	final Object oldValue = this.elements[i];
+	this.elements[i] = element;
+	return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this deque.
+     *
+     * @param o element to be appended to this deque.
+     * @return <tt>true</tt> (as per the general contract of Collection.add).
+     */
+    public boolean add(final Object o) {
+	this.addLast(o);
+	return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * deque.  Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices);
+     * the elements before or after the position are moved, whichever are
+     * fewer.
+     *
+     * @param index index at which the specified element is to be inserted.
+     * @param element element to be inserted.
+     * @throws    IndexOutOfBoundsException if index is out of range
+     *		  <tt>(index &lt; 0 || index &gt; size())</tt>.
+     */
+    public void add(final int index, final Object element) {
+	if (index > this.size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+this.size);
+	}
+
+	this.modCount++;
+	this.grow();
+	final Object[] es = this.elements;
+	final int mask = es.length - 1;
+	if (index < this.size / 2) {
+	    this.head = this.head - 1 & mask;
+	    for (int i = 0; i < index; i++) {
+		es[this.head + i & mask] = es[this.head + i + 1 & mask];
+	    }
+	} else {
+	    for (int i = this.size; i > index; i--) {
+		es[this.head + i & mask] = es[this.head + i - 1 & mask];
+	    }
+	}
+	es[this.head + index & mask] = element;
+	this.size++;
+    }
+
+    /**
+     * Removes the element at the specified position in this deque.  Shifts
+     * any subsequent elements to the left (subtracts one from their
+     * indices); the elements before or after the position are moved,
+     * whichever are fewer.
+     *
+     * @param index the index of the element to removed.
+     * @return the element that was removed from the deque.
+     * @throws    IndexOutOfBoundsException if index out of range <tt>(index
+     * 		  &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object remove(final int index) {
+	this.RangeCheck(index);
+
+	this.modCount++;
+	final Object[] es = this.elements;
+	final int mask = es.length - 1;
+	final Object oldValue = es[this.head + index & mask];
+	if (index < this.size / 2) {
+	    for (int i = index; i > 0; i--) {
+		es[this.head + i & mask] = es[this.head + i - 1 & mask];
+	    }
+	    es[this.head] = null; // Let gc do its work
+	    this.head = this.head + 1 & mask;
+	} else {
+	    for (int i = index; i < this.size - 1; i++) {
+		es[this.head + i & mask] = es[this.head + i + 1 & mask];
+	    }
+	    es[this.head + this.size - 1 & mask] = null; // Let gc do its work
+	}
+	this.size--;
+	return oldValue;
+    }
+
+    /**
+     * Removes all of the elements from this deque.  The deque will be
+     * empty after this call returns.
+     */
+    public void clear() {
+	this.modCount++;
+
+	// Let gc do its work
+	for (int i = 0; i < this.size; i++) {
+	    this.elements[this.slot(i)] = null;
+	}
+
+	this.head = 0;
+	this.size = 0;
+    }
+
+    /**
+     * Appends all of the elements in the specified Collection to the end of
+     * this deque, in the order that they are returned by the specified
+     * Collection's Iterator.
+     *
+     * @param c elements to be appended to this deque.
+     * @return <tt>true</tt> if this deque changed as a result of the call.
+     */
+    public boolean addAll(final Collection c) {
+	final int numNew = c.size();
+	this.ensureCapacity(this.size + numNew);
+
+	final Iterator e = c.iterator();
+	for (int i=0; i<numNew; i++) {
+	    this.addLast(e.next());
+	}
+
+	return numNew != 0;
+    }
+
+    /**
+     * Removes from this deque all of the elements whose index is between
+     * fromIndex, inclusive and toIndex, exclusive.  Shifts any succeeding
+     * elements to the left (reduces their index).
+     *
+     * @param fromIndex index of first element to be removed.
+     * @param toIndex index after last element to be removed.
+     */
+    protected void removeRange(final int fromIndex, final int toIndex) {
+	this.modCount++;
+	final Object[] es = this.elements;
+	final int mask = es.length - 1;
+	final int numRemoved = toIndex - fromIndex;
+	for (int i = toIndex; i < this.size; i++) {
+	    es[this.head + i - numRemoved & mask] = es[this.head + i & mask];
+	}
+
+	// Let gc do its work
+	for (int i = this.size - numRemoved; i < this.size; i++) {
+	    es[this.head + i & mask] = null;
+	}
+	this.size -= numRemoved;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this deque in the
+     * correct order.
+     *
+     * @return an array containing all of the elements in this deque in the
+     *         correct order.
+     */
+    public Object[] toArray() {
+	final Object[] result = new Object[this.size];
+	this.copyTo(result);
+	return result;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this deque in the
+     * correct order.  The runtime type of the returned array is that of the
+     * specified array.  If the deque fits in the specified array, it is
+     * returned therein.  Otherwise, a new array is allocated with the runtime
+     * type of the specified array and the size of this deque.  If the array
+     * has room to spare, the element following the last one copied is set
+     * to <tt>null</tt>.
+     *
+     * @param a the array into which the elements of the deque are to
+     *		be stored, if it is big enough; otherwise, a new array of the
+     * 		same runtime type is allocated for this purpose.
+     * @return an array containing the elements of the deque.
+     * @throws ArrayStoreException if the runtime type of a is not a supertype
+     *         of the runtime type of every element in this deque.
+     */
+    public Object[] toArray(Object a[]) {
+	if (a.length < this.size) {
+	    a = (Object[])java.lang.reflect.Array.newInstance(
+				a.getClass().getComponentType(), this.size);
+	}
+
+	this.copyTo(a);
+
+	if (a.length > this.size) {
+	    a[this.size] = null;
+	}
+
+	return a;
+    }
+
+    /**
+     * Returns a shallow copy of this deque.  (The elements themselves are
+     * not copied.)
+     *
+     * @return a clone of this deque.
+     */
+    public Object clone() {
+	try {
+	    final ArrayDeque v = (ArrayDeque)super.clone();
+	    v.elements = (Object[]) this.elements.clone();
+	    v.modCount = 0;
+	    return v;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Check if the given index is in range.  If not, throw an appropriate
+     * runtime exception.
+     */
+    private void RangeCheck(final int index) {
+	if (index >= this.size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+this.size);
+	}
+    }
+
+    private class DescendingIterator implements Iterator {
+	/**
+	 * Index of element to be returned by subsequent call to next, or -1.
+	 */
+	private int cursor = ArrayDeque.this.size - 1;
+
+	private int lastRet = -1;
+
+	private int expectedModCount = ArrayDeque.this.modCount;
+
+	DescendingIterator() {
+	    // empty
+	}
+
+	public boolean hasNext() {
+	    return this.cursor >= 0;
+	}
+
+	public Object next() {
+	    if (this.cursor < 0) {
+		throw new NoSuchElementException();
+	    }
+	    if (ArrayDeque.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    this.lastRet = this.cursor--;
+	    return ArrayDeque.this.elements[ArrayDeque.this.slot(this.lastRet)];
+	}
+
+	public void remove() {
+	    if (this.lastRet == -1) {
+		throw new IllegalStateException();
+	    }
+	    if (ArrayDeque.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    ArrayDeque.this.remove(this.lastRet);
+	    this.lastRet = -1;
+	    this.expectedModCount = ArrayDeque.this.modCount;
+	}
+    }
+
+    /**
+     * Save the state of the <tt>ArrayDeque</tt> instance to a stream (that
+     * is, serialize it).
+     *
+     * @serialData The number of elements in the deque is emitted (int),
+     *             followed by all of its elements (each an
+     *             <tt>Object</tt>) in first-to-last order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (int i = 0; i < this.size; i++) {
+	    s.writeObject(this.elements[this.slot(i)]);
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>ArrayDeque</tt> instance from a stream (that is,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	final int n = s.readInt();
+	this.elements = new Object[capacityFor(n)];
+	for (int i = 0; i < n; i++) {
+	    this.elements[i] = s.readObject();
+	}
+	this.size = n;
+    }
+}
@@ -74,6 +74,12 @@ public class ArrayList extends AbstractList implements Cloneable,
 					            Serializable {
 	private static final long serialVersionUID = 7873701401556464682L;
 
+    /**
+     * The size above which a list passed to <tt>removeAll</tt> or
+     * <tt>retainAll</tt> is copied into a <tt>HashSet</tt>.
+     */
+	private static final int HASH_THRESHOLD = 16;
+
    /**
      * The array buffer into which the elements of the ArrayList are stored.
      * The capacity of the ArrayList is the length of this array buffer.
@@ -498,6 +504,101 @@ public class ArrayList extends AbstractList implements Cloneable,
 	}
     }
 
+    /**
+     * Removes from this list all of its elements that are contained in the
+     * specified collection.  The survivors are moved forward in a single
+     * pass, so the list is compacted in linear time rather than shifting
+     * its tail once per removed element.<p>
+     *
+     * Membership is decided by <tt>c.contains</tt>, except that an
+     * <tt>ArrayList</tt>, <tt>ArrayDeque</tt>, <tt>TieredList</tt> or
+     * <tt>CopyOnWriteArrayList</tt> of more than sixteen elements (and of
+     * exactly that class) is first copied into a <tt>HashSet</tt>.  These
+     * lists test membership with <tt>equals</tt>, so the result is the
+     * same, but each test takes constant time instead of a linear scan.
+     * Any other collection, including a <tt>Set</tt> or a view that
+     * compares elements by identity or with a comparator, is queried as
+     * it is.
+     *
+     * @param c elements to be removed from this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     */
+    public boolean removeAll(final Collection c) {
+	return this.batchRemove(c, false);
+    }
+
+    /**
+     * Retains only the elements in this list that are contained in the
+     * specified collection.  The survivors are moved forward in a single
+     * pass, so the list is compacted in linear time rather than shifting
+     * its tail once per removed element.<p>
+     *
+     * Membership is decided by <tt>c.contains</tt>, except that an
+     * <tt>ArrayList</tt>, <tt>ArrayDeque</tt>, <tt>TieredList</tt> or
+     * <tt>CopyOnWriteArrayList</tt> of more than sixteen elements (and of
+     * exactly that class) is first copied into a <tt>HashSet</tt>.  These
+     * lists test membership with <tt>equals</tt>, so the result is the
+     * same, but each test takes constant time instead of a linear scan.
+     * Any other collection, including a <tt>Set</tt> or a view that
+     * compares elements by identity or with a comparator, is queried as
+     * it is.
+     *
+     * @param c elements to be retained in this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     */
+    public boolean retainAll(final Collection c) {
+	return this.batchRemove(c, true);
+    }
+
+    /**
+     * Keeps the elements whose membership in <tt>c</tt> equals
+     * <tt>retain</tt>, compacting them to the front of the array.  If
+     * <tt>c.contains</tt> throws, the elements not yet examined are kept
+     * and the list is left consistent.
+     */
+    private boolean batchRemove(Collection c, final boolean retain) {
+	if (c.size() > HASH_THRESHOLD && hasEqualsMembership(c)) {
+		c = new HashSet(c);
+	}
+	final Object[] elementData = this.elementData;
+	int r = 0, w = 0;
+	boolean modified = false;
+	try {
+		for (; r < this.size; r++) {
+			if (c.contains(elementData[r]) == retain) {
+				elementData[w++] = elementData[r];
+			}
+		}
+	} finally {
+		if (r < this.size) {
+			System.arraycopy(elementData, r, elementData, w,
+					 this.size - r);
+			w += this.size - r;
+		}
+		if (w != this.size) {
+			this.modCount++;
+			// Let gc do its work
+			while (this.size != w) {
+				elementData[--this.size] = null;
+			}
+			modified = true;
+		}
+	}
+	return modified;
+    }
+
+    /**
+     * Returns <tt>true</tt> if <tt>c</tt> is one of the lists of this
+     * package, and not a subclass of one, whose <tt>contains</tt> compares
+     * elements with <tt>equals</tt> by a linear scan, so that a
+     * <tt>HashSet</tt> of its elements answers the same.
+     */
+    private static boolean hasEqualsMembership(final Collection c) {
+	final Class cl = c.getClass();
+	return cl == ArrayList.class || cl == ArrayDeque.class
+	    || cl == TieredList.class || cl == CopyOnWriteArrayList.class;
+    }
+
     /**
      * Check if the given index is in range.  If not, throw an appropriate
      * runtime exception.
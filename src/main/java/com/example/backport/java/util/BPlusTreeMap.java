@@ -0,0 +1,1349 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import com.example.backport.java.lang.Comparable;
+
+/**
+ * B+-tree based implementation of the <tt>SortedMap</tt> interface.  Like
+ * <tt>TreeMap</tt>, this class keeps its keys in ascending order, sorted
+ * according to their <i>natural order</i> (see <tt>Comparable</tt>), or by
+ * the comparator provided at creation time, and provides guaranteed log(n)
+ * time cost for the <tt>containsKey</tt>, <tt>get</tt>, <tt>put</tt> and
+ * <tt>remove</tt> operations.<p>
+ *
+ * Unlike <tt>TreeMap</tt>, which allocates one node per mapping, this map
+ * stores up to 64 keys and values side by side in the arrays of each
+ * leaf, and up to 64 children in each interior node.  A lookup in a map of
+ * n mappings therefore visits about log<sub>64</sub>(n) nodes, each of
+ * them searched by binary search over a compact array, and the per-mapping
+ * memory overhead is a small fraction of a <tt>TreeMap</tt> entry's.  The
+ * leaves are linked in key order, so iteration over the map or over a
+ * <tt>subMap</tt> view walks the leaf arrays sequentially.  A map built
+ * from a <tt>SortedMap</tt>, by <tt>putAll</tt> into an empty map, or by
+ * deserialization, is loaded bottom-up in linear time.<p>
+ *
+ * The entries returned by the <tt>entrySet</tt> view are created as the
+ * iteration proceeds; their <tt>setValue</tt> method writes through to the
+ * map for as long as the mapping remains in it.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a map concurrently, and at least one of the threads
+ * modifies the map structurally, it <i>must</i> be synchronized
+ * externally.<p>
+ *
+ * The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time
+ * after the iterator is created, in any way except through the iterator's
+ * own <tt>remove</tt> method, the iterator throws a
+ * <tt>ConcurrentModificationException</tt>.
+ *
+ * @see Map
+ * @see SortedMap
+ * @see TreeMap
+ */
+public class BPlusTreeMap extends AbstractMap
+			  implements SortedMap, Cloneable, java.io.Serializable
+{
+    private static final long serialVersionUID = 5186431617049270215L;
+
+    /**
+     * The maximum number of keys in a leaf, and of children of an interior
+     * node.  Every node but the root is kept at least half full.
+     */
+    static final int NODE_SIZE = 64;
+
+    private static final int MIN_SIZE = NODE_SIZE / 2;
+
+    /**
+     * The Comparator used to maintain order in this map, or null if this map
+     * uses its keys' natural ordering.
+     *
+     * @serial
+     */
+    private final Comparator comparator;
+
+    private transient Node root;
+
+    /**
+     * The first and last leaves, in key order.
+     */
+    private transient Leaf head, tail;
+
+    /**
+     * The number of interior levels above the leaves.
+     */
+    private transient int height;
+
+    /**
+     * The number of mappings in the map.
+     */
+    private transient int size;
+
+    /**
+     * The number of structural modifications to the map.
+     */
+    transient int modCount;
+
+    /**
+     * The interior nodes visited by the last call to <tt>descend</tt>, from
+     * the root down, and the index of the child taken at each of them.
+     * Reused by every update to avoid allocation.
+     */
+    private transient Inner[] path;
+    private transient int[] pathIndex;
+
+    /**
+     * Constructs a new, empty map, sorted according to the keys' natural
+     * order.  All keys inserted into the map must implement the
+     * <tt>Comparable</tt> interface, and must be <i>mutually comparable</i>.
+     *
+     * @see Comparable
+     */
+    public BPlusTreeMap() {
+	this((Comparator) null);
+    }
+
+    /**
+     * Constructs a new, empty map, sorted according to the given comparator.
+     * All keys inserted into the map must be <i>mutually comparable</i> by
+     * the given comparator.
+     *
+     * @param c the comparator that will be used to sort this map, or
+     *          <tt>null</tt> for the keys' natural ordering.
+     */
+    public BPlusTreeMap(final Comparator c) {
+	this.comparator = c;
+	this.init();
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map,
+     * sorted according to the keys' <i>natural order</i>.  This constructor
+     * runs in n*log(n) time.
+     *
+     * @param m the map whose mappings are to be placed in this map.
+     * @throws ClassCastException the keys in m are not Comparable, or are
+     *         not mutually comparable.
+     */
+    public BPlusTreeMap(final Map m) {
+	this((Comparator) null);
+	this.putAll(m);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given
+     * <tt>SortedMap</tt>, sorted according to the same ordering.  This
+     * constructor runs in linear time.
+     *
+     * @param m the sorted map whose mappings are to be placed in this map.
+     */
+    public BPlusTreeMap(final SortedMap m) {
+	this(m.comparator());
+	try {
+	    this.buildFromSorted(m.size(), m.entrySet().iterator(), null);
+	} catch (final IOException cannotHappen) {
+	    // ignore
+	} catch (final ClassNotFoundException cannotHappen) {
+	    // ignore
+	}
+    }
+
+    /**
+     * Resets this map to a single empty leaf.
+     */
+    private void init() {
+	this.root = this.head = this.tail = new Leaf();
+	this.height = 0;
+	this.size = 0;
+    }
+
+
+    // Query Operations
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural ordering, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public boolean containsKey(final Object key) {
+	return this.indexOf(this.findLeaf(key), key) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  This operation scans the leaves in order, and so
+     * requires time linear in the size of the map.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value.
+     */
+    public boolean containsValue(final Object value) {
+	for (Leaf leaf = this.head; leaf != null; leaf = leaf.next) {
+	    for (int i = 0; i < leaf.size; i++) {
+		if (TreeMap.valEquals(value, leaf.values[i])) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key.  Returns
+     * <tt>null</tt> if the map contains no mapping for this key.  A return
+     * value of <tt>null</tt> does not <i>necessarily</i> indicate that the
+     * map contains no mapping for the key; it's also possible that the map
+     * explicitly maps the key to <tt>null</tt>.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key, or
+     *         <tt>null</tt> if the map contains no mapping for the key.
+     * @throws ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural ordering, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object get(final Object key) {
+	final Leaf leaf = this.findLeaf(key);
+	final int i = this.indexOf(leaf, key);
+	return i >= 0 ? leaf.values[i] : null;
+    }
+
+    /**
+     * Returns the comparator used to order this map, or <tt>null</tt> if
+     * this map uses its keys' natural order.
+     *
+     * @return the comparator associated with this sorted map, or
+     *         <tt>null</tt> if it uses its keys' natural sort method.
+     */
+    public Comparator comparator() {
+	return this.comparator;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this sorted map.
+     *
+     * @return the first (lowest) key currently in this sorted map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public Object firstKey() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.head.keys[0];
+    }
+
+    /**
+     * Returns the last (highest) key currently in this sorted map.
+     *
+     * @return the last (highest) key currently in this sorted map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public Object lastKey() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.tail.keys[this.tail.size - 1];
+    }
+
+
+    // Modification Operations
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural ordering, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object put(final Object key, final Object value) {
+	final Leaf leaf = this.descend(key);
+	int i = this.indexOf(leaf, key);
+	if (i >= 0) {
+	    final Object oldValue = leaf.values[i];
+	    leaf.values[i] = value;
+	    return oldValue;
+	}
+	i = -(i + 1);
+
+	this.modCount++;
+	this.size++;
+	System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.size - i);
+	System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.size - i);
+	leaf.keys[i] = key;
+	leaf.values[i] = value;
+	leaf.size++;
+	if (leaf.size > NODE_SIZE) {
+	    this.splitLeaf(leaf);
+	}
+	return null;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural ordering, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object remove(final Object key) {
+	final Leaf leaf = this.descend(key);
+	final int i = this.indexOf(leaf, key);
+	if (i < 0) {
+	    return null;
+	}
+	final Object oldValue = leaf.values[i];
+	this.deleteAt(leaf, i);
+	return oldValue;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.  If
+     * this map is empty and the specified map is a <tt>SortedMap</tt> with
+     * the same ordering, the tree is loaded bottom-up in linear time.
+     *
+     * @param map mappings to be stored in this map.
+     * @throws ClassCastException class of a key or value in the specified
+     *		  map prevents it from being stored in this map.
+     * @throws NullPointerException this map does not permit <tt>null</tt>
+     *		  keys and a specified key is <tt>null</tt>.
+     */
+    public void putAll(final Map map) {
+	final int mapSize = map.size();
+	if (this.size == 0 && mapSize != 0 && map instanceof SortedMap) {
+	    final Comparator c = ((SortedMap) map).comparator();
+	    if (c == this.comparator || c != null && c.equals(this.comparator)) {
+		this.modCount++;
+		try {
+		    this.buildFromSorted(mapSize, map.entrySet().iterator(), null);
+		} catch (final IOException cannotHappen) {
+		    // ignore
+		} catch (final ClassNotFoundException cannotHappen) {
+		    // ignore
+		}
+		return;
+	    }
+	}
+	super.putAll(map);
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	this.modCount++;
+	this.init();
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>BPlusTreeMap</tt> instance.  (The
+     * keys and values themselves are not cloned.)
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	return new BPlusTreeMap(this);
+    }
+
+
+    // Views
+
+    private transient Set keySet = null;
+    private transient Set entrySet = null;
+    private transient Collection values = null;
+
+    /**
+     * Returns a Set view of the keys contained in this map.  The set's
+     * iterator will return the keys in ascending order.  The set is backed
+     * by the map, and supports element removal but not addition.
+     *
+     * @return a set view of the keys contained in this map.
+     */
+    public Set keySet() {
+	if (this.keySet == null) {
+	    this.keySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return BPlusTreeMap.this.newIterator(KEYS, true, null, true, null);
+		}
+
+		public int size() {
+		    return BPlusTreeMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    return BPlusTreeMap.this.containsKey(o);
+		}
+
+		public boolean remove(final Object o) {
+		    final int oldSize = BPlusTreeMap.this.size;
+		    BPlusTreeMap.this.remove(o);
+		    return BPlusTreeMap.this.size != oldSize;
+		}
+
+		public void clear() {
+		    BPlusTreeMap.this.clear();
+		}
+	    };
+	}
+	return this.keySet;
+    }
+
+    /**
+     * Returns a collection view of the values contained in this map, in the
+     * order of their keys.  The collection is backed by the map, and
+     * supports element removal but not addition.
+     *
+     * @return a collection view of the values contained in this map.
+     */
+    public Collection values() {
+	if (this.values == null) {
+	    this.values = new AbstractCollection() {
+		public Iterator iterator() {
+		    return BPlusTreeMap.this.newIterator(VALUES, true, null, true, null);
+		}
+
+		public int size() {
+		    return BPlusTreeMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    return BPlusTreeMap.this.containsValue(o);
+		}
+
+		public void clear() {
+		    BPlusTreeMap.this.clear();
+		}
+	    };
+	}
+	return this.values;
+    }
+
+    /**
+     * Returns a set view of the mappings contained in this map.  The set's
+     * iterator returns the mappings in ascending key order.  Each element
+     * in the returned set is a <tt>Map.Entry</tt>.  The set is backed by
+     * the map, and supports element removal but not addition.
+     *
+     * @return a set view of the mappings contained in this map.
+     * @see Map.Entry
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return BPlusTreeMap.this.newIterator(ENTRIES, true, null, true, null);
+		}
+
+		public boolean contains(final Object o) {
+		    return BPlusTreeMap.this.containsEntry(o);
+		}
+
+		public boolean remove(final Object o) {
+		    return BPlusTreeMap.this.removeEntry(o);
+		}
+
+		public int size() {
+		    return BPlusTreeMap.this.size;
+		}
+
+		public void clear() {
+		    BPlusTreeMap.this.clear();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    boolean containsEntry(final Object o) {
+	if (!(o instanceof Map.Entry)) {
+	    return false;
+	}
+	final Map.Entry entry = (Map.Entry) o;
+	final Leaf leaf = this.findLeaf(entry.getKey());
+	final int i = this.indexOf(leaf, entry.getKey());
+	return i >= 0 && TreeMap.valEquals(leaf.values[i], entry.getValue());
+    }
+
+    boolean removeEntry(final Object o) {
+	if (!(o instanceof Map.Entry)) {
+	    return false;
+	}
+	final Map.Entry entry = (Map.Entry) o;
+	final Leaf leaf = this.descend(entry.getKey());
+	final int i = this.indexOf(leaf, entry.getKey());
+	if (i >= 0 && TreeMap.valEquals(leaf.values[i], entry.getValue())) {
+	    this.deleteAt(leaf, i);
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys range from
+     * <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.  The
+     * returned sorted map is backed by this map, and supports all optional
+     * map operations; it throws an <tt>IllegalArgumentException</tt> if the
+     * user attempts to insert a key outside the range.
+     *
+     * @param fromKey low endpoint (inclusive) of the subMap.
+     * @param toKey high endpoint (exclusive) of the subMap.
+     * @return a view of the portion of this map whose keys range from
+     *         <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.
+     * @throws IllegalArgumentException if <tt>fromKey</tt> is greater than
+     *         <tt>toKey</tt>.
+     */
+    public SortedMap subMap(final Object fromKey, final Object toKey) {
+	if (this.compare(fromKey, toKey) > 0) {
+	    throw new IllegalArgumentException("fromKey > toKey");
+	}
+	return new SubMap(false, fromKey, false, toKey);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are strictly
+     * less than <tt>toKey</tt>.
+     *
+     * @param toKey high endpoint (exclusive) of the headMap.
+     * @return a view of the portion of this map whose keys are strictly
+     *         less than <tt>toKey</tt>.
+     * @see #subMap(Object, Object)
+     */
+    public SortedMap headMap(final Object toKey) {
+	return new SubMap(true, null, false, toKey);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are greater than
+     * or equal to <tt>fromKey</tt>.
+     *
+     * @param fromKey low endpoint (inclusive) of the tailMap.
+     * @return a view of the portion of this map whose keys are greater
+     *         than or equal to <tt>fromKey</tt>.
+     * @see #subMap(Object, Object)
+     */
+    public SortedMap tailMap(final Object fromKey) {
+	return new SubMap(false, fromKey, true, null);
+    }
+
+    private class SubMap extends AbstractMap
+			 implements SortedMap, java.io.Serializable {
+	private static final long serialVersionUID = -2938167430192838457L;
+
+	/**
+	 * fromKey is significant only if fromStart is false.  Similarly,
+	 * toKey is significant only if toEnd is false.
+	 */
+	private final boolean fromStart;
+	private final Object fromKey;
+	private final boolean toEnd;
+	private final Object toKey;
+
+	SubMap(final boolean fromStart, final Object fromKey, final boolean toEnd, final Object toKey) {
+	    this.fromStart = fromStart;
+	    this.fromKey = fromKey;
+	    this.toEnd = toEnd;
+	    this.toKey = toKey;
+	}
+
+	public boolean isEmpty() {
+	    return !this.iterator(KEYS).hasNext();
+	}
+
+	public boolean containsKey(final Object key) {
+	    return this.inRange(key) && BPlusTreeMap.this.containsKey(key);
+	}
+
+	public Object get(final Object key) {
+	    if (!this.inRange(key)) {
+		return null;
+	    }
+	    return BPlusTreeMap.this.get(key);
+	}
+
+	public Object put(final Object key, final Object value) {
+	    if (!this.inRange(key)) {
+		throw new IllegalArgumentException("key out of range");
+	    }
+	    return BPlusTreeMap.this.put(key, value);
+	}
+
+	public Object remove(final Object key) {
+	    if (!this.inRange(key)) {
+		return null;
+	    }
+	    return BPlusTreeMap.this.remove(key);
+	}
+
+	public Comparator comparator() {
+	    return BPlusTreeMap.this.comparator;
+	}
+
+	public Object firstKey() {
+	    final Iterator i = this.iterator(KEYS);
+	    if (!i.hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    return i.next();
+	}
+
+	public Object lastKey() {
+	    Leaf leaf;
+	    int i;
+	    if (this.toEnd) {
+		leaf = BPlusTreeMap.this.tail;
+		i = leaf.size - 1;
+	    } else {
+		leaf = BPlusTreeMap.this.findLeaf(this.toKey);
+		i = BPlusTreeMap.this.indexOf(leaf, this.toKey);
+		i = (i >= 0 ? i : -(i + 1)) - 1;
+		if (i < 0 && leaf.prev != null) {
+		    leaf = leaf.prev;
+		    i = leaf.size - 1;
+		}
+	    }
+	    if (i < 0 || !this.fromStart && BPlusTreeMap.this.compare(leaf.keys[i], this.fromKey) < 0) {
+		throw new NoSuchElementException();
+	    }
+	    return leaf.keys[i];
+	}
+
+	private transient Set entrySet = null;
+
+	public Set entrySet() {
+	    if (this.entrySet == null) {
+		this.entrySet = new AbstractSet() {
+		    public Iterator iterator() {
+			return SubMap.this.iterator(ENTRIES);
+		    }
+
+		    public int size() {
+			int n = 0;
+			for (final Iterator i = SubMap.this.iterator(KEYS); i.hasNext(); i.next()) {
+			    n++;
+			}
+			return n;
+		    }
+
+		    public boolean contains(final Object o) {
+			return o instanceof Map.Entry
+			    && SubMap.this.inRange(((Map.Entry) o).getKey())
+			    && BPlusTreeMap.this.containsEntry(o);
+		    }
+
+		    public boolean remove(final Object o) {
+			return o instanceof Map.Entry
+			    && SubMap.this.inRange(((Map.Entry) o).getKey())
+			    && BPlusTreeMap.this.removeEntry(o);
+		    }
+		};
+	    }
+	    return this.entrySet;
+	}
+
+	Iterator iterator(final int type) {
+	    return BPlusTreeMap.this.newIterator(type, this.fromStart, this.fromKey, this.toEnd, this.toKey);
+	}
+
+	public SortedMap subMap(final Object fromKey, final Object toKey) {
+	    if (!this.inRange(fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    if (!this.inRange2(toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    if (BPlusTreeMap.this.compare(fromKey, toKey) > 0) {
+		throw new IllegalArgumentException("fromKey > toKey");
+	    }
+	    return new SubMap(false, fromKey, false, toKey);
+	}
+
+	public SortedMap headMap(final Object toKey) {
+	    if (!this.inRange2(toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    return new SubMap(this.fromStart, this.fromKey, false, toKey);
+	}
+
+	public SortedMap tailMap(final Object fromKey) {
+	    if (!this.inRange(fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    return new SubMap(false, fromKey, this.toEnd, this.toKey);
+	}
+
+	boolean inRange(final Object key) {
+	    return (this.fromStart || BPlusTreeMap.this.compare(key, this.fromKey) >= 0) &&
+		   (this.toEnd     || BPlusTreeMap.this.compare(key, this.toKey)   <  0);
+	}
+
+	// This form allows the high endpoint (as well as all legit keys)
+	private boolean inRange2(final Object key) {
+	    return (this.fromStart || BPlusTreeMap.this.compare(key, this.fromKey) >= 0) &&
+		   (this.toEnd     || BPlusTreeMap.this.compare(key, this.toKey)   <= 0);
+	}
+    }
+
+    // Types of Iterators
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    Iterator newIterator(final int type, final boolean fromStart, final Object fromKey,
+			 final boolean toEnd, final Object toKey) {
+	if (fromStart) {
+	    return new LeafIterator(type, this.head, 0, toEnd, toKey);
+	}
+	final Leaf leaf = this.findLeaf(fromKey);
+	final int i = this.indexOf(leaf, fromKey);
+	return new LeafIterator(type, leaf, i >= 0 ? i : -(i + 1), toEnd, toKey);
+    }
+
+    /**
+     * Iterator walking the linked leaves from a starting position up to,
+     * but excluding, an optional high key.
+     */
+    private class LeafIterator implements Iterator {
+	private final int type;
+	private final boolean toEnd;
+	private final Object toKey;
+
+	/**
+	 * The position of the next element, or a null leaf at the end.
+	 */
+	private Leaf leaf;
+	private int index;
+
+	private Object lastKey;
+	private boolean canRemove = false;
+	private int expectedModCount = BPlusTreeMap.this.modCount;
+
+	LeafIterator(final int type, final Leaf leaf, final int index,
+		     final boolean toEnd, final Object toKey) {
+	    this.type = type;
+	    this.toEnd = toEnd;
+	    this.toKey = toKey;
+	    this.leaf = leaf;
+	    this.index = index;
+	    this.settle();
+	}
+
+	/**
+	 * Moves past the end of an exhausted leaf, and ends the iteration at
+	 * the high key.
+	 */
+	private void settle() {
+	    if (this.index >= this.leaf.size) {
+		this.leaf = this.leaf.next;
+		this.index = 0;
+	    }
+	    if (this.leaf != null && !this.toEnd &&
+		BPlusTreeMap.this.compare(this.leaf.keys[this.index], this.toKey) >= 0) {
+		this.leaf = null;
+	    }
+	}
+
+	public boolean hasNext() {
+	    return this.leaf != null;
+	}
+
+	public Object next() {
+	    if (this.leaf == null) {
+		throw new NoSuchElementException();
+	    }
+	    if (BPlusTreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    final Leaf l = this.leaf;
+	    final int i = this.index++;
+	    this.lastKey = l.keys[i];
+	    this.canRemove = true;
+	    this.settle();
+	    return this.type == KEYS ? l.keys[i] :
+		   this.type == VALUES ? l.values[i] : new Entry(l, i);
+	}
+
+	public void remove() {
+	    if (!this.canRemove) {
+		throw new IllegalStateException();
+	    }
+	    if (BPlusTreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    // Removal may move the following keys between leaves, so the
+	    // position of the next key is found again afterwards.
+	    final Object nextKey = this.leaf == null ? null : this.leaf.keys[this.index];
+	    BPlusTreeMap.this.remove(this.lastKey);
+	    if (this.leaf != null) {
+		this.leaf = BPlusTreeMap.this.findLeaf(nextKey);
+		this.index = BPlusTreeMap.this.indexOf(this.leaf, nextKey);
+	    }
+	    this.canRemove = false;
+	    this.expectedModCount = BPlusTreeMap.this.modCount;
+	}
+    }
+
+    /**
+     * Map entry handed out by the entry set iterators.  It remembers the
+     * leaf slot of its mapping, and looks the key up again if updates have
+     * moved it.
+     */
+    private class Entry implements Map.Entry {
+	private final Object key;
+	private Object value;
+	private Leaf leaf;
+	private int index;
+
+	Entry(final Leaf leaf, final int index) {
+	    this.key = leaf.keys[index];
+	    this.value = leaf.values[index];
+	    this.leaf = leaf;
+	    this.index = index;
+	}
+
+	/**
+	 * Returns true if the mapping is still in the map, with leaf and
+	 * index pointing at it.
+	 */
+	private boolean locate() {
+	    if (this.index >= 0 && this.index < this.leaf.size && this.leaf.keys[this.index] == this.key) {
+		return true;
+	    }
+	    this.leaf = BPlusTreeMap.this.findLeaf(this.key);
+	    this.index = BPlusTreeMap.this.indexOf(this.leaf, this.key);
+	    return this.index >= 0;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    if (this.locate()) {
+		this.value = this.leaf.values[this.index];
+	    }
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = this.getValue();
+	    if (this.locate()) {
+		this.leaf.values[this.index] = value;
+	    }
+	    this.value = value;
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return TreeMap.valEquals(this.key, e.getKey()) && TreeMap.valEquals(this.getValue(), e.getValue());
+	}
+
+	public int hashCode() {
+	    final Object v = this.getValue();
+	    return (this.key == null ? 0 : this.key.hashCode()) ^
+		   (v == null ? 0 : v.hashCode());
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.getValue();
+	}
+    }
+
+
+    // Nodes
+
+    /**
+     * A node of the tree: <tt>size</tt> keys in ascending order.
+     */
+    abstract static class Node {
+	final Object[] keys;
+	int size;
+
+	Node(final int capacity) {
+	    this.keys = new Object[capacity];
+	}
+    }
+
+    /**
+     * An interior node, with <tt>size</tt> separator keys and
+     * <tt>size+1</tt> children.  Every key in <tt>children[i]</tt> is less
+     * than <tt>keys[i]</tt>, and every key in <tt>children[i+1]</tt> is
+     * greater than or equal to it.  The arrays have one spare slot, so a
+     * full node can take one more child before it is split.
+     */
+    static final class Inner extends Node {
+	final Node[] children = new Node[NODE_SIZE + 1];
+
+	Inner() {
+	    super(NODE_SIZE);
+	}
+    }
+
+    /**
+     * A leaf, holding <tt>size</tt> keys and their values in parallel
+     * arrays, and linked to its neighbours in key order.  The arrays have
+     * one spare slot, so a full leaf can take one more mapping before it is
+     * split.
+     */
+    static final class Leaf extends Node {
+	final Object[] values = new Object[NODE_SIZE + 1];
+	Leaf prev;
+	Leaf next;
+
+	Leaf() {
+	    super(NODE_SIZE + 1);
+	}
+    }
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    int compare(final Object k1, final Object k2) {
+	return this.comparator==null ? ((Comparable)k1).compareTo(k2)
+				     : this.comparator.compare(k1, k2);
+    }
+
+    /**
+     * Returns the index of the child of an interior node whose subtree may
+     * contain the key: the number of separators less than or equal to it.
+     */
+    private int childIndex(final Inner node, final Object key) {
+	int lo = 0;
+	int hi = node.size;
+	while (lo < hi) {
+	    final int mid = (lo + hi) >>> 1;
+	    if (this.compare(key, node.keys[mid]) < 0) {
+		hi = mid;
+	    } else {
+		lo = mid + 1;
+	    }
+	}
+	return lo;
+    }
+
+    /**
+     * Returns the index of the key in the leaf, or <tt>-(insertion point +
+     * 1)</tt> if it is not there.
+     */
+    int indexOf(final Leaf leaf, final Object key) {
+	int lo = 0;
+	int hi = leaf.size - 1;
+	while (lo <= hi) {
+	    final int mid = (lo + hi) >>> 1;
+	    final int cmp = this.compare(leaf.keys[mid], key);
+	    if (cmp < 0) {
+		lo = mid + 1;
+	    } else if (cmp > 0) {
+		hi = mid - 1;
+	    } else {
+		return mid;
+	    }
+	}
+	return -(lo + 1);
+    }
+
+    /**
+     * Returns the leaf whose key range covers the specified key.
+     */
+    Leaf findLeaf(final Object key) {
+	Node node = this.root;
+	for (int h = this.height; h > 0; h--) {
+	    final Inner inner = (Inner) node;
+	    node = inner.children[this.childIndex(inner, key)];
+	}
+	return (Leaf) node;
+    }
+
+    /**
+     * Like <tt>findLeaf</tt>, but records the path taken, for use by the
+     * split and merge operations that follow.
+     */
+    private Leaf descend(final Object key) {
+	if (this.path == null || this.path.length < this.height) {
+	    this.path = new Inner[this.height + 4];
+	    this.pathIndex = new int[this.height + 4];
+	}
+	Node node = this.root;
+	for (int h = 0; h < this.height; h++) {
+	    final Inner inner = (Inner) node;
+	    final int i = this.childIndex(inner, key);
+	    this.path[h] = inner;
+	    this.pathIndex[h] = i;
+	    node = inner.children[i];
+	}
+	return (Leaf) node;
+    }
+
+    /**
+     * Splits an overfull leaf in two, and adds the new right half to the
+     * parent recorded by the last <tt>descend</tt>.
+     */
+    private void splitLeaf(final Leaf leaf) {
+	final Leaf right = new Leaf();
+	final int leftSize = leaf.size / 2;
+	right.size = leaf.size - leftSize;
+	System.arraycopy(leaf.keys, leftSize, right.keys, 0, right.size);
+	System.arraycopy(leaf.values, leftSize, right.values, 0, right.size);
+	Arrays.fill(leaf.keys, leftSize, leaf.size, null);
+	Arrays.fill(leaf.values, leftSize, leaf.size, null);
+	leaf.size = leftSize;
+
+	right.prev = leaf;
+	right.next = leaf.next;
+	if (leaf.next != null) {
+	    leaf.next.prev = right;
+	} else {
+	    this.tail = right;
+	}
+	leaf.next = right;
+
+	this.insertInParent(leaf, right.keys[0], right, this.height - 1);
+    }
+
+    /**
+     * Inserts a separator and the new right sibling of <tt>left</tt> into
+     * the parent at the given level of the recorded path, splitting the
+     * parent in turn if it overflows.  A level of -1 means <tt>left</tt> is
+     * the root, and the tree grows by one level.
+     */
+    private void insertInParent(final Node left, final Object key, final Node right, final int level) {
+	if (level < 0) {
+	    final Inner newRoot = new Inner();
+	    newRoot.keys[0] = key;
+	    newRoot.children[0] = left;
+	    newRoot.children[1] = right;
+	    newRoot.size = 1;
+	    this.root = newRoot;
+	    this.height++;
+	    return;
+	}
+
+	final Inner parent = this.path[level];
+	final int i = this.pathIndex[level];
+	System.arraycopy(parent.keys, i, parent.keys, i + 1, parent.size - i);
+	System.arraycopy(parent.children, i + 1, parent.children, i + 2, parent.size - i);
+	parent.keys[i] = key;
+	parent.children[i + 1] = right;
+	parent.size++;
+	if (parent.size < NODE_SIZE) {
+	    return;
+	}
+
+	// Overfull: move the keys above the middle one to a new node, and
+	// push the middle one up.
+	final Inner sibling = new Inner();
+	final int mid = parent.size / 2;
+	final Object up = parent.keys[mid];
+	sibling.size = parent.size - mid - 1;
+	System.arraycopy(parent.keys, mid + 1, sibling.keys, 0, sibling.size);
+	System.arraycopy(parent.children, mid + 1, sibling.children, 0, sibling.size + 1);
+	Arrays.fill(parent.keys, mid, parent.size, null);
+	Arrays.fill(parent.children, mid + 1, parent.size + 1, null);
+	parent.size = mid;
+	this.insertInParent(parent, up, sibling, level - 1);
+    }
+
+    /**
+     * Removes the mapping at the given index of a leaf reached by the last
+     * <tt>descend</tt>, then restores the minimum fill of the leaf and its
+     * ancestors.
+     */
+    private void deleteAt(final Leaf leaf, final int i) {
+	this.modCount++;
+	this.size--;
+	final int moved = leaf.size - i - 1;
+	System.arraycopy(leaf.keys, i + 1, leaf.keys, i, moved);
+	System.arraycopy(leaf.values, i + 1, leaf.values, i, moved);
+	leaf.size--;
+	leaf.keys[leaf.size] = null;
+	leaf.values[leaf.size] = null;
+	if (leaf.size < MIN_SIZE && this.height > 0) {
+	    this.rebalanceLeaf(leaf);
+	}
+    }
+
+    /**
+     * Refills an underfull leaf from a sibling, or merges it with one.
+     */
+    private void rebalanceLeaf(final Leaf leaf) {
+	final int level = this.height - 1;
+	final Inner parent = this.path[level];
+	final int i = this.pathIndex[level];
+
+	if (i < parent.size) {
+	    final Leaf right = (Leaf) parent.children[i + 1];
+	    if (right.size > MIN_SIZE) {
+		// Borrow the first mapping of the right sibling
+		leaf.keys[leaf.size] = right.keys[0];
+		leaf.values[leaf.size] = right.values[0];
+		leaf.size++;
+		right.size--;
+		System.arraycopy(right.keys, 1, right.keys, 0, right.size);
+		System.arraycopy(right.values, 1, right.values, 0, right.size);
+		right.keys[right.size] = null;
+		right.values[right.size] = null;
+		parent.keys[i] = right.keys[0];
+	    } else {
+		this.mergeLeaves(leaf, right);
+		this.removeFromParent(level, i);
+	    }
+	} else {
+	    final Leaf left = (Leaf) parent.children[i - 1];
+	    if (left.size > MIN_SIZE) {
+		// Borrow the last mapping of the left sibling
+		System.arraycopy(leaf.keys, 0, leaf.keys, 1, leaf.size);
+		System.arraycopy(leaf.values, 0, leaf.values, 1, leaf.size);
+		left.size--;
+		leaf.keys[0] = left.keys[left.size];
+		leaf.values[0] = left.values[left.size];
+		leaf.size++;
+		left.keys[left.size] = null;
+		left.values[left.size] = null;
+		parent.keys[i - 1] = leaf.keys[0];
+	    } else {
+		this.mergeLeaves(left, leaf);
+		this.removeFromParent(level, i - 1);
+	    }
+	}
+    }
+
+    /**
+     * Appends the mappings of a leaf to its left neighbour and unlinks it.
+     */
+    private void mergeLeaves(final Leaf left, final Leaf right) {
+	System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+	System.arraycopy(right.values, 0, left.values, left.size, right.size);
+	left.size += right.size;
+	left.next = right.next;
+	if (right.next != null) {
+	    right.next.prev = left;
+	} else {
+	    this.tail = left;
+	}
+    }
+
+    /**
+     * Removes separator <tt>i</tt> and child <tt>i+1</tt> from the node at
+     * the given level of the recorded path, after that child was merged into
+     * child <tt>i</tt>.
+     */
+    private void removeFromParent(final int level, final int i) {
+	final Inner node = this.path[level];
+	final int moved = node.size - i - 1;
+	System.arraycopy(node.keys, i + 1, node.keys, i, moved);
+	System.arraycopy(node.children, i + 2, node.children, i + 1, moved);
+	node.size--;
+	node.keys[node.size] = null;
+	node.children[node.size + 1] = null;
+
+	if (level == 0) {
+	    if (node.size == 0) {
+		// The root has a single child left: shrink the tree
+		this.root = node.children[0];
+		this.height--;
+	    }
+	} else if (node.size < MIN_SIZE - 1) {
+	    this.rebalanceInner(node, level);
+	}
+    }
+
+    /**
+     * Refills an underfull interior node from a sibling, rotating through
+     * the separator in the parent, or merges it with one.
+     */
+    private void rebalanceInner(final Inner node, final int level) {
+	final Inner parent = this.path[level - 1];
+	final int i = this.pathIndex[level - 1];
+
+	if (i < parent.size) {
+	    final Inner right = (Inner) parent.children[i + 1];
+	    if (right.size > MIN_SIZE - 1) {
+		node.keys[node.size] = parent.keys[i];
+		node.children[node.size + 1] = right.children[0];
+		node.size++;
+		parent.keys[i] = right.keys[0];
+		right.size--;
+		System.arraycopy(right.keys, 1, right.keys, 0, right.size);
+		System.arraycopy(right.children, 1, right.children, 0, right.size + 1);
+		right.keys[right.size] = null;
+		right.children[right.size + 1] = null;
+	    } else {
+		this.mergeInner(node, parent.keys[i], right);
+		this.removeFromParent(level - 1, i);
+	    }
+	} else {
+	    final Inner left = (Inner) parent.children[i - 1];
+	    if (left.size > MIN_SIZE - 1) {
+		System.arraycopy(node.keys, 0, node.keys, 1, node.size);
+		System.arraycopy(node.children, 0, node.children, 1, node.size + 1);
+		node.keys[0] = parent.keys[i - 1];
+		node.children[0] = left.children[left.size];
+		node.size++;
+		parent.keys[i - 1] = left.keys[left.size - 1];
+		left.keys[left.size - 1] = null;
+		left.children[left.size] = null;
+		left.size--;
+	    } else {
+		this.mergeInner(left, parent.keys[i - 1], node);
+		this.removeFromParent(level - 1, i - 1);
+	    }
+	}
+    }
+
+    /**
+     * Appends a separator and the contents of an interior node to its left
+     * neighbour.
+     */
+    private static void mergeInner(final Inner left, final Object key, final Inner right) {
+	left.keys[left.size] = key;
+	System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+	System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+	left.size += right.size + 1;
+    }
+
+    /**
+     * Linear time tree building algorithm from sorted data, reading
+     * <tt>size</tt> mappings either as <tt>Map.Entry</tt> objects from the
+     * iterator, or as alternating keys and values from the stream.  The
+     * leaves are filled evenly from left to right, then each level of
+     * interior nodes is built over the one below, so that every node but the
+     * root is at least half full.
+     */
+    private void buildFromSorted(final int size, final Iterator it,
+				 final java.io.ObjectInputStream str)
+	throws IOException, ClassNotFoundException {
+	this.init();
+	if (size == 0) {
+	    return;
+	}
+
+	int count = (size + NODE_SIZE - 1) / NODE_SIZE;
+	final Node[] nodes = new Node[count];
+	final Object[] lows = new Object[count];
+	Leaf prev = null;
+	for (int l = 0; l < count; l++) {
+	    final Leaf leaf = new Leaf();
+	    final int n = size / count + (l < size % count ? 1 : 0);
+	    for (int i = 0; i < n; i++) {
+		if (it != null) {
+		    final Map.Entry entry = (Map.Entry) it.next();
+		    leaf.keys[i] = entry.getKey();
+		    leaf.values[i] = entry.getValue();
+		} else {
+		    leaf.keys[i] = str.readObject();
+		    leaf.values[i] = str.readObject();
+		}
+	    }
+	    leaf.size = n;
+	    leaf.prev = prev;
+	    if (prev != null) {
+		prev.next = leaf;
+	    } else {
+		this.head = leaf;
+	    }
+	    prev = leaf;
+	    nodes[l] = leaf;
+	    lows[l] = leaf.keys[0];
+	}
+	this.tail = prev;
+	this.size = size;
+
+	// Each pass replaces the first entries of nodes and lows with the
+	// level above; they are never read again once overwritten.
+	while (count > 1) {
+	    final int parents = (count + NODE_SIZE - 1) / NODE_SIZE;
+	    int c = 0;
+	    for (int p = 0; p < parents; p++) {
+		final Inner inner = new Inner();
+		final int n = count / parents + (p < count % parents ? 1 : 0);
+		for (int j = 0; j < n; j++) {
+		    inner.children[j] = nodes[c + j];
+		    if (j > 0) {
+			inner.keys[j - 1] = lows[c + j];
+		    }
+		}
+		inner.size = n - 1;
+		lows[p] = lows[c];
+		nodes[p] = inner;
+		c += n;
+	    }
+	    count = parents;
+	    this.height++;
+	}
+	this.root = nodes[0];
+    }
+
+    /**
+     * Save the state of the <tt>BPlusTreeMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *             mappings) is emitted (int), followed by the key (Object)
+     *             and value (Object) for each key-value mapping, in key
+     *             order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (Leaf leaf = this.head; leaf != null; leaf = leaf.next) {
+	    for (int i = 0; i < leaf.size; i++) {
+		s.writeObject(leaf.keys[i]);
+		s.writeObject(leaf.values[i]);
+	    }
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>BPlusTreeMap</tt> instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	this.buildFromSorted(s.readInt(), null, s);
+    }
+}
@@ -0,0 +1,25 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A function of two arguments.  Functions are passed to the
+ * <tt>compute</tt>, <tt>computeIfPresent</tt> and <tt>merge</tt> methods of
+ * <tt>HashMap</tt> and <tt>TreeMap</tt> to update a mapping in place.
+ *
+ * @see Function
+ * @see HashMap#compute(Object, BiFunction)
+ * @see TreeMap#merge(Object, Object, BiFunction)
+ */
+public interface BiFunction {
+    /**
+     * Applies this function to the given arguments.
+     *
+     * @param o1 the first function argument.
+     * @param o2 the second function argument.
+     * @return the function result.
+     */
+    Object apply(Object o1, Object o2);
+}
@@ -0,0 +1,865 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Sorted map from primitive <tt>long</tt> keys to object values, such as an
+ * index of events by timestamp.  Unlike a <tt>TreeMap</tt> with
+ * <tt>Long</tt> keys, this map stores its keys unboxed, in a list of sorted
+ * chunks of parallel <tt>long</tt> key and object value arrays, and
+ * compares keys with primitive comparisons.  A lookup is a binary search
+ * over the first keys of the chunks, followed by a binary search within one
+ * chunk; <tt>get</tt>, <tt>containsKey</tt>, <tt>put</tt> and
+ * <tt>remove</tt> run in log(n) time plus the cost of shifting the tail of
+ * one chunk, and of the chunk list when a chunk is split or dropped.<p>
+ *
+ * Keys inserted in ascending order, as timestamps typically are, fill each
+ * chunk completely before a new one is started, so such a map uses about
+ * twelve bytes per mapping (on a 32-bit VM) besides the values themselves.
+ * Chunks split by insertions in the middle are half full; chunks thinned
+ * out by removals are merged with a neighbour.<p>
+ *
+ * Because <tt>long</tt> keys cannot be returned through the <tt>Map</tt>
+ * interface without boxing, this class does not implement it.  Ordered
+ * navigation and range scans go through a <tt>Cursor</tt>,
+ * which is positioned by a floor, ceiling, lower or higher search and
+ * stepped in either direction.  A cursor may be repositioned any number of
+ * times, so a scan allocates no objects at all: <pre>
+ *     ChunkedLongMap.Cursor c = map.cursor();
+ *     for (boolean more = c.seekCeiling(from); more && c.key() < to; more = c.next()) {
+ *         process(c.key(), c.value());
+ *     }
+ * </pre><p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a map concurrently, and at least one of the threads
+ * modifies the map structurally, it <i>must</i> be synchronized
+ * externally.<p>
+ *
+ * Cursors are <i>fail-fast</i>: if the map is structurally modified after a
+ * cursor was positioned, in any way except through the cursor's own
+ * <tt>remove</tt> method, the cursor throws a
+ * <tt>ConcurrentModificationException</tt> until it is positioned again.
+ *
+ * @see TreeMap
+ * @see BPlusTreeMap
+ */
+public class ChunkedLongMap implements Cloneable, java.io.Serializable {
+    private static final long serialVersionUID = 2871346908357209532L;
+
+    /**
+     * The default number of mappings per chunk.
+     */
+    static final int DEFAULT_CHUNK_SIZE = 128;
+
+    /**
+     * The maximum number of mappings per chunk.
+     *
+     * @serial
+     */
+    private final int chunkSize;
+
+    /**
+     * The keys and values of each chunk, the number of mappings in each
+     * chunk, and the first key of each chunk.  Only the first
+     * <tt>chunkCount</tt> elements are in use.
+     */
+    private transient long[][] keys;
+    private transient Object[][] values;
+    private transient int[] counts;
+    private transient long[] lows;
+
+    private transient int chunkCount = 0;
+
+    /**
+     * The number of mappings in the map.
+     */
+    private transient int size = 0;
+
+    /**
+     * The number of structural modifications to the map.
+     */
+    private transient int modCount = 0;
+
+    /**
+     * Constructs a new, empty map with the default chunk size (128).
+     */
+    public ChunkedLongMap() {
+	this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a new, empty map with the specified chunk size.  Larger
+     * chunks save memory but make insertions and removals in the middle of
+     * the map slower.
+     *
+     * @param chunkSize the maximum number of mappings per chunk.
+     * @throws IllegalArgumentException if <tt>chunkSize</tt> is less than 4.
+     */
+    public ChunkedLongMap(final int chunkSize) {
+	if (chunkSize < 4) {
+	    throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+	}
+	this.chunkSize = chunkSize;
+	this.init();
+    }
+
+    private void init() {
+	this.keys = new long[4][];
+	this.values = new Object[4][];
+	this.counts = new int[4];
+	this.lows = new long[4];
+	this.chunkCount = 0;
+	this.size = 0;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     */
+    public boolean containsKey(final long key) {
+	if (this.chunkCount == 0) {
+	    return false;
+	}
+	final int c = this.chunkFor(key);
+	return search(this.keys[c], this.counts[c], key) >= 0;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for the key.  A return
+     * value of <tt>null</tt> does not <i>necessarily</i> indicate that the
+     * map contains no mapping for the key; it's also possible that the map
+     * explicitly maps the key to <tt>null</tt>.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key, or
+     *         <tt>null</tt> if the map contains no mapping for the key.
+     */
+    public Object get(final long key) {
+	if (this.chunkCount == 0) {
+	    return null;
+	}
+	final int c = this.chunkFor(key);
+	final int i = search(this.keys[c], this.counts[c], key);
+	return i >= 0 ? this.values[c][i] : null;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     */
+    public Object put(final long key, final Object value) {
+	if (this.chunkCount == 0) {
+	    this.insertChunk(0);
+	}
+	int c = this.chunkFor(key);
+	int i = search(this.keys[c], this.counts[c], key);
+	if (i >= 0) {
+	    final Object oldValue = this.values[c][i];
+	    this.values[c][i] = value;
+	    return oldValue;
+	}
+	i = -(i + 1);
+
+	if (i == this.chunkSize && c + 1 < this.chunkCount &&
+	    this.counts[c + 1] < this.chunkSize) {
+	    // Prepend to the next chunk rather than split a full one
+	    c++;
+	    i = 0;
+	} else if (this.counts[c] == this.chunkSize) {
+	    if (i == this.chunkSize && c == this.chunkCount - 1) {
+		// Appending: leave the last chunk full
+		this.insertChunk(++c);
+		i = 0;
+	    } else {
+		final int half = this.chunkSize / 2;
+		this.split(c, half);
+		if (i > half) {
+		    c++;
+		    i -= half;
+		}
+	    }
+	}
+
+	final long[] k = this.keys[c];
+	final Object[] v = this.values[c];
+	final int n = this.counts[c];
+	System.arraycopy(k, i, k, i + 1, n - i);
+	System.arraycopy(v, i, v, i + 1, n - i);
+	k[i] = key;
+	v[i] = value;
+	this.counts[c] = n + 1;
+	if (i == 0) {
+	    this.lows[c] = key;
+	}
+	this.size++;
+	this.modCount++;
+	return null;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     */
+    public Object remove(final long key) {
+	if (this.chunkCount == 0) {
+	    return null;
+	}
+	final int c = this.chunkFor(key);
+	final int i = search(this.keys[c], this.counts[c], key);
+	if (i < 0) {
+	    return null;
+	}
+	final Object oldValue = this.values[c][i];
+	this.removeAt(c, i, null);
+	return oldValue;
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	this.modCount++;
+	this.init();
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this map.
+     *
+     * @return the first (lowest) key currently in this map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public long firstKey() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return this.lows[0];
+    }
+
+    /**
+     * Returns the last (highest) key currently in this map.
+     *
+     * @return the last (highest) key currently in this map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public long lastKey() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	final int c = this.chunkCount - 1;
+	return this.keys[c][this.counts[c] - 1];
+    }
+
+    /**
+     * Returns a new cursor over this map, positioned before the first
+     * mapping.
+     *
+     * @return a new cursor over this map.
+     */
+    public Cursor cursor() {
+	return new Cursor();
+    }
+
+
+    // Chunk list maintenance
+
+    /**
+     * Returns the index of the last chunk whose first key is less than or
+     * equal to the specified key, or 0 if there is none.  The map must
+     * contain at least one chunk.
+     */
+    private int chunkFor(final long key) {
+	final long[] lows = this.lows;
+	int lo = 0;
+	int hi = this.chunkCount - 1;
+	while (lo < hi) {
+	    final int mid = (lo + hi + 1) >>> 1;
+	    if (lows[mid] <= key) {
+		lo = mid;
+	    } else {
+		hi = mid - 1;
+	    }
+	}
+	return lo;
+    }
+
+    /**
+     * Searches the first n elements of the array for the specified key.
+     *
+     * @return index of the key, if it is found; otherwise,
+     *         <tt>(-(<i>insertion point</i>) - 1)</tt>.
+     */
+    private static int search(final long[] a, final int n, final long key) {
+	int lo = 0;
+	int hi = n - 1;
+	while (lo <= hi) {
+	    final int mid = (lo + hi) >>> 1;
+	    final long midVal = a[mid];
+	    if (midVal < key) {
+		lo = mid + 1;
+	    } else if (midVal > key) {
+		hi = mid - 1;
+	    } else {
+		return mid;
+	    }
+	}
+	return -(lo + 1);
+    }
+
+    /**
+     * Inserts a new, empty chunk at the specified position.
+     */
+    private void insertChunk(final int c) {
+	if (this.chunkCount == this.counts.length) {
+	    final int capacity = this.chunkCount * 2;
+	    final long[][] newKeys = new long[capacity][];
+	    final Object[][] newValues = new Object[capacity][];
+	    final int[] newCounts = new int[capacity];
+	    final long[] newLows = new long[capacity];
+	    System.arraycopy(this.keys, 0, newKeys, 0, this.chunkCount);
+	    System.arraycopy(this.values, 0, newValues, 0, this.chunkCount);
+	    System.arraycopy(this.counts, 0, newCounts, 0, this.chunkCount);
+	    System.arraycopy(this.lows, 0, newLows, 0, this.chunkCount);
+	    this.keys = newKeys;
+	    this.values = newValues;
+	    this.counts = newCounts;
+	    this.lows = newLows;
+	}
+	final int moved = this.chunkCount - c;
+	System.arraycopy(this.keys, c, this.keys, c + 1, moved);
+	System.arraycopy(this.values, c, this.values, c + 1, moved);
+	System.arraycopy(this.counts, c, this.counts, c + 1, moved);
+	System.arraycopy(this.lows, c, this.lows, c + 1, moved);
+	this.keys[c] = new long[this.chunkSize];
+	this.values[c] = new Object[this.chunkSize];
+	this.counts[c] = 0;
+	this.chunkCount++;
+    }
+
+    /**
+     * Removes the chunk at the specified position.
+     */
+    private void deleteChunk(final int c) {
+	final int moved = this.chunkCount - c - 1;
+	System.arraycopy(this.keys, c + 1, this.keys, c, moved);
+	System.arraycopy(this.values, c + 1, this.values, c, moved);
+	System.arraycopy(this.counts, c + 1, this.counts, c, moved);
+	System.arraycopy(this.lows, c + 1, this.lows, c, moved);
+	this.chunkCount--;
+	this.keys[this.chunkCount] = null;
+	this.values[this.chunkCount] = null;
+    }
+
+    /**
+     * Moves the mappings of chunk c from index <tt>at</tt> on into a new
+     * chunk following it.
+     */
+    private void split(final int c, final int at) {
+	this.insertChunk(c + 1);
+	final int n = this.counts[c] - at;
+	System.arraycopy(this.keys[c], at, this.keys[c + 1], 0, n);
+	System.arraycopy(this.values[c], at, this.values[c + 1], 0, n);
+	nullOut(this.values[c], at, this.counts[c]);
+	this.counts[c] = at;
+	this.counts[c + 1] = n;
+	this.lows[c + 1] = this.keys[c + 1][0];
+    }
+
+    /**
+     * Appends the mappings of chunk c + 1 to chunk c, and removes chunk
+     * c + 1.
+     */
+    private void merge(final int c) {
+	final int n = this.counts[c];
+	final int m = this.counts[c + 1];
+	System.arraycopy(this.keys[c + 1], 0, this.keys[c], n, m);
+	System.arraycopy(this.values[c + 1], 0, this.values[c], n, m);
+	this.counts[c] = n + m;
+	this.deleteChunk(c + 1);
+    }
+
+    private static void nullOut(final Object[] a, final int from, final int to) {
+	for (int i = from; i < to; i++) {
+	    a[i] = null;
+	}
+    }
+
+    /**
+     * Removes the mapping at index i of chunk c, merging the chunk with a
+     * neighbour if it becomes less than a quarter full.  If a cursor is
+     * given, it is moved onto the mapping that followed the removed one.
+     */
+    private void removeAt(int c, int i, final Cursor cursor) {
+	final long[] k = this.keys[c];
+	final Object[] v = this.values[c];
+	final int n = this.counts[c] - 1;
+	System.arraycopy(k, i + 1, k, i, n - i);
+	System.arraycopy(v, i + 1, v, i, n - i);
+	v[n] = null;
+	this.counts[c] = n;
+	this.size--;
+	this.modCount++;
+
+	if (n == 0) {
+	    this.deleteChunk(c);
+	    i = 0;
+	} else {
+	    if (i == 0) {
+		this.lows[c] = k[0];
+	    }
+	    if (n < this.chunkSize / 4) {
+		if (c + 1 < this.chunkCount && n + this.counts[c + 1] <= this.chunkSize) {
+		    this.merge(c);
+		} else if (c > 0 && n + this.counts[c - 1] <= this.chunkSize) {
+		    i += this.counts[c - 1];
+		    this.merge(--c);
+		}
+	    }
+	}
+	if (cursor != null) {
+	    cursor.moveTo(c, i);
+	}
+    }
+
+
+    // Comparison and hashing
+
+    /**
+     * Compares the specified object with this map for equality.  Returns
+     * <tt>true</tt> if the given object is also a <tt>ChunkedLongMap</tt>
+     * and the two maps contain the same keys, mapped to equal values.
+     *
+     * @param o object to be compared for equality with this map.
+     * @return <tt>true</tt> if the specified object is equal to this map.
+     */
+    public boolean equals(final Object o) {
+	if (o == this) {
+	    return true;
+	}
+	if (!(o instanceof ChunkedLongMap)) {
+	    return false;
+	}
+	final ChunkedLongMap t = (ChunkedLongMap) o;
+	if (t.size != this.size) {
+	    return false;
+	}
+	final Cursor i = this.cursor();
+	final Cursor j = t.cursor();
+	for (boolean more = i.first() && j.first(); more; more = i.next() && j.next()) {
+	    if (i.key() != j.key()) {
+		return false;
+	    }
+	    final Object v = i.value();
+	    if (v == null ? j.value() != null : !v.equals(j.value())) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Returns the hash code value for this map, the sum of the hash codes
+     * of its mappings.  The hash code of a mapping is the one a
+     * <tt>Map.Entry</tt> with a <tt>Long</tt> key would have.
+     *
+     * @return the hash code value for this map.
+     */
+    public int hashCode() {
+	int h = 0;
+	for (int c = 0; c < this.chunkCount; c++) {
+	    final long[] k = this.keys[c];
+	    final Object[] v = this.values[c];
+	    for (int i = 0; i < this.counts[c]; i++) {
+		h += (int) (k[i] ^ (k[i] >>> 32)) ^ (v[i] == null ? 0 : v[i].hashCode());
+	    }
+	}
+	return h;
+    }
+
+    /**
+     * Returns a string representation of this map, the mappings in key
+     * order, enclosed in braces.
+     *
+     * @return a string representation of this map.
+     */
+    public String toString() {
+	final StringBuffer buf = new StringBuffer();
+	buf.append("{");
+	for (int c = 0; c < this.chunkCount; c++) {
+	    for (int i = 0; i < this.counts[c]; i++) {
+		if (buf.length() > 1) {
+		    buf.append(", ");
+		}
+		buf.append(this.keys[c][i]).append('=').append(this.values[c][i]);
+	    }
+	}
+	buf.append("}");
+	return buf.toString();
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>ChunkedLongMap</tt> instance.  (The
+     * values themselves are not cloned.)
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	ChunkedLongMap result = null;
+	try {
+	    result = (ChunkedLongMap) super.clone();
+	} catch (final CloneNotSupportedException e) {
+	    throw new InternalError();
+	}
+	result.keys = new long[this.keys.length][];
+	result.values = new Object[this.values.length][];
+	result.counts = (int[]) this.counts.clone();
+	result.lows = (long[]) this.lows.clone();
+	for (int c = 0; c < this.chunkCount; c++) {
+	    result.keys[c] = (long[]) this.keys[c].clone();
+	    result.values[c] = (Object[]) this.values[c].clone();
+	}
+	result.modCount = 0;
+	return result;
+    }
+
+
+    /**
+     * A position in a <tt>ChunkedLongMap</tt>, either on a mapping or off
+     * either end of the map.  A cursor is positioned by one of its
+     * <tt>seek</tt> methods or by <tt>first</tt> or <tt>last</tt>, all of
+     * which return whether it ended up on a mapping, and is then moved
+     * mapping by mapping with <tt>next</tt> and <tt>previous</tt>.
+     * Cursors allocate nothing, so one cursor can serve any number of
+     * lookups and scans.
+     */
+    public final class Cursor {
+	/**
+	 * The chunk and the index in it of the current mapping.  A chunk of
+	 * -1 is before the first mapping, and a chunk of
+	 * <tt>chunkCount</tt> is after the last one.
+	 */
+	private int chunk = -1;
+	private int index = 0;
+
+	private int expectedModCount = ChunkedLongMap.this.modCount;
+
+	Cursor() {
+	}
+
+	/**
+	 * Moves to index i of chunk c, or to the first mapping of the next
+	 * chunk if i is past the end of chunk c.
+	 */
+	void moveTo(final int c, final int i) {
+	    if (c >= 0 && c < ChunkedLongMap.this.chunkCount && i == ChunkedLongMap.this.counts[c]) {
+		this.chunk = c + 1;
+		this.index = 0;
+	    } else {
+		this.chunk = c;
+		this.index = i;
+	    }
+	    this.expectedModCount = ChunkedLongMap.this.modCount;
+	}
+
+	/**
+	 * Moves to the last mapping before index i of chunk c.
+	 */
+	private void moveBefore(final int c, final int i) {
+	    if (i > 0) {
+		this.moveTo(c, i - 1);
+	    } else if (c > 0) {
+		this.moveTo(c - 1, ChunkedLongMap.this.counts[c - 1] - 1);
+	    } else {
+		this.moveTo(-1, 0);
+	    }
+	}
+
+	private void check() {
+	    if (ChunkedLongMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the cursor is on a mapping.
+	 *
+	 * @return <tt>true</tt> if the cursor is on a mapping.
+	 */
+	public boolean isValid() {
+	    return this.chunk >= 0 && this.chunk < ChunkedLongMap.this.chunkCount;
+	}
+
+	/**
+	 * Moves to the first (lowest) mapping.
+	 *
+	 * @return <tt>true</tt> if the map is not empty.
+	 */
+	public boolean first() {
+	    this.moveTo(ChunkedLongMap.this.chunkCount == 0 ? -1 : 0, 0);
+	    return this.isValid();
+	}
+
+	/**
+	 * Moves to the last (highest) mapping.
+	 *
+	 * @return <tt>true</tt> if the map is not empty.
+	 */
+	public boolean last() {
+	    this.moveBefore(ChunkedLongMap.this.chunkCount, 0);
+	    return this.isValid();
+	}
+
+	/**
+	 * Moves to the mapping with the least key greater than or equal to
+	 * the specified key, if there is one, and otherwise past the end of
+	 * the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 */
+	public boolean seekCeiling(final long key) {
+	    return this.seek(key, true, false);
+	}
+
+	/**
+	 * Moves to the mapping with the least key strictly greater than the
+	 * specified key, if there is one, and otherwise past the end of
+	 * the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 */
+	public boolean seekHigher(final long key) {
+	    return this.seek(key, true, true);
+	}
+
+	/**
+	 * Moves to the mapping with the greatest key less than or equal to
+	 * the specified key, if there is one, and otherwise before the
+	 * start of the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 */
+	public boolean seekFloor(final long key) {
+	    return this.seek(key, false, false);
+	}
+
+	/**
+	 * Moves to the mapping with the greatest key strictly less than the
+	 * specified key, if there is one, and otherwise before the start
+	 * of the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 */
+	public boolean seekLower(final long key) {
+	    return this.seek(key, false, true);
+	}
+
+	private boolean seek(final long key, final boolean up, final boolean strict) {
+	    final ChunkedLongMap map = ChunkedLongMap.this;
+	    if (map.chunkCount == 0) {
+		this.moveTo(up ? 0 : -1, 0);
+		return false;
+	    }
+	    final int c = map.chunkFor(key);
+	    final int i = search(map.keys[c], map.counts[c], key);
+	    if (i >= 0) {
+		if (!strict) {
+		    this.moveTo(c, i);
+		} else if (up) {
+		    this.moveTo(c, i + 1);
+		} else {
+		    this.moveBefore(c, i);
+		}
+	    } else if (up) {
+		this.moveTo(c, -(i + 1));
+	    } else {
+		this.moveBefore(c, -(i + 1));
+	    }
+	    return this.isValid();
+	}
+
+	/**
+	 * Moves to the next mapping in ascending key order.  From before
+	 * the start of the map, moves to the first mapping.
+	 *
+	 * @return <tt>true</tt> if there is a next mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public boolean next() {
+	    this.check();
+	    if (this.chunk < 0) {
+		return this.first();
+	    }
+	    if (this.chunk < ChunkedLongMap.this.chunkCount) {
+		this.moveTo(this.chunk, this.index + 1);
+	    }
+	    return this.isValid();
+	}
+
+	/**
+	 * Moves to the previous mapping in ascending key order.  From past
+	 * the end of the map, moves to the last mapping.
+	 *
+	 * @return <tt>true</tt> if there is a previous mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public boolean previous() {
+	    this.check();
+	    if (this.chunk >= 0) {
+		this.moveBefore(this.chunk, this.index);
+	    }
+	    return this.isValid();
+	}
+
+	/**
+	 * Returns the key of the current mapping.
+	 *
+	 * @return the key of the current mapping.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public long key() {
+	    this.check();
+	    if (!this.isValid()) {
+		throw new NoSuchElementException();
+	    }
+	    return ChunkedLongMap.this.keys[this.chunk][this.index];
+	}
+
+	/**
+	 * Returns the value of the current mapping.
+	 *
+	 * @return the value of the current mapping.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public Object value() {
+	    this.check();
+	    if (!this.isValid()) {
+		throw new NoSuchElementException();
+	    }
+	    return ChunkedLongMap.this.values[this.chunk][this.index];
+	}
+
+	/**
+	 * Replaces the value of the current mapping.  This is not a
+	 * structural modification, so other cursors remain usable.
+	 *
+	 * @param value new value to be stored in the current mapping.
+	 * @return the old value of the current mapping.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public Object setValue(final Object value) {
+	    this.check();
+	    if (!this.isValid()) {
+		throw new NoSuchElementException();
+	    }
+	    final Object[] v = ChunkedLongMap.this.values[this.chunk];
+	    final Object oldValue = v[this.index];
+	    v[this.index] = value;
+	    return oldValue;
+	}
+
+	/**
+	 * Removes the current mapping from the map, and moves to the
+	 * mapping that followed it.
+	 *
+	 * @return <tt>true</tt> if there is a mapping following the removed
+	 *         one.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public boolean remove() {
+	    this.check();
+	    if (!this.isValid()) {
+		throw new NoSuchElementException();
+	    }
+	    ChunkedLongMap.this.removeAt(this.chunk, this.index, this);
+	    return this.isValid();
+	}
+    }
+
+
+    /**
+     * Save the state of the <tt>ChunkedLongMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *             mappings) is emitted (int), followed by the key (long)
+     *             and value (Object) for each key-value mapping, in key
+     *             order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (int c = 0; c < this.chunkCount; c++) {
+	    for (int i = 0; i < this.counts[c]; i++) {
+		s.writeLong(this.keys[c][i]);
+		s.writeObject(this.values[c][i]);
+	    }
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>ChunkedLongMap</tt> instance from a stream (i.e.,
+     * deserialize it).  The mappings arrive in ascending key order, so
+     * every chunk but the last is filled completely.
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	this.init();
+	for (int n = s.readInt(); n > 0; n--) {
+	    final long key = s.readLong();
+	    this.put(key, s.readObject());
+	}
+    }
+}
@@ -0,0 +1,1319 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+import com.example.backport.java.lang.Comparable;
+
+/**
+ * Red-Black tree based implementation of the <tt>SortedMap</tt> interface
+ * that stores its nodes in parallel arrays rather than as objects.  The map
+ * is sorted according to the natural order of its keys (see
+ * <tt>Comparable</tt>), or by the comparator provided at creation time,
+ * depending on which constructor is used.<p>
+ *
+ * Each node occupies one slot, numbered from zero, in a key array, a value
+ * array and three <tt>int</tt> arrays holding the slots of its left child,
+ * right child and parent; its color is one bit of a further <tt>int</tt>
+ * array.  A mapping therefore costs two references, three <tt>int</tt>s
+ * and a bit, less than half of what a <tt>TreeMap</tt> entry object costs
+ * once its header, links and fields are counted, and the garbage collector
+ * traces six arrays instead of one object per mapping.  The slots of removed
+ * mappings are kept on a free list and reused.  The arrays grow as needed,
+ * like the array of an <tt>ArrayList</tt>; <tt>trimToSize</tt> shrinks them
+ * to the size of the map and lays the nodes out in key order.<p>
+ *
+ * This implementation provides guaranteed log(n) time cost for the
+ * <tt>containsKey</tt>, <tt>get</tt>, <tt>put</tt> and <tt>remove</tt>
+ * operations.  Unlike <tt>TreeMap</tt>, it does not record the size of
+ * subtrees, so the <tt>size</tt> of a subMap, headMap or tailMap view takes
+ * time proportional to the number of mappings in it.  The
+ * <tt>Map.Entry</tt> objects returned by the entry set's iterator are
+ * allocated as they are returned, and refer to a slot rather than to a
+ * mapping: they are valid only until the map is structurally modified.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a map concurrently, and at least one of the threads
+ * modifies the map structurally, it <i>must</i> be synchronized
+ * externally.<p>
+ *
+ * The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time
+ * after the iterator is created, in any way except through the iterator's
+ * own <tt>remove</tt> method, the iterator throws a
+ * <tt>ConcurrentModificationException</tt>.
+ *
+ * @see Map
+ * @see SortedMap
+ * @see TreeMap
+ */
+public class CompactTreeMap extends AbstractMap
+			    implements SortedMap, Cloneable, java.io.Serializable
+{
+    private static final long serialVersionUID = 8013960318470529237L;
+
+    /**
+     * The slot standing for no node, as the child of a leaf, the parent of
+     * the root, or the root of an empty tree.  It counts as black.
+     */
+    private static final int NIL = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The comparator used to maintain order in this map, or <tt>null</tt>
+     * if this map uses its keys' natural ordering.
+     *
+     * @serial
+     */
+    private final Comparator comparator;
+
+    /**
+     * The key, value, left child, right child and parent of the node in
+     * each slot.
+     */
+    private transient Object[] keys;
+    private transient Object[] values;
+    private transient int[] left;
+    private transient int[] right;
+    private transient int[] parent;
+
+    /**
+     * One bit per slot, which is set if the node in the slot is red.
+     */
+    private transient int[] red;
+
+    private transient int root = NIL;
+
+    /**
+     * The number of entries in the tree.
+     */
+    private transient int size = 0;
+
+    /**
+     * The number of slots in use or on the free list.  The slots from
+     * <tt>used</tt> on have never been used.
+     */
+    private transient int used = 0;
+
+    /**
+     * The first slot of the free list, which is linked through
+     * <tt>left</tt>, or <tt>NIL</tt> if it is empty.
+     */
+    private transient int free = NIL;
+
+    /**
+     * The number of structural modifications to the tree.
+     */
+    private transient int modCount = 0;
+
+    /**
+     * Constructs a new, empty map, sorted according to the keys' natural
+     * order.
+     */
+    public CompactTreeMap() {
+	this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty map with room for the specified number of
+     * mappings, sorted according to the keys' natural order.
+     *
+     * @param initialCapacity the initial capacity of the map.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public CompactTreeMap(final int initialCapacity) {
+	if (initialCapacity < 0) {
+	    throw new IllegalArgumentException("Illegal Capacity: " + initialCapacity);
+	}
+	this.comparator = null;
+	this.allocate(initialCapacity);
+    }
+
+    /**
+     * Constructs a new, empty map, sorted according to the given comparator.
+     *
+     * @param c the comparator that will be used to sort this map.  A
+     *        <tt>null</tt> value indicates that the keys' <i>natural
+     *        ordering</i> should be used.
+     */
+    public CompactTreeMap(final Comparator c) {
+	this.comparator = c;
+	this.allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map,
+     * sorted according to the keys' <i>natural order</i>.
+     *
+     * @param m the map whose mappings are to be placed in this map.
+     * @throws ClassCastException the keys in t are not Comparable, or
+     *         are not mutually comparable.
+     */
+    public CompactTreeMap(final Map m) {
+	this(m.size());
+	this.putAll(m);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given
+     * <tt>SortedMap</tt>, sorted according to the same ordering.  This
+     * method runs in linear time.
+     *
+     * @param m the sorted map whose mappings are to be placed in this map,
+     *        and whose comparator is to be used to sort this map.
+     */
+    public CompactTreeMap(final SortedMap m) {
+	this.comparator = m.comparator();
+	final int n = m.size();
+	final Object[] keys = new Object[n];
+	final Object[] values = new Object[n];
+	final Iterator i = m.entrySet().iterator();
+	for (int j = 0; j < n; j++) {
+	    final Map.Entry e = (Map.Entry) i.next();
+	    keys[j] = e.getKey();
+	    values[j] = e.getValue();
+	}
+	this.buildFromSorted(keys, values, n);
+    }
+
+    // Query Operations
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *         currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *         natural ordering, or its comparator does not tolerate
+     *         <tt>null</tt> keys.
+     */
+    public boolean containsKey(final Object key) {
+	return this.getEntry(key) != NIL;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key.  Returns
+     * <tt>null</tt> if the map contains no mapping for this key.  A return
+     * value of <tt>null</tt> does not <i>necessarily</i> indicate that the
+     * map contains no mapping for the key; it's also possible that the map
+     * explicitly maps the key to <tt>null</tt>.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key, or
+     *         <tt>null</tt> if the map contains no mapping for the key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *         currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *         natural ordering, or its comparator does not tolerate
+     *         <tt>null</tt> keys.
+     */
+    public Object get(final Object key) {
+	final int p = this.getEntry(key);
+	return p == NIL ? null : this.values[p];
+    }
+
+    /**
+     * Returns the comparator used to order this map, or <tt>null</tt> if
+     * this map uses its keys' natural order.
+     *
+     * @return the comparator associated with this sorted map, or
+     *         <tt>null</tt> if it uses its keys' natural sort method.
+     */
+    public Comparator comparator() {
+	return this.comparator;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this sorted map.
+     *
+     * @return the first (lowest) key currently in this sorted map.
+     * @throws NoSuchElementException Map is empty.
+     */
+    public Object firstKey() {
+	return this.key(this.firstEntry());
+    }
+
+    /**
+     * Returns the last (highest) key currently in this sorted map.
+     *
+     * @return the last (highest) key currently in this sorted map.
+     * @throws NoSuchElementException Map is empty.
+     */
+    public Object lastKey() {
+	return this.key(this.lastEntry());
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.  A <tt>null</tt> return can
+     *         also indicate that the map previously associated <tt>null</tt>
+     *         with the specified key.
+     * @throws ClassCastException key cannot be compared with the keys
+     *         currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *         natural order, or its comparator does not tolerate
+     *         <tt>null</tt> keys.
+     */
+    public Object put(final Object key, final Object value) {
+	int t = this.root;
+
+	if (t == NIL) {
+	    this.modCount++;
+	    this.size++;
+	    this.root = this.newEntry(key, value, NIL);
+	    return null;
+	}
+
+	while (true) {
+	    final int cmp = this.compare(key, this.keys[t]);
+	    if (cmp == 0) {
+		final Object oldValue = this.values[t];
+		this.values[t] = value;
+		return oldValue;
+	    } else if (cmp < 0) {
+		if (this.left[t] != NIL) {
+		    t = this.left[t];
+		} else {
+		    this.modCount++;
+		    this.size++;
+		    final int e = this.newEntry(key, value, t);
+		    this.left[t] = e;
+		    this.fixAfterInsertion(e);
+		    return null;
+		}
+	    } else { // cmp > 0
+		if (this.right[t] != NIL) {
+		    t = this.right[t];
+		} else {
+		    this.modCount++;
+		    this.size++;
+		    final int e = this.newEntry(key, value, t);
+		    this.right[t] = e;
+		    this.fixAfterInsertion(e);
+		    return null;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key for which mapping should be removed.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.  A <tt>null</tt> return can
+     *         also indicate that the map previously associated <tt>null</tt>
+     *         with the specified key.
+     * @throws ClassCastException key cannot be compared with the keys
+     *         currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *         natural order, or its comparator does not tolerate
+     *         <tt>null</tt> keys.
+     */
+    public Object remove(final Object key) {
+	final int p = this.getEntry(key);
+	if (p == NIL) {
+	    return null;
+	}
+
+	final Object oldValue = this.values[p];
+	this.deleteEntry(p);
+	return oldValue;
+    }
+
+    /**
+     * Removes all mappings from this map.  The capacity of the map is
+     * kept.
+     */
+    public void clear() {
+	this.modCount++;
+	for (int i = 0; i < this.used; i++) {
+	    this.keys[i] = null;
+	    this.values[i] = null;
+	}
+	this.size = 0;
+	this.used = 0;
+	this.free = NIL;
+	this.root = NIL;
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>CompactTreeMap</tt> instance.  (The
+     * keys and values themselves are not cloned.)  The copy keeps the slot
+     * layout of this map.
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	final CompactTreeMap clone;
+	try {
+	    clone = (CompactTreeMap) super.clone();
+	} catch (final CloneNotSupportedException e) {
+	    throw new InternalError();
+	}
+	clone.keys = (Object[]) this.keys.clone();
+	clone.values = (Object[]) this.values.clone();
+	clone.left = (int[]) this.left.clone();
+	clone.right = (int[]) this.right.clone();
+	clone.parent = (int[]) this.parent.clone();
+	clone.red = (int[]) this.red.clone();
+	clone.modCount = 0;
+	clone.entrySet = null;
+	return clone;
+    }
+
+    /**
+     * Increases the capacity of this map, if necessary, to ensure that it
+     * can hold at least the number of mappings specified by the minimum
+     * capacity argument without growing its arrays.
+     *
+     * @param minCapacity the desired minimum capacity.
+     */
+    public void ensureCapacity(final int minCapacity) {
+	final int oldCapacity = this.keys.length;
+	if (minCapacity > oldCapacity) {
+	    int newCapacity = oldCapacity * 3/2 + 1;
+	    if (newCapacity < minCapacity) {
+		newCapacity = minCapacity;
+	    }
+	    final Object[] oldKeys = this.keys;
+	    final Object[] oldValues = this.values;
+	    final int[] oldLeft = this.left;
+	    final int[] oldRight = this.right;
+	    final int[] oldParent = this.parent;
+	    final int[] oldRed = this.red;
+	    this.allocate(newCapacity);
+	    System.arraycopy(oldKeys, 0, this.keys, 0, this.used);
+	    System.arraycopy(oldValues, 0, this.values, 0, this.used);
+	    System.arraycopy(oldLeft, 0, this.left, 0, this.used);
+	    System.arraycopy(oldRight, 0, this.right, 0, this.used);
+	    System.arraycopy(oldParent, 0, this.parent, 0, this.used);
+	    System.arraycopy(oldRed, 0, this.red, 0, oldRed.length);
+	}
+    }
+
+    /**
+     * Trims the capacity of this map to its size, and rebuilds the tree
+     * with the slots in key order, which makes iteration sequential in
+     * memory.  An application can use this operation to minimize the
+     * storage of a map that will no longer grow.  This method runs in
+     * linear time.
+     */
+    public void trimToSize() {
+	this.modCount++;
+	final int n = this.size;
+	final Object[] keys = new Object[n];
+	final Object[] values = new Object[n];
+	int j = 0;
+	for (int p = this.firstEntry(); p != NIL; p = this.successor(p)) {
+	    keys[j] = this.keys[p];
+	    values[j] = this.values[p];
+	    j++;
+	}
+	this.buildFromSorted(keys, values, n);
+    }
+
+
+    // Views
+
+    // Types of Iterators
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    /**
+     * This field is initialized to contain an instance of the entry set
+     * view the first time this view is requested.  The view is stateless,
+     * so there's no reason to create more than one.
+     */
+    private transient Set entrySet = null;
+
+    /**
+     * Returns a set view of the mappings contained in this map.  The set's
+     * iterator returns the mappings in ascending key order.  Each element
+     * in the returned set is a <tt>Map.Entry</tt>, valid until the map is
+     * next structurally modified.  The set is backed by this map, so changes
+     * to this map are reflected in the set, and vice-versa.  The set
+     * supports element removal, which removes the corresponding mapping
+     * from the map, but not element addition.
+     *
+     * @return a set view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new EntrySetView(null);
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys range from
+     * <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.  The
+     * returned sorted map is backed by this map, so changes in the returned
+     * sorted map are reflected in this map, and vice-versa.  The returned
+     * sorted map will throw an <tt>IllegalArgumentException</tt> if the
+     * user attempts to insert a key outside the specified range.
+     *
+     * @param fromKey low endpoint (inclusive) of the subMap.
+     * @param toKey high endpoint (exclusive) of the subMap.
+     * @return a view of the portion of this map whose keys range from
+     *         <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.
+     * @throws ClassCastException if <tt>fromKey</tt> and <tt>toKey</tt>
+     *         cannot be compared to one another using this map's
+     *         comparator (or, if the map has no comparator, using natural
+     *         ordering).
+     * @throws IllegalArgumentException if <tt>fromKey</tt> is greater than
+     *         <tt>toKey</tt>.
+     * @throws NullPointerException if <tt>fromKey</tt> or <tt>toKey</tt> is
+     *         <tt>null</tt> and this map uses natural order, or its
+     *         comparator does not tolerate <tt>null</tt> keys.
+     */
+    public SortedMap subMap(final Object fromKey, final Object toKey) {
+	if (this.compare(fromKey, toKey) > 0) {
+	    throw new IllegalArgumentException("fromKey > toKey");
+	}
+	return new SubMap(false, fromKey, false, toKey);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are strictly
+     * less than <tt>toKey</tt>.  The returned sorted map is backed by this
+     * map, so changes in the returned sorted map are reflected in this map,
+     * and vice-versa.
+     *
+     * @param toKey high endpoint (exclusive) of the headMap.
+     * @return a view of the portion of this map whose keys are strictly
+     *         less than <tt>toKey</tt>.
+     * @throws ClassCastException if <tt>toKey</tt> is not compatible with
+     *         this map's comparator (or, if the map has no comparator, if
+     *         <tt>toKey</tt> does not implement <tt>Comparable</tt>).
+     * @throws NullPointerException if <tt>toKey</tt> is <tt>null</tt> and
+     *         this map uses natural order, or its comparator does not
+     *         tolerate <tt>null</tt> keys.
+     */
+    public SortedMap headMap(final Object toKey) {
+	this.compare(toKey, toKey);
+	return new SubMap(true, null, false, toKey);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are greater than
+     * or equal to <tt>fromKey</tt>.  The returned sorted map is backed by
+     * this map, so changes in the returned sorted map are reflected in this
+     * map, and vice-versa.
+     *
+     * @param fromKey low endpoint (inclusive) of the tailMap.
+     * @return a view of the portion of this map whose keys are greater
+     *         than or equal to <tt>fromKey</tt>.
+     * @throws ClassCastException if <tt>fromKey</tt> is not compatible with
+     *         this map's comparator (or, if the map has no comparator, if
+     *         <tt>fromKey</tt> does not implement <tt>Comparable</tt>).
+     * @throws NullPointerException if <tt>fromKey</tt> is <tt>null</tt> and
+     *         this map uses natural order, or its comparator does not
+     *         tolerate <tt>null</tt> keys.
+     */
+    public SortedMap tailMap(final Object fromKey) {
+	this.compare(fromKey, fromKey);
+	return new SubMap(false, fromKey, true, null);
+    }
+
+    /**
+     * Entry set of the whole map, or of the range of a <tt>SubMap</tt>.
+     */
+    private class EntrySetView extends AbstractSet {
+	private final SubMap range;
+
+	EntrySetView(final SubMap range) {
+	    this.range = range;
+	}
+
+	public Iterator iterator() {
+	    if (this.range == null) {
+		return new EntryIterator(ENTRIES, CompactTreeMap.this.firstEntry(), NIL);
+	    }
+	    return this.range.iterator(ENTRIES);
+	}
+
+	public int size() {
+	    return this.range == null ? CompactTreeMap.this.size : this.range.size();
+	}
+
+	public boolean contains(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    return this.find((Map.Entry) o) != NIL;
+	}
+
+	public boolean remove(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final int p = this.find((Map.Entry) o);
+	    if (p == NIL) {
+		return false;
+	    }
+	    CompactTreeMap.this.deleteEntry(p);
+	    return true;
+	}
+
+	private int find(final Map.Entry entry) {
+	    final Object key = entry.getKey();
+	    if (this.range != null && !this.range.inRange(key)) {
+		return NIL;
+	    }
+	    final int p = CompactTreeMap.this.getEntry(key);
+	    return p != NIL && TreeMap.valEquals(CompactTreeMap.this.values[p], entry.getValue()) ?
+		   p : NIL;
+	}
+
+	public void clear() {
+	    if (this.range == null) {
+		CompactTreeMap.this.clear();
+	    } else {
+		super.clear();
+	    }
+	}
+    }
+
+    /**
+     * A range of the map.  fromKey is significant only if fromStart is
+     * false.  Similarly, toKey is significant only if toEnd is false.
+     */
+    private class SubMap extends AbstractMap implements SortedMap, java.io.Serializable {
+	private static final long serialVersionUID = -1806394750218360972L;
+
+	private final boolean fromStart;
+	private final Object fromKey;
+	private final boolean toEnd;
+	private final Object toKey;
+
+	SubMap(final boolean fromStart, final Object fromKey,
+	       final boolean toEnd, final Object toKey) {
+	    this.fromStart = fromStart;
+	    this.fromKey = fromKey;
+	    this.toEnd = toEnd;
+	    this.toKey = toKey;
+	}
+
+	boolean inRange(final Object key) {
+	    return (this.fromStart || CompactTreeMap.this.compare(key, this.fromKey) >= 0) &&
+		   (this.toEnd || CompactTreeMap.this.compare(key, this.toKey) < 0);
+	}
+
+	// This form allows the high endpoint (as well as all legit keys)
+	private boolean inRange2(final Object key) {
+	    return (this.fromStart || CompactTreeMap.this.compare(key, this.fromKey) >= 0) &&
+		   (this.toEnd || CompactTreeMap.this.compare(key, this.toKey) <= 0);
+	}
+
+	private int first() {
+	    return this.fromStart ? CompactTreeMap.this.firstEntry() :
+		   CompactTreeMap.this.getCeilEntry(this.fromKey);
+	}
+
+	private int end() {
+	    return this.toEnd ? NIL : CompactTreeMap.this.getCeilEntry(this.toKey);
+	}
+
+	Iterator iterator(final int type) {
+	    final int end = this.end();
+	    int first = this.first();
+	    if (first == NIL || end != NIL &&
+		CompactTreeMap.this.compare(CompactTreeMap.this.keys[first],
+					    CompactTreeMap.this.keys[end]) >= 0) {
+		first = end;
+	    }
+	    return new EntryIterator(type, first, end);
+	}
+
+	public boolean containsKey(final Object key) {
+	    return this.inRange(key) && CompactTreeMap.this.containsKey(key);
+	}
+
+	public Object get(final Object key) {
+	    if (!this.inRange(key)) {
+		return null;
+	    }
+	    return CompactTreeMap.this.get(key);
+	}
+
+	public Object put(final Object key, final Object value) {
+	    if (!this.inRange(key)) {
+		throw new IllegalArgumentException("key out of range");
+	    }
+	    return CompactTreeMap.this.put(key, value);
+	}
+
+	public Object remove(final Object key) {
+	    if (!this.inRange(key)) {
+		return null;
+	    }
+	    return CompactTreeMap.this.remove(key);
+	}
+
+	public Comparator comparator() {
+	    return CompactTreeMap.this.comparator;
+	}
+
+	public Object firstKey() {
+	    final int p = this.first();
+	    if (p == NIL || !this.inRange(CompactTreeMap.this.keys[p])) {
+		throw new NoSuchElementException();
+	    }
+	    return CompactTreeMap.this.keys[p];
+	}
+
+	public Object lastKey() {
+	    final int p = this.toEnd ? CompactTreeMap.this.lastEntry() :
+			  CompactTreeMap.this.getLowerEntry(this.toKey);
+	    if (p == NIL || !this.inRange(CompactTreeMap.this.keys[p])) {
+		throw new NoSuchElementException();
+	    }
+	    return CompactTreeMap.this.keys[p];
+	}
+
+	public int size() {
+	    int n = 0;
+	    for (final Iterator i = this.iterator(KEYS); i.hasNext(); i.next()) {
+		n++;
+	    }
+	    return n;
+	}
+
+	public boolean isEmpty() {
+	    return !this.iterator(KEYS).hasNext();
+	}
+
+	private transient Set entrySet = null;
+
+	public Set entrySet() {
+	    if (this.entrySet == null) {
+		this.entrySet = new EntrySetView(this);
+	    }
+	    return this.entrySet;
+	}
+
+	public SortedMap subMap(final Object fromKey, final Object toKey) {
+	    if (!this.inRange2(fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    if (!this.inRange2(toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    if (CompactTreeMap.this.compare(fromKey, toKey) > 0) {
+		throw new IllegalArgumentException("fromKey > toKey");
+	    }
+	    return new SubMap(false, fromKey, false, toKey);
+	}
+
+	public SortedMap headMap(final Object toKey) {
+	    if (!this.inRange2(toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    return new SubMap(this.fromStart, this.fromKey, false, toKey);
+	}
+
+	public SortedMap tailMap(final Object fromKey) {
+	    if (!this.inRange2(fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    return new SubMap(false, fromKey, this.toEnd, this.toKey);
+	}
+    }
+
+    /**
+     * CompactTreeMap Iterator, from a first slot, inclusive, to an end slot,
+     * exclusive.
+     */
+    private class EntryIterator implements Iterator {
+	private final int type;
+	private int end;
+	private int expectedModCount = CompactTreeMap.this.modCount;
+	private int lastReturned = NIL;
+	private int next;
+
+	EntryIterator(final int type, final int first, final int end) {
+	    this.type = type;
+	    this.next = first;
+	    this.end = end;
+	}
+
+	public boolean hasNext() {
+	    return this.next != this.end;
+	}
+
+	public Object next() {
+	    if (this.next == this.end) {
+		throw new NoSuchElementException();
+	    }
+	    if (CompactTreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    this.lastReturned = this.next;
+	    this.next = CompactTreeMap.this.successor(this.next);
+	    return this.type == KEYS ? CompactTreeMap.this.keys[this.lastReturned] :
+		   this.type == VALUES ? CompactTreeMap.this.values[this.lastReturned] :
+		   new Entry(this.lastReturned);
+	}
+
+	public void remove() {
+	    if (this.lastReturned == NIL) {
+		throw new IllegalStateException();
+	    }
+	    if (CompactTreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    // If the node has two children, deleteEntry moves the mapping
+	    // of its successor, the next one to return, into its slot.
+	    if (CompactTreeMap.this.deleteEntry(this.lastReturned) == this.next) {
+		if (this.end == this.next) {
+		    this.end = this.lastReturned;
+		}
+		this.next = this.lastReturned;
+	    }
+	    this.expectedModCount++;
+	    this.lastReturned = NIL;
+	}
+    }
+
+    /**
+     * A view of the mapping in a slot.
+     */
+    private final class Entry implements Map.Entry {
+	private final int slot;
+
+	Entry(final int slot) {
+	    this.slot = slot;
+	}
+
+	public Object getKey() {
+	    return CompactTreeMap.this.keys[this.slot];
+	}
+
+	public Object getValue() {
+	    return CompactTreeMap.this.values[this.slot];
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = CompactTreeMap.this.values[this.slot];
+	    CompactTreeMap.this.values[this.slot] = value;
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+
+	    return TreeMap.valEquals(this.getKey(), e.getKey()) &&
+		   TreeMap.valEquals(this.getValue(), e.getValue());
+	}
+
+	public int hashCode() {
+	    final Object key = this.getKey();
+	    final Object value = this.getValue();
+	    return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+	}
+
+	public String toString() {
+	    return this.getKey() + "=" + this.getValue();
+	}
+    }
+
+
+    // Slots
+
+    private void allocate(final int capacity) {
+	this.keys = new Object[capacity];
+	this.values = new Object[capacity];
+	this.left = new int[capacity];
+	this.right = new int[capacity];
+	this.parent = new int[capacity];
+	this.red = new int[(capacity + 31) >>> 5];
+    }
+
+    /**
+     * Returns a free slot holding a new black leaf with the given mapping
+     * and parent, growing the arrays if there is none.
+     */
+    private int newEntry(final Object key, final Object value, final int parent) {
+	int p = this.free;
+	if (p != NIL) {
+	    this.free = this.left[p];
+	} else {
+	    if (this.used == this.keys.length) {
+		this.ensureCapacity(this.used + 1);
+	    }
+	    p = this.used++;
+	}
+	this.keys[p] = key;
+	this.values[p] = value;
+	this.left[p] = NIL;
+	this.right[p] = NIL;
+	this.parent[p] = parent;
+	this.setRed(p, false);
+	return p;
+    }
+
+    /**
+     * Puts the slot of a node unlinked from the tree on the free list.
+     */
+    private void freeEntry(final int p) {
+	this.keys[p] = null;
+	this.values[p] = null;
+	this.left[p] = this.free;
+	this.free = p;
+    }
+
+    /**
+     * Makes the tree a perfectly balanced one with the given keys and
+     * values, in key order, in slots numbered from zero, and capacity for
+     * no more.
+     */
+    private void buildFromSorted(final Object[] keys, final Object[] values, final int n) {
+	this.keys = keys;
+	this.values = values;
+	this.left = new int[n];
+	this.right = new int[n];
+	this.parent = new int[n];
+	this.red = new int[(n + 31) >>> 5];
+	this.size = n;
+	this.used = n;
+	this.free = NIL;
+	this.root = this.buildFromSorted(0, 0, n - 1, TreeMap.computeRedLevel(n), NIL);
+    }
+
+    /**
+     * Links the slots lo to hi into a subtree under parent, and returns
+     * its root.  As in <tt>TreeMap</tt>, the nodes are black except for
+     * those at redLevel, the bottom level of an incomplete tree.
+     */
+    private int buildFromSorted(final int level, final int lo, final int hi,
+				final int redLevel, final int parent) {
+	if (hi < lo) {
+	    return NIL;
+	}
+	final int mid = (lo + hi) >>> 1;
+	this.parent[mid] = parent;
+	this.left[mid] = this.buildFromSorted(level + 1, lo, mid - 1, redLevel, mid);
+	this.right[mid] = this.buildFromSorted(level + 1, mid + 1, hi, redLevel, mid);
+	this.setRed(mid, level == redLevel);
+	return mid;
+    }
+
+
+    // Tree operations
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    private int compare(final Object k1, final Object k2) {
+	return this.comparator == null ? ((Comparable) k1).compareTo(k2)
+				       : this.comparator.compare(k1, k2);
+    }
+
+    /**
+     * Returns the slot of the mapping for the given key, or <tt>NIL</tt>
+     * if the map does not contain it.
+     */
+    private int getEntry(final Object key) {
+	int p = this.root;
+	while (p != NIL) {
+	    final int cmp = this.compare(key, this.keys[p]);
+	    if (cmp == 0) {
+		return p;
+	    } else if (cmp < 0) {
+		p = this.left[p];
+	    } else {
+		p = this.right[p];
+	    }
+	}
+	return NIL;
+    }
+
+    /**
+     * Returns the slot of the mapping with the least key greater than or
+     * equal to the given key, or <tt>NIL</tt> if there is none.
+     */
+    private int getCeilEntry(final Object key) {
+	int p = this.root;
+	int best = NIL;
+	while (p != NIL) {
+	    if (this.compare(this.keys[p], key) >= 0) {
+		best = p;
+		p = this.left[p];
+	    } else {
+		p = this.right[p];
+	    }
+	}
+	return best;
+    }
+
+    /**
+     * Returns the slot of the mapping with the greatest key strictly less
+     * than the given key, or <tt>NIL</tt> if there is none.
+     */
+    private int getLowerEntry(final Object key) {
+	int p = this.root;
+	int best = NIL;
+	while (p != NIL) {
+	    if (this.compare(this.keys[p], key) < 0) {
+		best = p;
+		p = this.right[p];
+	    } else {
+		p = this.left[p];
+	    }
+	}
+	return best;
+    }
+
+    private int firstEntry() {
+	int p = this.root;
+	if (p != NIL) {
+	    while (this.left[p] != NIL) {
+		p = this.left[p];
+	    }
+	}
+	return p;
+    }
+
+    private int lastEntry() {
+	int p = this.root;
+	if (p != NIL) {
+	    while (this.right[p] != NIL) {
+		p = this.right[p];
+	    }
+	}
+	return p;
+    }
+
+    private Object key(final int p) {
+	if (p == NIL) {
+	    throw new NoSuchElementException();
+	}
+	return this.keys[p];
+    }
+
+    /**
+     * Returns the successor of the specified node, or <tt>NIL</tt> if
+     * none.
+     */
+    private int successor(final int t) {
+	if (this.right[t] != NIL) {
+	    int p = this.right[t];
+	    while (this.left[p] != NIL) {
+		p = this.left[p];
+	    }
+	    return p;
+	} else {
+	    int p = this.parent[t];
+	    int ch = t;
+	    while (p != NIL && ch == this.right[p]) {
+		ch = p;
+		p = this.parent[p];
+	    }
+	    return p;
+	}
+    }
+
+    /**
+     * Balancing operations.
+     *
+     * Implementations of rebalancings during insertion and deletion are
+     * slightly different than the CLR version.  Rather than using dummy
+     * nilnodes, we use a set of accessors that deal properly with NIL.
+     * They are used to avoid messiness surrounding nullness checks in the
+     * main algorithms.
+     */
+
+    private boolean colorOf(final int p) {
+	return p != NIL && (this.red[p >>> 5] & 1 << p) != 0;
+    }
+
+    private void setRed(final int p, final boolean isRed) {
+	if (p != NIL) {
+	    if (isRed) {
+		this.red[p >>> 5] |= 1 << p;
+	    } else {
+		this.red[p >>> 5] &= ~(1 << p);
+	    }
+	}
+    }
+
+    private int parentOf(final int p) {
+	return p == NIL ? NIL : this.parent[p];
+    }
+
+    private int leftOf(final int p) {
+	return p == NIL ? NIL : this.left[p];
+    }
+
+    private int rightOf(final int p) {
+	return p == NIL ? NIL : this.right[p];
+    }
+
+    /** From CLR **/
+    private void rotateLeft(final int p) {
+	final int r = this.right[p];
+	this.right[p] = this.left[r];
+	if (this.left[r] != NIL) {
+	    this.parent[this.left[r]] = p;
+	}
+	this.parent[r] = this.parent[p];
+	if (this.parent[p] == NIL) {
+	    this.root = r;
+	} else if (this.left[this.parent[p]] == p) {
+	    this.left[this.parent[p]] = r;
+	} else {
+	    this.right[this.parent[p]] = r;
+	}
+	this.left[r] = p;
+	this.parent[p] = r;
+    }
+
+    /** From CLR **/
+    private void rotateRight(final int p) {
+	final int l = this.left[p];
+	this.left[p] = this.right[l];
+	if (this.right[l] != NIL) {
+	    this.parent[this.right[l]] = p;
+	}
+	this.parent[l] = this.parent[p];
+	if (this.parent[p] == NIL) {
+	    this.root = l;
+	} else if (this.right[this.parent[p]] == p) {
+	    this.right[this.parent[p]] = l;
+	} else {
+	    this.left[this.parent[p]] = l;
+	}
+	this.right[l] = p;
+	this.parent[p] = l;
+    }
+
+    /** From CLR **/
+    private void fixAfterInsertion(int x) {
+	this.setRed(x, true);
+
+	while (x != NIL && x != this.root && this.colorOf(this.parent[x])) {
+	    if (this.parentOf(x) == this.leftOf(this.parentOf(this.parentOf(x)))) {
+		final int y = this.rightOf(this.parentOf(this.parentOf(x)));
+		if (this.colorOf(y)) {
+		    this.setRed(this.parentOf(x), false);
+		    this.setRed(y, false);
+		    this.setRed(this.parentOf(this.parentOf(x)), true);
+		    x = this.parentOf(this.parentOf(x));
+		} else {
+		    if (x == this.rightOf(this.parentOf(x))) {
+			x = this.parentOf(x);
+			this.rotateLeft(x);
+		    }
+		    this.setRed(this.parentOf(x), false);
+		    this.setRed(this.parentOf(this.parentOf(x)), true);
+		    if (this.parentOf(this.parentOf(x)) != NIL) {
+			this.rotateRight(this.parentOf(this.parentOf(x)));
+		    }
+		}
+	    } else {
+		final int y = this.leftOf(this.parentOf(this.parentOf(x)));
+		if (this.colorOf(y)) {
+		    this.setRed(this.parentOf(x), false);
+		    this.setRed(y, false);
+		    this.setRed(this.parentOf(this.parentOf(x)), true);
+		    x = this.parentOf(this.parentOf(x));
+		} else {
+		    if (x == this.leftOf(this.parentOf(x))) {
+			x = this.parentOf(x);
+			this.rotateRight(x);
+		    }
+		    this.setRed(this.parentOf(x), false);
+		    this.setRed(this.parentOf(this.parentOf(x)), true);
+		    if (this.parentOf(this.parentOf(x)) != NIL) {
+			this.rotateLeft(this.parentOf(this.parentOf(x)));
+		    }
+		}
+	    }
+	}
+	this.setRed(this.root, false);
+    }
+
+    /**
+     * Delete node p, and then rebalance the tree.  If p has two children,
+     * the mapping of its successor is moved into p's slot, and the
+     * successor's node is deleted instead.  Returns the slot freed.
+     */
+    private int deleteEntry(int p) {
+	this.modCount++;
+	this.size--;
+
+	// If strictly internal, copy successor's element to p and then make p
+	// point to successor.
+	if (this.left[p] != NIL && this.right[p] != NIL) {
+	    final int s = this.successor(p);
+	    this.keys[p] = this.keys[s];
+	    this.values[p] = this.values[s];
+	    p = s;
+	}
+
+	// Start fixup at replacement node, if it exists.
+	final int replacement = this.left[p] != NIL ? this.left[p] : this.right[p];
+
+	if (replacement != NIL) {
+	    // Link replacement to parent
+	    this.parent[replacement] = this.parent[p];
+	    if (this.parent[p] == NIL) {
+		this.root = replacement;
+	    } else if (p == this.left[this.parent[p]]) {
+		this.left[this.parent[p]] = replacement;
+	    } else {
+		this.right[this.parent[p]] = replacement;
+	    }
+
+	    // Fix replacement
+	    if (!this.colorOf(p)) {
+		this.fixAfterDeletion(replacement);
+	    }
+	} else if (this.parent[p] == NIL) { // return if we are the only node.
+	    this.root = NIL;
+	} else { //  No children. Use self as phantom replacement and unlink.
+	    if (!this.colorOf(p)) {
+		this.fixAfterDeletion(p);
+	    }
+
+	    if (this.parent[p] != NIL) {
+		if (p == this.left[this.parent[p]]) {
+		    this.left[this.parent[p]] = NIL;
+		} else if (p == this.right[this.parent[p]]) {
+		    this.right[this.parent[p]] = NIL;
+		}
+	    }
+	}
+	this.freeEntry(p);
+	return p;
+    }
+
+    /** From CLR **/
+    private void fixAfterDeletion(int x) {
+	while (x != this.root && !this.colorOf(x)) {
+	    if (x == this.leftOf(this.parentOf(x))) {
+		int sib = this.rightOf(this.parentOf(x));
+
+		if (this.colorOf(sib)) {
+		    this.setRed(sib, false);
+		    this.setRed(this.parentOf(x), true);
+		    this.rotateLeft(this.parentOf(x));
+		    sib = this.rightOf(this.parentOf(x));
+		}
+
+		if (!this.colorOf(this.leftOf(sib)) && !this.colorOf(this.rightOf(sib))) {
+		    this.setRed(sib, true);
+		    x = this.parentOf(x);
+		} else {
+		    if (!this.colorOf(this.rightOf(sib))) {
+			this.setRed(this.leftOf(sib), false);
+			this.setRed(sib, true);
+			this.rotateRight(sib);
+			sib = this.rightOf(this.parentOf(x));
+		    }
+		    this.setRed(sib, this.colorOf(this.parentOf(x)));
+		    this.setRed(this.parentOf(x), false);
+		    this.setRed(this.rightOf(sib), false);
+		    this.rotateLeft(this.parentOf(x));
+		    x = this.root;
+		}
+	    } else { // symmetric
+		int sib = this.leftOf(this.parentOf(x));
+
+		if (this.colorOf(sib)) {
+		    this.setRed(sib, false);
+		    this.setRed(this.parentOf(x), true);
+		    this.rotateRight(this.parentOf(x));
+		    sib = this.leftOf(this.parentOf(x));
+		}
+
+		if (!this.colorOf(this.rightOf(sib)) && !this.colorOf(this.leftOf(sib))) {
+		    this.setRed(sib, true);
+		    x = this.parentOf(x);
+		} else {
+		    if (!this.colorOf(this.leftOf(sib))) {
+			this.setRed(this.rightOf(sib), false);
+			this.setRed(sib, true);
+			this.rotateLeft(sib);
+			sib = this.leftOf(this.parentOf(x));
+		    }
+		    this.setRed(sib, this.colorOf(this.parentOf(x)));
+		    this.setRed(this.parentOf(x), false);
+		    this.setRed(this.leftOf(sib), false);
+		    this.rotateRight(this.parentOf(x));
+		    x = this.root;
+		}
+	    }
+	}
+
+	this.setRed(x, false);
+    }
+
+
+    /**
+     * Save the state of the <tt>CompactTreeMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *             mappings) is emitted (int), followed by the key (Object)
+     *             and value (Object) for each key-value mapping, in key
+     *             order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (int p = this.firstEntry(); p != NIL; p = this.successor(p)) {
+	    s.writeObject(this.keys[p]);
+	    s.writeObject(this.values[p]);
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>CompactTreeMap</tt> instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	final int n = s.readInt();
+	final Object[] keys = new Object[n];
+	final Object[] values = new Object[n];
+	for (int i = 0; i < n; i++) {
+	    keys[i] = s.readObject();
+	    values[i] = s.readObject();
+	}
+	this.buildFromSorted(keys, values, n);
+    }
+}
@@ -0,0 +1,1127 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Hashtable;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash table supporting full concurrency of retrievals and adjustable
+ * expected concurrency for updates.  This class obeys the same functional
+ * specification as <tt>Hashtable</tt>, and includes versions of methods
+ * corresponding to each method of <tt>Hashtable</tt>.  However, even though
+ * all operations are thread-safe, retrieval operations do <i>not</i> entail
+ * locking, and there is <i>not</i> any support for locking the entire table
+ * in a way that prevents all access.<p>
+ *
+ * The table is internally partitioned into <i>segments</i>, each of which is
+ * an independently locked hash table.  Updates lock only the segment the key
+ * hashes to, so up to <tt>concurrencyLevel</tt> writers may proceed in
+ * parallel, and each segment resizes itself without blocking the others.
+ * Retrievals (including <tt>get</tt>) generally do not block, so may overlap
+ * with update operations (including <tt>put</tt> and <tt>remove</tt>).
+ * Retrievals reflect the results of the most recently <i>completed</i>
+ * update operations holding upon their onset.  This is achieved by never
+ * modifying the <tt>next</tt> link of an entry once it has been published:
+ * removal copies the entries preceding the removed one instead.<p>
+ *
+ * Iterators and enumerations return elements reflecting the state of the
+ * hash table at some point at or since the creation of the iterator.  They
+ * do <i>not</i> throw <tt>ConcurrentModificationException</tt>, and may
+ * (but are not guaranteed to) reflect any modifications subsequent to
+ * their construction.  Iterators are designed to be used by only one thread
+ * at a time.<p>
+ *
+ * For aggregate operations such as <tt>putAll</tt> and <tt>clear</tt>,
+ * concurrent retrievals may reflect insertion or removal of only some
+ * entries.  Likewise, <tt>size</tt> is exact only in the absence of
+ * concurrent updates.<p>
+ *
+ * Like <tt>Hashtable</tt> but unlike <tt>HashMap</tt>, this class does
+ * <i>not</i> allow <tt>null</tt> to be used as a key or value.
+ *
+ * @see ConcurrentMap
+ * @see HashMap
+ * @see Hashtable
+ * @see Collections#synchronizedMap(Map)
+ */
+public class ConcurrentHashMap extends AbstractMap
+				implements ConcurrentMap, Serializable {
+    private static final long serialVersionUID = 7249069246763182397L;
+
+    /**
+     * The default initial capacity of the whole table.
+     */
+    static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * The default load factor of each segment.
+     */
+    static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    /**
+     * The default number of segments.
+     */
+    static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * The maximum capacity of the whole table; must be a power of two.
+     */
+    static final int MAXIMUM_CAPACITY = 1 << 30;
+
+    /**
+     * The maximum number of segments to allow.
+     */
+    static final int MAX_SEGMENTS = 1 << 16;
+
+    /**
+     * Number of unsynchronized passes <tt>size</tt> and
+     * <tt>containsValue</tt> make before falling back to locking.
+     */
+    static final int RETRIES_BEFORE_LOCK = 2;
+
+    /**
+     * Mask value for indexing into segments.  The upper bits of a key's
+     * hash code are used to choose the segment.
+     */
+    final int segmentMask;
+
+    /**
+     * Shift value for indexing within segments.
+     */
+    final int segmentShift;
+
+    /**
+     * The segments, each of which is a specialized hash table.
+     */
+    final Segment[] segments;
+
+    /**
+     * Applies a supplemental hash function to a given hash code.  Segments
+     * and buckets are both selected by power-of-two masks, so the bits of
+     * the hash code must be spread across the word first; otherwise keys
+     * differing only in their upper (or lower) bits would collide.
+     */
+    private static int hash(int h) {
+	h += (h <<  15) ^ 0xffffcd7d;
+	h ^= h >>> 10;
+	h += h <<   3;
+	h ^= h >>>  6;
+	h += (h <<   2) + (h << 14);
+	return h ^ h >>> 16;
+    }
+
+    /**
+     * Returns the segment that should be used for a key with the given hash.
+     */
+    final Segment segmentFor(final int hash) {
+	return this.segments[hash >>> this.segmentShift & this.segmentMask];
+    }
+
+    /**
+     * ConcurrentHashMap collision list entry.  The key, hash and next fields
+     * are never changed once an entry is published, which is what allows
+     * unsynchronized readers to traverse a chain safely.  The value field
+     * is volatile; a reader that observes a <tt>null</tt> value has raced
+     * with the entry's construction and rereads it under the segment lock.
+     */
+    static final class HashEntry {
+	final Object key;
+	final int hash;
+	volatile Object value;
+	final HashEntry next;
+
+	HashEntry(final Object key, final int hash, final HashEntry next, final Object value) {
+	    this.key = key;
+	    this.hash = hash;
+	    this.next = next;
+	    this.value = value;
+	}
+    }
+
+    /**
+     * Segments are specialized versions of hash tables.  All mutative
+     * operations synchronize on the segment itself; reads do not.
+     */
+    static final class Segment implements Serializable {
+	private static final long serialVersionUID = 2249069246763182397L;
+
+	/**
+	 * The number of elements in this segment's region.  Writes of this
+	 * field are the last action of every structural update, so readers
+	 * that see a non-zero count see a consistent table.
+	 */
+	transient volatile int count;
+
+	/**
+	 * Number of updates that alter the size of the table.  Used by the
+	 * bulk read methods to detect that they raced with an update.
+	 */
+	transient int modCount;
+
+	/**
+	 * The table is rehashed when its size exceeds this threshold.
+	 */
+	transient int threshold;
+
+	/**
+	 * The per-segment table.
+	 */
+	transient volatile HashEntry[] table;
+
+	/**
+	 * The number of times this segment has been rehashed, and the total
+	 * time in milliseconds those rehashes took.
+	 */
+	transient int resizeCount;
+	transient long resizeMillis;
+
+	/**
+	 * The load factor for the hash table.
+	 *
+	 * @serial
+	 */
+	final float loadFactor;
+
+	Segment(final int initialCapacity, final float loadFactor) {
+	    this.loadFactor = loadFactor;
+	    this.setTable(new HashEntry[initialCapacity]);
+	}
+
+	/**
+	 * Sets table to new HashEntry array.  Call only while holding the
+	 * lock or in the constructor.
+	 */
+	void setTable(final HashEntry[] newTable) {
+	    this.threshold = (int)(newTable.length * this.loadFactor);
+	    this.table = newTable;
+	}
+
+	/**
+	 * Returns properly casted first entry of bin for given hash.
+	 */
+	HashEntry getFirst(final int hash) {
+	    final HashEntry[] tab = this.table;
+	    return tab[hash & tab.length - 1];
+	}
+
+	/**
+	 * Reads the value field of an entry under lock.  Called if the value
+	 * field ever appears to be <tt>null</tt>, which is only possible if a
+	 * compiler happens to reorder a HashEntry initialization with its
+	 * table assignment.
+	 */
+	synchronized Object readValueUnderLock(final HashEntry e) {
+	    return e.value;
+	}
+
+	// Specialized implementations of map methods
+
+	Object get(final Object key, final int hash) {
+	    if (this.count != 0) { // read-volatile
+		for (HashEntry e = this.getFirst(hash); e != null; e = e.next) {
+		    if (e.hash == hash && key.equals(e.key)) {
+			final Object v = e.value;
+			if (v != null) {
+			    return v;
+			}
+			return this.readValueUnderLock(e); // recheck
+		    }
+		}
+	    }
+	    return null;
+	}
+
+	boolean containsKey(final Object key, final int hash) {
+	    if (this.count != 0) { // read-volatile
+		for (HashEntry e = this.getFirst(hash); e != null; e = e.next) {
+		    if (e.hash == hash && key.equals(e.key)) {
+			return true;
+		    }
+		}
+	    }
+	    return false;
+	}
+
+	boolean containsValue(final Object value) {
+	    if (this.count != 0) { // read-volatile
+		final HashEntry[] tab = this.table;
+		for (int i = tab.length; i-- > 0; ) {
+		    for (HashEntry e = tab[i]; e != null; e = e.next) {
+			Object v = e.value;
+			if (v == null) {
+			    v = this.readValueUnderLock(e); // recheck
+			}
+			if (value.equals(v)) {
+			    return true;
+			}
+		    }
+		}
+	    }
+	    return false;
+	}
+
+	synchronized boolean replace(final Object key, final int hash,
+				     final Object oldValue, final Object newValue) {
+	    HashEntry e = this.getFirst(hash);
+	    while (e != null && (e.hash != hash || !key.equals(e.key))) {
+		e = e.next;
+	    }
+
+	    if (e != null && oldValue.equals(e.value)) {
+		e.value = newValue;
+		return true;
+	    }
+	    return false;
+	}
+
+	synchronized Object replace(final Object key, final int hash, final Object newValue) {
+	    HashEntry e = this.getFirst(hash);
+	    while (e != null && (e.hash != hash || !key.equals(e.key))) {
+		e = e.next;
+	    }
+
+	    if (e == null) {
+		return null;
+	    }
+	    final Object oldValue = e.value;
+	    e.value = newValue;
+	    return oldValue;
+	}
+
+	synchronized Object put(final Object key, final int hash, final Object value,
+				final boolean onlyIfAbsent) {
+	    int c = this.count;
+	    if (c++ > this.threshold) {
+		this.rehash();
+	    }
+	    final HashEntry[] tab = this.table;
+	    final int index = hash & tab.length - 1;
+	    final HashEntry first = tab[index];
+	    HashEntry e = first;
+	    while (e != null && (e.hash != hash || !key.equals(e.key))) {
+		e = e.next;
+	    }
+
+	    final Object oldValue;
+	    if (e != null) {
+		oldValue = e.value;
+		if (!onlyIfAbsent) {
+		    e.value = value;
+		}
+	    } else {
+		oldValue = null;
+		this.modCount++;
+		tab[index] = new HashEntry(key, hash, first, value);
+		this.count = c; // write-volatile
+	    }
+	    return oldValue;
+	}
+
+	/**
+	 * Doubles the capacity of this segment.  Each bin is split into a
+	 * "low" and a "high" bin of the new table.  Because entries are
+	 * immutable, the trailing run of entries that all land in the same
+	 * new bin is reused as-is and only the nodes in front of it are
+	 * cloned; readers still traversing the old table are unaffected.
+	 */
+	void rehash() {
+	    final HashEntry[] oldTable = this.table;
+	    final int oldCapacity = oldTable.length;
+	    if (oldCapacity >= MAXIMUM_CAPACITY) {
+		return;
+	    }
+	    final long start = System.currentTimeMillis();
+
+	    final HashEntry[] newTable = new HashEntry[oldCapacity << 1];
+	    this.threshold = (int)(newTable.length * this.loadFactor);
+	    final int sizeMask = newTable.length - 1;
+	    for (int i = 0; i < oldCapacity; i++) {
+		final HashEntry e = oldTable[i];
+		if (e == null) {
+		    continue;
+		}
+
+		final HashEntry next = e.next;
+		final int idx = e.hash & sizeMask;
+
+		if (next == null) {
+		    // Single node on list
+		    newTable[idx] = e;
+		} else {
+		    // Reuse trailing consecutive sequence at same slot
+		    HashEntry lastRun = e;
+		    int lastIdx = idx;
+		    for (HashEntry last = next; last != null; last = last.next) {
+			final int k = last.hash & sizeMask;
+			if (k != lastIdx) {
+			    lastIdx = k;
+			    lastRun = last;
+			}
+		    }
+		    newTable[lastIdx] = lastRun;
+
+		    // Clone all remaining nodes
+		    for (HashEntry p = e; p != lastRun; p = p.next) {
+			final int k = p.hash & sizeMask;
+			newTable[k] = new HashEntry(p.key, p.hash, newTable[k], p.value);
+		    }
+		}
+	    }
+	    this.table = newTable;
+	    this.resizeCount++;
+	    this.resizeMillis += System.currentTimeMillis() - start;
+	}
+
+	/**
+	 * Remove; match on key only if value is <tt>null</tt>, else match
+	 * both.
+	 */
+	synchronized Object remove(final Object key, final int hash, final Object value) {
+	    final int c = this.count - 1;
+	    final HashEntry[] tab = this.table;
+	    final int index = hash & tab.length - 1;
+	    final HashEntry first = tab[index];
+	    HashEntry e = first;
+	    while (e != null && (e.hash != hash || !key.equals(e.key))) {
+		e = e.next;
+	    }
+
+	    Object oldValue = null;
+	    if (e != null) {
+		final Object v = e.value;
+		if (value == null || value.equals(v)) {
+		    oldValue = v;
+		    // All entries following removed node can stay in list,
+		    // but all preceding ones need to be cloned.
+		    this.modCount++;
+		    HashEntry newFirst = e.next;
+		    for (HashEntry p = first; p != e; p = p.next) {
+			newFirst = new HashEntry(p.key, p.hash, newFirst, p.value);
+		    }
+		    tab[index] = newFirst;
+		    this.count = c; // write-volatile
+		}
+	    }
+	    return oldValue;
+	}
+
+	synchronized void clear() {
+	    if (this.count != 0) {
+		final HashEntry[] tab = this.table;
+		for (int i = 0; i < tab.length; i++) {
+		    tab[i] = null;
+		}
+		this.modCount++;
+		this.count = 0; // write-volatile
+	    }
+	}
+    }
+
+    /**
+     * Creates a new, empty map with the specified initial capacity, load
+     * factor and concurrency level.
+     *
+     * @param initialCapacity the initial capacity.  The implementation
+     *        performs internal sizing to accommodate this many elements.
+     * @param loadFactor the load factor threshold, used to control resizing.
+     *        Resizing may be performed when the average number of elements
+     *        per bin exceeds this threshold.
+     * @param concurrencyLevel the estimated number of concurrently updating
+     *        threads.  The implementation performs internal sizing to try to
+     *        accommodate this many threads.
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor or concurrencyLevel are nonpositive.
+     */
+    public ConcurrentHashMap(int initialCapacity, final float loadFactor,
+			     int concurrencyLevel) {
+	if (!(loadFactor > 0) || initialCapacity < 0 || concurrencyLevel <= 0) {
+	    throw new IllegalArgumentException();
+	}
+	if (concurrencyLevel > MAX_SEGMENTS) {
+	    concurrencyLevel = MAX_SEGMENTS;
+	}
+
+	// Find power-of-two sizes best matching arguments
+	int sshift = 0;
+	int ssize = 1;
+	while (ssize < concurrencyLevel) {
+	    ++sshift;
+	    ssize <<= 1;
+	}
+	this.segmentShift = 32 - sshift;
+	this.segmentMask = ssize - 1;
+	this.segments = new Segment[ssize];
+
+	if (initialCapacity > MAXIMUM_CAPACITY) {
+	    initialCapacity = MAXIMUM_CAPACITY;
+	}
+	int c = initialCapacity / ssize;
+	if (c * ssize < initialCapacity) {
+	    ++c;
+	}
+	int cap = 1;
+	while (cap < c) {
+	    cap <<= 1;
+	}
+
+	for (int i = 0; i < this.segments.length; ++i) {
+	    this.segments[i] = new Segment(cap, loadFactor);
+	}
+    }
+
+    /**
+     * Creates a new, empty map with the specified initial capacity, and with
+     * default load factor (<tt>0.75</tt>) and concurrency level
+     * (<tt>16</tt>).
+     *
+     * @param initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity of elements
+     *         is negative.
+     */
+    public ConcurrentHashMap(final int initialCapacity) {
+	this(initialCapacity, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new, empty map with a default initial capacity
+     * (<tt>16</tt>), load factor (<tt>0.75</tt>) and concurrency level
+     * (<tt>16</tt>).
+     */
+    public ConcurrentHashMap() {
+	this(DEFAULT_INITIAL_CAPACITY, DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Creates a new map with the same mappings as the given map.  The map is
+     * created with a capacity of 1.5 times the number of mappings in the
+     * given map or 16 (whichever is greater), and a default load factor
+     * (<tt>0.75</tt>) and concurrency level (<tt>16</tt>).
+     *
+     * @param t the map.
+     */
+    public ConcurrentHashMap(final Map t) {
+	this(Math.max((int) (t.size() / DEFAULT_LOAD_FACTOR) + 1,
+		      DEFAULT_INITIAL_CAPACITY),
+	     DEFAULT_LOAD_FACTOR, DEFAULT_CONCURRENCY_LEVEL);
+	this.putAll(t);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	final Segment[] segments = this.segments;
+	/*
+	 * We keep track of per-segment modCounts to avoid ABA problems in
+	 * which an element in one segment was added and in another removed
+	 * during traversal, in which case the table was never actually
+	 * empty at any point.
+	 */
+	final int[] mc = new int[segments.length];
+	int mcsum = 0;
+	for (int i = 0; i < segments.length; ++i) {
+	    if (segments[i].count != 0) {
+		return false;
+	    }
+	    mcsum += mc[i] = segments[i].modCount;
+	}
+	// If mcsum happens to be zero, then we know we got a snapshot before
+	// any modifications at all were made.
+	if (mcsum != 0) {
+	    for (int i = 0; i < segments.length; ++i) {
+		if (segments[i].count != 0 || mc[i] != segments[i].modCount) {
+		    return false;
+		}
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.  If the map
+     * contains more than <tt>Integer.MAX_VALUE</tt> elements, returns
+     * <tt>Integer.MAX_VALUE</tt>.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	final Segment[] segments = this.segments;
+	long sum = 0;
+	long check = 0;
+	final int[] mc = new int[segments.length];
+	// Try a few times to get accurate count.  On failure due to
+	// continuous async changes in table, resort to locking.
+	for (int k = 0; k < RETRIES_BEFORE_LOCK; ++k) {
+	    check = 0;
+	    sum = 0;
+	    int mcsum = 0;
+	    for (int i = 0; i < segments.length; ++i) {
+		sum += segments[i].count;
+		mcsum += mc[i] = segments[i].modCount;
+	    }
+	    if (mcsum != 0) {
+		for (int i = 0; i < segments.length; ++i) {
+		    check += segments[i].count;
+		    if (mc[i] != segments[i].modCount) {
+			check = -1; // force retry
+			break;
+		    }
+		}
+	    }
+	    if (check == sum) {
+		break;
+	    }
+	}
+	if (check != sum) {
+	    sum = 0;
+	    for (int i = 0; i < segments.length; ++i) {
+		synchronized (segments[i]) {
+		    sum += segments[i].count;
+		}
+	    }
+	}
+	return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped in this table.
+     *
+     * @param key a key in the table.
+     * @return the value to which the key is mapped in this table;
+     *         <tt>null</tt> if the key is not mapped to any value in this
+     *         table.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object get(final Object key) {
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).get(key, hash);
+    }
+
+    /**
+     * Tests if the specified object is a key in this table.
+     *
+     * @param key possible key.
+     * @return <tt>true</tt> if and only if the specified object is a key in
+     *         this table, as determined by the <tt>equals</tt> method;
+     *         <tt>false</tt> otherwise.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public boolean containsKey(final Object key) {
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).containsKey(key, hash);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  Note: This method requires a full internal traversal
+     * of the hash table, and so is much slower than method
+     * <tt>containsKey</tt>.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value.
+     * @throws NullPointerException if the value is <tt>null</tt>.
+     */
+    public boolean containsValue(final Object value) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+
+	final Segment[] segments = this.segments;
+	for (int i = 0; i < segments.length; ++i) {
+	    if (segments[i].containsValue(value)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Maps the specified <tt>key</tt> to the specified <tt>value</tt> in
+     * this table.  Neither the key nor the value can be <tt>null</tt>.<p>
+     *
+     * The value can be retrieved by calling the <tt>get</tt> method with a
+     * key that is equal to the original key.
+     *
+     * @param key the table key.
+     * @param value the value.
+     * @return the previous value of the specified key in this table, or
+     *         <tt>null</tt> if it did not have one.
+     * @throws NullPointerException if the key or value is <tt>null</tt>.
+     */
+    public Object put(final Object key, final Object value) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).put(key, hash, value, false);
+    }
+
+    /**
+     * If the specified key is not already associated with a value, associate
+     * it with the given value.  The test and the insertion are performed
+     * atomically under the lock of the key's segment.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws NullPointerException if the specified key or value is
+     *         <tt>null</tt>.
+     */
+    public Object putIfAbsent(final Object key, final Object value) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).put(key, hash, value, true);
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this one.  These
+     * mappings replace any mappings that this map had for any of the keys
+     * currently in the specified map.
+     *
+     * @param t mappings to be stored in this map.
+     */
+    public void putAll(final Map t) {
+	for (final Iterator it = t.entrySet().iterator(); it.hasNext(); ) {
+	    final Map.Entry e = (Map.Entry) it.next();
+	    this.put(e.getKey(), e.getValue());
+	}
+    }
+
+    /**
+     * Removes the key (and its corresponding value) from this table.  This
+     * method does nothing if the key is not in the table.
+     *
+     * @param key the key that needs to be removed.
+     * @return the value to which the key had been mapped in this table, or
+     *         <tt>null</tt> if the key did not have a mapping.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object remove(final Object key) {
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).remove(key, hash, null);
+    }
+
+    /**
+     * Removes the entry for a key only if currently mapped to a given value.
+     *
+     * @param key key with which the specified value is associated.
+     * @param value value expected to be associated with the specified key.
+     * @return <tt>true</tt> if the value was removed.
+     * @throws NullPointerException if the specified key is <tt>null</tt>.
+     */
+    public boolean remove(final Object key, final Object value) {
+	final int hash = hash(key.hashCode());
+	return value != null && this.segmentFor(hash).remove(key, hash, value) != null;
+    }
+
+    /**
+     * Replaces the entry for a key only if currently mapped to a given value.
+     *
+     * @param key key with which the specified value is associated.
+     * @param oldValue value expected to be associated with the specified key.
+     * @param newValue value to be associated with the specified key.
+     * @return <tt>true</tt> if the value was replaced.
+     * @throws NullPointerException if any of the arguments are
+     *         <tt>null</tt>.
+     */
+    public boolean replace(final Object key, final Object oldValue, final Object newValue) {
+	if (oldValue == null || newValue == null) {
+	    throw new NullPointerException();
+	}
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).replace(key, hash, oldValue, newValue);
+    }
+
+    /**
+     * Replaces the entry for a key only if currently mapped to some value.
+     *
+     * @param key key with which the specified value is associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws NullPointerException if the specified key or value is
+     *         <tt>null</tt>.
+     */
+    public Object replace(final Object key, final Object value) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	final int hash = hash(key.hashCode());
+	return this.segmentFor(hash).replace(key, hash, value);
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	for (int i = 0; i < this.segments.length; ++i) {
+	    this.segments[i].clear();
+	}
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of this map's
+     * hash table, summed over all segments: the capacity and load, the chain
+     * length histogram, the expected number of probes per lookup, the number
+     * of keys with duplicate hash codes, and the number and duration of the
+     * segment rehashes performed so far.  Each segment is locked only while
+     * it is being examined, so the figures of different segments may stem
+     * from different points in time.
+     *
+     * @return the statistics of this map's hash table.
+     */
+    public HashStatistics statistics() {
+	// The capacity is summed segment by segment, under the same lock as
+	// the chains, so that a rehash between the two cannot skew the load
+	final HashStatistics statistics = new HashStatistics(0, this.segments[0].loadFactor);
+	int[] hashes = new int[8];
+	for (int i = 0; i < this.segments.length; i++) {
+	    final Segment seg = this.segments[i];
+	    synchronized (seg) {
+		final HashEntry[] tab = seg.table;
+		statistics.addCapacity(tab.length);
+		for (int index = 0; index < tab.length; index++) {
+		    int length = 0;
+		    for (HashEntry e = tab[index]; e != null; e = e.next) {
+			if (length == hashes.length) {
+			    final int[] newHashes = new int[length * 2];
+			    System.arraycopy(hashes, 0, newHashes, 0, length);
+			    hashes = newHashes;
+			}
+			hashes[length++] = e.hash;
+		    }
+		    statistics.addChain(hashes, length);
+		}
+		statistics.addResizes(seg.resizeCount, seg.resizeMillis);
+	    }
+	}
+	return statistics;
+    }
+
+    // Views
+
+    private transient Set keySet = null;
+    private transient Set entrySet = null;
+    private transient Collection values = null;
+
+    /**
+     * Returns a set view of the keys contained in this map.  The set is
+     * backed by the map, so changes to the map are reflected in the set, and
+     * vice-versa.  The set supports element removal, which removes the
+     * corresponding mapping from this map, via the <tt>Iterator.remove</tt>,
+     * <tt>Set.remove</tt>, <tt>removeAll</tt>, <tt>retainAll</tt>, and
+     * <tt>clear</tt> operations.  It does not support the <tt>add</tt> or
+     * <tt>addAll</tt> operations.  The view's returned <tt>iterator</tt> is
+     * a "weakly consistent" iterator that will never throw
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @return a set view of the keys contained in this map.
+     */
+    public Set keySet() {
+	if (this.keySet == null) {
+	    this.keySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new HashIterator(KEYS);
+		}
+		public int size() {
+		    return ConcurrentHashMap.this.size();
+		}
+		public boolean contains(final Object o) {
+		    return ConcurrentHashMap.this.containsKey(o);
+		}
+		public boolean remove(final Object o) {
+		    return ConcurrentHashMap.this.remove(o) != null;
+		}
+		public void clear() {
+		    ConcurrentHashMap.this.clear();
+		}
+	    };
+	}
+	return this.keySet;
+    }
+
+    /**
+     * Returns a collection view of the values contained in this map.  The
+     * collection is backed by the map, so changes to the map are reflected in
+     * the collection, and vice-versa.  The collection supports element
+     * removal, which removes the corresponding mapping from this map, via the
+     * <tt>Iterator.remove</tt>, <tt>Collection.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt> operations.
+     * It does not support the <tt>add</tt> or <tt>addAll</tt> operations.
+     * The view's returned <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @return a collection view of the values contained in this map.
+     */
+    public Collection values() {
+	if (this.values == null) {
+	    this.values = new AbstractCollection() {
+		public Iterator iterator() {
+		    return new HashIterator(VALUES);
+		}
+		public int size() {
+		    return ConcurrentHashMap.this.size();
+		}
+		public boolean contains(final Object o) {
+		    return ConcurrentHashMap.this.containsValue(o);
+		}
+		public void clear() {
+		    ConcurrentHashMap.this.clear();
+		}
+	    };
+	}
+	return this.values;
+    }
+
+    /**
+     * Returns a collection view of the mappings contained in this map.  Each
+     * element in the returned collection is a <tt>Map.Entry</tt>.  The
+     * collection is backed by the map, so changes to the map are reflected in
+     * the collection, and vice-versa.  The collection supports element
+     * removal, which removes the corresponding mapping from the map, via the
+     * <tt>Iterator.remove</tt>, <tt>Collection.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt> operations.
+     * It does not support the <tt>add</tt> or <tt>addAll</tt> operations.
+     * The view's returned <tt>iterator</tt> is a "weakly consistent"
+     * iterator that will never throw
+     * <tt>ConcurrentModificationException</tt>.  Calling
+     * <tt>setValue</tt> on an entry it returns writes through to the map.
+     *
+     * @return a collection view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new HashIterator(ENTRIES);
+		}
+		public boolean contains(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry e = (Map.Entry) o;
+		    final Object v = ConcurrentHashMap.this.get(e.getKey());
+		    return v != null && v.equals(e.getValue());
+		}
+		public boolean remove(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry e = (Map.Entry) o;
+		    return ConcurrentHashMap.this.remove(e.getKey(), e.getValue());
+		}
+		public int size() {
+		    return ConcurrentHashMap.this.size();
+		}
+		public void clear() {
+		    ConcurrentHashMap.this.clear();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    // Types of Iterators
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    /**
+     * Weakly consistent iterator.  Walks the segments from last to first and
+     * each segment's table from last bin to first, reading the table
+     * reference of a segment only once, so it sees either the pre- or the
+     * post-resize table but never a mixture of the two.
+     */
+    private class HashIterator implements Iterator {
+	private final int type;
+	private int nextSegmentIndex;
+	private int nextTableIndex;
+	private HashEntry[] currentTable;
+	private HashEntry nextEntry;
+	private HashEntry lastReturned;
+
+	HashIterator(final int type) {
+	    this.type = type;
+	    this.nextSegmentIndex = ConcurrentHashMap.this.segments.length - 1;
+	    this.nextTableIndex = -1;
+	    this.advance();
+	}
+
+	private void advance() {
+	    if (this.nextEntry != null && (this.nextEntry = this.nextEntry.next) != null) {
+		return;
+	    }
+
+	    while (this.nextTableIndex >= 0) {
+		if ((this.nextEntry = this.currentTable[this.nextTableIndex--]) != null) {
+		    return;
+		}
+	    }
+
+	    while (this.nextSegmentIndex >= 0) {
+		final Segment seg = ConcurrentHashMap.this.segments[this.nextSegmentIndex--];
+		if (seg.count != 0) {
+		    this.currentTable = seg.table;
+		    for (int j = this.currentTable.length - 1; j >= 0; --j) {
+			if ((this.nextEntry = this.currentTable[j]) != null) {
+			    this.nextTableIndex = j - 1;
+			    return;
+			}
+		    }
+		}
+	    }
+	}
+
+	public boolean hasNext() {
+	    return this.nextEntry != null;
+	}
+
+	public Object next() {
+	    if (this.nextEntry == null) {
+		throw new NoSuchElementException();
+	    }
+	    final HashEntry e = this.lastReturned = this.nextEntry;
+	    this.advance();
+	    if (this.type == KEYS) {
+		return e.key;
+	    }
+	    Object v = e.value;
+	    if (v == null) {
+		// Lost a race with construction or removal; reread the
+		// current mapping, which is what a weakly consistent
+		// iterator may legitimately report.
+		v = ConcurrentHashMap.this.get(e.key);
+	    }
+	    return this.type == VALUES ? v : new WriteThroughEntry(e.key, v);
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    ConcurrentHashMap.this.remove(this.lastReturned.key);
+	    this.lastReturned = null;
+	}
+    }
+
+    /**
+     * Custom Entry class used by the entry set iterator.  Its
+     * <tt>setValue</tt> changes the underlying map.
+     */
+    private class WriteThroughEntry implements Map.Entry {
+	private final Object key;
+	private Object value;
+
+	WriteThroughEntry(final Object key, final Object value) {
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	/**
+	 * Sets our entry's value and writes through to the map.  The value
+	 * to return is somewhat arbitrary here: since a WriteThroughEntry
+	 * does not necessarily track asynchronous changes, the most recent
+	 * "previous" value could be different from what we return (or could
+	 * even have been removed, in which case the put will re-establish).
+	 */
+	public Object setValue(final Object value) {
+	    if (value == null) {
+		throw new NullPointerException();
+	    }
+	    final Object oldValue = this.value;
+	    this.value = value;
+	    ConcurrentHashMap.this.put(this.key, value);
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return this.key.equals(e.getKey()) && this.value.equals(e.getValue());
+	}
+
+	public int hashCode() {
+	    return this.key.hashCode() ^ this.value.hashCode();
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+    /**
+     * Save the state of the <tt>ConcurrentHashMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData the key (Object) and value (Object) for each key-value
+     *             mapping, followed by a null pair.  The key-value mappings
+     *             are emitted in no particular order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	s.defaultWriteObject();
+
+	for (int k = 0; k < this.segments.length; ++k) {
+	    final Segment seg = this.segments[k];
+	    synchronized (seg) {
+		final HashEntry[] tab = seg.table;
+		for (int i = 0; i < tab.length; ++i) {
+		    for (HashEntry e = tab[i]; e != null; e = e.next) {
+			s.writeObject(e.key);
+			s.writeObject(e.value);
+		    }
+		}
+	    }
+	}
+	s.writeObject(null);
+	s.writeObject(null);
+    }
+
+    /**
+     * Reconstitute the <tt>ConcurrentHashMap</tt> instance from a stream
+     * (i.e., deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	s.defaultReadObject();
+
+	// Initialize each segment to be minimally sized, and let grow.
+	for (int i = 0; i < this.segments.length; ++i) {
+	    this.segments[i].setTable(new HashEntry[1]);
+	}
+
+	// Read the keys and values, and put the mappings in the table
+	while (true) {
+	    final Object key = s.readObject();
+	    final Object value = s.readObject();
+	    if (key == null) {
+		break;
+	    }
+	    this.put(key, value);
+	}
+    }
+}
@@ -0,0 +1,90 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A <tt>Map</tt> providing additional atomic <tt>putIfAbsent</tt>,
+ * <tt>remove</tt>, and <tt>replace</tt> methods.  Each of these operations
+ * is performed as a single atomic step with respect to all other operations
+ * on the map, so callers need no external synchronization to implement
+ * "check-then-act" sequences.
+ *
+ * @see ConcurrentHashMap
+ * @see Map
+ */
+public interface ConcurrentMap extends Map {
+    /**
+     * If the specified key is not already associated with a value, associate
+     * it with the given value.  This is equivalent to
+     * <pre>
+     *   if (!map.containsKey(key))
+     *       return map.put(key, value);
+     *   else
+     *       return map.get(key);
+     * </pre>
+     * except that the action is performed atomically.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws NullPointerException if the map does not permit <tt>null</tt>
+     *         keys or values, and the specified key or value is
+     *         <tt>null</tt>.
+     */
+    Object putIfAbsent(Object key, Object value);
+
+    /**
+     * Removes the entry for a key only if currently mapped to a given value.
+     * This is equivalent to
+     * <pre>
+     *   if (map.containsKey(key) &amp;&amp; map.get(key).equals(value)) {
+     *       map.remove(key);
+     *       return true;
+     *   } else return false;
+     * </pre>
+     * except that the action is performed atomically.
+     *
+     * @param key key with which the specified value is associated.
+     * @param value value expected to be associated with the specified key.
+     * @return <tt>true</tt> if the value was removed.
+     */
+    boolean remove(Object key, Object value);
+
+    /**
+     * Replaces the entry for a key only if currently mapped to a given value.
+     * This is equivalent to
+     * <pre>
+     *   if (map.containsKey(key) &amp;&amp; map.get(key).equals(oldValue)) {
+     *       map.put(key, newValue);
+     *       return true;
+     *   } else return false;
+     * </pre>
+     * except that the action is performed atomically.
+     *
+     * @param key key with which the specified value is associated.
+     * @param oldValue value expected to be associated with the specified key.
+     * @param newValue value to be associated with the specified key.
+     * @return <tt>true</tt> if the value was replaced.
+     */
+    boolean replace(Object key, Object oldValue, Object newValue);
+
+    /**
+     * Replaces the entry for a key only if currently mapped to some value.
+     * This is equivalent to
+     * <pre>
+     *   if (map.containsKey(key)) {
+     *       return map.put(key, value);
+     *   } else return null;
+     * </pre>
+     * except that the action is performed atomically.
+     *
+     * @param key key with which the specified value is associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     */
+    Object replace(Object key, Object value);
+}
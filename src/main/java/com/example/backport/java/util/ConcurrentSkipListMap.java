@@ -0,0 +1,1332 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+import com.example.backport.java.lang.Comparable;
+
+/**
+ * A scalable concurrent <tt>SortedMap</tt> implementation.  The map is
+ * sorted according to the <i>natural order</i> of its keys (see
+ * <tt>Comparable</tt>), or by the comparator provided at creation time, and
+ * provides expected average log(n) time cost for the <tt>containsKey</tt>,
+ * <tt>get</tt>, <tt>put</tt> and <tt>remove</tt> operations and their
+ * variants.  Insertion, removal, update, and access operations safely
+ * execute concurrently by multiple threads.<p>
+ *
+ * The map is a <i>skip list</i>: an ordered linked list of all mappings,
+ * the base level, under a hierarchy of sparser index levels that let
+ * searches skip over most of it.  Retrievals and traversals never lock.
+ * The links of the base level and of the index levels are volatile, and
+ * the key of a node never changes, so readers always see consistent
+ * nodes.  Updates lock only the single node they link a new node after,
+ * or unlink a node from, and a mapping is deleted by first clearing its
+ * value under the lock of its own node, so that concurrent updates of
+ * distinct parts of the map proceed in parallel.  (This is the "lazy"
+ * skip list design, which needs no atomic compare-and-swap instructions:
+ * only monitors and volatile fields.)  Index nodes of deleted mappings
+ * are unlinked by whichever search next passes them.<p>
+ *
+ * Iterators, and the <tt>subMap</tt>, <tt>headMap</tt> and
+ * <tt>tailMap</tt> views, are <i>weakly consistent</i>, returning elements
+ * reflecting the state of the map at some point at or since the creation
+ * of the iterator.  They do <i>not</i> throw
+ * <tt>ConcurrentModificationException</tt>, and may proceed concurrently
+ * with other operations.  Ascending key ordered views and their iterators
+ * are as fast as a walk of the base level.<p>
+ *
+ * Beware that, unlike in most collections, the <tt>size</tt> method is
+ * <i>not</i> a constant-time operation: it traverses the elements, and may
+ * report an inaccurate result if the map is modified during the traversal.
+ * Likewise, the bulk operations <tt>putAll</tt>, <tt>equals</tt> and
+ * <tt>clear</tt> are not guaranteed to be performed atomically.<p>
+ *
+ * Like <tt>Hashtable</tt> but unlike <tt>TreeMap</tt>, this class does
+ * <i>not</i> allow <tt>null</tt> to be used as a key or value, because
+ * some <tt>null</tt> return values cannot be reliably distinguished from
+ * the absence of elements.
+ *
+ * @see ConcurrentMap
+ * @see ConcurrentSkipListSet
+ * @see TreeMap
+ * @see Collections#synchronizedSortedMap(SortedMap)
+ */
+public class ConcurrentSkipListMap extends AbstractMap
+				   implements ConcurrentMap, SortedMap, Cloneable, Serializable {
+    private static final long serialVersionUID = -8627078645895051609L;
+
+    /**
+     * The comparator used to maintain order in this map, or null if using
+     * natural ordering.
+     *
+     * @serial
+     */
+    private final Comparator comparator;
+
+    /**
+     * The value of the base header node, which marks it as never deleted.
+     */
+    private static final Object BASE_HEADER = new Object();
+
+    /**
+     * The topmost head index of the skip list.
+     */
+    private transient volatile HeadIndex head;
+
+    /**
+     * Seed for the generation of random index levels.
+     */
+    private transient int randomSeed;
+
+    /**
+     * Constructs a new, empty map, sorted according to the keys' natural
+     * order.
+     */
+    public ConcurrentSkipListMap() {
+	this.comparator = null;
+	this.initialize();
+    }
+
+    /**
+     * Constructs a new, empty map, sorted according to the given
+     * comparator.
+     *
+     * @param c the comparator that will be used to sort this map, or
+     *          <tt>null</tt> for the keys' natural ordering.
+     */
+    public ConcurrentSkipListMap(final Comparator c) {
+	this.comparator = c;
+	this.initialize();
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map,
+     * sorted according to the keys' <i>natural order</i>.
+     *
+     * @param m the map whose mappings are to be placed in this map.
+     * @throws ClassCastException if the keys in m are not Comparable, or
+     *         are not mutually comparable.
+     * @throws NullPointerException if the specified map contains a
+     *         <tt>null</tt> key or value.
+     */
+    public ConcurrentSkipListMap(final Map m) {
+	this.comparator = null;
+	this.initialize();
+	this.putAll(m);
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given
+     * <tt>SortedMap</tt>, sorted according to the same ordering.
+     *
+     * @param m the sorted map whose mappings are to be placed in this map.
+     * @throws NullPointerException if the specified map contains a
+     *         <tt>null</tt> key or value.
+     */
+    public ConcurrentSkipListMap(final SortedMap m) {
+	this.comparator = m.comparator();
+	this.initialize();
+	this.putAll(m);
+    }
+
+    /**
+     * Initializes or resets the map to an empty base level under a single
+     * index level.
+     */
+    private void initialize() {
+	this.randomSeed = System.identityHashCode(this) | 0x0100; // never zero
+	this.head = new HeadIndex(new Node(null, BASE_HEADER, null), null, null, 1);
+    }
+
+
+    // Nodes
+
+    /**
+     * Node of the base level.  A node whose value is <tt>null</tt> has been
+     * deleted; its <tt>next</tt> link never changes afterwards, because
+     * nodes are only ever linked after, or unlinked from, a live
+     * predecessor, checked while holding the predecessor's lock.
+     */
+    static final class Node {
+	final Object key;
+	volatile Object value;
+	volatile Node next;
+
+	Node(final Object key, final Object value, final Node next) {
+	    this.key = key;
+	    this.value = value;
+	    this.next = next;
+	}
+    }
+
+    /**
+     * Node of an index level, pointing at a base node and at the index
+     * node for the same base node on the level below.
+     */
+    static class Index {
+	final Node node;
+	final Index down;
+	volatile Index right;
+
+	Index(final Node node, final Index down, final Index right) {
+	    this.node = node;
+	    this.down = down;
+	    this.right = right;
+	}
+    }
+
+    /**
+     * The first index node of a level, which keeps track of the level.
+     */
+    static final class HeadIndex extends Index {
+	final int level;
+
+	HeadIndex(final Node node, final Index down, final Index right, final int level) {
+	    super(node, down, right);
+	    this.level = level;
+	}
+    }
+
+
+    // Traversal
+
+    /**
+     * Compares two keys using the correct comparison method for this map.
+     */
+    int compare(final Object k1, final Object k2) {
+	return this.comparator==null ? ((Comparable)k1).compareTo(k2)
+				     : this.comparator.compare(k1, k2);
+    }
+
+    /**
+     * Returns the index node on the given level that is the last one with
+     * a key less than the specified key, or the head index of the level.
+     * A <tt>null</tt> key stands for a key greater than all others, which
+     * finds the last index node of the level.  Index nodes of deleted
+     * mappings met along the way are unlinked.  Returns <tt>null</tt> if
+     * the list has fewer levels, as after a concurrent <tt>clear</tt>.
+     */
+    private Index findPredecessorIndex(final Object key, final int level) {
+	restart:
+	for (;;) {
+	    final HeadIndex h = this.head;
+	    Index q = h;
+	    int j = h.level;
+	    if (j < level) {
+		return null;
+	    }
+	    for (;;) {
+		final Index r = q.right;
+		if (r != null) {
+		    final Node n = r.node;
+		    if (n.value == null) {
+			if (!this.unlinkIndex(q, r) && q.node.value == null) {
+			    continue restart;
+			}
+			continue;
+		    }
+		    if (key == null || this.compare(key, n.key) > 0) {
+			q = r;
+			continue;
+		    }
+		}
+		if (j == level) {
+		    return q;
+		}
+		q = q.down;
+		j--;
+	    }
+	}
+    }
+
+    /**
+     * Returns a base node with a key less than the specified key (or the
+     * last node, if the key is <tt>null</tt>), or the base header, from
+     * which to walk the base level towards the key.  The node may have been
+     * deleted meanwhile, in which case the caller should search again.
+     */
+    private Node findPredecessor(final Object key) {
+	return this.findPredecessorIndex(key, 1).node;
+    }
+
+    /**
+     * Unlinks index <tt>r</tt> from its predecessor <tt>q</tt>, if
+     * <tt>q</tt> is still live and still links to it.
+     */
+    private boolean unlinkIndex(final Index q, final Index r) {
+	synchronized (q) {
+	    if (q.right == r && q.node.value != null) {
+		q.right = r.right;
+		return true;
+	    }
+	    return false;
+	}
+    }
+
+    /**
+     * Unlinks the deleted node <tt>n</tt> from its predecessor
+     * <tt>b</tt>, if <tt>b</tt> is still live and still links to it.
+     */
+    private boolean unlinkNode(final Node b, final Node n) {
+	synchronized (b) {
+	    if (b.next == n && b.value != null) {
+		b.next = n.next;
+		return true;
+	    }
+	    return false;
+	}
+    }
+
+    /**
+     * Returns the base node after which a node with the specified key
+     * belongs: the last node with a smaller key, or the base header.  The
+     * node following it has a key greater than or equal to the specified
+     * one, or is <tt>null</tt>.  Deleted nodes met along the way are
+     * unlinked.
+     */
+    private Node findPredecessorNode(final Object key) {
+	Node b = this.findPredecessor(key);
+	for (;;) {
+	    final Node n = b.next;
+	    if (b.value == null) {
+		b = this.findPredecessor(key);
+		continue;
+	    }
+	    if (n == null) {
+		return b;
+	    }
+	    if (n.value == null) {
+		this.unlinkNode(b, n);
+		continue;
+	    }
+	    if (this.compare(key, n.key) <= 0) {
+		return b;
+	    }
+	    b = n;
+	}
+    }
+
+    /**
+     * Returns the live node for the specified key, or <tt>null</tt>.
+     */
+    private Node findNode(final Object key) {
+	if (key == null) {
+	    throw new NullPointerException();
+	}
+	final Node n = this.findCeiling(key, false);
+	return n != null && this.compare(key, n.key) == 0 ? n : null;
+    }
+
+    /**
+     * Returns the first live node with a key greater than or equal to the
+     * specified key (or strictly greater, if <tt>strict</tt>), or the first
+     * live node of the map if the key is <tt>null</tt>.<p>
+     *
+     * Each step reads the successor of a node before checking that the
+     * node is still live, so that the successor read was current: a walk
+     * from a deleted node could miss nodes inserted after its deletion.
+     */
+    Node findCeiling(final Object key, final boolean strict) {
+	Node b = key == null ? this.head.node : this.findPredecessor(key);
+	for (;;) {
+	    final Node n = b.next;
+	    if (b.value == null) {
+		b = key == null ? this.head.node : this.findPredecessor(key);
+		continue;
+	    }
+	    if (n == null) {
+		return null;
+	    }
+	    if (n.value == null) {
+		this.unlinkNode(b, n);
+		continue;
+	    }
+	    if (key == null) {
+		return n;
+	    }
+	    final int c = this.compare(n.key, key);
+	    if (c > 0 || c == 0 && !strict) {
+		return n;
+	    }
+	    b = n;
+	}
+    }
+
+    /**
+     * Returns the last live node with a key strictly less than the
+     * specified key, or the last live node of the map if the key is
+     * <tt>null</tt>.
+     */
+    Node findLower(final Object key) {
+	Node b = this.findPredecessor(key);
+	for (;;) {
+	    final Node n = b.next;
+	    if (b.value == null) {
+		b = this.findPredecessor(key);
+		continue;
+	    }
+	    if (n != null) {
+		if (n.value == null) {
+		    this.unlinkNode(b, n);
+		    continue;
+		}
+		if (key == null || this.compare(n.key, key) < 0) {
+		    b = n;
+		    continue;
+		}
+	    }
+	    return b.value == BASE_HEADER ? null : b;
+	}
+    }
+
+
+    // Updates
+
+    /**
+     * Main insertion method.  Adds the mapping, or replaces the value of an
+     * existing mapping unless <tt>onlyIfAbsent</tt> is set.
+     *
+     * @return the old value, or <tt>null</tt> if newly inserted.
+     */
+    private Object doPut(final Object key, final Object value, final boolean onlyIfAbsent) {
+	if (key == null || value == null) {
+	    throw new NullPointerException();
+	}
+	for (;;) {
+	    final Node b = this.findPredecessorNode(key);
+	    final Node n = b.next;
+	    final int c = n == null ? -1 : this.compare(key, n.key);
+	    if (c > 0) {
+		continue; // a smaller key was inserted meanwhile
+	    }
+	    if (c == 0) {
+		synchronized (n) {
+		    final Object v = n.value;
+		    if (v != null) {
+			if (!onlyIfAbsent) {
+			    n.value = value;
+			}
+			return v;
+		    }
+		}
+		continue; // deleted meanwhile
+	    }
+
+	    Node z = null;
+	    synchronized (b) {
+		if (b.next == n && b.value != null) {
+		    z = new Node(key, value, n);
+		    b.next = z;
+		}
+	    }
+	    if (z != null) {
+		final int level = this.randomLevel();
+		if (level > 0) {
+		    this.insertIndex(z, level);
+		}
+		return null;
+	    }
+	}
+    }
+
+    /**
+     * Returns a random level for inserting a new node: 0 for three nodes in
+     * four, and otherwise a level with a geometric distribution.
+     */
+    private int randomLevel() {
+	int x = this.randomSeed;
+	x ^= x << 13;
+	x ^= x >>> 17;
+	x ^= x << 5;
+	this.randomSeed = x;
+	if ((x & 0x80000001) != 0) { // test highest and lowest bits
+	    return 0;
+	}
+	int level = 1;
+	while (((x >>>= 1) & 1) != 0) {
+	    level++;
+	}
+	return level;
+    }
+
+    /**
+     * Creates index nodes for a newly inserted node on levels 1 through
+     * <tt>level</tt>, adding at most one level to the list, and links them
+     * in from the bottom up.
+     */
+    private void insertIndex(final Node z, int level) {
+	HeadIndex h = this.head;
+	if (level > h.level) {
+	    synchronized (this) {
+		h = this.head;
+		if (level > h.level) {
+		    level = h.level + 1;
+		    this.head = new HeadIndex(h.node, h, null, level);
+		}
+	    }
+	}
+
+	final Index[] tower = new Index[level + 1];
+	Index idx = null;
+	for (int i = 1; i <= level; i++) {
+	    tower[i] = idx = new Index(z, idx, null);
+	}
+
+	for (int i = 1; i <= level; i++) {
+	    if (z.value == null) {
+		break;
+	    }
+	    this.linkIndex(tower[i], i);
+	}
+	if (z.value == null) {
+	    // Deleted while the tower was linked; clean up after the
+	    // deleter's own pass, which may have run before some level
+	    // was linked.
+	    this.findPredecessor(z.key);
+	}
+    }
+
+    /**
+     * Links an index node into the given level, unless its node is deleted
+     * first.
+     */
+    private void linkIndex(final Index idx, final int level) {
+	final Object key = idx.node.key;
+	while (idx.node.value != null) {
+	    final Index q = this.findPredecessorIndex(key, level);
+	    if (q == null) {
+		return;
+	    }
+	    synchronized (q) {
+		final Index r = q.right;
+		if (q.node.value != null && (r == null || this.compare(key, r.node.key) < 0)) {
+		    idx.right = r;
+		    q.right = idx;
+		    return;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Main deletion method.  Deletes the mapping for the key if it is
+     * mapped, and to <tt>value</tt> if that is non-<tt>null</tt>; then
+     * unlinks the node and its index nodes.
+     *
+     * @return the old value, or <tt>null</tt> if nothing was deleted.
+     */
+    final Object doRemove(final Object key, final Object value) {
+	if (key == null) {
+	    throw new NullPointerException();
+	}
+	for (;;) {
+	    final Node b = this.findPredecessorNode(key);
+	    final Node n = b.next;
+	    final int c = n == null ? -1 : this.compare(key, n.key);
+	    if (c > 0) {
+		continue; // a smaller key was inserted meanwhile
+	    }
+	    if (c < 0) {
+		return null;
+	    }
+	    Object v;
+	    synchronized (n) {
+		v = n.value;
+		if (v != null) {
+		    if (value != null && !value.equals(v)) {
+			return null;
+		    }
+		    n.value = null;
+		}
+	    }
+	    if (v != null) {
+		this.findPredecessorNode(key); // unlinks n
+		this.findPredecessor(key);     // unlinks its index nodes
+		return v;
+	    }
+	}
+    }
+
+
+    // Map operations
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *                  currently in the map.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public boolean containsKey(final Object key) {
+	return this.findNode(key) != null;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for the key.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key, or
+     *         <tt>null</tt> if the map contains no mapping for the key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *                  currently in the map.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object get(final Object key) {
+	final Node n = this.findNode(key);
+	return n == null ? null : n.value;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *                  currently in the map.
+     * @throws NullPointerException if the key or value is <tt>null</tt>.
+     */
+    public Object put(final Object key, final Object value) {
+	return this.doPut(key, value, false);
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *                  currently in the map.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object remove(final Object key) {
+	return this.doRemove(key, null);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  This operation requires time linear in the map
+     * size.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if a mapping to <tt>value</tt> exists.
+     * @throws NullPointerException if the value is <tt>null</tt>.
+     */
+    public boolean containsValue(final Object value) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	for (Node n = this.head.node.next; n != null; n = n.next) {
+	    final Object v = n.value;
+	    if (v != null && value.equals(v)) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.  This method
+     * traverses the whole map, and its result may be inaccurate if the map
+     * is modified concurrently.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	int count = 0;
+	for (Node n = this.head.node.next; n != null; n = n.next) {
+	    if (n.value != null) {
+		count++;
+	    }
+	}
+	return count;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	return this.findCeiling(null, false) == null;
+    }
+
+    /**
+     * Removes all of the mappings from this map.  Mappings added
+     * concurrently may or may not survive.
+     */
+    public void clear() {
+	this.initialize();
+    }
+
+    /**
+     * If the specified key is not already associated with a value,
+     * associates it with the given value.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with the specified key, or
+     *         <tt>null</tt> if there was no mapping for the key.
+     * @throws NullPointerException if the key or value is <tt>null</tt>.
+     */
+    public Object putIfAbsent(final Object key, final Object value) {
+	return this.doPut(key, value, true);
+    }
+
+    /**
+     * Removes the entry for a key only if currently mapped to a given value.
+     *
+     * @param key key with which the specified value is associated.
+     * @param value value expected to be associated with the specified key.
+     * @return <tt>true</tt> if the value was removed.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public boolean remove(final Object key, final Object value) {
+	return value != null && this.doRemove(key, value) != null;
+    }
+
+    /**
+     * Replaces the entry for a key only if currently mapped to a given
+     * value.
+     *
+     * @param key key with which the specified value is associated.
+     * @param oldValue value expected to be associated with the specified key.
+     * @param newValue value to be associated with the specified key.
+     * @return <tt>true</tt> if the value was replaced.
+     * @throws NullPointerException if any of the arguments is
+     *         <tt>null</tt>.
+     */
+    public boolean replace(final Object key, final Object oldValue, final Object newValue) {
+	if (oldValue == null || newValue == null) {
+	    throw new NullPointerException();
+	}
+	final Node n = this.findNode(key);
+	if (n == null) {
+	    return false;
+	}
+	synchronized (n) {
+	    final Object v = n.value;
+	    if (v == null || !oldValue.equals(v)) {
+		return false;
+	    }
+	    n.value = newValue;
+	    return true;
+	}
+    }
+
+    /**
+     * Replaces the entry for a key only if currently mapped to some value.
+     *
+     * @param key key with which the specified value is associated.
+     * @param value value to be associated with the specified key.
+     * @return the previous value associated with the specified key, or
+     *         <tt>null</tt> if there was no mapping for the key.
+     * @throws NullPointerException if the key or value is <tt>null</tt>.
+     */
+    public Object replace(final Object key, final Object value) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	final Node n = this.findNode(key);
+	if (n == null) {
+	    return null;
+	}
+	synchronized (n) {
+	    final Object v = n.value;
+	    if (v != null) {
+		n.value = value;
+	    }
+	    return v;
+	}
+    }
+
+
+    // SortedMap operations
+
+    /**
+     * Returns the comparator used to order this map, or <tt>null</tt> if
+     * this map uses its keys' natural order.
+     *
+     * @return the comparator associated with this sorted map, or
+     *         <tt>null</tt> if it uses its keys' natural sort method.
+     */
+    public Comparator comparator() {
+	return this.comparator;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this sorted map.
+     *
+     * @return the first (lowest) key currently in this sorted map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public Object firstKey() {
+	final Node n = this.findCeiling(null, false);
+	if (n == null) {
+	    throw new NoSuchElementException();
+	}
+	return n.key;
+    }
+
+    /**
+     * Returns the last (highest) key currently in this sorted map.
+     *
+     * @return the last (highest) key currently in this sorted map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public Object lastKey() {
+	final Node n = this.findLower(null);
+	if (n == null) {
+	    throw new NoSuchElementException();
+	}
+	return n.key;
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys range from
+     * <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.  The
+     * returned map is backed by this map, is weakly consistent in the same
+     * way, and supports all optional map operations; it throws an
+     * <tt>IllegalArgumentException</tt> if the user attempts to insert a key
+     * outside the range.
+     *
+     * @param fromKey low endpoint (inclusive) of the subMap.
+     * @param toKey high endpoint (exclusive) of the subMap.
+     * @return a view of the portion of this map whose keys range from
+     *         <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.
+     * @throws IllegalArgumentException if <tt>fromKey</tt> is greater than
+     *         <tt>toKey</tt>.
+     * @throws NullPointerException if <tt>fromKey</tt> or <tt>toKey</tt> is
+     *         <tt>null</tt>.
+     */
+    public SortedMap subMap(final Object fromKey, final Object toKey) {
+	if (fromKey == null || toKey == null) {
+	    throw new NullPointerException();
+	}
+	return new SubMap(fromKey, toKey);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are strictly
+     * less than <tt>toKey</tt>.
+     *
+     * @param toKey high endpoint (exclusive) of the headMap.
+     * @return a view of the portion of this map whose keys are strictly
+     *         less than <tt>toKey</tt>.
+     * @throws NullPointerException if <tt>toKey</tt> is <tt>null</tt>.
+     * @see #subMap(Object, Object)
+     */
+    public SortedMap headMap(final Object toKey) {
+	if (toKey == null) {
+	    throw new NullPointerException();
+	}
+	return new SubMap(null, toKey);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are greater than
+     * or equal to <tt>fromKey</tt>.
+     *
+     * @param fromKey low endpoint (inclusive) of the tailMap.
+     * @return a view of the portion of this map whose keys are greater
+     *         than or equal to <tt>fromKey</tt>.
+     * @throws NullPointerException if <tt>fromKey</tt> is <tt>null</tt>.
+     * @see #subMap(Object, Object)
+     */
+    public SortedMap tailMap(final Object fromKey) {
+	if (fromKey == null) {
+	    throw new NullPointerException();
+	}
+	return new SubMap(fromKey, null);
+    }
+
+    /**
+     * Returns a shallow copy of this map.  (The keys and values themselves
+     * are not cloned.)
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	return new ConcurrentSkipListMap(this);
+    }
+
+
+    // Views
+
+    private transient Set keySet = null;
+    private transient Set entrySet = null;
+    private transient Collection values = null;
+
+    /**
+     * Returns a set view of the keys contained in this map, in ascending
+     * order.  The set is backed by the map, and supports element removal
+     * but not addition.  Its iterator is weakly consistent.
+     *
+     * @return a set view of the keys contained in this map.
+     */
+    public Set keySet() {
+	if (this.keySet == null) {
+	    this.keySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new SkipListIterator(KEYS, null, null);
+		}
+		public int size() {
+		    return ConcurrentSkipListMap.this.size();
+		}
+		public boolean isEmpty() {
+		    return ConcurrentSkipListMap.this.isEmpty();
+		}
+		public boolean contains(final Object o) {
+		    return ConcurrentSkipListMap.this.containsKey(o);
+		}
+		public boolean remove(final Object o) {
+		    return ConcurrentSkipListMap.this.remove(o) != null;
+		}
+		public void clear() {
+		    ConcurrentSkipListMap.this.clear();
+		}
+	    };
+	}
+	return this.keySet;
+    }
+
+    /**
+     * Returns a collection view of the values contained in this map, in the
+     * order of their keys.  The collection is backed by the map, and
+     * supports element removal but not addition.  Its iterator is weakly
+     * consistent.
+     *
+     * @return a collection view of the values contained in this map.
+     */
+    public Collection values() {
+	if (this.values == null) {
+	    this.values = new AbstractCollection() {
+		public Iterator iterator() {
+		    return new SkipListIterator(VALUES, null, null);
+		}
+		public int size() {
+		    return ConcurrentSkipListMap.this.size();
+		}
+		public boolean isEmpty() {
+		    return ConcurrentSkipListMap.this.isEmpty();
+		}
+		public boolean contains(final Object o) {
+		    return ConcurrentSkipListMap.this.containsValue(o);
+		}
+		public void clear() {
+		    ConcurrentSkipListMap.this.clear();
+		}
+	    };
+	}
+	return this.values;
+    }
+
+    /**
+     * Returns a set view of the mappings contained in this map, in
+     * ascending key order.  The set is backed by the map, and supports
+     * element removal but not addition.  Its iterator is weakly consistent,
+     * and <tt>setValue</tt> on an entry it returns writes through to the
+     * map.
+     *
+     * @return a set view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new SkipListIterator(ENTRIES, null, null);
+		}
+		public boolean contains(final Object o) {
+		    return ConcurrentSkipListMap.this.containsEntry(o);
+		}
+		public boolean remove(final Object o) {
+		    return ConcurrentSkipListMap.this.removeEntry(o);
+		}
+		public int size() {
+		    return ConcurrentSkipListMap.this.size();
+		}
+		public boolean isEmpty() {
+		    return ConcurrentSkipListMap.this.isEmpty();
+		}
+		public void clear() {
+		    ConcurrentSkipListMap.this.clear();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    boolean containsEntry(final Object o) {
+	if (!(o instanceof Map.Entry)) {
+	    return false;
+	}
+	final Map.Entry e = (Map.Entry) o;
+	final Object v = this.get(e.getKey());
+	return v != null && v.equals(e.getValue());
+    }
+
+    boolean removeEntry(final Object o) {
+	if (!(o instanceof Map.Entry)) {
+	    return false;
+	}
+	final Map.Entry e = (Map.Entry) o;
+	return this.remove(e.getKey(), e.getValue());
+    }
+
+    /**
+     * View of a key range of the map.  A <tt>null</tt> bound means the
+     * range is unbounded on that side.
+     */
+    private class SubMap extends AbstractMap implements ConcurrentMap, SortedMap, Serializable {
+	private static final long serialVersionUID = -7647078645895051609L;
+
+	/** Low bound (inclusive), or null if unbounded. */
+	private final Object fromKey;
+
+	/** High bound (exclusive), or null if unbounded. */
+	private final Object toKey;
+
+	SubMap(final Object fromKey, final Object toKey) {
+	    if (fromKey != null && toKey != null &&
+		ConcurrentSkipListMap.this.compare(fromKey, toKey) > 0) {
+		throw new IllegalArgumentException("fromKey > toKey");
+	    }
+	    this.fromKey = fromKey;
+	    this.toKey = toKey;
+	}
+
+	boolean inRange(final Object key) {
+	    if (key == null) {
+		throw new NullPointerException();
+	    }
+	    return (this.fromKey == null || ConcurrentSkipListMap.this.compare(key, this.fromKey) >= 0) &&
+		   (this.toKey == null || ConcurrentSkipListMap.this.compare(key, this.toKey) < 0);
+	}
+
+	// This form allows the high endpoint (as well as all legit keys)
+	private boolean inRange2(final Object key) {
+	    if (key == null) {
+		throw new NullPointerException();
+	    }
+	    return (this.fromKey == null || ConcurrentSkipListMap.this.compare(key, this.fromKey) >= 0) &&
+		   (this.toKey == null || ConcurrentSkipListMap.this.compare(key, this.toKey) <= 0);
+	}
+
+	/**
+	 * Returns true if the node is past the high bound.
+	 */
+	boolean tooHigh(final Node n) {
+	    return n == null || this.toKey != null && ConcurrentSkipListMap.this.compare(n.key, this.toKey) >= 0;
+	}
+
+	public boolean containsKey(final Object key) {
+	    return this.inRange(key) && ConcurrentSkipListMap.this.containsKey(key);
+	}
+
+	public Object get(final Object key) {
+	    return this.inRange(key) ? ConcurrentSkipListMap.this.get(key) : null;
+	}
+
+	public Object put(final Object key, final Object value) {
+	    if (!this.inRange(key)) {
+		throw new IllegalArgumentException("key out of range");
+	    }
+	    return ConcurrentSkipListMap.this.put(key, value);
+	}
+
+	public Object remove(final Object key) {
+	    return this.inRange(key) ? ConcurrentSkipListMap.this.remove(key) : null;
+	}
+
+	public Object putIfAbsent(final Object key, final Object value) {
+	    if (!this.inRange(key)) {
+		throw new IllegalArgumentException("key out of range");
+	    }
+	    return ConcurrentSkipListMap.this.putIfAbsent(key, value);
+	}
+
+	public boolean remove(final Object key, final Object value) {
+	    return this.inRange(key) && ConcurrentSkipListMap.this.remove(key, value);
+	}
+
+	public boolean replace(final Object key, final Object oldValue, final Object newValue) {
+	    return this.inRange(key) && ConcurrentSkipListMap.this.replace(key, oldValue, newValue);
+	}
+
+	public Object replace(final Object key, final Object value) {
+	    return this.inRange(key) ? ConcurrentSkipListMap.this.replace(key, value) : null;
+	}
+
+	public boolean isEmpty() {
+	    return this.tooHigh(ConcurrentSkipListMap.this.findCeiling(this.fromKey, false));
+	}
+
+	public int size() {
+	    int count = 0;
+	    for (final Iterator i = new SkipListIterator(KEYS, this.fromKey, this.toKey); i.hasNext(); i.next()) {
+		count++;
+	    }
+	    return count;
+	}
+
+	public void clear() {
+	    for (final Iterator i = new SkipListIterator(KEYS, this.fromKey, this.toKey); i.hasNext(); ) {
+		ConcurrentSkipListMap.this.remove(i.next());
+	    }
+	}
+
+	public Comparator comparator() {
+	    return ConcurrentSkipListMap.this.comparator;
+	}
+
+	public Object firstKey() {
+	    final Node n = ConcurrentSkipListMap.this.findCeiling(this.fromKey, false);
+	    if (this.tooHigh(n)) {
+		throw new NoSuchElementException();
+	    }
+	    return n.key;
+	}
+
+	public Object lastKey() {
+	    final Node n = ConcurrentSkipListMap.this.findLower(this.toKey);
+	    if (n == null || this.fromKey != null && ConcurrentSkipListMap.this.compare(n.key, this.fromKey) < 0) {
+		throw new NoSuchElementException();
+	    }
+	    return n.key;
+	}
+
+	public SortedMap subMap(final Object fromKey, final Object toKey) {
+	    if (!this.inRange(fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    if (!this.inRange2(toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    return new SubMap(fromKey, toKey);
+	}
+
+	public SortedMap headMap(final Object toKey) {
+	    if (!this.inRange2(toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    return new SubMap(this.fromKey, toKey);
+	}
+
+	public SortedMap tailMap(final Object fromKey) {
+	    if (!this.inRange(fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    return new SubMap(fromKey, this.toKey);
+	}
+
+	private transient Set entrySet = null;
+
+	public Set entrySet() {
+	    if (this.entrySet == null) {
+		this.entrySet = new AbstractSet() {
+		    public Iterator iterator() {
+			return new SkipListIterator(ENTRIES, SubMap.this.fromKey, SubMap.this.toKey);
+		    }
+		    public int size() {
+			return SubMap.this.size();
+		    }
+		    public boolean isEmpty() {
+			return SubMap.this.isEmpty();
+		    }
+		    public boolean contains(final Object o) {
+			return o instanceof Map.Entry
+			    && SubMap.this.inRange(((Map.Entry) o).getKey())
+			    && ConcurrentSkipListMap.this.containsEntry(o);
+		    }
+		    public boolean remove(final Object o) {
+			return o instanceof Map.Entry
+			    && SubMap.this.inRange(((Map.Entry) o).getKey())
+			    && ConcurrentSkipListMap.this.removeEntry(o);
+		    }
+		    public void clear() {
+			SubMap.this.clear();
+		    }
+		};
+	    }
+	    return this.entrySet;
+	}
+    }
+
+    // Types of Iterators
+    static final int KEYS = 0;
+    static final int VALUES = 1;
+    static final int ENTRIES = 2;
+
+    /**
+     * Weakly consistent iterator over the base level, from the first key
+     * greater than or equal to a low bound up to, but excluding, a high
+     * bound.  Each element's value is read once, when the iterator moves
+     * onto it, so a mapping deleted after that is still returned.
+     */
+    private class SkipListIterator implements Iterator {
+	private final int type;
+	private final Object toKey;
+	private Node next;
+	private Object nextValue;
+	private Node lastReturned;
+
+	SkipListIterator(final int type, final Object fromKey, final Object toKey) {
+	    this.type = type;
+	    this.toKey = toKey;
+	    this.advance(ConcurrentSkipListMap.this.findCeiling(fromKey, false));
+	}
+
+	/**
+	 * Moves onto the first live node from n on, stopping at the high
+	 * bound.
+	 */
+	private void advance(Node n) {
+	    for (; n != null; n = n.next) {
+		final Object v = n.value;
+		if (v != null) {
+		    if (this.toKey != null && ConcurrentSkipListMap.this.compare(n.key, this.toKey) >= 0) {
+			break;
+		    }
+		    this.next = n;
+		    this.nextValue = v;
+		    return;
+		}
+	    }
+	    this.next = null;
+	    this.nextValue = null;
+	}
+
+	public boolean hasNext() {
+	    return this.next != null;
+	}
+
+	public Object next() {
+	    final Node n = this.next;
+	    if (n == null) {
+		throw new NoSuchElementException();
+	    }
+	    final Object v = this.nextValue;
+	    this.lastReturned = n;
+	    this.advance(n.next);
+	    return this.type == KEYS ? n.key :
+		   this.type == VALUES ? v : new WriteThroughEntry(n.key, v);
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    ConcurrentSkipListMap.this.remove(this.lastReturned.key);
+	    this.lastReturned = null;
+	}
+    }
+
+    /**
+     * Custom Entry class used by the entry set iterators.  Its
+     * <tt>setValue</tt> changes the underlying map.
+     */
+    private class WriteThroughEntry implements Map.Entry {
+	private final Object key;
+	private Object value;
+
+	WriteThroughEntry(final Object key, final Object value) {
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	/**
+	 * Sets our entry's value and writes through to the map, where the
+	 * mapping is re-established if it has been removed meanwhile.
+	 */
+	public Object setValue(final Object value) {
+	    if (value == null) {
+		throw new NullPointerException();
+	    }
+	    final Object oldValue = this.value;
+	    this.value = value;
+	    ConcurrentSkipListMap.this.put(this.key, value);
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return this.key.equals(e.getKey()) && this.value.equals(e.getValue());
+	}
+
+	public int hashCode() {
+	    return this.key.hashCode() ^ this.value.hashCode();
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+    /**
+     * Save the state of the <tt>ConcurrentSkipListMap</tt> instance to a
+     * stream (i.e., serialize it).
+     *
+     * @serialData The key (Object) and value (Object) for each key-value
+     *             mapping, in key order, followed by a null pair.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	s.defaultWriteObject();
+
+	for (Node n = this.head.node.next; n != null; n = n.next) {
+	    final Object v = n.value;
+	    if (v != null) {
+		s.writeObject(n.key);
+		s.writeObject(v);
+	    }
+	}
+	s.writeObject(null);
+	s.writeObject(null);
+    }
+
+    /**
+     * Reconstitute the <tt>ConcurrentSkipListMap</tt> instance from a
+     * stream (i.e., deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	s.defaultReadObject();
+	this.initialize();
+
+	while (true) {
+	    final Object key = s.readObject();
+	    final Object value = s.readObject();
+	    if (key == null) {
+		break;
+	    }
+	    this.put(key, value);
+	}
+    }
+}
@@ -0,0 +1,262 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.Serializable;
+
+/**
+ * A scalable concurrent <tt>SortedSet</tt> implementation based on a
+ * <tt>ConcurrentSkipListMap</tt>.  The elements of the set are kept sorted
+ * according to their <i>natural order</i> (see <tt>Comparable</tt>), or by
+ * the comparator provided at creation time.<p>
+ *
+ * This implementation provides expected average log(n) time cost for the
+ * <tt>contains</tt>, <tt>add</tt> and <tt>remove</tt> operations.
+ * Insertion, removal, and access operations safely execute concurrently by
+ * multiple threads, and only lock the skip list nodes adjacent to the
+ * change.  Iterators, and the <tt>subSet</tt>, <tt>headSet</tt> and
+ * <tt>tailSet</tt> views, are <i>weakly consistent</i>, returning elements
+ * reflecting the state of the set at some point at or since the creation
+ * of the iterator.  They do <i>not</i> throw
+ * <tt>ConcurrentModificationException</tt>.<p>
+ *
+ * Beware that, unlike in most collections, the <tt>size</tt> method is
+ * <i>not</i> a constant-time operation, and that the bulk operations
+ * <tt>addAll</tt>, <tt>removeAll</tt>, <tt>retainAll</tt> and
+ * <tt>containsAll</tt> are not guaranteed to be performed atomically.
+ * This class does not permit the use of <tt>null</tt> elements.
+ *
+ * @see ConcurrentSkipListMap
+ * @see TreeSet
+ * @see Collections#synchronizedSortedSet(SortedSet)
+ */
+public class ConcurrentSkipListSet extends AbstractSet
+				   implements SortedSet, Cloneable, Serializable {
+    private static final long serialVersionUID = -2479143111061671589L;
+
+    /**
+     * The backing map, or a range view of it, which is a
+     * <tt>ConcurrentMap</tt> too.
+     *
+     * @serial
+     */
+    private final SortedMap m;
+
+    /**
+     * Constructs a new, empty set, sorted according to the elements'
+     * natural order.
+     */
+    public ConcurrentSkipListSet() {
+	this.m = new ConcurrentSkipListMap();
+    }
+
+    /**
+     * Constructs a new, empty set, sorted according to the given
+     * comparator.
+     *
+     * @param c the comparator that will be used to sort this set, or
+     *          <tt>null</tt> for the elements' natural ordering.
+     */
+    public ConcurrentSkipListSet(final Comparator c) {
+	this.m = new ConcurrentSkipListMap(c);
+    }
+
+    /**
+     * Constructs a new set containing the elements in the specified
+     * collection, sorted according to the elements' <i>natural order</i>.
+     *
+     * @param c the elements that will comprise the new set.
+     * @throws ClassCastException if the elements in c are not Comparable,
+     *         or are not mutually comparable.
+     * @throws NullPointerException if c contains a <tt>null</tt> element.
+     */
+    public ConcurrentSkipListSet(final Collection c) {
+	this.m = new ConcurrentSkipListMap();
+	this.addAll(c);
+    }
+
+    /**
+     * Constructs a new set containing the same elements as the specified
+     * sorted set, sorted according to the same ordering.
+     *
+     * @param s sorted set whose elements will comprise the new set.
+     */
+    public ConcurrentSkipListSet(final SortedSet s) {
+	this.m = new ConcurrentSkipListMap(s.comparator());
+	this.addAll(s);
+    }
+
+    /**
+     * Constructs a set backed by the given range view of a map.
+     */
+    private ConcurrentSkipListSet(final SortedMap m) {
+	this.m = m;
+    }
+
+    /**
+     * Returns a weakly consistent iterator over the elements in this set,
+     * in ascending order.
+     *
+     * @return an iterator over the elements in this set.
+     */
+    public Iterator iterator() {
+	return this.m.keySet().iterator();
+    }
+
+    /**
+     * Returns the number of elements in this set.  This method traverses
+     * the elements, and its result may be inaccurate if the set is modified
+     * concurrently.
+     *
+     * @return the number of elements in this set.
+     */
+    public int size() {
+	return this.m.size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains no elements.
+     *
+     * @return <tt>true</tt> if this set contains no elements.
+     */
+    public boolean isEmpty() {
+	return this.m.isEmpty();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified element.
+     *
+     * @param o the object to be checked for containment in this set.
+     * @return <tt>true</tt> if this set contains the specified element.
+     * @throws ClassCastException if the specified object cannot be compared
+     *            with the elements currently in the set.
+     * @throws NullPointerException if <tt>o</tt> is <tt>null</tt>.
+     */
+    public boolean contains(final Object o) {
+	return this.m.containsKey(o);
+    }
+
+    /**
+     * Adds the specified element to this set if it is not already present.
+     *
+     * @param o element to be added to this set.
+     * @return <tt>true</tt> if the set did not already contain the specified
+     *         element.
+     * @throws ClassCastException if the specified object cannot be compared
+     *            with the elements currently in the set.
+     * @throws NullPointerException if <tt>o</tt> is <tt>null</tt>.
+     */
+    public boolean add(final Object o) {
+	return ((ConcurrentMap) this.m).putIfAbsent(o, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Removes the specified element from this set if it is present.
+     *
+     * @param o object to be removed from this set, if present.
+     * @return <tt>true</tt> if the set contained the specified element.
+     * @throws ClassCastException if the specified object cannot be compared
+     *            with the elements currently in the set.
+     * @throws NullPointerException if <tt>o</tt> is <tt>null</tt>.
+     */
+    public boolean remove(final Object o) {
+	return this.m.remove(o) != null;
+    }
+
+    /**
+     * Removes all of the elements from this set.
+     */
+    public void clear() {
+	this.m.clear();
+    }
+
+    /**
+     * Returns a view of the portion of this set whose elements range from
+     * <tt>fromElement</tt>, inclusive, to <tt>toElement</tt>, exclusive.
+     * The returned sorted set is backed by this set, and is weakly
+     * consistent in the same way.
+     *
+     * @param fromElement low endpoint (inclusive) of the subSet.
+     * @param toElement high endpoint (exclusive) of the subSet.
+     * @return a view of the portion of this set whose elements range from
+     *         <tt>fromElement</tt>, inclusive, to <tt>toElement</tt>,
+     *         exclusive.
+     * @throws IllegalArgumentException if <tt>fromElement</tt> is greater
+     *         than <tt>toElement</tt>.
+     * @throws NullPointerException if <tt>fromElement</tt> or
+     *         <tt>toElement</tt> is <tt>null</tt>.
+     */
+    public SortedSet subSet(final Object fromElement, final Object toElement) {
+	return new ConcurrentSkipListSet(this.m.subMap(fromElement, toElement));
+    }
+
+    /**
+     * Returns a view of the portion of this set whose elements are strictly
+     * less than <tt>toElement</tt>.
+     *
+     * @param toElement high endpoint (exclusive) of the headSet.
+     * @return a view of the portion of this set whose elements are strictly
+     *         less than <tt>toElement</tt>.
+     * @throws NullPointerException if <tt>toElement</tt> is <tt>null</tt>.
+     */
+    public SortedSet headSet(final Object toElement) {
+	return new ConcurrentSkipListSet(this.m.headMap(toElement));
+    }
+
+    /**
+     * Returns a view of the portion of this set whose elements are greater
+     * than or equal to <tt>fromElement</tt>.
+     *
+     * @param fromElement low endpoint (inclusive) of the tailSet.
+     * @return a view of the portion of this set whose elements are greater
+     *         than or equal to <tt>fromElement</tt>.
+     * @throws NullPointerException if <tt>fromElement</tt> is <tt>null</tt>.
+     */
+    public SortedSet tailSet(final Object fromElement) {
+	return new ConcurrentSkipListSet(this.m.tailMap(fromElement));
+    }
+
+    /**
+     * Returns the comparator used to order this sorted set, or
+     * <tt>null</tt> if this set uses its elements' natural ordering.
+     *
+     * @return the comparator used to order this sorted set, or
+     *         <tt>null</tt> if this set uses its elements' natural ordering.
+     */
+    public Comparator comparator() {
+	return this.m.comparator();
+    }
+
+    /**
+     * Returns the first (lowest) element currently in this sorted set.
+     *
+     * @return the first (lowest) element currently in this sorted set.
+     * @throws    NoSuchElementException sorted set is empty.
+     */
+    public Object first() {
+	return this.m.firstKey();
+    }
+
+    /**
+     * Returns the last (highest) element currently in this sorted set.
+     *
+     * @return the last (highest) element currently in this sorted set.
+     * @throws    NoSuchElementException sorted set is empty.
+     */
+    public Object last() {
+	return this.m.lastKey();
+    }
+
+    /**
+     * Returns a shallow copy of this set.  (The elements themselves are not
+     * cloned.)  A copy of a range view is a new set holding the elements in
+     * the range.
+     *
+     * @return a shallow copy of this set.
+     */
+    public Object clone() {
+	return new ConcurrentSkipListSet((SortedSet) this);
+    }
+}
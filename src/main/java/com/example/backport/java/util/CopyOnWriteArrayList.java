@@ -0,0 +1,684 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+import com.example.backport.java.lang.UnsupportedOperationException;
+
+/**
+ * A thread-safe variant of <tt>ArrayList</tt> in which every operation that
+ * modifies the list (<tt>add</tt>, <tt>set</tt>, <tt>remove</tt> and so on)
+ * is implemented by making a fresh copy of the underlying array.
+ * Implements all optional list operations, and permits all elements,
+ * including <tt>null</tt>.<p>
+ *
+ * This is ordinarily too costly, but it may be <i>more</i> efficient than
+ * the alternatives when traversals vastly outnumber mutations, as in a
+ * registry of event listeners that is walked on every event and changed
+ * only when a listener is added or removed.  Reads take no lock at all:
+ * <tt>get</tt>, <tt>size</tt>, <tt>contains</tt> and the iterators work on
+ * whichever array was current when they started, and mutators serialize
+ * on the list's monitor.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> and
+ * <tt>listIterator</tt> methods are <i>snapshot</i> iterators: they
+ * traverse the array as it was when the iterator was created, never
+ * reflect later additions, removals or changes, and never throw
+ * <tt>ConcurrentModificationException</tt>.  Element-changing operations
+ * on the iterators themselves (<tt>remove</tt>, <tt>set</tt> and
+ * <tt>add</tt>) are not supported, and throw
+ * <tt>UnsupportedOperationException</tt>.  Views returned by
+ * <tt>subList</tt> are <i>fail-fast</i> like those of <tt>ArrayList</tt>.
+ *
+ * @see List
+ * @see ArrayList
+ * @see CopyOnWriteArraySet
+ */
+public class CopyOnWriteArrayList extends AbstractList
+				  implements Cloneable, Serializable {
+    private static final long serialVersionUID = 8673264195747942595L;
+
+    /**
+     * The array holding the elements, exactly as long as the list.  It is
+     * never modified once published; mutators replace it, under the lock,
+     * with a modified copy.
+     */
+    private transient volatile Object[] array;
+
+    /**
+     * Constructs an empty list.
+     */
+    public CopyOnWriteArrayList() {
+	this.array = new Object[0];
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection whose elements are to be placed into the
+     *          list.
+     */
+    public CopyOnWriteArrayList(final Collection c) {
+	this.array = copyOf(c.toArray(), c.size());
+    }
+
+    /**
+     * Constructs a list holding a copy of the given array.
+     *
+     * @param toCopyIn the array whose elements are to be placed into the
+     *          list.
+     */
+    public CopyOnWriteArrayList(final Object[] toCopyIn) {
+	this.array = copyOf(toCopyIn, toCopyIn.length);
+    }
+
+    /**
+     * Returns a new array holding the first <tt>length</tt> elements of
+     * <tt>a</tt>, padded with nulls if <tt>a</tt> is shorter.
+     */
+    private static Object[] copyOf(final Object[] a, final int length) {
+	final Object[] copy = new Object[length];
+	System.arraycopy(a, 0, copy, 0, Math.min(a.length, length));
+	return copy;
+    }
+
+    /**
+     * Returns the index of the first element of <tt>elements</tt> in
+     * <tt>[from, to)</tt> equal to <tt>o</tt>, or -1 if there is none.
+     */
+    private static int indexOf(final Object o, final Object[] elements,
+			       final int from, final int to) {
+	for (int i = from; i < to; i++) {
+	    if (TreeMap.valEquals(o, elements[i])) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return the number of elements in this list.
+     */
+    public int size() {
+	return this.array.length;
+    }
+
+    /**
+     * Tests if this list has no elements.
+     *
+     * @return <tt>true</tt> if this list has no elements;
+     *         <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+	return this.array.length == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param o element whose presence in this list is to be tested.
+     * @return <tt>true</tt> if this list contains the specified element.
+     */
+    public boolean contains(final Object o) {
+	final Object[] elements = this.array;
+	return indexOf(o, elements, 0, elements.length) >= 0;
+    }
+
+    /**
+     * Searches for the first occurrence of the given argument, testing for
+     * equality using the <tt>equals</tt> method.
+     *
+     * @param o an object.
+     * @return the index of the first occurrence of the argument in this
+     *         list; returns <tt>-1</tt> if the object is not found.
+     */
+    public int indexOf(final Object o) {
+	final Object[] elements = this.array;
+	return indexOf(o, elements, 0, elements.length);
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified object in
+     * this list.
+     *
+     * @param o the desired element.
+     * @return the index of the last occurrence of the specified object in
+     *         this list; returns -1 if the object is not found.
+     */
+    public int lastIndexOf(final Object o) {
+	final Object[] elements = this.array;
+	for (int i = elements.length - 1; i >= 0; i--) {
+	    if (TreeMap.valEquals(o, elements[i])) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in the
+     * correct order.
+     *
+     * @return an array containing all of the elements in this list in the
+     *         correct order.
+     */
+    public Object[] toArray() {
+	final Object[] elements = this.array;
+	return copyOf(elements, elements.length);
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in the
+     * correct order.  The runtime type of the returned array is that of the
+     * specified array.  If the list fits in the specified array, it is
+     * returned therein.  Otherwise, a new array is allocated with the
+     * runtime type of the specified array and the size of this list.<p>
+     *
+     * If the list fits in the specified array with room to spare, the
+     * element in the array immediately following the end of the collection
+     * is set to <tt>null</tt>.
+     *
+     * @param a the array into which the elements of the list are to be
+     *          stored, if it is big enough; otherwise, a new array of the
+     *          same runtime type is allocated for this purpose.
+     * @return an array containing the elements of the list.
+     * @throws ArrayStoreException if the runtime type of a is not a
+     *         supertype of the runtime type of every element in this list.
+     */
+    public Object[] toArray(Object a[]) {
+	final Object[] elements = this.array;
+	final int len = elements.length;
+	if (a.length < len) {
+	    a = (Object[])java.lang.reflect.Array.newInstance(
+				a.getClass().getComponentType(), len);
+	}
+	System.arraycopy(elements, 0, a, 0, len);
+	if (a.length > len) {
+	    a[len] = null;
+	}
+	return a;
+    }
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param index index of element to return.
+     * @return the element at the specified position in this list.
+     * @throws IndexOutOfBoundsException if index is out of range <tt>(index
+     *         &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object get(final int index) {
+	final Object[] elements = this.array;
+	RangeCheck(index, elements.length);
+	return elements[index];
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with the
+     * specified element.
+     *
+     * @param index index of element to replace.
+     * @param element element to be stored at the specified position.
+     * @return the element previously at the specified position.
+     * @throws IndexOutOfBoundsException if index is out of range <tt>(index
+     *         &lt; 0 || index &gt;= size())</tt>.
+     */
+    public synchronized Object set(final int index, final Object element) {
+	final Object[] elements = this.array;
+	RangeCheck(index, elements.length);
+	final Object oldValue = elements[index];
+	if (oldValue != element) {
+	    final Object[] newElements = copyOf(elements, elements.length);
+	    newElements[index] = element;
+	    this.array = newElements;
+	}
+	return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param o element to be appended to this list.
+     * @return <tt>true</tt> (as per the general contract of
+     *         <tt>Collection.add</tt>).
+     */
+    public synchronized boolean add(final Object o) {
+	final Object[] elements = this.array;
+	final Object[] newElements = copyOf(elements, elements.length + 1);
+	newElements[elements.length] = o;
+	this.modCount++;
+	this.array = newElements;
+	return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list.  Shifts the element currently at that position (if any) and any
+     * subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted.
+     * @param element element to be inserted.
+     * @throws IndexOutOfBoundsException if index is out of range <tt>(index
+     *         &lt; 0 || index &gt; size())</tt>.
+     */
+    public synchronized void add(final int index, final Object element) {
+	final Object[] elements = this.array;
+	final int len = elements.length;
+	if (index > len || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+len);
+	}
+	final Object[] newElements = new Object[len + 1];
+	System.arraycopy(elements, 0, newElements, 0, index);
+	newElements[index] = element;
+	System.arraycopy(elements, index, newElements, index + 1, len - index);
+	this.modCount++;
+	this.array = newElements;
+    }
+
+    /**
+     * Appends the element, if not present.
+     *
+     * @param o element to be added to this list, if absent.
+     * @return <tt>true</tt> if the element was added.
+     */
+    public synchronized boolean addIfAbsent(final Object o) {
+	final Object[] elements = this.array;
+	if (indexOf(o, elements, 0, elements.length) >= 0) {
+	    return false;
+	}
+	final Object[] newElements = copyOf(elements, elements.length + 1);
+	newElements[elements.length] = o;
+	this.modCount++;
+	this.array = newElements;
+	return true;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.  Shifts
+     * any subsequent elements to the left (subtracts one from their
+     * indices).
+     *
+     * @param index the index of the element to removed.
+     * @return the element that was removed from the list.
+     * @throws IndexOutOfBoundsException if index is out of range <tt>(index
+     *         &lt; 0 || index &gt;= size())</tt>.
+     */
+    public synchronized Object remove(final int index) {
+	final Object[] elements = this.array;
+	final int len = elements.length;
+	RangeCheck(index, len);
+	final Object oldValue = elements[index];
+	final Object[] newElements = new Object[len - 1];
+	System.arraycopy(elements, 0, newElements, 0, index);
+	System.arraycopy(elements, index + 1, newElements, index,
+			 len - index - 1);
+	this.modCount++;
+	this.array = newElements;
+	return oldValue;
+    }
+
+    /**
+     * Removes the first occurrence of the specified element from this
+     * list, if it is present.
+     *
+     * @param o element to be removed from this list, if present.
+     * @return <tt>true</tt> if the list contained the specified element.
+     */
+    public synchronized boolean remove(final Object o) {
+	final Object[] elements = this.array;
+	final int index = indexOf(o, elements, 0, elements.length);
+	if (index < 0) {
+	    return false;
+	}
+	this.remove(index);
+	return true;
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * <tt>fromIndex</tt>, inclusive and <tt>toIndex</tt>, exclusive, in a
+     * single copy.
+     *
+     * @param fromIndex index of first element to be removed.
+     * @param toIndex index after last element to be removed.
+     */
+    protected synchronized void removeRange(final int fromIndex,
+					    final int toIndex) {
+	final Object[] elements = this.array;
+	final int len = elements.length;
+	if (fromIndex < 0 || toIndex > len || toIndex < fromIndex) {
+	    throw new IndexOutOfBoundsException(
+		"fromIndex: "+fromIndex+", toIndex: "+toIndex+", Size: "+len);
+	}
+	final Object[] newElements = new Object[len - (toIndex - fromIndex)];
+	System.arraycopy(elements, 0, newElements, 0, fromIndex);
+	System.arraycopy(elements, toIndex, newElements, fromIndex,
+			 len - toIndex);
+	this.modCount++;
+	this.array = newElements;
+    }
+
+    /**
+     * Removes all of the elements from this list.
+     */
+    public synchronized void clear() {
+	this.modCount++;
+	this.array = new Object[0];
+    }
+
+    /**
+     * Appends all of the elements in the specified collection to the end
+     * of this list, in the order that they are returned by the specified
+     * collection's iterator, in a single copy.
+     *
+     * @param c the elements to be inserted into this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     */
+    public boolean addAll(final Collection c) {
+	final Object[] cs = c.toArray();
+	if (cs.length == 0) {
+	    return false;
+	}
+	synchronized (this) {
+	    final Object[] elements = this.array;
+	    final int len = elements.length;
+	    final Object[] newElements = copyOf(elements, len + cs.length);
+	    System.arraycopy(cs, 0, newElements, len, cs.length);
+	    this.modCount++;
+	    this.array = newElements;
+	}
+	return true;
+    }
+
+    /**
+     * Inserts all of the elements in the specified collection into this
+     * list, starting at the specified position, in a single copy.  Shifts
+     * the element currently at that position (if any) and any subsequent
+     * elements to the right (increases their indices).
+     *
+     * @param index index at which to insert first element from the
+     *		    specified collection.
+     * @param c elements to be inserted into this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     * @throws IndexOutOfBoundsException if index is out of range <tt>(index
+     *         &lt; 0 || index &gt; size())</tt>.
+     */
+    public boolean addAll(final int index, final Collection c) {
+	final Object[] cs = c.toArray();
+	synchronized (this) {
+	    final Object[] elements = this.array;
+	    final int len = elements.length;
+	    if (index > len || index < 0) {
+		throw new IndexOutOfBoundsException(
+		    "Index: "+index+", Size: "+len);
+	    }
+	    if (cs.length == 0) {
+		return false;
+	    }
+	    final Object[] newElements = new Object[len + cs.length];
+	    System.arraycopy(elements, 0, newElements, 0, index);
+	    System.arraycopy(cs, 0, newElements, index, cs.length);
+	    System.arraycopy(elements, index, newElements, index + cs.length,
+			     len - index);
+	    this.modCount++;
+	    this.array = newElements;
+	}
+	return true;
+    }
+
+    /**
+     * Appends all of the elements in the specified collection that are not
+     * already contained in this list, in the order that they are returned
+     * by the specified collection's iterator.  An element occurring more
+     * than once in the collection is appended only once.  Whatever the
+     * number of elements added, the array is copied at most once, so
+     * registering a batch of listeners costs one copy rather than one per
+     * listener.
+     *
+     * @param c the elements to be added into this list, if absent.
+     * @return the number of elements added.
+     */
+    public int addAllAbsent(final Collection c) {
+	final Object[] cs = c.toArray();
+	if (cs.length == 0) {
+	    return 0;
+	}
+	synchronized (this) {
+	    final Object[] elements = this.array;
+	    final int len = elements.length;
+	    final Object[] uniq = new Object[cs.length];
+	    int added = 0;
+	    for (int i = 0; i < cs.length; i++) {
+		final Object e = cs[i];
+		if (indexOf(e, elements, 0, len) < 0
+		    && indexOf(e, uniq, 0, added) < 0) {
+		    uniq[added++] = e;
+		}
+	    }
+	    if (added > 0) {
+		final Object[] newElements = copyOf(elements, len + added);
+		System.arraycopy(uniq, 0, newElements, len, added);
+		this.modCount++;
+		this.array = newElements;
+	    }
+	    return added;
+	}
+    }
+
+    /**
+     * Removes from this list all of its elements that are contained in the
+     * specified collection, in a single copy.
+     *
+     * @param c elements to be removed from this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     */
+    public synchronized boolean removeAll(final Collection c) {
+	return this.retainOrRemove(c, false);
+    }
+
+    /**
+     * Retains only the elements in this list that are contained in the
+     * specified collection, in a single copy.
+     *
+     * @param c elements to be retained in this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     */
+    public synchronized boolean retainAll(final Collection c) {
+	return this.retainOrRemove(c, true);
+    }
+
+    /**
+     * Keeps the elements whose membership in <tt>c</tt> equals
+     * <tt>retain</tt>, replacing the array only if something was dropped.
+     * Must be called with the lock held.
+     */
+    private boolean retainOrRemove(final Collection c, final boolean retain) {
+	final Object[] elements = this.array;
+	final int len = elements.length;
+	final Object[] kept = new Object[len];
+	int newLen = 0;
+	for (int i = 0; i < len; i++) {
+	    final Object e = elements[i];
+	    if (c.contains(e) == retain) {
+		kept[newLen++] = e;
+	    }
+	}
+	if (newLen == len) {
+	    return false;
+	}
+	this.modCount++;
+	this.array = copyOf(kept, newLen);
+	return true;
+    }
+
+    /**
+     * Returns a snapshot iterator over the elements in this list in proper
+     * sequence.  The iterator does not support the <tt>remove</tt> method.
+     *
+     * @return an iterator over the elements in this list in proper
+     *         sequence.
+     */
+    public Iterator iterator() {
+	return new COWIterator(this.array, 0);
+    }
+
+    /**
+     * Returns a snapshot list iterator over the elements in this list in
+     * proper sequence.  The iterator does not support the <tt>remove</tt>,
+     * <tt>set</tt> or <tt>add</tt> methods.
+     *
+     * @return a list iterator over the elements in this list in proper
+     *         sequence.
+     */
+    public ListIterator listIterator() {
+	return new COWIterator(this.array, 0);
+    }
+
+    /**
+     * Returns a snapshot list iterator over the elements in this list in
+     * proper sequence, starting at the specified position in the list.
+     *
+     * @param index index of first element to be returned from the list
+     *		    iterator (by a call to the <tt>next</tt> method).
+     * @return a list iterator over the elements in this list in proper
+     *         sequence, starting at the specified position in the list.
+     * @throws IndexOutOfBoundsException if index is out of range <tt>(index
+     *         &lt; 0 || index &gt; size())</tt>.
+     */
+    public ListIterator listIterator(final int index) {
+	final Object[] elements = this.array;
+	if (index > elements.length || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+elements.length);
+	}
+	return new COWIterator(elements, index);
+    }
+
+    /**
+     * Iterator over a fixed array captured when the iterator was created.
+     */
+    private static class COWIterator implements ListIterator {
+	/** The snapshot of the array. */
+	private final Object[] snapshot;
+
+	/** Index of the element to be returned by a call to next. */
+	private int cursor;
+
+	COWIterator(final Object[] snapshot, final int cursor) {
+	    this.snapshot = snapshot;
+	    this.cursor = cursor;
+	}
+
+	public boolean hasNext() {
+	    return this.cursor < this.snapshot.length;
+	}
+
+	public boolean hasPrevious() {
+	    return this.cursor > 0;
+	}
+
+	public Object next() {
+	    if (this.cursor >= this.snapshot.length) {
+		throw new NoSuchElementException();
+	    }
+	    return this.snapshot[this.cursor++];
+	}
+
+	public Object previous() {
+	    if (this.cursor <= 0) {
+		throw new NoSuchElementException();
+	    }
+	    return this.snapshot[--this.cursor];
+	}
+
+	public int nextIndex() {
+	    return this.cursor;
+	}
+
+	public int previousIndex() {
+	    return this.cursor - 1;
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+
+	public void set(final Object o) {
+	    throw new UnsupportedOperationException();
+	}
+
+	public void add(final Object o) {
+	    throw new UnsupportedOperationException();
+	}
+    }
+
+    /**
+     * Returns a shallow copy of this list.  (The elements themselves are
+     * not copied.)
+     *
+     * @return a clone of this list.
+     */
+    public Object clone() {
+	try {
+	    final CopyOnWriteArrayList v = (CopyOnWriteArrayList)super.clone();
+	    v.modCount = 0;
+	    return v;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Check if the given index is in range of an array of the given
+     * length.  If not, throw an appropriate runtime exception.
+     */
+    private static void RangeCheck(final int index, final int size) {
+	if (index >= size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+size);
+	}
+    }
+
+    /**
+     * Save the state of the <tt>CopyOnWriteArrayList</tt> instance to a
+     * stream (that is, serialize it).
+     *
+     * @serialData The number of elements (int), followed by all of its
+     *             elements (each an <tt>Object</tt>) in the proper order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	final Object[] elements = this.array;
+	s.defaultWriteObject();
+	s.writeInt(elements.length);
+	for (int i = 0; i < elements.length; i++) {
+	    s.writeObject(elements[i]);
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>CopyOnWriteArrayList</tt> instance from a stream
+     * (that is, deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	final int n = s.readInt();
+	final Object[] elements = new Object[n];
+	for (int i = 0; i < n; i++) {
+	    elements[i] = s.readObject();
+	}
+	this.array = elements;
+    }
+}
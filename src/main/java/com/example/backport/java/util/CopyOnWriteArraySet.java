@@ -0,0 +1,204 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.Serializable;
+
+/**
+ * A <tt>Set</tt> that uses a <tt>CopyOnWriteArrayList</tt> for all of its
+ * operations, and so shares its properties: it is best suited to small
+ * sets whose traversals vastly outnumber their mutations, such as
+ * registries of event listeners, and it is thread-safe without locking
+ * readers.  Mutators (<tt>add</tt>, <tt>remove</tt> and so on) copy the
+ * whole backing array, and <tt>contains</tt> and <tt>add</tt> take linear
+ * time.  The set permits the <tt>null</tt> element.<p>
+ *
+ * Its iterators are snapshot iterators: they traverse the set as it was
+ * when the iterator was created, never throw
+ * <tt>ConcurrentModificationException</tt>, and do not support
+ * <tt>remove</tt>.  Elements are iterated in the order they were added.
+ *
+ * @see CopyOnWriteArrayList
+ * @see Set
+ */
+public class CopyOnWriteArraySet extends AbstractSet
+				 implements Cloneable, Serializable {
+    private static final long serialVersionUID = 5457747651344034263L;
+
+    /**
+     * The list holding the elements of the set.
+     *
+     * @serial
+     */
+    private CopyOnWriteArrayList al;
+
+    /**
+     * Constructs an empty set.
+     */
+    public CopyOnWriteArraySet() {
+	this.al = new CopyOnWriteArrayList();
+    }
+
+    /**
+     * Constructs a set containing the elements of the specified
+     * collection.
+     *
+     * @param c the collection whose elements are to be placed into the set.
+     */
+    public CopyOnWriteArraySet(final Collection c) {
+	this.al = new CopyOnWriteArrayList();
+	this.al.addAllAbsent(c);
+    }
+
+    /**
+     * Returns the number of elements in this set.
+     *
+     * @return the number of elements in this set.
+     */
+    public int size() {
+	return this.al.size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains no elements.
+     *
+     * @return <tt>true</tt> if this set contains no elements.
+     */
+    public boolean isEmpty() {
+	return this.al.isEmpty();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified element.
+     *
+     * @param o element whose presence in this set is to be tested.
+     * @return <tt>true</tt> if this set contains the specified element.
+     */
+    public boolean contains(final Object o) {
+	return this.al.contains(o);
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains all of the elements of
+     * the specified collection.
+     *
+     * @param c collection to be checked for containment in this set.
+     * @return <tt>true</tt> if this set contains all of the elements of
+     *         the specified collection.
+     */
+    public boolean containsAll(final Collection c) {
+	return this.al.containsAll(c);
+    }
+
+    /**
+     * Returns a snapshot iterator over the elements in this set, in the
+     * order in which they were added.
+     *
+     * @return an iterator over the elements in this set.
+     */
+    public Iterator iterator() {
+	return this.al.iterator();
+    }
+
+    /**
+     * Returns an array containing all of the elements in this set.
+     *
+     * @return an array containing all of the elements in this set.
+     */
+    public Object[] toArray() {
+	return this.al.toArray();
+    }
+
+    /**
+     * Returns an array containing all of the elements in this set, whose
+     * runtime type is that of the specified array.
+     *
+     * @param a the array into which the elements of the set are to be
+     *          stored, if it is big enough; otherwise, a new array of the
+     *          same runtime type is allocated for this purpose.
+     * @return an array containing the elements of the set.
+     */
+    public Object[] toArray(final Object a[]) {
+	return this.al.toArray(a);
+    }
+
+    /**
+     * Adds the specified element to this set if it is not already present.
+     *
+     * @param o element to be added to this set.
+     * @return <tt>true</tt> if the set did not already contain the
+     *         specified element.
+     */
+    public boolean add(final Object o) {
+	return this.al.addIfAbsent(o);
+    }
+
+    /**
+     * Adds all of the elements in the specified collection that are not
+     * already present, copying the backing array at most once.
+     *
+     * @param c collection whose elements are to be added to this set.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public boolean addAll(final Collection c) {
+	return this.al.addAllAbsent(c) > 0;
+    }
+
+    /**
+     * Removes the specified element from this set if it is present.
+     *
+     * @param o object to be removed from this set, if present.
+     * @return <tt>true</tt> if the set contained the specified element.
+     */
+    public boolean remove(final Object o) {
+	return this.al.remove(o);
+    }
+
+    /**
+     * Removes from this set all of its elements that are contained in the
+     * specified collection, copying the backing array at most once.
+     *
+     * @param c elements to be removed from this set.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public boolean removeAll(final Collection c) {
+	return this.al.removeAll(c);
+    }
+
+    /**
+     * Retains only the elements in this set that are contained in the
+     * specified collection, copying the backing array at most once.
+     *
+     * @param c elements to be retained in this set.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public boolean retainAll(final Collection c) {
+	return this.al.retainAll(c);
+    }
+
+    /**
+     * Removes all of the elements from this set.
+     */
+    public void clear() {
+	this.al.clear();
+    }
+
+    /**
+     * Returns a shallow copy of this set.  (The elements themselves are not
+     * cloned.)
+     *
+     * @return a shallow copy of this set.
+     */
+    public Object clone() {
+	try {
+	    final CopyOnWriteArraySet v = (CopyOnWriteArraySet)super.clone();
+	    v.al = (CopyOnWriteArrayList) this.al.clone();
+	    return v;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+}
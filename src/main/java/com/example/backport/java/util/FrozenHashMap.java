@@ -0,0 +1,652 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+import com.example.backport.java.lang.UnsupportedOperationException;
+
+/**
+ * An immutable <tt>Map</tt> built once from the contents of another map and
+ * laid out for lookup speed and compactness.  The keys are placed with a
+ * <i>perfect hash function</i> computed at construction time by the
+ * "compress, hash and displace" (CHD) algorithm: every key gets a slot of
+ * its own in an array about one percent longer than the map is large, so a
+ * lookup hashes the key, reads one displacement, and compares the key found
+ * in the resulting slot with a single call to <tt>equals</tt>.  There are no
+ * entry objects and no collision chains; the map consists of a key array, a
+ * value array, and one <tt>int</tt> displacement per four keys.<p>
+ *
+ * Since the hash function is computed from the keys' <tt>hashCode</tt>
+ * values, distinct keys with equal hash codes cannot be given slots of their
+ * own.  All but one of each such group are kept in an overflow array
+ * sorted by hash code, and the slot of the one left is marked.  Only a
+ * lookup that misses a marked slot searches the overflow, by a binary
+ * search on the hash code, and calls <tt>equals</tt> only on the keys
+ * that share its hash code; maps whose keys have distinct hash codes have
+ * no overflow at all.  The
+ * <tt>null</tt> key is permitted and kept aside as well.<p>
+ *
+ * Construction takes expected time linear in the size of the source map.
+ * All mutating operations, on the map and on its collection views, throw
+ * <tt>UnsupportedOperationException</tt>.  Being immutable, the map may be
+ * shared freely between threads once it has been safely published.  The
+ * iteration order is unspecified.<p>
+ *
+ * As with any hash based map, the keys' <tt>hashCode</tt> must not change
+ * while they are in the map.  The layout is recomputed when the map is
+ * deserialized, so keys whose hash codes differ between virtual machines
+ * are supported.
+ *
+ * @see HashMap
+ * @see Collections#unmodifiableMap(Map)
+ */
+public class FrozenHashMap extends AbstractMap implements Serializable {
+    private static final long serialVersionUID = -3062383530104916383L;
+
+    /**
+     * Average number of keys per displacement bucket.  Larger values save
+     * displacement memory at the cost of a longer construction.
+     */
+    private static final int KEYS_PER_BUCKET = 4;
+
+    /**
+     * Number of keys per hundred slots.  Leaving a few slots free keeps
+     * the last buckets to be placed from searching for the only free slots
+     * of a full table, which would make construction superlinear.
+     */
+    private static final int LOAD_PERCENT = 99;
+
+    /**
+     * Maximum number of displacements tried for one bucket before the
+     * construction starts over with another seed.  With one slot in a
+     * hundred free, the number of tries a bucket needs depends on its size
+     * and on how full the table is when its turn comes, not on the size of
+     * the map; the buckets of two or three keys placed last take a few
+     * thousand, well within this bound.
+     */
+    private static final int MAX_DISPLACEMENT = 1 << 16;
+
+    private static final int GOLDEN = 0x9E3779B9;
+
+    /**
+     * The keys with a slot of their own, indexed by slot; <tt>null</tt> in
+     * the slots left free.
+     */
+    private transient Object[] keys;
+
+    /**
+     * The values, parallel to <tt>keys</tt>.
+     */
+    private transient Object[] values;
+
+    /**
+     * The displacement chosen for each bucket.
+     */
+    private transient int[] displacements;
+
+    /**
+     * The seed the bucket hash function was computed with.
+     */
+    private transient int seed;
+
+    /**
+     * Keys whose hash code equals that of a key in <tt>keys</tt>, with
+     * their values and hash codes, sorted by hash code; <tt>null</tt> if
+     * there are none.
+     */
+    private transient Object[] overflowKeys;
+    private transient Object[] overflowValues;
+    private transient int[] overflowHashes;
+
+    /**
+     * One bit per slot, set if the key in the slot shares its hash code
+     * with overflow keys; <tt>null</tt> if there is no overflow.
+     */
+    private transient int[] hasOverflow;
+
+    private transient boolean hasNullKey;
+    private transient Object nullKeyValue;
+
+    private transient int size;
+
+    /**
+     * Constructs a frozen map with the same mappings as the given map.
+     *
+     * @param m the map whose mappings are to be placed in this map.
+     */
+    public FrozenHashMap(final Map m) {
+	final int n = m.size();
+	final Object[] ks = new Object[n];
+	final Object[] vs = new Object[n];
+	int i = 0;
+	for (final Iterator it = m.entrySet().iterator(); it.hasNext(); i++) {
+	    final Map.Entry e = (Map.Entry) it.next();
+	    ks[i] = e.getKey();
+	    vs[i] = e.getValue();
+	}
+	this.build(ks, vs, i);
+    }
+
+    /**
+     * Scrambles the bits of <tt>h</tt> (the finalizer of MurmurHash3).
+     */
+    private static int mix(int h) {
+	h ^= h >>> 16;
+	h *= 0x85ebca6b;
+	h ^= h >>> 13;
+	h *= 0xc2b2ae35;
+	return h ^ h >>> 16;
+    }
+
+    private static int bucket(final int hash, final int seed, final int buckets) {
+	return (mix(hash ^ seed) & 0x7FFFFFFF) % buckets;
+    }
+
+    private static int slot(final int hash, final int displacement, final int slots) {
+	return (mix(hash + displacement * GOLDEN) & 0x7FFFFFFF) % slots;
+    }
+
+    /**
+     * Lays out the first <tt>count</tt> given mappings.  The keys are
+     * distinct.
+     */
+    private void build(final Object[] ks, final Object[] vs, final int count) {
+	this.size = count;
+
+	// Set the null key aside, and sort the rest by hash code (keeping
+	// the original index in the low word) to find duplicate hash codes.
+	final long[] sorted = new long[count];
+	int n = 0;
+	for (int i = 0; i < count; i++) {
+	    if (ks[i] == null) {
+		this.hasNullKey = true;
+		this.nullKeyValue = vs[i];
+	    } else {
+		sorted[n++] = (long) ks[i].hashCode() << 32 | i;
+	    }
+	}
+	Arrays.sort(sorted, 0, n);
+
+	final int[] hashes = new int[n];
+	final int[] indices = new int[n];
+	final boolean[] shared = new boolean[n];
+	int unique = 0;
+	int overflow = 0;
+	for (int i = 0; i < n; i++) {
+	    final int hash = (int) (sorted[i] >> 32);
+	    if (unique > 0 && hashes[unique - 1] == hash) {
+		shared[unique - 1] = true;
+		sorted[overflow++] = sorted[i];
+	    } else {
+		hashes[unique] = hash;
+		indices[unique++] = (int) sorted[i];
+	    }
+	}
+
+	if (overflow > 0) {
+	    this.overflowKeys = new Object[overflow];
+	    this.overflowValues = new Object[overflow];
+	    this.overflowHashes = new int[overflow];
+	    for (int i = 0; i < overflow; i++) {
+		final int index = (int) sorted[i];
+		this.overflowKeys[i] = ks[index];
+		this.overflowValues[i] = vs[index];
+		this.overflowHashes[i] = (int) (sorted[i] >> 32);
+	    }
+	}
+
+	if (unique == 0) {
+	    this.keys = new Object[0];
+	    this.values = new Object[0];
+	    this.displacements = new int[0];
+	    return;
+	}
+
+	final int slotCount = (int) ((long) unique * 100 / LOAD_PERCENT) + 1;
+	this.keys = new Object[slotCount];
+	this.values = new Object[slotCount];
+	final int[] slots = this.place(hashes, unique, slotCount);
+	for (int i = 0; i < unique; i++) {
+	    this.keys[slots[i]] = ks[indices[i]];
+	    this.values[slots[i]] = vs[indices[i]];
+	}
+	if (overflow > 0) {
+	    this.hasOverflow = new int[(slotCount + 31) >>> 5];
+	    for (int i = 0; i < unique; i++) {
+		if (shared[i]) {
+		    this.hasOverflow[slots[i] >>> 5] |= 1 << slots[i];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Computes a perfect hash function from the given distinct hash codes
+     * into <tt>slotCount</tt> slots, filling in <tt>seed</tt> and
+     * <tt>displacements</tt>, and returns the slot assigned to each hash
+     * code.
+     */
+    private int[] place(final int[] hashes, final int n, final int slotCount) {
+	final int bucketCount = (n + KEYS_PER_BUCKET - 1) / KEYS_PER_BUCKET;
+	final int[] bucketOf = new int[n];
+	final int[] bucketSize = new int[bucketCount];
+	final int[] start = new int[bucketCount + 1];
+	final int[] members = new int[n];
+	final int[] order = new int[bucketCount];
+	final int[] slotOf = new int[n];
+	final boolean[] taken = new boolean[slotCount];
+	final int[] candidate = new int[n];
+
+	for (int attempt = 0; ; attempt++) {
+	    final int seed = mix(attempt * GOLDEN + n);
+
+	    // Distribute the keys among the buckets.
+	    for (int b = 0; b < bucketCount; b++) {
+		bucketSize[b] = 0;
+	    }
+	    int largest = 0;
+	    for (int i = 0; i < n; i++) {
+		final int b = bucket(hashes[i], seed, bucketCount);
+		bucketOf[i] = b;
+		if (++bucketSize[b] > largest) {
+		    largest = bucketSize[b];
+		}
+	    }
+	    start[0] = 0;
+	    for (int b = 0; b < bucketCount; b++) {
+		start[b + 1] = start[b] + bucketSize[b];
+	    }
+	    for (int i = 0; i < n; i++) {
+		final int b = bucketOf[i];
+		members[start[b] + --bucketSize[b]] = i;
+	    }
+
+	    // Order the buckets by decreasing size (counting sort).
+	    final int[] sizeStart = new int[largest + 2];
+	    for (int b = 0; b < bucketCount; b++) {
+		sizeStart[largest - (start[b + 1] - start[b]) + 1]++;
+	    }
+	    for (int s = 1; s < sizeStart.length; s++) {
+		sizeStart[s] += sizeStart[s - 1];
+	    }
+	    for (int b = 0; b < bucketCount; b++) {
+		order[sizeStart[largest - (start[b + 1] - start[b])]++] = b;
+	    }
+
+	    // Displace the buckets, largest first, until every key of the
+	    // bucket lands in a free slot.
+	    for (int i = 0; i < slotCount; i++) {
+		taken[i] = false;
+	    }
+	    final int[] displacements = new int[bucketCount];
+	    boolean placed = true;
+	    for (int o = 0; o < bucketCount && placed; o++) {
+		final int b = order[o];
+		final int from = start[b];
+		final int to = start[b + 1];
+		if (from == to) {
+		    break; // only empty buckets remain
+		}
+		placed = false;
+		for (int d = 0; d < MAX_DISPLACEMENT && !placed; d++) {
+		    int j = from;
+		    for (; j < to; j++) {
+			final int s = slot(hashes[members[j]], d, slotCount);
+			if (taken[s]) {
+			    break;
+			}
+			taken[s] = true;
+			candidate[j] = s;
+		    }
+		    if (j == to) {
+			placed = true;
+			displacements[b] = d;
+			for (j = from; j < to; j++) {
+			    slotOf[members[j]] = candidate[j];
+			}
+		    } else {
+			while (j-- > from) {
+			    taken[candidate[j]] = false;
+			}
+		    }
+		}
+	    }
+
+	    if (placed) {
+		this.seed = seed;
+		this.displacements = displacements;
+		return slotOf;
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /**
+     * Returns the slot a key with the given hash code would occupy.  The
+     * map must have slots.
+     */
+    private int slotFor(final int hash) {
+	final int d = this.displacements[bucket(hash, this.seed, this.displacements.length)];
+	return slot(hash, d, this.keys.length);
+    }
+
+    /**
+     * Returns the index in the overflow arrays of the given key, which has
+     * the given hash code and missed the given slot, or <tt>-1</tt>.  The
+     * overflow is only searched if the slot is marked, and then only the
+     * keys with the same hash code are compared.
+     */
+    private int overflowIndex(final Object key, final int hash, final int slot) {
+	final int[] marks = this.hasOverflow;
+	if (marks == null || (marks[slot >>> 5] & 1 << slot) == 0) {
+	    return -1;
+	}
+	final int[] hs = this.overflowHashes;
+
+	// Find the first overflow key with the hash code
+	int low = 0;
+	int high = hs.length;
+	while (low < high) {
+	    final int mid = (low + high) >>> 1;
+	    if (hs[mid] < hash) {
+		low = mid + 1;
+	    } else {
+		high = mid;
+	    }
+	}
+	for (int i = low; i < hs.length && hs[i] == hash; i++) {
+	    if (key.equals(this.overflowKeys[i])) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for this key.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key.
+     */
+    public Object get(final Object key) {
+	if (key == null) {
+	    return this.nullKeyValue;
+	}
+	if (this.keys.length == 0) {
+	    return null;
+	}
+	final int hash = key.hashCode();
+	final int s = this.slotFor(hash);
+	if (key.equals(this.keys[s])) {
+	    return this.values[s];
+	}
+	final int i = this.overflowIndex(key, hash, s);
+	return i < 0 ? null : this.overflowValues[i];
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     */
+    public boolean containsKey(final Object key) {
+	if (key == null) {
+	    return this.hasNullKey;
+	}
+	if (this.keys.length == 0) {
+	    return false;
+	}
+	final int hash = key.hashCode();
+	final int s = this.slotFor(hash);
+	return key.equals(this.keys[s]) || this.overflowIndex(key, hash, s) >= 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  This operation takes time linear in the size of the
+     * map.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value.
+     */
+    public boolean containsValue(final Object value) {
+	if (this.hasNullKey && TreeMap.valEquals(value, this.nullKeyValue)) {
+	    return true;
+	}
+	for (int i = 0; i < this.values.length; i++) {
+	    if (this.keys[i] != null && TreeMap.valEquals(value, this.values[i])) {
+		return true;
+	    }
+	}
+	if (this.overflowValues != null) {
+	    for (int i = 0; i < this.overflowValues.length; i++) {
+		if (TreeMap.valEquals(value, this.overflowValues[i])) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     */
+    public Object put(final Object key, final Object value) {
+	throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     */
+    public Object remove(final Object key) {
+	throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     */
+    public void putAll(final Map t) {
+	throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     */
+    public void clear() {
+	throw new UnsupportedOperationException();
+    }
+
+    private transient Set entrySet = null;
+
+    /**
+     * Returns an unmodifiable set view of the mappings contained in this
+     * map.  Each element in the returned set is a <tt>Map.Entry</tt>.
+     *
+     * @return a set view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new EntryIterator();
+		}
+
+		public int size() {
+		    return FrozenHashMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry e = (Map.Entry) o;
+		    final Object key = e.getKey();
+		    return FrozenHashMap.this.containsKey(key)
+			&& TreeMap.valEquals(FrozenHashMap.this.get(key), e.getValue());
+		}
+
+		public boolean remove(final Object o) {
+		    throw new UnsupportedOperationException();
+		}
+
+		public void clear() {
+		    throw new UnsupportedOperationException();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * Iterates over the occupied slots, then the overflow, then the
+     * <tt>null</tt> key.
+     */
+    private class EntryIterator implements Iterator {
+	/** Position of the next entry, counting the free slots. */
+	private int index = 0;
+
+	/** Number of entries returned so far. */
+	private int returned = 0;
+
+	EntryIterator() {
+	    // empty
+	}
+
+	public boolean hasNext() {
+	    return this.returned < FrozenHashMap.this.size;
+	}
+
+	public Object next() {
+	    if (this.returned >= FrozenHashMap.this.size) {
+		throw new NoSuchElementException();
+	    }
+	    this.returned++;
+	    final Object[] ks = FrozenHashMap.this.keys;
+	    while (this.index < ks.length && ks[this.index] == null) {
+		this.index++;
+	    }
+	    int i = this.index++;
+	    if (i < ks.length) {
+		return new FrozenEntry(ks[i], FrozenHashMap.this.values[i]);
+	    }
+	    i -= ks.length;
+	    final Object[] oks = FrozenHashMap.this.overflowKeys;
+	    if (oks != null && i < oks.length) {
+		return new FrozenEntry(oks[i], FrozenHashMap.this.overflowValues[i]);
+	    }
+	    return new FrozenEntry(null, FrozenHashMap.this.nullKeyValue);
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+
+    /**
+     * An immutable key-value pair.
+     */
+    private static class FrozenEntry implements Map.Entry {
+	private final Object key;
+	private final Object value;
+
+	FrozenEntry(final Object key, final Object value) {
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    throw new UnsupportedOperationException();
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return TreeMap.valEquals(this.key, e.getKey())
+		&& TreeMap.valEquals(this.value, e.getValue());
+	}
+
+	public int hashCode() {
+	    return (this.key == null ? 0 : this.key.hashCode())
+		^ (this.value == null ? 0 : this.value.hashCode());
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+    /**
+     * Save the state of the <tt>FrozenHashMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *             mappings) is emitted (int), followed by the key (Object)
+     *             and value (Object) for each key-value mapping.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (final Iterator i = this.entrySet().iterator(); i.hasNext(); ) {
+	    final Map.Entry e = (Map.Entry) i.next();
+	    s.writeObject(e.getKey());
+	    s.writeObject(e.getValue());
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>FrozenHashMap</tt> instance from a stream (i.e.,
+     * deserialize it), recomputing its layout.
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	s.defaultReadObject();
+	final int n = s.readInt();
+	final Object[] ks = new Object[n];
+	final Object[] vs = new Object[n];
+	for (int i = 0; i < n; i++) {
+	    ks[i] = s.readObject();
+	    vs[i] = s.readObject();
+	}
+	this.build(ks, vs, n);
+    }
+}
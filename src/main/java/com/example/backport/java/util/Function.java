@@ -0,0 +1,24 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A function of one argument.  Functions are passed to the
+ * <tt>computeIfAbsent</tt> methods of <tt>HashMap</tt> and <tt>TreeMap</tt>
+ * to compute a value on demand.
+ *
+ * @see BiFunction
+ * @see HashMap#computeIfAbsent(Object, Function)
+ * @see TreeMap#computeIfAbsent(Object, Function)
+ */
+public interface Function {
+    /**
+     * Applies this function to the given argument.
+     *
+     * @param o the function argument.
+     * @return the function result.
+     */
+    Object apply(Object o);
+}
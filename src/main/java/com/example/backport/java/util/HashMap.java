@@ -114,6 +114,15 @@ public class HashMap extends AbstractMap implements Cloneable,
      */
     private final float loadFactor;
 
+    /**
+     * The hashing strategy used to hash and compare the keys, or
+     * <tt>null</tt> if the keys' own <tt>hashCode</tt> and <tt>equals</tt>
+     * methods are used.
+     *
+     * @serial
+     */
+    final HashingStrategy strategy;
+
     /**
      * The number of times this HashMap has been structurally modified
      * Structural modifications are those that change the number of mappings in
@@ -123,6 +132,13 @@ public class HashMap extends AbstractMap implements Cloneable,
      */
     transient int modCount = 0;
 
+    /**
+     * The number of times this HashMap has been rehashed, and the total time
+     * in milliseconds those rehashes took.  Reported by statistics().
+     */
+    transient int resizeCount;
+    transient long resizeMillis;
+
     /**
      * Constructs a new, empty map with the specified initial
      * capacity and the specified load factor.
@@ -132,7 +148,15 @@ public class HashMap extends AbstractMap implements Cloneable,
      * @throws     IllegalArgumentException  if the initial capacity is less
      *               than zero, or if the load factor is nonpositive.
      */
-    public HashMap(int initialCapacity, final float loadFactor) {
+    public HashMap(final int initialCapacity, final float loadFactor) {
+	this(initialCapacity, loadFactor, null);
+    }
+
+    /**
+     * Constructs a new, empty map with the specified initial capacity, load
+     * factor and hashing strategy, which may be <tt>null</tt>.
+     */
+    HashMap(int initialCapacity, final float loadFactor, final HashingStrategy strategy) {
 	if (initialCapacity < 0) {
 		throw new IllegalArgumentException("Illegal Initial Capacity: "+
 		                                       initialCapacity);
@@ -145,8 +169,10 @@ public class HashMap extends AbstractMap implements Cloneable,
 		initialCapacity = 1;
 	}
 	this.loadFactor = loadFactor;
+	this.strategy = strategy;
 	this.table = new Entry[initialCapacity];
 	this.threshold = (int)(initialCapacity * loadFactor);
+	this.init();
     }
 
     /**
@@ -180,6 +206,34 @@ public class HashMap extends AbstractMap implements Cloneable,
 	this.putAll(t);
     }
 
+    /**
+     * Initialization hook for subclasses.  This method is called in all
+     * constructors and pseudo-constructors (clone, readObject) after the
+     * HashMap has been initialized but before any entries have been inserted.
+     * (In the absence of this method, readObject would require explicit
+     * knowledge of subclasses.)
+     */
+    void init() {
+    }
+
+    /**
+     * Returns the hash code of the specified non-<tt>null</tt> key.
+     */
+    final int hash(final Object key) {
+	return this.strategy == null ? key.hashCode() : this.strategy.hashCode(key);
+    }
+
+    /**
+     * Tests whether the specified non-<tt>null</tt> key equals the key of an
+     * entry.
+     */
+    final boolean eq(final Object key, final Object entryKey) {
+	if (this.strategy == null) {
+	    return key.equals(entryKey);
+	}
+	return entryKey != null && this.strategy.equals(key, entryKey);
+    }
+
     /**
      * Returns the number of key-value mappings in this map.
      *
@@ -241,10 +295,10 @@ public class HashMap extends AbstractMap implements Cloneable,
     public boolean containsKey(final Object key) {
 	final Entry tab[] = this.table;
         if (key != null) {
-            final int hash = key.hashCode();
+            final int hash = this.hash(key);
             final int index = (hash & 0x7FFFFFFF) % tab.length;
             for (Entry e = tab[index]; e != null; e = e.next) {
-		if (e.hash==hash && key.equals(e.key)) {
+		if (e.hash==hash && this.eq(key, e.key)) {
 			return true;
 		}
 	}
@@ -271,20 +325,29 @@ public class HashMap extends AbstractMap implements Cloneable,
      * @param key key whose associated value is to be returned.
      */
     public Object get(final Object key) {
+	final Entry e = this.getEntry(key);
+	return e == null ? null : e.value;
+    }
+
+    /**
+     * Returns the entry associated with the specified key in the HashMap.
+     * Returns <tt>null</tt> if the HashMap contains no mapping for this key.
+     */
+    Entry getEntry(final Object key) {
 	final Entry tab[] = this.table;
 
         if (key != null) {
-            final int hash = key.hashCode();
+            final int hash = this.hash(key);
             final int index = (hash & 0x7FFFFFFF) % tab.length;
             for (Entry e = tab[index]; e != null; e = e.next) {
-		if (e.hash == hash && key.equals(e.key)) {
-			return e.value;
+		if (e.hash == hash && this.eq(key, e.key)) {
+			return e;
 		}
 	}
 	} else {
             for (Entry e = tab[0]; e != null; e = e.next) {
 		if (e.key==null) {
-			return e.value;
+			return e;
 		}
 	}
         }
@@ -298,6 +361,7 @@ public class HashMap extends AbstractMap implements Cloneable,
      * number of keys in this map exceeds its capacity and load factor.
      */
     private void rehash() {
+	final long start = System.currentTimeMillis();
 	final int oldCapacity = this.table.length;
 	final Entry oldMap[] = this.table;
 
@@ -318,6 +382,9 @@ public class HashMap extends AbstractMap implements Cloneable,
 		newMap[index] = e;
 	    }
 	}
+
+	this.resizeCount++;
+	this.resizeMillis += System.currentTimeMillis() - start;
     }
 
     /**
@@ -339,12 +406,13 @@ public class HashMap extends AbstractMap implements Cloneable,
         int index = 0;
 
         if (key != null) {
-            hash = key.hashCode();
+            hash = this.hash(key);
             index = (hash & 0x7FFFFFFF) % tab.length;
             for (Entry e = tab[index] ; e != null ; e = e.next) {
-                if (e.hash == hash && key.equals(e.key)) {
+                if (e.hash == hash && this.eq(key, e.key)) {
                     final Object old = e.value;
                     e.value = value;
+                    e.recordAccess(this);
                     return old;
                 }
             }
@@ -353,25 +421,53 @@ public class HashMap extends AbstractMap implements Cloneable,
                 if (e.key == null) {
                     final Object old = e.value;
                     e.value = value;
+                    e.recordAccess(this);
                     return old;
                 }
             }
         }
 
+	this.addEntry(hash, key, value, index);
+	return null;
+    }
+
+    /**
+     * Adds a new entry with the specified key, value and hash code to the
+     * specified bucket, rehashing the table first if the threshold has been
+     * reached.  It is the responsibility of this method to increment
+     * <tt>modCount</tt>.
+     *
+     * Subclasses override this to alter the behavior of the put method.
+     */
+    void addEntry(final int hash, final Object key, final Object value, int index) {
 	this.modCount++;
 	if (this.count >= this.threshold) {
 	    // Rehash the table if the threshold is exceeded
 	    this.rehash();
 
-            tab = this.table;
-            index = (hash & 0x7FFFFFFF) % tab.length;
+            index = (hash & 0x7FFFFFFF) % this.table.length;
 	}
 
-	// Creates the new entry.
-	final Entry e = new Entry(hash, key, value, tab[index]);
-	tab[index] = e;
+	this.createEntry(hash, key, value, index);
+    }
+
+    /**
+     * Like addEntry, except that this version is used when creating entries
+     * as part of Map construction or "pseudo-construction" (cloning,
+     * deserialization).  This version needn't worry about modCount or
+     * resizing the table.
+     */
+    void createEntry(final int hash, final Object key, final Object value, final int index) {
+	this.table[index] = this.newEntry(hash, key, value, this.table[index]);
 	this.count++;
-	return null;
+    }
+
+    /**
+     * Creates the new collision list entry.  Subclasses override this to
+     * attach their own per-entry state.
+     */
+    Entry newEntry(final int hash, final Object key, final Object value, final Entry next) {
+	return new Entry(hash, key, value, next);
     }
 
     /**
@@ -384,15 +480,31 @@ public class HashMap extends AbstractMap implements Cloneable,
      *	       with the specified key.
      */
     public Object remove(final Object key) {
+	final Entry e = this.removeEntryForKey(key);
+	if (e == null) {
+		return null;
+	}
+
+	final Object oldValue = e.value;
+	e.value = null;
+	return oldValue;
+    }
+
+    /**
+     * Removes and returns the entry associated with the specified key in the
+     * HashMap.  Returns <tt>null</tt> if the HashMap contains no mapping for
+     * this key.
+     */
+    Entry removeEntryForKey(final Object key) {
 	final Entry tab[] = this.table;
 
         if (key != null) {
-            final int hash = key.hashCode();
+            final int hash = this.hash(key);
             final int index = (hash & 0x7FFFFFFF) % tab.length;
 
             for (Entry e = tab[index], prev = null; e != null;
                  prev = e, e = e.next) {
-                if (e.hash == hash && key.equals(e.key)) {
+                if (e.hash == hash && this.eq(key, e.key)) {
                     this.modCount++;
                     if (prev != null) {
 			prev.next = e.next;
@@ -401,9 +513,8 @@ public class HashMap extends AbstractMap implements Cloneable,
 		}
 
                     this.count--;
-                    final Object oldValue = e.value;
-                    e.value = null;
-                    return oldValue;
+                    e.recordRemoval(this);
+                    return e;
                 }
             }
         } else {
@@ -418,9 +529,8 @@ public class HashMap extends AbstractMap implements Cloneable,
 		}
 
                     this.count--;
-                    final Object oldValue = e.value;
-                    e.value = null;
-                    return oldValue;
+                    e.recordRemoval(this);
+                    return e;
                 }
             }
         }
@@ -428,6 +538,219 @@ public class HashMap extends AbstractMap implements Cloneable,
 	return null;
     }
 
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>defaultValue</tt> if the map contains no mapping for the key.
+     * Unlike <tt>containsKey</tt> followed by <tt>get</tt>, this method
+     * searches the table only once.
+     *
+     * @param key key whose associated value is to be returned.
+     * @param defaultValue the value to return if the key is not mapped.
+     * @return the value to which this map maps the specified key, or
+     *	       <tt>defaultValue</tt>.
+     */
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+	final Entry e = this.getEntry(key);
+	if (e == null) {
+	    return defaultValue;
+	}
+	e.recordAccess(this);
+	return e.value;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-<tt>null</tt> value,
+     * computes its value with the given function and enters it into this
+     * map unless it is <tt>null</tt>.  The bucket of the key is searched
+     * only once, whether or not a mapping is added.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key with which the computed value is to be associated.
+     * @param function the function computing the value.
+     * @return the current (existing or computed) value associated with the
+     *	       key, or <tt>null</tt> if the computed value is <tt>null</tt>.
+     */
+    public Object computeIfAbsent(final Object key, final Function function) {
+	final int hash = key == null ? 0 : this.hash(key);
+	final int index = (hash & 0x7FFFFFFF) % this.table.length;
+	Entry e = this.table[index];
+	while (e != null && !this.keyMatches(e, hash, key)) {
+	    e = e.next;
+	}
+	if (e != null && e.value != null) {
+	    e.recordAccess(this);
+	    return e.value;
+	}
+
+	final int expectedModCount = this.modCount;
+	final Object value = function.apply(key);
+	if (this.modCount != expectedModCount) {
+	    throw new ConcurrentModificationException();
+	}
+	if (value != null) {
+	    if (e != null) {
+		e.value = value;
+		e.recordAccess(this);
+	    } else {
+		this.addEntry(hash, key, value, index);
+	    }
+	}
+	return value;
+    }
+
+    /**
+     * If the specified key is mapped to a non-<tt>null</tt> value, computes
+     * a new value from the key and that value with the given function, and
+     * replaces the mapping with it, or removes the mapping if the new value
+     * is <tt>null</tt>.  The bucket of the key is searched only once.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key whose mapping is to be updated.
+     * @param function the function computing the new value.
+     * @return the new value associated with the key, or <tt>null</tt> if
+     *	       there is none.
+     */
+    public Object computeIfPresent(final Object key, final BiFunction function) {
+	final int hash = key == null ? 0 : this.hash(key);
+	final int index = (hash & 0x7FFFFFFF) % this.table.length;
+	Entry prev = null;
+	Entry e = this.table[index];
+	while (e != null && !this.keyMatches(e, hash, key)) {
+	    prev = e;
+	    e = e.next;
+	}
+	if (e == null || e.value == null) {
+	    return null;
+	}
+	final int expectedModCount = this.modCount;
+	return this.update(e, prev, index, function.apply(key, e.value), expectedModCount);
+    }
+
+    /**
+     * Computes a new value for the specified key from the key and its
+     * current value (<tt>null</tt> if there is none) with the given
+     * function.  If the new value is <tt>null</tt>, the mapping is removed
+     * (or remains absent); otherwise, the key is mapped to it.  The bucket of
+     * the key is searched only once.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key with which the computed value is to be associated.
+     * @param function the function computing the new value.
+     * @return the new value associated with the key, or <tt>null</tt> if
+     *	       there is none.
+     */
+    public Object compute(final Object key, final BiFunction function) {
+	final int hash = key == null ? 0 : this.hash(key);
+	final int index = (hash & 0x7FFFFFFF) % this.table.length;
+	Entry prev = null;
+	Entry e = this.table[index];
+	while (e != null && !this.keyMatches(e, hash, key)) {
+	    prev = e;
+	    e = e.next;
+	}
+	final int expectedModCount = this.modCount;
+	if (e != null) {
+	    return this.update(e, prev, index, function.apply(key, e.value), expectedModCount);
+	}
+
+	final Object value = function.apply(key, null);
+	if (this.modCount != expectedModCount) {
+	    throw new ConcurrentModificationException();
+	}
+	if (value != null) {
+	    this.addEntry(hash, key, value, index);
+	}
+	return value;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-<tt>null</tt> value, maps
+     * it to the given value; otherwise, combines the current value and the
+     * given one with the given function, and replaces the mapping with the
+     * result, or removes the mapping if the result is <tt>null</tt>.  This
+     * is the natural way to count or accumulate per key:
+     * <pre>
+     *     counts.merge(word, ONE, SUM);
+     * </pre>
+     * The bucket of the key is searched only once.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key with which the resulting value is to be associated.
+     * @param value the non-<tt>null</tt> value to merge in.
+     * @param function the function combining the current and given values.
+     * @return the new value associated with the key, or <tt>null</tt> if
+     *	       there is none.
+     * @throws NullPointerException if <tt>value</tt> is <tt>null</tt>.
+     */
+    public Object merge(final Object key, final Object value, final BiFunction function) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	final int hash = key == null ? 0 : this.hash(key);
+	final int index = (hash & 0x7FFFFFFF) % this.table.length;
+	Entry prev = null;
+	Entry e = this.table[index];
+	while (e != null && !this.keyMatches(e, hash, key)) {
+	    prev = e;
+	    e = e.next;
+	}
+	if (e == null) {
+	    this.addEntry(hash, key, value, index);
+	    return value;
+	}
+	if (e.value == null) {
+	    e.value = value;
+	    e.recordAccess(this);
+	    return value;
+	}
+	final int expectedModCount = this.modCount;
+	return this.update(e, prev, index, function.apply(e.value, value), expectedModCount);
+    }
+
+    /**
+     * Tests whether the specified entry holds the specified key, whose hash
+     * code is <tt>hash</tt>.
+     */
+    private boolean keyMatches(final Entry e, final int hash, final Object key) {
+	return e.hash == hash && (key == null ? e.key == null : this.eq(key, e.key));
+    }
+
+    /**
+     * Stores a value computed for the specified entry, which follows
+     * <tt>prev</tt> (or heads the chain) in bucket <tt>index</tt>, or
+     * removes the entry if the value is <tt>null</tt>.  Throws
+     * <tt>ConcurrentModificationException</tt> if the computation modified
+     * the map.
+     */
+    private Object update(final Entry e, final Entry prev, final int index,
+			  final Object value, final int expectedModCount) {
+	if (this.modCount != expectedModCount) {
+	    throw new ConcurrentModificationException();
+	}
+	if (value == null) {
+	    this.modCount++;
+	    if (prev != null) {
+		prev.next = e.next;
+	    } else {
+		this.table[index] = e.next;
+	    }
+	    this.count--;
+	    e.recordRemoval(this);
+	} else {
+	    e.value = value;
+	    e.recordAccess(this);
+	}
+	return value;
+    }
+
     /**
      * Copies all of the mappings from the specified map to this one.
      *
@@ -466,14 +789,22 @@ public class HashMap extends AbstractMap implements Cloneable,
 	try {
 	    final HashMap t = (HashMap)super.clone();
 	    t.table = new Entry[this.table.length];
-	    for (int i = this.table.length ; i-- > 0 ; ) {
-		t.table[i] = this.table[i] != null
-		    ? (Entry)this.table[i].clone() : null;
-	    }
+	    t.count = 0;
 	    t.keySet = null;
 	    t.entrySet = null;
             t.values = null;
 	    t.modCount = 0;
+	    t.resizeCount = 0;
+	    t.resizeMillis = 0;
+	    t.init();
+
+	    // Copy in iteration order, so that subclasses which maintain an
+	    // ordering of their own get an identically ordered copy.
+	    for (final Iterator i = this.newIterator(ENTRIES); i.hasNext(); ) {
+		final Entry e = (Entry) i.next();
+		t.createEntry(e.hash, e.key, e.value,
+			      (e.hash & 0x7FFFFFFF) % t.table.length);
+	    }
 	    return t;
 	} catch (final CloneNotSupportedException e) {
 	    // this shouldn't happen, since we are Cloneable
@@ -502,7 +833,7 @@ public class HashMap extends AbstractMap implements Cloneable,
 	if (this.keySet == null) {
 	    this.keySet = new AbstractSet() {
 		public Iterator iterator() {
-		    return new HashIterator(KEYS);
+		    return HashMap.this.newIterator(KEYS);
 		}
 		public int size() {
 		    return HashMap.this.count;
@@ -536,7 +867,7 @@ public class HashMap extends AbstractMap implements Cloneable,
 	if (this.values==null) {
 	    this.values = new AbstractCollection() {
                 public Iterator iterator() {
-                    return new HashIterator(VALUES);
+                    return HashMap.this.newIterator(VALUES);
                 }
                 public int size() {
                     return HashMap.this.count;
@@ -569,7 +900,7 @@ public class HashMap extends AbstractMap implements Cloneable,
 	if (this.entrySet==null) {
 	    this.entrySet = new AbstractSet() {
                 public Iterator iterator() {
-                    return new HashIterator(ENTRIES);
+                    return HashMap.this.newIterator(ENTRIES);
                 }
 
                 public boolean contains(final Object o) {
@@ -579,11 +910,11 @@ public class HashMap extends AbstractMap implements Cloneable,
                     final Map.Entry entry = (Map.Entry)o;
                     final Object key = entry.getKey();
                     final Entry tab[] = HashMap.this.table;
-                    final int hash = key==null ? 0 : key.hashCode();
+                    final int hash = key==null ? 0 : HashMap.this.hash(key);
                     final int index = (hash & 0x7FFFFFFF) % tab.length;
 
                     for (Entry e = tab[index]; e != null; e = e.next) {
-			if (e.hash==hash && e.equals(entry)) {
+			if (e.hash==hash && HashMap.this.matches(e, key, entry.getValue())) {
 				return true;
 			}
 		}
@@ -597,12 +928,12 @@ public class HashMap extends AbstractMap implements Cloneable,
                     final Map.Entry entry = (Map.Entry)o;
                     final Object key = entry.getKey();
                     final Entry tab[] = HashMap.this.table;
-                    final int hash = key==null ? 0 : key.hashCode();
+                    final int hash = key==null ? 0 : HashMap.this.hash(key);
                     final int index = (hash & 0x7FFFFFFF) % tab.length;
 
                     for (Entry e = tab[index], prev = null; e != null;
                          prev = e, e = e.next) {
-                        if (e.hash==hash && e.equals(entry)) {
+                        if (e.hash==hash && HashMap.this.matches(e, key, entry.getValue())) {
                             HashMap.this.modCount++;
                             if (prev != null) {
 				prev.next = e.next;
@@ -611,6 +942,7 @@ public class HashMap extends AbstractMap implements Cloneable,
 			}
 
                             HashMap.this.count--;
+                            e.recordRemoval(HashMap.this);
                             e.value = null;
                             return true;
                         }
@@ -631,10 +963,19 @@ public class HashMap extends AbstractMap implements Cloneable,
 	return this.entrySet;
     }
 
+    /**
+     * Tests whether the specified entry maps the specified key to the
+     * specified value.
+     */
+    final boolean matches(final Entry e, final Object key, final Object value) {
+	return (key == null ? e.key == null : this.eq(key, e.key))
+	    && (value == null ? e.value == null : value.equals(e.value));
+    }
+
     /**
      * HashMap collision list entry.
      */
-    private static class Entry implements Map.Entry {
+    static class Entry implements Map.Entry {
 	int hash;
 	Object key;
 	Object value;
@@ -647,11 +988,6 @@ public class HashMap extends AbstractMap implements Cloneable,
 	    this.next = next;
 	}
 
-	protected Object clone() {
-	    return new Entry(this.hash, this.key, this.value,
-			     this.next==null ? null : (Entry)this.next.clone());
-	}
-
 	// Map.Entry Ops
 
 	public Object getKey() {
@@ -685,14 +1021,39 @@ public class HashMap extends AbstractMap implements Cloneable,
 	public String toString() {
 	    return this.key+"="+this.value;
 	}
+
+	/**
+	 * This method is invoked whenever the value in an entry is
+	 * overwritten by an invocation of put(k,v) for a key k that's already
+	 * in the HashMap.
+	 */
+	void recordAccess(final HashMap m) {
+	    // empty
+	}
+
+	/**
+	 * This method is invoked whenever the entry is removed from the
+	 * table.
+	 */
+	void recordRemoval(final HashMap m) {
+	    // empty
+	}
     }
 
     // Types of Iterators
-    private static final int KEYS = 0;
-    private static final int VALUES = 1;
-    private static final int ENTRIES = 2;
+    static final int KEYS = 0;
+    static final int VALUES = 1;
+    static final int ENTRIES = 2;
 
-    private class HashIterator implements Iterator {
+    /**
+     * Returns a new iterator of the given type over this map.  Subclasses
+     * override this to change the iteration order.
+     */
+    Iterator newIterator(final int type) {
+	return new HashIterator(type);
+    }
+
+    class HashIterator implements Iterator {
 	Entry[] table = HashMap.this.table;
 	int index = this.table.length;
 	Entry entry = null;
@@ -704,7 +1065,7 @@ public class HashMap extends AbstractMap implements Cloneable,
 	 * List should have.  If this expectation is violated, the iterator
 	 * has detected concurrent modification.
 	 */
-	private int expectedModCount = HashMap.this.modCount;
+	int expectedModCount = HashMap.this.modCount;
 
 	HashIterator(final int type) {
 	    this.type = type;
@@ -757,6 +1118,7 @@ public class HashMap extends AbstractMap implements Cloneable,
 			prev.next = e.next;
 		}
 		    HashMap.this.count--;
+		    e.recordRemoval(HashMap.this);
 		    this.lastReturned = null;
 		    return;
 		}
@@ -774,7 +1136,7 @@ public class HashMap extends AbstractMap implements Cloneable,
      *		   <i>size</i> of the HashMap (the number of key-value
      *		   mappings), followed by the key (Object) and value (Object)
      *		   for each key-value mapping represented by the HashMap
-     * The key-value mappings are emitted in no particular order.
+     * The key-value mappings are emitted in iteration order.
      */
     private void writeObject(final java.io.ObjectOutputStream s)
         throws IOException
@@ -789,14 +1151,10 @@ public class HashMap extends AbstractMap implements Cloneable,
 	s.writeInt(this.count);
 
         // Write out keys and values (alternating)
-	for (int index = this.table.length-1; index >= 0; index--) {
-	    Entry entry = this.table[index];
-
-	    while (entry != null) {
-		s.writeObject(entry.key);
-		s.writeObject(entry.value);
-		entry = entry.next;
-	    }
+	for (final Iterator i = this.newIterator(ENTRIES); i.hasNext(); ) {
+	    final Entry entry = (Entry) i.next();
+	    s.writeObject(entry.key);
+	    s.writeObject(entry.value);
 	}
     }
 
@@ -816,15 +1174,52 @@ public class HashMap extends AbstractMap implements Cloneable,
 	final int numBuckets = s.readInt();
 	this.table = new Entry[numBuckets];
 
+	this.init();  // Give subclass a chance to do its thing.
+
 	// Read in size (number of Mappings)
 	final int size = s.readInt();
 
-	// Read the keys and values, and put the mappings in the HashMap
+	// Read the keys and values, and put the mappings in the HashMap.
+	// The keys are known to be distinct and to fit below the threshold,
+	// so neither the duplicate check nor the subclass put hooks apply.
 	for (int i=0; i<size; i++) {
 	    final Object key = s.readObject();
 	    final Object value = s.readObject();
-	    this.put(key, value);
+	    final int hash = key == null ? 0 : this.hash(key);
+	    this.createEntry(hash, key, value, (hash & 0x7FFFFFFF) % numBuckets);
+	}
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of this map's
+     * hash table: its capacity and load, the chain length histogram, the
+     * expected number of probes per lookup, the number of keys with
+     * duplicate hash codes, and the number and duration of the rehashes
+     * performed so far.  This method takes time proportional to the
+     * capacity of this map plus its size, and allocates nothing in
+     * proportion to either except a scratch array as long as the longest
+     * chain.
+     *
+     * @return the statistics of this map's hash table.
+     */
+    public HashStatistics statistics() {
+	final Entry tab[] = this.table;
+	final HashStatistics statistics = new HashStatistics(tab.length, this.loadFactor);
+	int hashes[] = new int[8];
+	for (int index = 0; index < tab.length; index++) {
+	    int length = 0;
+	    for (Entry e = tab[index]; e != null; e = e.next) {
+		if (length == hashes.length) {
+		    final int newHashes[] = new int[length * 2];
+		    System.arraycopy(hashes, 0, newHashes, 0, length);
+		    hashes = newHashes;
+		}
+		hashes[length++] = e.hash;
+	    }
+	    statistics.addChain(hashes, length);
 	}
+	statistics.addResizes(this.resizeCount, this.resizeMillis);
+	return statistics;
     }
 
     int capacity() {
@@ -0,0 +1,628 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements the <tt>Set</tt> interface with a hash table of its
+ * own, whose nodes hold only an element, its hash code and the next node of
+ * the collision chain.  Unlike a set backed by a <tt>HashMap</tt>, it spends
+ * no memory on values or on entry objects able to hold them.  It makes no
+ * guarantees as to the iteration order of the set; in particular, it does
+ * not guarantee that the order will remain constant over time.  This class
+ * permits the <tt>null</tt> element.<p>
+ *
+ * This class offers constant time performance for the basic operations
+ * (<tt>add</tt>, <tt>remove</tt>, <tt>contains</tt> and <tt>size</tt>),
+ * assuming the hash function disperses the elements properly among the
+ * buckets.  Iterating over this set requires time proportional to the sum of
+ * the <tt>HashSet</tt> instance's size (the number of elements) plus the
+ * "capacity" of the table (the number of buckets).  The capacity and load
+ * factor have the same meaning as for <tt>HashMap</tt>.<p>
+ *
+ * The bulk operations <tt>addAll</tt>, <tt>removeAll</tt> and
+ * <tt>retainAll</tt> take a faster path when their argument is a
+ * <tt>HashSet</tt> as well: they walk the argument's (or this set's) nodes
+ * directly and reuse the hash codes cached in them, so no element's
+ * <tt>hashCode</tt> method is called, and <tt>addAll</tt> grows the table
+ * at most once.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a set concurrently, and at least one of the threads
+ * modifies the set, it <i>must</i> be synchronized externally.  This is
+ * typically accomplished by synchronizing on some object that naturally
+ * encapsulates the set.  If no such object exists, the set should be
+ * "wrapped" using the <tt>Collections.synchronizedSet</tt> method.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> method are
+ * <i>fail-fast</i>: if the set is modified at any time after the iterator is
+ * created, in any way except through the iterator's own <tt>remove</tt>
+ * method, the iterator throws a <tt>ConcurrentModificationException</tt>.
+ *
+ * @see Collection
+ * @see Set
+ * @see LinkedHashSet
+ * @see TreeSet
+ * @see HashMap
+ */
+public class HashSet extends AbstractSet implements Cloneable, Serializable {
+    private static final long serialVersionUID = -5024744406713321676L;
+
+    /**
+     * The hash table data.
+     */
+    transient Node table[];
+
+    /**
+     * The number of elements in the hash table.
+     */
+    transient int count;
+
+    /**
+     * The table is rehashed when its size exceeds this threshold.  (The
+     * value of this field is (int)(capacity * loadFactor).)
+     *
+     * @serial
+     */
+    private int threshold;
+
+    /**
+     * The load factor for the hash table.
+     *
+     * @serial
+     */
+    private final float loadFactor;
+
+    /**
+     * The number of times this set has been structurally modified.  This
+     * field is used to make iterators fail-fast.
+     */
+    transient int modCount = 0;
+
+    /**
+     * The number of times this set has been rehashed, and the total time in
+     * milliseconds those rehashes took.  Reported by statistics().
+     */
+    transient int resizeCount;
+    transient long resizeMillis;
+
+    /**
+     * Constructs a new, empty set with the specified initial capacity and
+     * the specified load factor.
+     *
+     * @param      initialCapacity   the initial capacity of the hash set.
+     * @param      loadFactor        the load factor of the hash set.
+     * @throws     IllegalArgumentException  if the initial capacity is less
+     *               than zero, or if the load factor is nonpositive.
+     */
+    public HashSet(int initialCapacity, final float loadFactor) {
+	if (initialCapacity < 0) {
+	    throw new IllegalArgumentException("Illegal Initial Capacity: "+
+					       initialCapacity);
+	}
+	if (loadFactor <= 0) {
+	    throw new IllegalArgumentException("Illegal Load factor: "+
+					       loadFactor);
+	}
+	if (initialCapacity == 0) {
+	    initialCapacity = 1;
+	}
+	this.loadFactor = loadFactor;
+	this.table = new Node[initialCapacity];
+	this.threshold = (int)(initialCapacity * loadFactor);
+	this.init();
+    }
+
+    /**
+     * Constructs a new, empty set with the specified initial capacity and
+     * default load factor, which is <tt>0.75</tt>.
+     *
+     * @param      initialCapacity   the initial capacity of the hash set.
+     * @throws     IllegalArgumentException if the initial capacity is less
+     *             than zero.
+     */
+    public HashSet(final int initialCapacity) {
+	this(initialCapacity, 0.75f);
+    }
+
+    /**
+     * Constructs a new, empty set with a default capacity and load factor,
+     * which is <tt>0.75</tt>.
+     */
+    public HashSet() {
+	this(101, 0.75f);
+    }
+
+    /**
+     * Constructs a new set containing the elements in the specified
+     * collection.  The set is created with a capacity of twice the number of
+     * elements in the specified collection or 11 (whichever is greater), and
+     * a default load factor, which is <tt>0.75</tt>.
+     *
+     * @param c the collection whose elements are to be placed into this set.
+     */
+    public HashSet(final Collection c) {
+	this(Math.max(2*c.size(), 11), 0.75f);
+	this.addAll(c);
+    }
+
+    /**
+     * Initialization hook for subclasses.  This method is called in all
+     * constructors and pseudo-constructors (clone, readObject) after the
+     * set has been initialized but before any elements have been inserted.
+     */
+    void init() {
+    }
+
+    private static int hash(final Object o) {
+	return o == null ? 0 : o.hashCode();
+    }
+
+    private static boolean eq(final Object x, final Object y) {
+	return x == y || x != null && x.equals(y);
+    }
+
+    /**
+     * Returns an iterator over the elements in this set.
+     *
+     * @return an iterator over the elements in this set.
+     */
+    public Iterator iterator() {
+	return this.newIterator(KEYS);
+    }
+
+    /**
+     * Returns the number of elements in this set (its cardinality).
+     *
+     * @return the number of elements in this set (its cardinality).
+     */
+    public int size() {
+	return this.count;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains no elements.
+     *
+     * @return <tt>true</tt> if this set contains no elements.
+     */
+    public boolean isEmpty() {
+	return this.count == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified element.
+     *
+     * @param o element whose presence in this set is to be tested.
+     * @return <tt>true</tt> if this set contains the specified element.
+     */
+    public boolean contains(final Object o) {
+	return this.getNode(hash(o), o) != null;
+    }
+
+    /**
+     * Returns the node holding the specified element, whose hash code is
+     * <tt>hash</tt>, or <tt>null</tt> if there is none.
+     */
+    final Node getNode(final int hash, final Object key) {
+	final Node tab[] = this.table;
+	for (Node e = tab[(hash & 0x7FFFFFFF) % tab.length]; e != null; e = e.next) {
+	    if (e.hash == hash && eq(key, e.key)) {
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Adds the specified element to this set if it is not already present.
+     *
+     * @param o element to be added to this set.
+     * @return <tt>true</tt> if the set did not already contain the specified
+     *         element.
+     */
+    public boolean add(final Object o) {
+	return this.addNode(hash(o), o);
+    }
+
+    /**
+     * Adds the specified element, whose hash code is <tt>hash</tt>, if it is
+     * not already present.
+     */
+    final boolean addNode(final int hash, final Object key) {
+	Node tab[] = this.table;
+	int index = (hash & 0x7FFFFFFF) % tab.length;
+	for (Node e = tab[index]; e != null; e = e.next) {
+	    if (e.hash == hash && eq(key, e.key)) {
+		return false;
+	    }
+	}
+
+	this.modCount++;
+	if (this.count >= this.threshold) {
+	    // Rehash the table if the threshold is exceeded
+	    this.rehash(this.table.length * 2 + 1);
+	    tab = this.table;
+	    index = (hash & 0x7FFFFFFF) % tab.length;
+	}
+	tab[index] = this.newNode(hash, key, tab[index]);
+	this.count++;
+	return true;
+    }
+
+    /**
+     * Creates a new collision list node.  Subclasses override this to
+     * attach their own per-node state.
+     */
+    Node newNode(final int hash, final Object key, final Node next) {
+	return new Node(hash, key, next);
+    }
+
+    /**
+     * Rehashes the contents of this set into a table with the specified
+     * capacity.
+     */
+    private void rehash(final int newCapacity) {
+	final long start = System.currentTimeMillis();
+	final Node oldTable[] = this.table;
+	final Node newTable[] = new Node[newCapacity];
+
+	this.modCount++;
+	this.threshold = (int)(newCapacity * this.loadFactor);
+	this.table = newTable;
+
+	for (int i = oldTable.length; i-- > 0; ) {
+	    for (Node old = oldTable[i]; old != null; ) {
+		final Node e = old;
+		old = old.next;
+
+		final int index = (e.hash & 0x7FFFFFFF) % newCapacity;
+		e.next = newTable[index];
+		newTable[index] = e;
+	    }
+	}
+
+	this.resizeCount++;
+	this.resizeMillis += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Removes the specified element from this set if it is present.
+     *
+     * @param o object to be removed from this set, if present.
+     * @return <tt>true</tt> if the set contained the specified element.
+     */
+    public boolean remove(final Object o) {
+	return this.removeNode(hash(o), o) != null;
+    }
+
+    /**
+     * Removes and returns the node holding the specified element, whose
+     * hash code is <tt>hash</tt>, or returns <tt>null</tt> if there is none.
+     */
+    final Node removeNode(final int hash, final Object key) {
+	final Node tab[] = this.table;
+	final int index = (hash & 0x7FFFFFFF) % tab.length;
+	for (Node e = tab[index], prev = null; e != null; prev = e, e = e.next) {
+	    if (e.hash == hash && eq(key, e.key)) {
+		this.modCount++;
+		if (prev != null) {
+		    prev.next = e.next;
+		} else {
+		    tab[index] = e.next;
+		}
+		this.count--;
+		e.recordRemoval(this);
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Removes all of the elements from this set.
+     */
+    public void clear() {
+	final Node tab[] = this.table;
+	this.modCount++;
+	for (int index = tab.length; --index >= 0; ) {
+	    tab[index] = null;
+	}
+	this.count = 0;
+    }
+
+    /**
+     * Adds all of the elements in the specified collection to this set if
+     * they're not already present.  If the collection is a
+     * <tt>HashSet</tt>, the hash codes cached in its nodes are reused, and
+     * the table is grown up front, at most once.
+     *
+     * @param c collection whose elements are to be added to this set.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public boolean addAll(final Collection c) {
+	if (!(c instanceof HashSet)) {
+	    return super.addAll(c);
+	}
+
+	final HashSet s = (HashSet) c;
+	final int expected = this.count + s.count;
+	if (expected > this.threshold) {
+	    this.rehash(Math.max((int) (expected / this.loadFactor) + 1,
+				 this.table.length * 2 + 1));
+	}
+	boolean modified = false;
+	for (final Iterator i = s.newIterator(NODES); i.hasNext(); ) {
+	    final Node e = (Node) i.next();
+	    if (this.addNode(e.hash, e.key)) {
+		modified = true;
+	    }
+	}
+	return modified;
+    }
+
+    /**
+     * Removes from this set all of its elements that are contained in the
+     * specified collection.  If the collection is a <tt>HashSet</tt>, the
+     * smaller of the two sets is walked and the hash codes cached in its
+     * nodes are reused.
+     *
+     * @param c elements to be removed from this set.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public boolean removeAll(final Collection c) {
+	if (!(c instanceof HashSet)) {
+	    return super.removeAll(c);
+	}
+
+	final HashSet s = (HashSet) c;
+	boolean modified = false;
+	if (this.count > s.count) {
+	    for (final Iterator i = s.newIterator(NODES); i.hasNext(); ) {
+		final Node e = (Node) i.next();
+		if (this.removeNode(e.hash, e.key) != null) {
+		    modified = true;
+		}
+	    }
+	} else {
+	    for (final Iterator i = this.newIterator(NODES); i.hasNext(); ) {
+		final Node e = (Node) i.next();
+		if (s.getNode(e.hash, e.key) != null) {
+		    i.remove();
+		    modified = true;
+		}
+	    }
+	}
+	return modified;
+    }
+
+    /**
+     * Retains only the elements in this set that are contained in the
+     * specified collection.  If the collection is a <tt>HashSet</tt>, the
+     * hash codes cached in this set's nodes are reused to probe it.
+     *
+     * @param c elements to be retained in this set.
+     * @return <tt>true</tt> if this set changed as a result of the call.
+     */
+    public boolean retainAll(final Collection c) {
+	if (!(c instanceof HashSet)) {
+	    return super.retainAll(c);
+	}
+
+	final HashSet s = (HashSet) c;
+	boolean modified = false;
+	for (final Iterator i = this.newIterator(NODES); i.hasNext(); ) {
+	    final Node e = (Node) i.next();
+	    if (s.getNode(e.hash, e.key) == null) {
+		i.remove();
+		modified = true;
+	    }
+	}
+	return modified;
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>HashSet</tt> instance: the elements
+     * themselves are not cloned.
+     *
+     * @return a shallow copy of this set.
+     */
+    public Object clone() {
+	try {
+	    final HashSet t = (HashSet) super.clone();
+	    t.table = new Node[this.table.length];
+	    t.count = 0;
+	    t.modCount = 0;
+	    t.resizeCount = 0;
+	    t.resizeMillis = 0;
+	    t.init();
+
+	    // Copy in iteration order, so that subclasses which maintain an
+	    // ordering of their own get an identically ordered copy.
+	    for (final Iterator i = this.newIterator(NODES); i.hasNext(); ) {
+		final Node e = (Node) i.next();
+		t.createNode(e.hash, e.key);
+	    }
+	    return t;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Adds a node for an element known to be absent, without checking for
+     * duplicates, updating modCount or resizing the table.  Used by clone
+     * and readObject.
+     */
+    private void createNode(final int hash, final Object key) {
+	final int index = (hash & 0x7FFFFFFF) % this.table.length;
+	this.table[index] = this.newNode(hash, key, this.table[index]);
+	this.count++;
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of this set's
+     * hash table.
+     *
+     * @return the statistics of this set's hash table.
+     * @see HashMap#statistics()
+     */
+    public HashStatistics statistics() {
+	final Node tab[] = this.table;
+	final HashStatistics statistics = new HashStatistics(tab.length, this.loadFactor);
+	int hashes[] = new int[8];
+	for (int index = 0; index < tab.length; index++) {
+	    int length = 0;
+	    for (Node e = tab[index]; e != null; e = e.next) {
+		if (length == hashes.length) {
+		    final int newHashes[] = new int[length * 2];
+		    System.arraycopy(hashes, 0, newHashes, 0, length);
+		    hashes = newHashes;
+		}
+		hashes[length++] = e.hash;
+	    }
+	    statistics.addChain(hashes, length);
+	}
+	statistics.addResizes(this.resizeCount, this.resizeMillis);
+	return statistics;
+    }
+
+    /**
+     * HashSet collision list node.
+     */
+    static class Node {
+	final int hash;
+	final Object key;
+	Node next;
+
+	Node(final int hash, final Object key, final Node next) {
+	    this.hash = hash;
+	    this.key = key;
+	    this.next = next;
+	}
+
+	/**
+	 * This method is invoked whenever the node is removed from the
+	 * table.
+	 */
+	void recordRemoval(final HashSet s) {
+	    // empty
+	}
+    }
+
+    // Types of Iterators
+    static final int KEYS = 0;
+    static final int NODES = 1;
+
+    /**
+     * Returns a new iterator of the given type over this set.  Subclasses
+     * override this to change the iteration order.
+     */
+    Iterator newIterator(final int type) {
+	return new HashIterator(type);
+    }
+
+    private class HashIterator implements Iterator {
+	private final Node table[] = HashSet.this.table;
+	private int index = this.table.length;
+	private Node entry = null;
+	private Node lastReturned = null;
+	private final int type;
+
+	/**
+	 * The modCount value that the iterator believes that the backing
+	 * set should have.  If this expectation is violated, the iterator
+	 * has detected concurrent modification.
+	 */
+	private int expectedModCount = HashSet.this.modCount;
+
+	HashIterator(final int type) {
+	    this.type = type;
+	}
+
+	public boolean hasNext() {
+	    while (this.entry == null && this.index > 0) {
+		this.entry = this.table[--this.index];
+	    }
+	    return this.entry != null;
+	}
+
+	public Object next() {
+	    if (HashSet.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    while (this.entry == null && this.index > 0) {
+		this.entry = this.table[--this.index];
+	    }
+	    if (this.entry == null) {
+		throw new NoSuchElementException();
+	    }
+	    final Node e = this.lastReturned = this.entry;
+	    this.entry = e.next;
+	    return this.type == KEYS ? e.key : e;
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    if (HashSet.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    HashSet.this.removeNode(this.lastReturned.hash, this.lastReturned.key);
+	    this.expectedModCount = HashSet.this.modCount;
+	    this.lastReturned = null;
+	}
+    }
+
+    /**
+     * Save the state of the <tt>HashSet</tt> instance to a stream (that is,
+     * serialize it).
+     *
+     * @serialData The <i>capacity</i> of the table (the length of the
+     *		   bucket array) is emitted (int), followed by the
+     *		   <i>size</i> of the set (the number of elements it
+     *		   contains) (int), followed by all of its elements (each an
+     *		   Object) in iteration order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	// Write out the threshold, loadfactor, and any hidden stuff
+	s.defaultWriteObject();
+
+	s.writeInt(this.table.length);
+	s.writeInt(this.count);
+	for (final Iterator i = this.newIterator(KEYS); i.hasNext(); ) {
+	    s.writeObject(i.next());
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>HashSet</tt> instance from a stream (that is,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	// Read in the threshold, loadfactor, and any hidden stuff
+	s.defaultReadObject();
+
+	this.table = new Node[s.readInt()];
+	this.init();  // Give subclass a chance to do its thing.
+
+	// The elements are known to be distinct and to fit below the
+	// threshold, so they are added without further checks.
+	final int size = s.readInt();
+	for (int i = 0; i < size; i++) {
+	    final Object key = s.readObject();
+	    this.createNode(hash(key), key);
+	}
+    }
+}
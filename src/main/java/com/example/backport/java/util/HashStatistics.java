@@ -0,0 +1,292 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.Serializable;
+
+/**
+ * A snapshot of the occupancy and quality figures of a hash table.  Hash
+ * based collections return an instance of this class from their
+ * <tt>statistics</tt> method; the snapshot is taken in a single pass over
+ * the table, in time proportional to its capacity plus its size, and does
+ * not change afterwards.<p>
+ *
+ * The figures are meant to diagnose slow hash tables.  A long
+ * <i>longest chain</i> or a high <i>average probes per hit</i> with a load
+ * well below the load factor points to a poor <tt>hashCode</tt>
+ * implementation, especially if the <i>duplicate hash count</i> is high as
+ * well; a high <i>resize count</i> points to a table that was created too
+ * small for its contents.<p>
+ *
+ * The probe averages are expected values assuming every key is equally
+ * likely to be looked up.  A probe is the examination of one entry (for
+ * chained tables) or one slot (for open-addressed ones).
+ *
+ * @see HashMap#statistics()
+ * @see ConcurrentHashMap#statistics()
+ */
+public final class HashStatistics implements Serializable {
+    private static final long serialVersionUID = -4719535212530983457L;
+
+    /**
+     * @serial
+     */
+    private int capacity;
+
+    /**
+     * @serial
+     */
+    private final float loadFactor;
+
+    /**
+     * @serial
+     */
+    private int size;
+
+    /**
+     * Number of buckets by chain length; element <i>i</i> is the number of
+     * buckets holding exactly <i>i</i> entries.
+     *
+     * @serial
+     */
+    private int[] histogram = new int[8];
+
+    /**
+     * @serial
+     */
+    private int longestChain;
+
+    /**
+     * Total number of probes needed to find every key once.
+     *
+     * @serial
+     */
+    private long successfulProbes;
+
+    /**
+     * Total number of probes needed to miss once from every bucket.
+     *
+     * @serial
+     */
+    private long unsuccessfulProbes;
+
+    /**
+     * @serial
+     */
+    private int duplicateHashCount;
+
+    /**
+     * @serial
+     */
+    private int resizeCount;
+
+    /**
+     * @serial
+     */
+    private long resizeMillis;
+
+    /**
+     * Creates an empty snapshot; the table being described fills it in
+     * through the package-private <tt>add</tt> methods.
+     */
+    HashStatistics(final int capacity, final float loadFactor) {
+	this.capacity = capacity;
+	this.loadFactor = loadFactor;
+    }
+
+    /**
+     * Records one bucket of a chained hash table.
+     *
+     * @param hashes scratch array whose first <tt>length</tt> elements are
+     *        the hash codes of the entries in the bucket's chain; it is
+     *        reordered by this method.
+     * @param length the number of entries in the chain.
+     */
+    void addChain(final int[] hashes, final int length) {
+	this.addRun(length);
+	this.size += length;
+	this.successfulProbes += (long) length * (length + 1) / 2;
+	this.unsuccessfulProbes += length;
+
+	if (length > 1) {
+	    Arrays.sort(hashes, 0, length);
+	    int i = 0;
+	    while (i < length) {
+		int j = i + 1;
+		while (j < length && hashes[j] == hashes[i]) {
+		    j++;
+		}
+		if (j - i > 1) {
+		    this.duplicateHashCount += j - i;
+		}
+		i = j;
+	    }
+	}
+    }
+
+    /**
+     * Records a run of <tt>length</tt> consecutive occupied slots (a
+     * cluster) of an open-addressed table, or a chain of a chained one.
+     */
+    void addRun(final int length) {
+	if (length >= this.histogram.length) {
+	    int newLength = this.histogram.length * 2;
+	    while (newLength <= length) {
+		newLength *= 2;
+	    }
+	    final int[] newHistogram = new int[newLength];
+	    System.arraycopy(this.histogram, 0, newHistogram, 0, this.histogram.length);
+	    this.histogram = newHistogram;
+	}
+	this.histogram[length]++;
+	if (length > this.longestChain) {
+	    this.longestChain = length;
+	}
+    }
+
+    /**
+     * Records the probe counts of an open-addressed table, whose keys and
+     * clusters are recorded separately.
+     */
+    void addProbes(final int keys, final long successful, final long unsuccessful) {
+	this.size += keys;
+	this.successfulProbes += successful;
+	this.unsuccessfulProbes += unsuccessful;
+    }
+
+    /**
+     * Records keys that share their hash code with another key.
+     */
+    void addDuplicateHashes(final int keys) {
+	this.duplicateHashCount += keys;
+    }
+
+    /**
+     * Records buckets of a table made of several parts, such as the
+     * segments of a <tt>ConcurrentHashMap</tt>, which are read one at a
+     * time.  Each part adds its capacity together with its chains, so the
+     * two stay consistent if a part is resized meanwhile.
+     */
+    void addCapacity(final int buckets) {
+	this.capacity += buckets;
+    }
+
+    /**
+     * Records the number of times the table was resized, and the total
+     * wall-clock time those resizes took.
+     */
+    void addResizes(final int count, final long millis) {
+	this.resizeCount += count;
+	this.resizeMillis += millis;
+    }
+
+    /**
+     * Returns the number of buckets (or slots) in the table.
+     */
+    public int getCapacity() {
+	return this.capacity;
+    }
+
+    /**
+     * Returns the number of mappings found in the table.
+     */
+    public int getSize() {
+	return this.size;
+    }
+
+    /**
+     * Returns the load factor the table was configured with, that is, the
+     * load above which it resizes itself.
+     */
+    public float getLoadFactor() {
+	return this.loadFactor;
+    }
+
+    /**
+     * Returns the current load: the number of mappings divided by the
+     * capacity.
+     */
+    public double getLoad() {
+	return this.capacity == 0 ? 0 : (double) this.size / this.capacity;
+    }
+
+    /**
+     * Returns the chain length histogram.  Element <i>i</i> of the returned
+     * array is the number of buckets holding exactly <i>i</i> entries (for
+     * open-addressed tables, the number of clusters of <i>i</i> occupied
+     * slots); the array's last element describes the longest chain.
+     *
+     * @return a newly allocated histogram array.
+     */
+    public int[] getChainLengthHistogram() {
+	final int[] result = new int[this.longestChain + 1];
+	System.arraycopy(this.histogram, 0, result, 0, result.length);
+	return result;
+    }
+
+    /**
+     * Returns the number of entries in the longest chain (or cluster).
+     */
+    public int getLongestChain() {
+	return this.longestChain;
+    }
+
+    /**
+     * Returns the average number of probes a lookup of a key that is
+     * present in the table takes.  A perfect table scores <tt>1</tt>.
+     */
+    public double getAverageProbesPerHit() {
+	return this.size == 0 ? 0 : (double) this.successfulProbes / this.size;
+    }
+
+    /**
+     * Returns the average number of probes a lookup of a key that is absent
+     * from the table takes.
+     */
+    public double getAverageProbesPerMiss() {
+	return this.capacity == 0 ? 0 : (double) this.unsuccessfulProbes / this.capacity;
+    }
+
+    /**
+     * Returns the number of keys whose hash code equals the hash code of at
+     * least one other key in the table.  No table can tell such keys apart
+     * without calling <tt>equals</tt>, so a high count indicates a weak
+     * <tt>hashCode</tt> implementation.
+     */
+    public int getDuplicateHashCount() {
+	return this.duplicateHashCount;
+    }
+
+    /**
+     * Returns the number of times the table has been resized since it was
+     * created.
+     */
+    public int getResizeCount() {
+	return this.resizeCount;
+    }
+
+    /**
+     * Returns the total time, in milliseconds, the table has spent resizing
+     * itself since it was created.
+     */
+    public long getResizeMillis() {
+	return this.resizeMillis;
+    }
+
+    /**
+     * Returns a one-line summary of these statistics.
+     */
+    public String toString() {
+	return "capacity=" + this.capacity
+	    + ", size=" + this.size
+	    + ", load=" + this.getLoad() + "/" + this.loadFactor
+	    + ", longestChain=" + this.longestChain
+	    + ", probesPerHit=" + this.getAverageProbesPerHit()
+	    + ", probesPerMiss=" + this.getAverageProbesPerMiss()
+	    + ", duplicateHashes=" + this.duplicateHashCount
+	    + ", resizes=" + this.resizeCount
+	    + " (" + this.resizeMillis + " ms)";
+    }
+}
@@ -0,0 +1,224 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.Serializable;
+
+/**
+ * This class consists exclusively of commonly used <tt>HashingStrategy</tt>
+ * instances.  All of them are stateless, thread-safe and serializable.
+ * Each strategy throws <tt>ClassCastException</tt> when passed an object of
+ * a type it does not handle.
+ *
+ * @see HashingStrategy
+ * @see StrategyHashMap
+ */
+public class HashingStrategies {
+    // Suppresses default constructor, ensuring non-instantiability.
+    private HashingStrategies() {
+	// empty
+    }
+
+    /**
+     * Hashes and compares objects by the <tt>hashCode</tt> and
+     * <tt>equals</tt> methods of the objects themselves.  A
+     * <tt>StrategyHashMap</tt> using this strategy behaves like a
+     * <tt>HashMap</tt>.
+     */
+    public static final HashingStrategy DEFAULT = new DefaultStrategy();
+
+    /**
+     * Hashes objects by <tt>System.identityHashCode</tt> and compares them
+     * with <tt>==</tt>, whatever their own <tt>equals</tt> method says.
+     */
+    public static final HashingStrategy IDENTITY = new IdentityStrategy();
+
+    /**
+     * Hashes and compares <tt>String</tt>s ignoring case, as
+     * <tt>String.equalsIgnoreCase</tt> does, without creating case-folded
+     * copies of them.
+     */
+    public static final HashingStrategy CASE_INSENSITIVE = new CaseInsensitiveStrategy();
+
+    /**
+     * Hashes and compares the character content of <tt>String</tt>s,
+     * <tt>StringBuffer</tt>s and <tt>char</tt> arrays, so that objects of any
+     * of these types holding the same characters are equivalent.  A map of
+     * <tt>String</tt> keys using this strategy can be queried with a
+     * <tt>StringBuffer</tt> or a <tt>char</tt> array without converting it to
+     * a <tt>String</tt> first.  The hash code of a <tt>String</tt> under this
+     * strategy is its own <tt>hashCode</tt>.
+     */
+    public static final HashingStrategy CHARACTERS = new CharactersStrategy();
+
+    /**
+     * Hashes and compares <tt>byte</tt> arrays by their contents.
+     */
+    public static final HashingStrategy BYTE_ARRAY = new ByteArrayStrategy();
+
+    /**
+     * Hashes and compares <tt>int</tt> arrays by their contents.
+     */
+    public static final HashingStrategy INT_ARRAY = new IntArrayStrategy();
+
+    private static class DefaultStrategy implements HashingStrategy, Serializable {
+	private static final long serialVersionUID = -4286361932165530307L;
+
+	DefaultStrategy() {
+	    // empty
+	}
+
+	public int hashCode(final Object o) {
+	    return o.hashCode();
+	}
+
+	public boolean equals(final Object o1, final Object o2) {
+	    return o1.equals(o2);
+	}
+    }
+
+    private static class IdentityStrategy implements HashingStrategy, Serializable {
+	private static final long serialVersionUID = 4380599513813598062L;
+
+	IdentityStrategy() {
+	    // empty
+	}
+
+	public int hashCode(final Object o) {
+	    return System.identityHashCode(o);
+	}
+
+	public boolean equals(final Object o1, final Object o2) {
+	    return o1 == o2;
+	}
+    }
+
+    private static class CaseInsensitiveStrategy implements HashingStrategy, Serializable {
+	private static final long serialVersionUID = -2702563815620493768L;
+
+	CaseInsensitiveStrategy() {
+	    // empty
+	}
+
+	public int hashCode(final Object o) {
+	    final String s = (String) o;
+	    int h = 0;
+	    for (int i = 0, n = s.length(); i < n; i++) {
+		// The same folding as String.equalsIgnoreCase.
+		h = 31 * h + Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+	    }
+	    return h;
+	}
+
+	public boolean equals(final Object o1, final Object o2) {
+	    return ((String) o1).equalsIgnoreCase((String) o2);
+	}
+    }
+
+    private static class CharactersStrategy implements HashingStrategy, Serializable {
+	private static final long serialVersionUID = 1763016406297738211L;
+
+	CharactersStrategy() {
+	    // empty
+	}
+
+	public int hashCode(final Object o) {
+	    if (o instanceof String) {
+		return o.hashCode();
+	    }
+	    int h = 0;
+	    if (o instanceof char[]) {
+		final char a[] = (char[]) o;
+		for (int i = 0; i < a.length; i++) {
+		    h = 31 * h + a[i];
+		}
+	    } else {
+		final StringBuffer b = (StringBuffer) o;
+		for (int i = 0, n = b.length(); i < n; i++) {
+		    h = 31 * h + b.charAt(i);
+		}
+	    }
+	    return h;
+	}
+
+	public boolean equals(final Object o1, final Object o2) {
+	    if (o1 instanceof String && o2 instanceof String) {
+		return o1.equals(o2);
+	    }
+	    final int n = length(o1);
+	    if (n != length(o2)) {
+		return false;
+	    }
+	    for (int i = 0; i < n; i++) {
+		if (charAt(o1, i) != charAt(o2, i)) {
+		    return false;
+		}
+	    }
+	    return true;
+	}
+
+	private static int length(final Object o) {
+	    if (o instanceof String) {
+		return ((String) o).length();
+	    }
+	    if (o instanceof char[]) {
+		return ((char[]) o).length;
+	    }
+	    return ((StringBuffer) o).length();
+	}
+
+	private static char charAt(final Object o, final int index) {
+	    if (o instanceof String) {
+		return ((String) o).charAt(index);
+	    }
+	    if (o instanceof char[]) {
+		return ((char[]) o)[index];
+	    }
+	    return ((StringBuffer) o).charAt(index);
+	}
+    }
+
+    private static class ByteArrayStrategy implements HashingStrategy, Serializable {
+	private static final long serialVersionUID = 7385313264394917463L;
+
+	ByteArrayStrategy() {
+	    // empty
+	}
+
+	public int hashCode(final Object o) {
+	    final byte a[] = (byte[]) o;
+	    int h = 1;
+	    for (int i = 0; i < a.length; i++) {
+		h = 31 * h + a[i];
+	    }
+	    return h;
+	}
+
+	public boolean equals(final Object o1, final Object o2) {
+	    return Arrays.equals((byte[]) o1, (byte[]) o2);
+	}
+    }
+
+    private static class IntArrayStrategy implements HashingStrategy, Serializable {
+	private static final long serialVersionUID = -1470915930520932218L;
+
+	IntArrayStrategy() {
+	    // empty
+	}
+
+	public int hashCode(final Object o) {
+	    final int a[] = (int[]) o;
+	    int h = 1;
+	    for (int i = 0; i < a.length; i++) {
+		h = 31 * h + a[i];
+	    }
+	    return h;
+	}
+
+	public boolean equals(final Object o1, final Object o2) {
+	    return Arrays.equals((int[]) o1, (int[]) o2);
+	}
+    }
+}
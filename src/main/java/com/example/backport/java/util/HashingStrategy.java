@@ -0,0 +1,47 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A hashing function paired with the equivalence relation it is consistent
+ * with.  A hashing strategy lets a hash based collection (such as
+ * <tt>StrategyHashMap</tt>) hash and compare its keys by a rule other than
+ * the keys' own <tt>hashCode</tt> and <tt>equals</tt> methods, without
+ * wrapping every key (or every lookup argument) in an object that
+ * implements the rule.<p>
+ *
+ * A strategy must satisfy the same contract as <tt>hashCode</tt> and
+ * <tt>equals</tt>: <tt>equals</tt> must be an equivalence relation, and two
+ * objects it considers equal must have the same <tt>hashCode</tt>.
+ * Neither method is ever passed <tt>null</tt>.<p>
+ *
+ * Note: It is generally a good idea for strategies to implement
+ * <tt>java.io.Serializable</tt>, as they may be used in serializable data
+ * structures.  The strategies in <tt>HashingStrategies</tt> do.
+ *
+ * @see HashingStrategies
+ * @see StrategyHashMap
+ * @see Comparator
+ */
+public interface HashingStrategy {
+    /**
+     * Returns a hash code for the specified object, consistent with this
+     * strategy's <tt>equals</tt> method.
+     *
+     * @param o the object to hash; never <tt>null</tt>.
+     * @return a hash code for the object.
+     */
+    int hashCode(Object o);
+
+    /**
+     * Tests whether the specified objects are equivalent under this
+     * strategy.
+     *
+     * @param o1 the first object to compare; never <tt>null</tt>.
+     * @param o2 the second object to compare; never <tt>null</tt>.
+     * @return <tt>true</tt> if the objects are equivalent.
+     */
+    boolean equals(Object o1, Object o2);
+}
@@ -0,0 +1,1002 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+/**
+ * This class implements the <tt>Map</tt> interface with a hash table, using
+ * reference-equality in place of object-equality when comparing keys (and
+ * values).  In other words, in an <tt>IdentityHashMap</tt>, two keys
+ * <tt>k1</tt> and <tt>k2</tt> are considered equal if and only if
+ * <tt>(k1==k2)</tt>, and keys are hashed with
+ * <tt>System.identityHashCode</tt>.  Neither the <tt>hashCode</tt> nor the
+ * <tt>equals</tt> method of a key is ever called.<p>
+ *
+ * <b>This class is <i>not</i> a general-purpose <tt>Map</tt>
+ * implementation!</b> While this class implements the <tt>Map</tt>
+ * interface, it intentionally violates <tt>Map's</tt> general contract,
+ * which mandates the use of the <tt>equals</tt> method when comparing
+ * objects.  This class is designed for use only in the rare cases wherein
+ * reference-equality semantics are required, such as graph traversals,
+ * object-visited sets, or serialization and deep-copying bookkeeping.<p>
+ *
+ * This is a simple <i>linear-probe</i> hash table: keys and values are
+ * stored interleaved in a single array, the value right after its key, so a
+ * lookup usually touches a single cache line and no entry objects are
+ * allocated.  The table's capacity is a power of two and is doubled
+ * whenever the map becomes two-thirds full.  Removal shifts the following
+ * entries of the probe sequence back (Knuth's Algorithm R) instead of
+ * leaving tombstones behind.  This class permits <tt>null</tt> values and
+ * the <tt>null</tt> key, and makes no guarantees as to the order of the
+ * map.<p>
+ *
+ * This class provides constant-time performance for the basic operations
+ * (<tt>get</tt> and <tt>put</tt>), assuming the system identity hash
+ * function disperses elements properly among the buckets.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access this map concurrently, and at least one of the threads
+ * modifies the map structurally, it <i>must</i> be synchronized
+ * externally.<p>
+ *
+ * The iterators returned by all of this class's collection view methods are
+ * <i>fail-fast</i>: if the map is structurally modified at any time after
+ * the iterator is created, in any way except through the iterator's own
+ * <tt>remove</tt> method, the iterator will throw a
+ * <tt>ConcurrentModificationException</tt>.
+ *
+ * @see System#identityHashCode(Object)
+ * @see Object#hashCode()
+ * @see HashMap
+ * @see IdentityHashSet
+ */
+public class IdentityHashMap extends AbstractMap implements Cloneable, Serializable {
+    private static final long serialVersionUID = 8188218128353913216L;
+
+    /**
+     * The capacity used by the no-argument constructor.  Must be a power of
+     * two.  The value 32 corresponds to the (specified) expected maximum size
+     * of 21, given a load factor of 2/3.
+     */
+    private static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * The minimum capacity, used if a lower value is implicitly specified by
+     * either of the constructors with arguments.  The value 4 corresponds to
+     * an expected maximum size of 2, given a load factor of 2/3.  Must be a
+     * power of two.
+     */
+    private static final int MINIMUM_CAPACITY = 4;
+
+    /**
+     * The maximum capacity, used if a higher value is implicitly specified
+     * by either of the constructors with arguments.  Must be a power of two
+     * &lt;= 1&lt;&lt;29.
+     */
+    private static final int MAXIMUM_CAPACITY = 1 << 29;
+
+    /**
+     * Value representing the <tt>null</tt> key inside the table.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * The table, resized as necessary.  Length MUST always be a power of
+     * two.  Keys are at even indices, each followed by its value.
+     */
+    private transient Object table[];
+
+    /**
+     * The number of key-value mappings contained in this identity hash map.
+     */
+    private transient int size;
+
+    /**
+     * The number of modifications, to support fast-fail iterators.
+     */
+    private transient int modCount;
+
+    /**
+     * The next size value at which to resize (capacity * 2/3).
+     */
+    private transient int threshold;
+
+    /**
+     * The number of times this map has been resized, and the total time in
+     * milliseconds those resizes took.  Reported by statistics().
+     */
+    private transient int resizeCount;
+    private transient long resizeMillis;
+
+    /**
+     * Constructs a new, empty identity hash map with a default expected
+     * maximum size (21).
+     */
+    public IdentityHashMap() {
+	this.init(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty map with the specified expected maximum size.
+     * Putting more than the expected number of key-value mappings into the
+     * map may cause the internal data structure to grow, which may be
+     * somewhat time-consuming.
+     *
+     * @param expectedMaxSize the expected maximum size of the map.
+     * @throws IllegalArgumentException if <tt>expectedMaxSize</tt> is
+     *         negative.
+     */
+    public IdentityHashMap(final int expectedMaxSize) {
+	if (expectedMaxSize < 0) {
+	    throw new IllegalArgumentException("Illegal expected maximum size: "
+					       + expectedMaxSize);
+	}
+	this.init(capacity(expectedMaxSize));
+    }
+
+    /**
+     * Constructs a new identity hash map containing the key-value mappings
+     * in the specified map.
+     *
+     * @param m the map whose mappings are to be placed into this map.
+     */
+    public IdentityHashMap(final Map m) {
+	// Allow for a bit of growth
+	this((int) ((1 + m.size()) * 1.1));
+	this.putAll(m);
+    }
+
+    /**
+     * Returns the appropriate capacity for the specified expected maximum
+     * size.  Returns the smallest power of two between MINIMUM_CAPACITY and
+     * MAXIMUM_CAPACITY, inclusive, that is greater than (3 *
+     * expectedMaxSize)/2, if such a number exists.  Otherwise returns
+     * MAXIMUM_CAPACITY.
+     */
+    private static int capacity(final int expectedMaxSize) {
+	final int minCapacity = (3 * expectedMaxSize) / 2;
+	if (minCapacity > MAXIMUM_CAPACITY || minCapacity < 0) {
+	    return MAXIMUM_CAPACITY;
+	}
+	int result = MINIMUM_CAPACITY;
+	while (result < minCapacity) {
+	    result <<= 1;
+	}
+	return result;
+    }
+
+    /**
+     * Initializes the object to be an empty map with the specified initial
+     * capacity, which is assumed to be a power of two between
+     * MINIMUM_CAPACITY and MAXIMUM_CAPACITY inclusive.
+     */
+    private void init(final int initCapacity) {
+	this.threshold = (initCapacity * 2) / 3;
+	this.table = new Object[2 * initCapacity];
+    }
+
+    private static Object maskNull(final Object key) {
+	return key == null ? NULL_KEY : key;
+    }
+
+    static Object unmaskNull(final Object key) {
+	return key == NULL_KEY ? null : key;
+    }
+
+    /**
+     * Returns the index of the home slot of the specified (masked) key in a
+     * table of the specified length.  Multiplies by -127 and left-shifts to
+     * use the least bit as part of the hash.
+     */
+    private static int hash(final Object x, final int length) {
+	final int h = System.identityHashCode(x);
+	return ((h << 1) - (h << 8)) & (length - 1);
+    }
+
+    /**
+     * Circularly traverses the table, stepping over values.
+     */
+    private static int nextKeyIndex(final int i, final int len) {
+	return i + 2 < len ? i + 2 : 0;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this identity hash map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this identity hash map contains no key-value
+     * mappings.
+     *
+     * @return <tt>true</tt> if this identity hash map contains no key-value
+     *         mappings.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /**
+     * Returns the value to which the specified key is mapped in this
+     * identity hash map, or <tt>null</tt> if the map contains no mapping for
+     * this key.
+     *
+     * @param key the key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key.
+     */
+    public Object get(final Object key) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+	while (true) {
+	    final Object item = tab[i];
+	    if (item == k) {
+		return tab[i + 1];
+	    }
+	    if (item == null) {
+		return null;
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+    }
+
+    /**
+     * Tests whether the specified object reference is a key in this identity
+     * hash map.
+     *
+     * @param key possible key.
+     * @return <tt>true</tt> if the specified object reference is a key in
+     *         this map.
+     */
+    public boolean containsKey(final Object key) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+	while (true) {
+	    final Object item = tab[i];
+	    if (item == k) {
+		return true;
+	    }
+	    if (item == null) {
+		return false;
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+    }
+
+    /**
+     * Tests whether the specified object reference is a value in this
+     * identity hash map.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified object reference.
+     */
+    public boolean containsValue(final Object value) {
+	final Object tab[] = this.table;
+	for (int i = 1; i < tab.length; i += 2) {
+	    if (tab[i] == value && tab[i - 1] != null) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Tests if the specified key-value mapping is in the map.
+     */
+    private boolean containsMapping(final Object key, final Object value) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+	while (true) {
+	    final Object item = tab[i];
+	    if (item == k) {
+		return tab[i + 1] == value;
+	    }
+	    if (item == null) {
+		return false;
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+    }
+
+    /**
+     * Associates the specified value with the specified key in this identity
+     * hash map.  If the map previously contained a mapping for this key, the
+     * old value is replaced.
+     *
+     * @param key the key with which the specified value is to be associated.
+     * @param value the value to be associated with the specified key.
+     * @return the previous value associated with <tt>key</tt>, or
+     *	       <tt>null</tt> if there was no mapping for <tt>key</tt>.
+     */
+    public Object put(final Object key, final Object value) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+
+	Object item;
+	while ((item = tab[i]) != null) {
+	    if (item == k) {
+		final Object oldValue = tab[i + 1];
+		tab[i + 1] = value;
+		return oldValue;
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+
+	this.modCount++;
+	tab[i] = k;
+	tab[i + 1] = value;
+	if (++this.size >= this.threshold) {
+	    this.resize(len); // len == 2 * current capacity.
+	}
+	return null;
+    }
+
+    /**
+     * Resizes the table to hold the given capacity.
+     *
+     * @param newCapacity the new capacity, must be a power of two.
+     */
+    private void resize(final int newCapacity) {
+	final long start = System.currentTimeMillis();
+	final int newLength = newCapacity * 2;
+
+	final Object oldTable[] = this.table;
+	final int oldLength = oldTable.length;
+	if (oldLength == 2*MAXIMUM_CAPACITY) { // can't expand any further
+	    if (this.threshold == MAXIMUM_CAPACITY - 1) {
+		throw new IllegalStateException("Capacity exhausted.");
+	    }
+	    this.threshold = MAXIMUM_CAPACITY - 1;  // Gigantic map!
+	    return;
+	}
+	if (oldLength >= newLength) {
+	    return;
+	}
+
+	final Object newTable[] = new Object[newLength];
+	this.threshold = newLength / 3;
+
+	for (int j = 0; j < oldLength; j += 2) {
+	    final Object key = oldTable[j];
+	    if (key != null) {
+		final Object value = oldTable[j + 1];
+		int i = hash(key, newLength);
+		while (newTable[i] != null) {
+		    i = nextKeyIndex(i, newLength);
+		}
+		newTable[i] = key;
+		newTable[i + 1] = value;
+	    }
+	}
+	this.table = newTable;
+	this.resizeCount++;
+	this.resizeMillis += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Copies all of the mappings from the specified map to this map.  These
+     * mappings will replace any mappings that this map had for any of the
+     * keys currently in the specified map.
+     *
+     * @param t mappings to be stored in this map.
+     */
+    public void putAll(final Map t) {
+	final int n = t.size();
+	if (n == 0) {
+	    return;
+	}
+	if (n > this.threshold) { // conservatively pre-expand
+	    this.resize(capacity(n));
+	}
+	super.putAll(t);
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *	       if there was no mapping for key.
+     */
+    public Object remove(final Object key) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+
+	while (true) {
+	    final Object item = tab[i];
+	    if (item == k) {
+		this.modCount++;
+		this.size--;
+		final Object oldValue = tab[i + 1];
+		tab[i + 1] = null;
+		tab[i] = null;
+		this.closeDeletion(i);
+		return oldValue;
+	    }
+	    if (item == null) {
+		return null;
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+    }
+
+    /**
+     * Removes the specified key-value mapping from the map if it is present.
+     */
+    private boolean removeMapping(final Object key, final Object value) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+
+	while (true) {
+	    final Object item = tab[i];
+	    if (item == k) {
+		if (tab[i + 1] != value) {
+		    return false;
+		}
+		this.modCount++;
+		this.size--;
+		tab[i] = null;
+		tab[i + 1] = null;
+		this.closeDeletion(i);
+		return true;
+	    }
+	    if (item == null) {
+		return false;
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+    }
+
+    /**
+     * Rehashes all possibly-colliding entries following a deletion.  This
+     * preserves the linear-probe collision properties required by get, put,
+     * etc.
+     *
+     * @param d the index of a newly empty deleted slot.
+     */
+    private void closeDeletion(int d) {
+	final Object tab[] = this.table;
+	final int len = tab.length;
+
+	// Look for items to swap into newly vacated slot starting at index
+	// immediately following deletion, and continuing until a null slot
+	// is seen, indicating the end of a run of possibly-colliding keys.
+	Object item;
+	for (int i = nextKeyIndex(d, len); (item = tab[i]) != null;
+	     i = nextKeyIndex(i, len)) {
+	    // The following test triggers if the item at slot i (which hashes
+	    // to be at slot r) should take the spot vacated by d.  If so, we
+	    // swap it in, and then continue with d now at the newly vacated
+	    // i.  This process will terminate when we hit the null slot at
+	    // the end of this run.  The test is messy because we are using a
+	    // circular table.
+	    final int r = hash(item, len);
+	    if (i < r && (r <= d || d <= i) || r <= d && d <= i) {
+		tab[d] = item;
+		tab[d + 1] = tab[i + 1];
+		tab[i] = null;
+		tab[i + 1] = null;
+		d = i;
+	    }
+	}
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	this.modCount++;
+	final Object tab[] = this.table;
+	for (int i = 0; i < tab.length; i++) {
+	    tab[i] = null;
+	}
+	this.size = 0;
+    }
+
+    /**
+     * Returns a shallow copy of this identity hash map: the keys and values
+     * themselves are not cloned.
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	try {
+	    final IdentityHashMap t = (IdentityHashMap) super.clone();
+	    t.table = (Object[]) this.table.clone();
+	    t.keySet = null;
+	    t.values = null;
+	    t.entrySet = null;
+	    t.modCount = 0;
+	    t.resizeCount = 0;
+	    t.resizeMillis = 0;
+	    return t;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    // Types of Iterators
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    private class IdentityHashMapIterator implements Iterator {
+	private final int type;
+
+	/**
+	 * Current slot.
+	 */
+	private int index = IdentityHashMap.this.size != 0 ? 0 : IdentityHashMap.this.table.length;
+
+	/**
+	 * To avoid unnecessary next computation.
+	 */
+	private boolean indexValid;
+
+	/**
+	 * Index of the key returned last, to allow remove.
+	 */
+	private int lastReturnedIndex = -1;
+
+	/**
+	 * Reference to the main table, or a copy of its unvisited part.
+	 */
+	private Object traversalTable[] = IdentityHashMap.this.table;
+
+	/**
+	 * The modCount value that the iterator believes that the backing
+	 * map should have.  If this expectation is violated, the iterator
+	 * has detected concurrent modification.
+	 */
+	private int expectedModCount = IdentityHashMap.this.modCount;
+
+	IdentityHashMapIterator(final int type) {
+	    this.type = type;
+	}
+
+	public boolean hasNext() {
+	    final Object tab[] = this.traversalTable;
+	    for (int i = this.index; i < tab.length; i += 2) {
+		if (tab[i] != null) {
+		    this.index = i;
+		    return this.indexValid = true;
+		}
+	    }
+	    this.index = tab.length;
+	    return false;
+	}
+
+	public Object next() {
+	    if (IdentityHashMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    if (!this.indexValid && !this.hasNext()) {
+		throw new NoSuchElementException();
+	    }
+
+	    this.indexValid = false;
+	    final int i = this.lastReturnedIndex = this.index;
+	    this.index += 2;
+	    final Object tab[] = this.traversalTable;
+	    return this.type == KEYS ? unmaskNull(tab[i])
+		: this.type == VALUES ? tab[i + 1]
+		: new IdentityEntry(unmaskNull(tab[i]), tab[i + 1]);
+	}
+
+	public void remove() {
+	    if (this.lastReturnedIndex == -1) {
+		throw new IllegalStateException();
+	    }
+	    if (IdentityHashMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    this.expectedModCount = ++IdentityHashMap.this.modCount;
+	    final int deletedSlot = this.lastReturnedIndex;
+	    this.lastReturnedIndex = -1;
+	    // Back up index to revisit new contents after deletion
+	    this.index = deletedSlot;
+	    this.indexValid = false;
+
+	    // Removal proceeds as in closeDeletion, except that it must catch
+	    // the rare case where an element already seen is swapped into a
+	    // vacant slot that will be traversed later by this iterator.
+	    // When that happens, the rest of the table is copied for use in
+	    // the rest of the traversal.  Since this can only happen near the
+	    // end of the table, the copy is cheap.
+	    final Object tab[] = this.traversalTable;
+	    final int len = tab.length;
+
+	    int d = deletedSlot;
+	    final Object key = tab[d];
+	    tab[d] = null; // vacate the slot
+	    tab[d + 1] = null;
+
+	    // If traversing a copy, remove in the real table.  Gap closure
+	    // can be skipped on the copy.
+	    if (tab != IdentityHashMap.this.table) {
+		IdentityHashMap.this.remove(unmaskNull(key));
+		this.expectedModCount = IdentityHashMap.this.modCount;
+		return;
+	    }
+
+	    IdentityHashMap.this.size--;
+
+	    Object item;
+	    for (int i = nextKeyIndex(d, len); (item = tab[i]) != null;
+		 i = nextKeyIndex(i, len)) {
+		final int r = hash(item, len);
+		// See closeDeletion for an explanation of this conditional
+		if (i < r && (r <= d || d <= i) || r <= d && d <= i) {
+		    // If an already-seen element is about to be swapped into
+		    // a slot that next() may return later, clone the rest of
+		    // the table for use by future next() calls.  The copy
+		    // has a gap in the "wrong" place, but it is never
+		    // searched.
+		    if (i < deletedSlot && d >= deletedSlot
+			&& this.traversalTable == IdentityHashMap.this.table) {
+			final int remaining = len - deletedSlot;
+			final Object newTable[] = new Object[remaining];
+			System.arraycopy(tab, deletedSlot, newTable, 0, remaining);
+			this.traversalTable = newTable;
+			this.index = 0;
+		    }
+
+		    tab[d] = item;
+		    tab[d + 1] = tab[i + 1];
+		    tab[i] = null;
+		    tab[i + 1] = null;
+		    d = i;
+		}
+	    }
+	}
+    }
+
+    /**
+     * A mapping returned by the entry set iterator.  <tt>setValue</tt>
+     * writes through to the map.  Entries compare keys and values by
+     * reference.
+     */
+    private class IdentityEntry implements Map.Entry {
+	private final Object key;
+	private Object value;
+
+	IdentityEntry(final Object key, final Object value) {
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = this.value;
+	    this.value = value;
+	    IdentityHashMap.this.put(this.key, value);
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return this.key == e.getKey() && this.value == e.getValue();
+	}
+
+	public int hashCode() {
+	    return System.identityHashCode(this.key)
+		^ System.identityHashCode(this.value);
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+    // Views
+
+    private transient Set keySet = null;
+    private transient Collection values = null;
+    private transient Set entrySet = null;
+
+    /**
+     * Returns an identity-based set view of the keys contained in this map.
+     * The set is backed by the map, so changes to the map are reflected in
+     * the set, and vice-versa.  The set supports element removal, which
+     * removes the corresponding mapping from the map, via the
+     * <tt>Iterator.remove</tt>, <tt>Set.remove</tt>, <tt>removeAll</tt>,
+     * <tt>retainAll</tt>, and <tt>clear</tt> operations.  It does not
+     * support the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return an identity-based set view of the keys contained in this map.
+     */
+    public Set keySet() {
+	if (this.keySet == null) {
+	    this.keySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new IdentityHashMapIterator(KEYS);
+		}
+
+		public int size() {
+		    return IdentityHashMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    return IdentityHashMap.this.containsKey(o);
+		}
+
+		public boolean remove(final Object o) {
+		    final int oldSize = IdentityHashMap.this.size;
+		    IdentityHashMap.this.remove(o);
+		    return IdentityHashMap.this.size != oldSize;
+		}
+
+		public int hashCode() {
+		    int result = 0;
+		    for (final Iterator i = this.iterator(); i.hasNext(); ) {
+			result += System.identityHashCode(i.next());
+		    }
+		    return result;
+		}
+
+		public void clear() {
+		    IdentityHashMap.this.clear();
+		}
+	    };
+	}
+	return this.keySet;
+    }
+
+    /**
+     * Returns a collection view of the values contained in this map.  The
+     * collection is backed by the map, so changes to the map are reflected
+     * in the collection, and vice-versa.  The collection supports element
+     * removal, which removes the corresponding mapping from the map, via the
+     * <tt>Iterator.remove</tt>, <tt>Collection.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt> and <tt>clear</tt> operations.
+     * It does not support the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a collection view of the values contained in this map.
+     */
+    public Collection values() {
+	if (this.values == null) {
+	    this.values = new AbstractCollection() {
+		public Iterator iterator() {
+		    return new IdentityHashMapIterator(VALUES);
+		}
+
+		public int size() {
+		    return IdentityHashMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    return IdentityHashMap.this.containsValue(o);
+		}
+
+		public void clear() {
+		    IdentityHashMap.this.clear();
+		}
+	    };
+	}
+	return this.values;
+    }
+
+    /**
+     * Returns a set view of the mappings contained in this map.  Each
+     * element in the returned set is a reference-equality-based
+     * <tt>Map.Entry</tt>.  The set is backed by the map, so changes to the
+     * map are reflected in the set, and vice-versa.  The set supports
+     * element removal, which removes the corresponding mapping from the map,
+     * via the <tt>Iterator.remove</tt>, <tt>Collection.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt> and <tt>clear</tt> operations.
+     * It does not support the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a set view of the identity-mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new IdentityHashMapIterator(ENTRIES);
+		}
+
+		public int size() {
+		    return IdentityHashMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry entry = (Map.Entry) o;
+		    return IdentityHashMap.this.containsMapping(entry.getKey(), entry.getValue());
+		}
+
+		public boolean remove(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry entry = (Map.Entry) o;
+		    return IdentityHashMap.this.removeMapping(entry.getKey(), entry.getValue());
+		}
+
+		public void clear() {
+		    IdentityHashMap.this.clear();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of this map's
+     * table.  The chain length histogram counts <i>clusters</i>, runs of
+     * consecutive occupied slots, whose lengths determine the probe counts
+     * of a linear-probe table.  The capacity reported is the number of
+     * key slots.
+     *
+     * @return the statistics of this map's table.
+     * @see HashMap#statistics()
+     */
+    public HashStatistics statistics() {
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	final HashStatistics statistics = new HashStatistics(len / 2, 2f / 3);
+
+	// Start right after a free slot, so that no cluster wraps around
+	// the start of the scan; there is always one, the map being at most
+	// two-thirds full.
+	int start = 0;
+	while (tab[start] != null) {
+	    start += 2;
+	}
+	long successful = 0;
+	long unsuccessful = 0;
+	int run = 0;
+	for (int n = 0, i = nextKeyIndex(start, len); n < len; n += 2, i = nextKeyIndex(i, len)) {
+	    final Object item = tab[i];
+	    if (item == null) {
+		if (run > 0) {
+		    statistics.addRun(run);
+		    // A miss starting at the k-th slot from the end of the
+		    // cluster probes k + 1 slots.
+		    unsuccessful += (long) run * (run + 3) / 2;
+		    run = 0;
+		}
+		unsuccessful++;
+	    } else {
+		run++;
+		successful += ((i - hash(item, len) + len) % len) / 2 + 1;
+	    }
+	}
+	statistics.addProbes(this.size, successful, unsuccessful);
+
+	final int hashes[] = new int[this.size];
+	int k = 0;
+	for (int i = 0; i < len; i += 2) {
+	    if (tab[i] != null) {
+		hashes[k++] = System.identityHashCode(tab[i]);
+	    }
+	}
+	Arrays.sort(hashes);
+	int duplicates = 0;
+	for (int i = 0; i < k; ) {
+	    int j = i + 1;
+	    while (j < k && hashes[j] == hashes[i]) {
+		j++;
+	    }
+	    if (j - i > 1) {
+		duplicates += j - i;
+	    }
+	    i = j;
+	}
+	statistics.addDuplicateHashes(duplicates);
+	statistics.addResizes(this.resizeCount, this.resizeMillis);
+	return statistics;
+    }
+
+    /**
+     * Save the state of the <tt>IdentityHashMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *		   mappings) (<tt>int</tt>), followed by the key
+     *		   (<tt>Object</tt>) and value (<tt>Object</tt>) for each
+     *		   key-value mapping represented by the map.  The key-value
+     *		   mappings are emitted in no particular order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	// Write out and any hidden stuff
+	s.defaultWriteObject();
+
+	// Write out size (number of Mappings)
+	s.writeInt(this.size);
+
+	// Write out keys and values (alternating)
+	final Object tab[] = this.table;
+	for (int i = 0; i < tab.length; i += 2) {
+	    final Object key = tab[i];
+	    if (key != null) {
+		s.writeObject(unmaskNull(key));
+		s.writeObject(tab[i + 1]);
+	    }
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>IdentityHashMap</tt> instance from a stream
+     * (i.e., deserialize it).  The identity hash codes are those of the
+     * new virtual machine, so the table is rebuilt.
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	// Read in any hidden stuff
+	s.defaultReadObject();
+
+	// Read in size (number of Mappings)
+	final int size = s.readInt();
+
+	// Allow for 33% growth (i.e., capacity is >= 2* size()).
+	this.init(capacity((size*4)/3));
+
+	// Read the keys and values, and put the mappings in the table
+	for (int i = 0; i < size; i++) {
+	    final Object key = s.readObject();
+	    final Object value = s.readObject();
+	    this.putForCreate(key, value);
+	}
+    }
+
+    /**
+     * The put method for readObject.  It does not resize the table, update
+     * modCount, etc.
+     */
+    private void putForCreate(final Object key, final Object value) {
+	final Object k = maskNull(key);
+	final Object tab[] = this.table;
+	final int len = tab.length;
+	int i = hash(k, len);
+
+	Object item;
+	while ((item = tab[i]) != null) {
+	    if (item == k) {
+		throw new IllegalStateException("Duplicate key in stream: " + key);
+	    }
+	    i = nextKeyIndex(i, len);
+	}
+	tab[i] = k;
+	tab[i + 1] = value;
+	this.size++;
+    }
+}
@@ -0,0 +1,216 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * This class implements the <tt>Set</tt> interface, backed by an
+ * <tt>IdentityHashMap</tt> instance, and so uses reference-equality in
+ * place of object-equality when comparing elements: two elements
+ * <tt>e1</tt> and <tt>e2</tt> are considered equal if and only if
+ * <tt>(e1==e2)</tt>.  Neither the <tt>hashCode</tt> nor the <tt>equals</tt>
+ * method of an element is ever called, which makes this class the natural
+ * choice for the "visited" set of a graph traversal:
+ * <pre>
+ *     Set visited = new IdentityHashSet();
+ *     ...
+ *     if (visited.add(node)) {
+ *         // first visit
+ *     }
+ * </pre><p>
+ *
+ * <b>This class is <i>not</i> a general-purpose <tt>Set</tt>
+ * implementation!</b> It intentionally violates <tt>Set's</tt> general
+ * contract, which mandates the use of the <tt>equals</tt> method when
+ * comparing objects.  The <tt>null</tt> element is permitted.<p>
+ *
+ * This class offers constant time performance for the basic operations
+ * (<tt>add</tt>, <tt>remove</tt> and <tt>contains</tt>), and its iterators
+ * are <i>fail-fast</i>.  <b>Note that this implementation is not
+ * synchronized.</b>
+ *
+ * @see IdentityHashMap
+ * @see Set
+ * @see TreeSet
+ */
+public class IdentityHashSet extends AbstractSet implements Cloneable, Serializable {
+    private static final long serialVersionUID = -2637460719347919740L;
+
+    private transient IdentityHashMap map;
+
+    // Dummy value to associate with an Object in the backing Map
+    private static final Object PRESENT = new Object();
+
+    /**
+     * Constructs a new, empty set with a default expected maximum size
+     * (21).
+     */
+    public IdentityHashSet() {
+	this.map = new IdentityHashMap();
+    }
+
+    /**
+     * Constructs a new, empty set with the specified expected maximum size.
+     *
+     * @param expectedMaxSize the expected maximum size of the set.
+     * @throws IllegalArgumentException if <tt>expectedMaxSize</tt> is
+     *         negative.
+     */
+    public IdentityHashSet(final int expectedMaxSize) {
+	this.map = new IdentityHashMap(expectedMaxSize);
+    }
+
+    /**
+     * Constructs a new set containing the elements in the specified
+     * collection, compared by reference.
+     *
+     * @param c the collection whose elements are to be placed into this
+     *        set.
+     */
+    public IdentityHashSet(final Collection c) {
+	this.map = new IdentityHashMap((int) ((1 + c.size()) * 1.1));
+	this.addAll(c);
+    }
+
+    /**
+     * Returns an iterator over the elements in this set, in no particular
+     * order.
+     *
+     * @return an iterator over the elements in this set.
+     */
+    public Iterator iterator() {
+	return this.map.keySet().iterator();
+    }
+
+    /**
+     * Returns the number of elements in this set.
+     *
+     * @return the number of elements in this set.
+     */
+    public int size() {
+	return this.map.size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains no elements.
+     *
+     * @return <tt>true</tt> if this set contains no elements.
+     */
+    public boolean isEmpty() {
+	return this.map.isEmpty();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this set contains the specified object
+     * reference.
+     *
+     * @param o the object reference to be checked for containment.
+     * @return <tt>true</tt> if this set contains the object.
+     */
+    public boolean contains(final Object o) {
+	return this.map.containsKey(o);
+    }
+
+    /**
+     * Adds the specified object reference to this set if it is not already
+     * present.
+     *
+     * @param o the object reference to be added to this set.
+     * @return <tt>true</tt> if the set did not already contain the object.
+     */
+    public boolean add(final Object o) {
+	return this.map.put(o, PRESENT) == null;
+    }
+
+    /**
+     * Removes the specified object reference from this set if it is
+     * present.
+     *
+     * @param o the object reference to be removed from this set.
+     * @return <tt>true</tt> if the set contained the object.
+     */
+    public boolean remove(final Object o) {
+	return this.map.remove(o) == PRESENT;
+    }
+
+    /**
+     * Removes all of the elements from this set.
+     */
+    public void clear() {
+	this.map.clear();
+    }
+
+    /**
+     * Returns the hash code value for this set: the sum of the identity
+     * hash codes of its elements.
+     *
+     * @return the hash code value for this set.
+     */
+    public int hashCode() {
+	return this.map.keySet().hashCode();
+    }
+
+    /**
+     * Returns a shallow copy of this set: the elements themselves are not
+     * cloned.
+     *
+     * @return a shallow copy of this set.
+     */
+    public Object clone() {
+	try {
+	    final IdentityHashSet newSet = (IdentityHashSet) super.clone();
+	    newSet.map = (IdentityHashMap) this.map.clone();
+	    return newSet;
+	} catch (final CloneNotSupportedException e) {
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of this set's
+     * table.
+     *
+     * @return the statistics of this set's table.
+     * @see IdentityHashMap#statistics()
+     */
+    public HashStatistics statistics() {
+	return this.map.statistics();
+    }
+
+    /**
+     * Save the state of this <tt>IdentityHashSet</tt> instance to a stream
+     * (that is, serialize it).
+     *
+     * @serialData The size of the set (the number of elements it contains)
+     *		   (int), followed by all of its elements (each an Object) in
+     *		   no particular order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	s.defaultWriteObject();
+	s.writeInt(this.map.size());
+	for (final Iterator i = this.map.keySet().iterator(); i.hasNext(); ) {
+	    s.writeObject(i.next());
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>IdentityHashSet</tt> instance from a stream (that
+     * is, deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	s.defaultReadObject();
+	final int size = s.readInt();
+	this.map = new IdentityHashMap(size);
+	for (int i = 0; i < size; i++) {
+	    this.map.put(s.readObject(), PRESENT);
+	}
+    }
+}
@@ -0,0 +1,595 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.Serializable;
+
+/**
+ * Resizable-array list of <tt>int</tt> values.  This class provides the
+ * operations of <tt>ArrayList</tt>, with the same growth policy and index
+ * checks, on an array of primitive <tt>int</tt>s instead of an array of
+ * <tt>Integer</tt> objects, so elements are stored in four bytes each and are
+ * neither boxed when added nor unboxed when read.  Removal by index is
+ * named <tt>removeAt</tt>, since <tt>remove(int)</tt> would be ambiguous
+ * with it.<p>
+ *
+ * Besides the positional operations, the list can append a whole array
+ * with <tt>addAll</tt>, copy its elements into a caller-provided array
+ * with <tt>toArray</tt>, and sort itself in place with
+ * <tt>Arrays.sort</tt>.  <tt>asList</tt> returns a view of the list as a
+ * <tt>List</tt> of <tt>Integer</tt> objects, for passing the elements to code
+ * that expects a collection; elements are boxed and unboxed as they pass
+ * through the view.<p>
+ *
+ * <strong>Note that this implementation is not synchronized.</strong> If
+ * multiple threads access a list concurrently, and at least one of the
+ * threads modifies the list structurally, it <i>must</i> be synchronized
+ * externally.  The iterators of the <tt>List</tt> view are
+ * <i>fail-fast</i>: if the list is structurally modified at any time after
+ * an iterator is created, in any way except through the iterator's own
+ * remove or add methods, the iterator throws a
+ * <tt>ConcurrentModificationException</tt>.
+ *
+ * @see ArrayList
+ * @see Arrays#sort(int[])
+ * @see LongArrayList
+ * @see DoubleArrayList
+ */
+public class IntArrayList implements Cloneable, Serializable {
+    private static final long serialVersionUID = -2215946627339823385L;
+
+    /**
+     * The array buffer into which the elements of the list are stored.
+     * The capacity of the list is the length of this array buffer.
+     */
+    private transient int elementData[];
+
+    /**
+     * The size of the list (the number of elements it contains).
+     *
+     * @serial
+     */
+    private int size;
+
+    /**
+     * The <tt>List</tt> view, or <tt>null</tt> if it has not been
+     * requested.  It holds the modification count of the list.
+     */
+    private transient ListView list = null;
+
+    /**
+     * Constructs an empty list with the specified initial capacity.
+     *
+     * @param   initialCapacity   the initial capacity of the list.
+     */
+    public IntArrayList(final int initialCapacity) {
+	this.elementData = new int[initialCapacity];
+    }
+
+    /**
+     * Constructs an empty list.
+     */
+    public IntArrayList() {
+	this(10);
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified array, in
+     * order.  The list has an initial capacity of 110% the length of the
+     * array.
+     *
+     * @param a the array whose elements are to be placed in the list.
+     */
+    public IntArrayList(final int[] a) {
+	this.size = a.length;
+	this.elementData = new int[this.size*110/100]; // Allow 10% room for growth
+	System.arraycopy(a, 0, this.elementData, 0, this.size);
+    }
+
+    /**
+     * Trims the capacity of this list to be the list's current size.  An
+     * application can use this operation to minimize the storage of a
+     * list.
+     */
+    public void trimToSize() {
+	this.modified();
+	final int oldCapacity = this.elementData.length;
+	if (this.size < oldCapacity) {
+	    final int oldData[] = this.elementData;
+	    this.elementData = new int[this.size];
+	    System.arraycopy(oldData, 0, this.elementData, 0, this.size);
+	}
+    }
+
+    /**
+     * Increases the capacity of this list, if necessary, to ensure that it
+     * can hold at least the number of elements specified by the minimum
+     * capacity argument.
+     *
+     * @param   minCapacity   the desired minimum capacity.
+     */
+    public void ensureCapacity(final int minCapacity) {
+	this.modified();
+	final int oldCapacity = this.elementData.length;
+	if (minCapacity > oldCapacity) {
+	    final int oldData[] = this.elementData;
+	    int newCapacity = oldCapacity * 3/2 + 1;
+	    if (newCapacity < minCapacity) {
+		newCapacity = minCapacity;
+	    }
+	    this.elementData = new int[newCapacity];
+	    System.arraycopy(oldData, 0, this.elementData, 0, this.size);
+	}
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return  the number of elements in this list.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Tests if this list has no elements.
+     *
+     * @return  <tt>true</tt> if this list has no elements;
+     *          <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this list contains the specified element.
+     *
+     * @param elem element whose presence in this list is to be tested.
+     * @return <tt>true</tt> if this list contains the specified element.
+     */
+    public boolean contains(final int elem) {
+	return this.indexOf(elem) >= 0;
+    }
+
+    /**
+     * Searches for the first occurence of the given value.
+     *
+     * @param   elem   a value.
+     * @return  the index of the first occurrence of the argument in this
+     *          list; returns <tt>-1</tt> if the value is not found.
+     */
+    public int indexOf(final int elem) {
+	for (int i = 0; i < this.size; i++) {
+	    if (elem == this.elementData[i]) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of the specified value in
+     * this list.
+     *
+     * @param   elem   the desired element.
+     * @return  the index of the last occurrence of the specified value in
+     *          this list; returns -1 if the value is not found.
+     */
+    public int lastIndexOf(final int elem) {
+	for (int i = this.size-1; i >= 0; i--) {
+	    if (elem == this.elementData[i]) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    /**
+     * Returns a copy of this list.
+     *
+     * @return  a clone of this list.
+     */
+    public Object clone() {
+	try {
+	    final IntArrayList v = (IntArrayList)super.clone();
+	    v.elementData = new int[this.size];
+	    System.arraycopy(this.elementData, 0, v.elementData, 0, this.size);
+	    v.list = null;
+	    return v;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list
+     * in the correct order.
+     *
+     * @return an array containing all of the elements in this list
+     * 	       in the correct order.
+     */
+    public int[] toArray() {
+	final int[] result = new int[this.size];
+	System.arraycopy(this.elementData, 0, result, 0, this.size);
+	return result;
+    }
+
+    /**
+     * Returns an array containing all of the elements in this list in the
+     * correct order.  If the list fits in the specified array, it is
+     * returned therein, and the elements of the array past the size of the
+     * list are left unchanged.  Otherwise, a new array of the size of this
+     * list is allocated.
+     *
+     * @param a the array into which the elements of the list are to
+     *		be stored, if it is big enough.
+     * @return an array containing the elements of the list.
+     */
+    public int[] toArray(int a[]) {
+	if (a.length < this.size) {
+	    a = new int[this.size];
+	}
+	System.arraycopy(this.elementData, 0, a, 0, this.size);
+	return a;
+    }
+
+    // Positional Access Operations
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param  index index of element to return.
+     * @return the element at the specified position in this list.
+     * @throws    IndexOutOfBoundsException if index is out of range <tt>(index
+     * 		  &lt; 0 || index &gt;= size())</tt>.
+     */
+    public int get(final int index) {
+	this.RangeCheck(index);
+
+	return this.elementData[index];
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with
+     * the specified element.
+     *
+     * @param index index of element to replace.
+     * @param element element to be stored at the specified position.
+     * @return the element previously at the specified position.
+     * @throws    IndexOutOfBoundsException if index out of range
+     *		  <tt>(index &lt; 0 || index &gt;= size())</tt>.
+     */
+    public int set(final int index, final int element) {
+	this.RangeCheck(index);
+
+	final int oldValue = this.elementData[index];
+	this.elementData[index] = element;
+	return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param element element to be appended to this list.
+     * @return <tt>true</tt> (as per the general contract of Collection.add).
+     */
+    public boolean add(final int element) {
+	this.ensureCapacity(this.size + 1);  // Increments modCount!!
+	this.elementData[this.size++] = element;
+	return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list. Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted.
+     * @param element element to be inserted.
+     * @throws    IndexOutOfBoundsException if index is out of range
+     *		  <tt>(index &lt; 0 || index &gt; size())</tt>.
+     */
+    public void add(final int index, final int element) {
+	if (index > this.size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+this.size);
+	}
+
+	this.ensureCapacity(this.size+1);  // Increments modCount!!
+	System.arraycopy(this.elementData, index, this.elementData, index + 1,
+			 this.size - index);
+	this.elementData[index] = element;
+	this.size++;
+    }
+
+    /**
+     * Appends all of the elements in the specified array to the end of this
+     * list, in order.
+     *
+     * @param a elements to be appended to this list.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     */
+    public boolean addAll(final int[] a) {
+	return this.addAll(a, 0, a.length);
+    }
+
+    /**
+     * Appends the specified range of the specified array to the end of this
+     * list, in order.
+     *
+     * @param a array holding the elements to be appended to this list.
+     * @param offset index of the first element of the array to append.
+     * @param length number of elements to append.
+     * @return <tt>true</tt> if this list changed as a result of the call.
+     * @throws    IndexOutOfBoundsException if the range is out of the
+     *		  bounds of the array.
+     */
+    public boolean addAll(final int[] a, final int offset, final int length) {
+	if (offset < 0 || length < 0 || offset > a.length - length) {
+	    throw new IndexOutOfBoundsException(
+		"Offset: "+offset+", Length: "+length+", Array length: "+a.length);
+	}
+	this.ensureCapacity(this.size + length);  // Increments modCount!!
+	System.arraycopy(a, offset, this.elementData, this.size, length);
+	this.size += length;
+	return length != 0;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from their
+     * indices).
+     *
+     * @param index the index of the element to removed.
+     * @return the element that was removed from the list.
+     * @throws    IndexOutOfBoundsException if index out of range <tt>(index
+     * 		  &lt; 0 || index &gt;= size())</tt>.
+     */
+    public int removeAt(final int index) {
+	this.RangeCheck(index);
+
+	this.modified();
+	final int oldValue = this.elementData[index];
+
+	final int numMoved = this.size - index - 1;
+	if (numMoved > 0) {
+	    System.arraycopy(this.elementData, index+1, this.elementData, index,
+			     numMoved);
+	}
+	this.size--;
+
+	return oldValue;
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * fromIndex, inclusive and toIndex, exclusive.  Shifts any succeeding
+     * elements to the left (reduces their index).
+     *
+     * @param fromIndex index of first element to be removed.
+     * @param toIndex index after last element to be removed.
+     * @throws    IndexOutOfBoundsException if <tt>(fromIndex &lt; 0 ||
+     *		  fromIndex &gt; toIndex || toIndex &gt; size())</tt>.
+     */
+    public void removeRange(final int fromIndex, final int toIndex) {
+	if (fromIndex < 0 || fromIndex > toIndex || toIndex > this.size) {
+	    throw new IndexOutOfBoundsException(
+		"fromIndex: "+fromIndex+", toIndex: "+toIndex+", Size: "+this.size);
+	}
+	this.modified();
+	System.arraycopy(this.elementData, toIndex, this.elementData, fromIndex,
+			 this.size - toIndex);
+	this.size -= toIndex - fromIndex;
+    }
+
+    /**
+     * Removes all of the elements from this list.  The list will
+     * be empty after this call returns.
+     */
+    public void clear() {
+	this.modified();
+	this.size = 0;
+    }
+
+    /**
+     * Sorts the elements of this list into ascending numerical order, in
+     * place.
+     *
+     * @see Arrays#sort(int[], int, int)
+     */
+    public void sort() {
+	Arrays.sort(this.elementData, 0, this.size);
+    }
+
+    /**
+     * Returns a view of this list as a <tt>List</tt> of <tt>Integer</tt>
+     * objects.  The view is backed by this list, so changes to either are
+     * reflected in the other.  It supports all optional list operations
+     * except the insertion of <tt>null</tt>, and its iterators are
+     * fail-fast.
+     *
+     * @return a <tt>List</tt> view of this list.
+     */
+    public List asList() {
+	if (this.list == null) {
+	    this.list = new ListView();
+	}
+	return this.list;
+    }
+
+    /**
+     * Compares the specified object with this list for equality.  Returns
+     * <tt>true</tt> if the specified object is also a
+     * <tt>IntArrayList</tt>, both lists have the same size, and all
+     * corresponding pairs of elements in the two lists are equal, as
+     * <tt>Integer</tt> objects would be.
+     *
+     * @param o the object to be compared for equality with this list.
+     * @return <tt>true</tt> if the specified object is equal to this list.
+     */
+    public boolean equals(final Object o) {
+	if (o == this) {
+	    return true;
+	}
+	if (!(o instanceof IntArrayList)) {
+	    return false;
+	}
+	final IntArrayList l = (IntArrayList) o;
+	if (l.size != this.size) {
+	    return false;
+	}
+	for (int i = 0; i < this.size; i++) {
+	    final int elem = l.elementData[i];
+	    if (elem != this.elementData[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Returns the hash code value for this list, which is that of its
+     * <tt>List</tt> view.
+     *
+     * @return the hash code value for this list.
+     * @see List#hashCode()
+     */
+    public int hashCode() {
+	int hashCode = 1;
+	for (int i = 0; i < this.size; i++) {
+	    hashCode = 31*hashCode + this.elementData[i];
+	}
+	return hashCode;
+    }
+
+    /**
+     * Returns a string representation of this list, in the format of
+     * <tt>AbstractCollection.toString</tt>.
+     *
+     * @return a string representation of this list.
+     */
+    public String toString() {
+	final StringBuffer buf = new StringBuffer();
+	buf.append("[");
+	for (int i = 0; i < this.size; i++) {
+	    if (i > 0) {
+		buf.append(", ");
+	    }
+	    buf.append(this.elementData[i]);
+	}
+	buf.append("]");
+	return buf.toString();
+    }
+
+    /**
+     * Records a structural modification in the <tt>List</tt> view, if
+     * any, so that its iterators notice it.
+     */
+    private void modified() {
+	if (this.list != null) {
+	    this.list.modCount++;
+	}
+    }
+
+    /**
+     * Check if the given index is in range.  If not, throw an appropriate
+     * runtime exception.
+     */
+    private void RangeCheck(final int index) {
+	if (index >= this.size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+this.size);
+	}
+    }
+
+    /**
+     * The <tt>List</tt> view of the list.
+     */
+    private class ListView extends AbstractList {
+	ListView() {
+	    // empty
+	}
+
+	public int size() {
+	    return IntArrayList.this.size;
+	}
+
+	public Object get(final int index) {
+	    return new Integer(IntArrayList.this.get(index));
+	}
+
+	public Object set(final int index, final Object element) {
+	    return new Integer(IntArrayList.this.set(index, ((Integer) element).intValue()));
+	}
+
+	public void add(final int index, final Object element) {
+	    IntArrayList.this.add(index, ((Integer) element).intValue());
+	}
+
+	public Object remove(final int index) {
+	    return new Integer(IntArrayList.this.removeAt(index));
+	}
+
+	public int indexOf(final Object o) {
+	    return o instanceof Integer ? IntArrayList.this.indexOf(((Integer) o).intValue()) : -1;
+	}
+
+	public int lastIndexOf(final Object o) {
+	    return o instanceof Integer ? IntArrayList.this.lastIndexOf(((Integer) o).intValue()) : -1;
+	}
+
+	public boolean contains(final Object o) {
+	    return this.indexOf(o) >= 0;
+	}
+
+	public void clear() {
+	    IntArrayList.this.clear();
+	}
+
+	protected void removeRange(final int fromIndex, final int toIndex) {
+	    IntArrayList.this.removeRange(fromIndex, toIndex);
+	}
+    }
+
+    /**
+     * Save the state of the list to a stream (that is, serialize it).
+     *
+     * @serialData The length of the array backing the list is emitted
+     *             (int), followed by all of its elements (each a
+     *             <tt>int</tt>) in the proper order.
+     */
+    private synchronized void writeObject(final java.io.ObjectOutputStream s)
+        throws java.io.IOException{
+	// Write out element count, and any hidden stuff
+	s.defaultWriteObject();
+
+	// Write out array length
+	s.writeInt(this.elementData.length);
+
+	// Write out all elements in the proper order.
+	for (int i=0; i<this.size; i++) {
+	    s.writeInt(this.elementData[i]);
+	}
+    }
+
+    /**
+     * Reconstitute the list from a stream (that is, deserialize it).
+     */
+    private synchronized void readObject(final java.io.ObjectInputStream s)
+        throws java.io.IOException, ClassNotFoundException {
+	// Read in size, and any hidden stuff
+	s.defaultReadObject();
+
+	// Read in array length and allocate array
+	final int arrayLength = s.readInt();
+	this.elementData = new int[arrayLength];
+
+	// Read in all elements in the proper order.
+	for (int i=0; i<this.size; i++) {
+	    this.elementData[i] = s.readInt();
+	}
+    }
+}
@@ -0,0 +1,172 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A bounded, access-ordered <tt>LinkedHashMap</tt> that evicts its least
+ * recently used entry whenever an insertion would take it past its maximum
+ * size.  <tt>get</tt>, <tt>put</tt> and eviction all take constant time,
+ * since the least recently used entry is always at the head of the map's
+ * linked list.<p>
+ *
+ * The cache counts hits and misses of <tt>get</tt> and the number of
+ * evictions performed, which is useful when tuning the maximum size.  A
+ * <tt>get</tt> for a key that is mapped to <tt>null</tt> counts as a hit.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> Since every
+ * <tt>get</tt> reorders the map, even read-only use from multiple threads
+ * must be synchronized externally, for instance by wrapping the cache using
+ * <tt>Collections.synchronizedMap</tt>.
+ *
+ * @see LinkedHashMap#removeEldestEntry(Map.Entry)
+ */
+public class LRUCache extends LinkedHashMap {
+    private static final long serialVersionUID = -2409856710393462215L;
+
+    /**
+     * The maximum number of mappings this cache holds.
+     *
+     * @serial
+     */
+    private final int maxSize;
+
+    private transient long hitCount;
+    private transient long missCount;
+    private transient long evictionCount;
+
+    /**
+     * Constructs an empty cache holding at most <tt>maxSize</tt> mappings.
+     *
+     * @param maxSize the maximum number of mappings.
+     * @throws IllegalArgumentException if <tt>maxSize</tt> is not positive.
+     */
+    public LRUCache(final int maxSize) {
+	this(maxSize, 0.75f);
+    }
+
+    /**
+     * Constructs an empty cache holding at most <tt>maxSize</tt> mappings,
+     * using the specified load factor.  The table is sized up front so that
+     * a full cache is never rehashed.
+     *
+     * @param maxSize the maximum number of mappings.
+     * @param loadFactor the load factor of the underlying hash table.
+     * @throws IllegalArgumentException if <tt>maxSize</tt> is not positive,
+     *         or if the load factor is nonpositive.
+     */
+    public LRUCache(final int maxSize, final float loadFactor) {
+	super(capacityFor(maxSize, loadFactor), loadFactor, true);
+	this.maxSize = maxSize;
+    }
+
+    private static int capacityFor(final int maxSize, final float loadFactor) {
+	if (maxSize <= 0) {
+	    throw new IllegalArgumentException("Illegal maximum size: " + maxSize);
+	}
+	if (loadFactor <= 0) {
+	    throw new IllegalArgumentException("Illegal Load factor: " + loadFactor);
+	}
+	return (int) (maxSize / loadFactor) + 2;
+    }
+
+    /**
+     * Returns the value to which this cache maps the specified key, marking
+     * the mapping as most recently used, and records a hit or a miss.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this cache maps the specified key, or
+     *         <tt>null</tt> if the cache contains no mapping for it.
+     */
+    public Object get(final Object key) {
+	final Entry e = this.getEntry(key);
+	if (e == null) {
+	    this.missCount++;
+	    return null;
+	}
+	this.hitCount++;
+	e.recordAccess(this);
+	return e.value;
+    }
+
+    /**
+     * Returns the value to which this cache maps the specified key, or
+     * <tt>defaultValue</tt> if there is none, marking the mapping as most
+     * recently used, and records a hit or a miss.
+     *
+     * @param key key whose associated value is to be returned.
+     * @param defaultValue the value to return if the key is not mapped.
+     * @return the value to which this cache maps the specified key, or
+     *         <tt>defaultValue</tt>.
+     */
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+	final Entry e = this.getEntry(key);
+	if (e == null) {
+	    this.missCount++;
+	    return defaultValue;
+	}
+	this.hitCount++;
+	e.recordAccess(this);
+	return e.value;
+    }
+
+    /**
+     * Evicts the least recently used mapping once the cache holds more than
+     * its maximum number of mappings.
+     */
+    protected boolean removeEldestEntry(final Map.Entry eldest) {
+	if (this.size() > this.maxSize) {
+	    this.evictionCount++;
+	    return true;
+	}
+	return false;
+    }
+
+    /**
+     * Returns the maximum number of mappings this cache holds.
+     */
+    public int getMaxSize() {
+	return this.maxSize;
+    }
+
+    /**
+     * Returns the number of <tt>get</tt> calls that found a mapping.
+     */
+    public long getHitCount() {
+	return this.hitCount;
+    }
+
+    /**
+     * Returns the number of <tt>get</tt> calls that found no mapping.
+     */
+    public long getMissCount() {
+	return this.missCount;
+    }
+
+    /**
+     * Returns the number of mappings evicted to stay within the maximum
+     * size.
+     */
+    public long getEvictionCount() {
+	return this.evictionCount;
+    }
+
+    /**
+     * Returns the fraction of <tt>get</tt> calls that found a mapping, or
+     * <tt>0</tt> if there have been none.
+     */
+    public double getHitRatio() {
+	final long requests = this.hitCount + this.missCount;
+	return requests == 0 ? 0 : (double) this.hitCount / requests;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters to zero.
+     */
+    public void resetStatistics() {
+	this.hitCount = 0;
+	this.missCount = 0;
+	this.evictionCount = 0;
+    }
+}
@@ -0,0 +1,361 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Hash table and linked list implementation of the <tt>Map</tt> interface,
+ * with predictable iteration order.  This implementation differs from
+ * <tt>HashMap</tt> in that it maintains a doubly-linked list running through
+ * all of its entries.  This linked list defines the iteration ordering,
+ * which is normally the order in which keys were inserted into the map
+ * (<i>insertion-order</i>).  Note that insertion order is not affected if a
+ * key is <i>re-inserted</i> into the map.<p>
+ *
+ * A special constructor is provided to create a linked hash map whose order
+ * of iteration is the order in which its entries were last accessed, from
+ * least-recently accessed to most-recently (<i>access-order</i>).  This kind
+ * of map is well-suited to building LRU caches.  Invoking the <tt>put</tt>
+ * or <tt>get</tt> method results in an access to the corresponding entry
+ * (assuming it exists after the invocation completes).  No other methods
+ * generate entry accesses.  In particular, operations on collection-views
+ * do <i>not</i> affect the order of iteration of the backing map.<p>
+ *
+ * The <tt>removeEldestEntry</tt> method may be overridden to impose a policy
+ * for removing stale mappings automatically when new mappings are added to
+ * the map.  Since the eldest entry is always at the head of the linked
+ * list, such eviction takes constant time.<p>
+ *
+ * This class provides all of the optional <tt>Map</tt> operations, and
+ * permits <tt>null</tt> elements.  Like <tt>HashMap</tt>, it provides
+ * constant-time performance for the basic operations (<tt>add</tt>,
+ * <tt>contains</tt> and <tt>remove</tt>), assuming the hash function
+ * disperses elements properly among the buckets.  Iteration over the
+ * collection-views requires time proportional to the <i>size</i> of the
+ * map, regardless of its capacity.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a linked hash map concurrently, and at least one of the
+ * threads modifies the map structurally, it <i>must</i> be synchronized
+ * externally.  In access-ordered linked hash maps, merely querying the map
+ * with <tt>get</tt> is a structural modification.<p>
+ *
+ * The iterators returned by all of this class's collection view methods are
+ * <i>fail-fast</i>, exactly as those of <tt>HashMap</tt>.
+ *
+ * @see Map
+ * @see HashMap
+ * @see LRUCache
+ */
+public class LinkedHashMap extends HashMap {
+    private static final long serialVersionUID = 3801124242820219131L;
+
+    /**
+     * The head of the doubly linked list.
+     */
+    private transient LinkedEntry header;
+
+    /**
+     * The iteration ordering method for this linked hash map: <tt>true</tt>
+     * for access-order, <tt>false</tt> for insertion-order.
+     *
+     * @serial
+     */
+    private final boolean accessOrder;
+
+    /**
+     * Constructs an empty insertion-ordered <tt>LinkedHashMap</tt> instance
+     * with the specified initial capacity and load factor.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  loadFactor      the load factor.
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive.
+     */
+    public LinkedHashMap(final int initialCapacity, final float loadFactor) {
+	super(initialCapacity, loadFactor);
+	this.accessOrder = false;
+    }
+
+    /**
+     * Constructs an empty insertion-ordered <tt>LinkedHashMap</tt> instance
+     * with the specified initial capacity and a default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public LinkedHashMap(final int initialCapacity) {
+	super(initialCapacity);
+	this.accessOrder = false;
+    }
+
+    /**
+     * Constructs an empty insertion-ordered <tt>LinkedHashMap</tt> instance
+     * with a default capacity and load factor (0.75).
+     */
+    public LinkedHashMap() {
+	super();
+	this.accessOrder = false;
+    }
+
+    /**
+     * Constructs an insertion-ordered <tt>LinkedHashMap</tt> instance with
+     * the same mappings as the specified map.
+     *
+     * @param  m the map whose mappings are to be placed in this map.
+     */
+    public LinkedHashMap(final Map m) {
+	super(m);
+	this.accessOrder = false;
+    }
+
+    /**
+     * Constructs an empty <tt>LinkedHashMap</tt> instance with the specified
+     * initial capacity, load factor and ordering mode.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  loadFactor      the load factor.
+     * @param  accessOrder     the ordering mode - <tt>true</tt> for
+     *         access-order, <tt>false</tt> for insertion-order.
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive.
+     */
+    public LinkedHashMap(final int initialCapacity, final float loadFactor,
+			 final boolean accessOrder) {
+	super(initialCapacity, loadFactor);
+	this.accessOrder = accessOrder;
+    }
+
+    /**
+     * Called by superclass constructors and pseudoconstructors (clone,
+     * readObject) before any entries are inserted into the map.  Initializes
+     * the chain.
+     */
+    void init() {
+	this.header = new LinkedEntry(-1, null, null, null);
+	this.header.before = this.header.after = this.header;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.  Traverses the linked list rather than the table,
+     * which is faster for sparsely populated tables.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value.
+     */
+    public boolean containsValue(final Object value) {
+	if (value == null) {
+	    for (LinkedEntry e = this.header.after; e != this.header; e = e.after) {
+		if (e.value == null) {
+		    return true;
+		}
+	    }
+	} else {
+	    for (LinkedEntry e = this.header.after; e != this.header; e = e.after) {
+		if (value.equals(e.value)) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key.  Returns
+     * <tt>null</tt> if the map contains no mapping for this key.  If this map
+     * is access-ordered, the entry is moved to the end of the iteration
+     * order.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key.
+     */
+    public Object get(final Object key) {
+	final Entry e = this.getEntry(key);
+	if (e == null) {
+	    return null;
+	}
+	e.recordAccess(this);
+	return e.value;
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	super.clear();
+	this.header.before = this.header.after = this.header;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map uses access-order, <tt>false</tt> if
+     * it uses insertion-order.
+     */
+    public boolean isAccessOrder() {
+	return this.accessOrder;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map should remove its eldest entry.  This
+     * method is invoked by <tt>put</tt> and <tt>putAll</tt> after inserting
+     * a new entry into the map.  It provides the implementer with the
+     * opportunity to remove the eldest entry each time a new one is added.
+     * This is useful if the map represents a cache: it allows the map to
+     * reduce memory consumption by deleting stale entries.<p>
+     *
+     * Sample use: this override will allow the map to grow up to 100
+     * entries and then delete the eldest entry each time a new entry is
+     * added, maintaining a steady state of 100 entries.
+     * <pre>
+     *     private static final int MAX_ENTRIES = 100;
+     *
+     *     protected boolean removeEldestEntry(Map.Entry eldest) {
+     *        return size() &gt; MAX_ENTRIES;
+     *     }
+     * </pre><p>
+     *
+     * This method typically does not modify the map in any way, instead
+     * allowing the map to modify itself as directed by its return value.
+     * The default implementation simply returns <tt>false</tt>, so that this
+     * map acts like a normal map.
+     *
+     * @param eldest the least recently inserted entry in the map, or if
+     *        this is an access-ordered map, the least recently accessed
+     *        entry.  This is the entry that will be removed if this method
+     *        returns <tt>true</tt>.
+     * @return <tt>true</tt> if the eldest entry should be removed from the
+     *         map; <tt>false</tt> if it should be retained.
+     */
+    protected boolean removeEldestEntry(final Map.Entry eldest) {
+	return false;
+    }
+
+    /**
+     * This override alters behavior of superclass put method.  It causes
+     * newly allocated entry to get inserted at the end of the linked list
+     * and removes the eldest entry if appropriate.
+     */
+    void addEntry(final int hash, final Object key, final Object value, final int index) {
+	super.addEntry(hash, key, value, index);
+
+	// Remove eldest entry if instructed
+	final LinkedEntry eldest = this.header.after;
+	if (this.removeEldestEntry(eldest)) {
+	    this.removeEntryForKey(eldest.key);
+	}
+    }
+
+    /**
+     * Creates a linked entry and appends it to the tail of the list.
+     */
+    Entry newEntry(final int hash, final Object key, final Object value, final Entry next) {
+	final LinkedEntry e = new LinkedEntry(hash, key, value, next);
+	e.addBefore(this.header);
+	return e;
+    }
+
+    Iterator newIterator(final int type) {
+	return new LinkedHashIterator(type);
+    }
+
+    /**
+     * LinkedHashMap entry.
+     */
+    private static class LinkedEntry extends Entry {
+	// These fields comprise the doubly linked list used for iteration.
+	LinkedEntry before;
+	LinkedEntry after;
+
+	LinkedEntry(final int hash, final Object key, final Object value, final Entry next) {
+	    super(hash, key, value, next);
+	}
+
+	/**
+	 * Removes this entry from the linked list.
+	 */
+	private void remove() {
+	    this.before.after = this.after;
+	    this.after.before = this.before;
+	}
+
+	/**
+	 * Inserts this entry before the specified existing entry in the list.
+	 */
+	private void addBefore(final LinkedEntry existingEntry) {
+	    this.after  = existingEntry;
+	    this.before = existingEntry.before;
+	    this.before.after = this;
+	    this.after.before = this;
+	}
+
+	/**
+	 * This method is invoked by the superclass whenever the value of a
+	 * pre-existing entry is read by Map.get or modified by Map.put.  If
+	 * the enclosing Map is access-ordered, it moves the entry to the end
+	 * of the list; otherwise, it does nothing.
+	 */
+	void recordAccess(final HashMap m) {
+	    final LinkedHashMap lm = (LinkedHashMap) m;
+	    if (lm.accessOrder) {
+		lm.modCount++;
+		this.remove();
+		this.addBefore(lm.header);
+	    }
+	}
+
+	void recordRemoval(final HashMap m) {
+	    this.remove();
+	}
+    }
+
+    private class LinkedHashIterator implements Iterator {
+	private final int type;
+	private LinkedEntry nextEntry = LinkedHashMap.this.header.after;
+	private LinkedEntry lastReturned = null;
+
+	/**
+	 * The modCount value that the iterator believes that the backing
+	 * List should have.  If this expectation is violated, the iterator
+	 * has detected concurrent modification.
+	 */
+	private int expectedModCount = LinkedHashMap.this.modCount;
+
+	LinkedHashIterator(final int type) {
+	    this.type = type;
+	}
+
+	public boolean hasNext() {
+	    return this.nextEntry != LinkedHashMap.this.header;
+	}
+
+	public Object next() {
+	    if (LinkedHashMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    if (this.nextEntry == LinkedHashMap.this.header) {
+		throw new NoSuchElementException();
+	    }
+
+	    final LinkedEntry e = this.lastReturned = this.nextEntry;
+	    this.nextEntry = e.after;
+	    return this.type == KEYS ? e.key : this.type == VALUES ? e.value : e;
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    if (LinkedHashMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    LinkedHashMap.this.removeEntryForKey(this.lastReturned.key);
+	    this.lastReturned = null;
+	    this.expectedModCount = LinkedHashMap.this.modCount;
+	}
+    }
+}
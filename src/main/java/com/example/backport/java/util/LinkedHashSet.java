@@ -0,0 +1,186 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Hash table and linked list implementation of the <tt>Set</tt> interface,
+ * with predictable iteration order.  This implementation differs from
+ * <tt>HashSet</tt> in that it maintains a doubly-linked list running through
+ * all of its nodes.  This linked list defines the iteration ordering, which
+ * is the order in which elements were inserted into the set
+ * (<i>insertion-order</i>).  Note that insertion order is not affected if
+ * an element is <i>re-inserted</i> into the set.<p>
+ *
+ * Like <tt>HashSet</tt>, this class stores the elements alone, permits the
+ * <tt>null</tt> element, provides constant-time performance for the basic
+ * operations (<tt>add</tt>, <tt>contains</tt> and <tt>remove</tt>), and
+ * takes the fast bulk operation paths when the argument is a
+ * <tt>HashSet</tt>.  Iteration over a <tt>LinkedHashSet</tt> requires time
+ * proportional to the <i>size</i> of the set, regardless of its capacity.
+ * A copy of a <tt>LinkedHashSet</tt>, made by <tt>clone</tt>, by
+ * serialization or with <tt>addAll</tt>, preserves the iteration order.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a linked hash set concurrently, and at least one of the
+ * threads modifies the set, it <i>must</i> be synchronized externally.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> method are
+ * <i>fail-fast</i>, exactly as those of <tt>HashSet</tt>.
+ *
+ * @see Set
+ * @see HashSet
+ * @see LinkedHashMap
+ */
+public class LinkedHashSet extends HashSet {
+    private static final long serialVersionUID = -2851667679971038690L;
+
+    /**
+     * The head of the doubly linked list.
+     */
+    private transient LinkedNode header;
+
+    /**
+     * Constructs a new, empty linked hash set with the specified initial
+     * capacity and load factor.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  loadFactor      the load factor.
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive.
+     */
+    public LinkedHashSet(final int initialCapacity, final float loadFactor) {
+	super(initialCapacity, loadFactor);
+    }
+
+    /**
+     * Constructs a new, empty linked hash set with the specified initial
+     * capacity and the default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     */
+    public LinkedHashSet(final int initialCapacity) {
+	super(initialCapacity);
+    }
+
+    /**
+     * Constructs a new, empty linked hash set with the default capacity and
+     * load factor (0.75).
+     */
+    public LinkedHashSet() {
+	super();
+    }
+
+    /**
+     * Constructs a new linked hash set with the same elements as the
+     * specified collection, in the collection's iteration order.
+     *
+     * @param c the collection whose elements are to be placed into this set.
+     */
+    public LinkedHashSet(final Collection c) {
+	super(c);
+    }
+
+    /**
+     * Called by superclass constructors and pseudoconstructors (clone,
+     * readObject) before any elements are inserted into the set.
+     * Initializes the chain.
+     */
+    void init() {
+	this.header = new LinkedNode(-1, null, null);
+	this.header.before = this.header.after = this.header;
+    }
+
+    /**
+     * Removes all of the elements from this set.
+     */
+    public void clear() {
+	super.clear();
+	this.header.before = this.header.after = this.header;
+    }
+
+    /**
+     * Creates a linked node and appends it to the tail of the list.
+     */
+    Node newNode(final int hash, final Object key, final Node next) {
+	final LinkedNode e = new LinkedNode(hash, key, next);
+	e.after = this.header;
+	e.before = this.header.before;
+	e.before.after = e;
+	this.header.before = e;
+	return e;
+    }
+
+    Iterator newIterator(final int type) {
+	return new LinkedHashIterator(type);
+    }
+
+    /**
+     * LinkedHashSet node.
+     */
+    private static class LinkedNode extends Node {
+	// These fields comprise the doubly linked list used for iteration.
+	LinkedNode before;
+	LinkedNode after;
+
+	LinkedNode(final int hash, final Object key, final Node next) {
+	    super(hash, key, next);
+	}
+
+	void recordRemoval(final HashSet s) {
+	    this.before.after = this.after;
+	    this.after.before = this.before;
+	}
+    }
+
+    private class LinkedHashIterator implements Iterator {
+	private final int type;
+	private LinkedNode nextNode = LinkedHashSet.this.header.after;
+	private LinkedNode lastReturned = null;
+
+	/**
+	 * The modCount value that the iterator believes that the backing
+	 * set should have.  If this expectation is violated, the iterator
+	 * has detected concurrent modification.
+	 */
+	private int expectedModCount = LinkedHashSet.this.modCount;
+
+	LinkedHashIterator(final int type) {
+	    this.type = type;
+	}
+
+	public boolean hasNext() {
+	    return this.nextNode != LinkedHashSet.this.header;
+	}
+
+	public Object next() {
+	    if (LinkedHashSet.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    if (this.nextNode == LinkedHashSet.this.header) {
+		throw new NoSuchElementException();
+	    }
+
+	    final LinkedNode e = this.lastReturned = this.nextNode;
+	    this.nextNode = e.after;
+	    return this.type == KEYS ? e.key : e;
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    if (LinkedHashSet.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    LinkedHashSet.this.removeNode(this.lastReturned.hash, this.lastReturned.key);
+	    this.lastReturned = null;
+	    this.expectedModCount = LinkedHashSet.this.modCount;
+	}
+    }
+}
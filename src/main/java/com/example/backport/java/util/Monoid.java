@@ -0,0 +1,36 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * An associative operation with an identity element.  A monoid is passed to
+ * an <tt>AggregateTreeMap</tt> to combine the values of key ranges, such as
+ * their sum, minimum or maximum.  The operation must be associative, that
+ * is, <tt>combine(combine(a, b), c)</tt> must equal
+ * <tt>combine(a, combine(b, c))</tt>, and <tt>combine(identity(), a)</tt>
+ * and <tt>combine(a, identity())</tt> must both equal <tt>a</tt>.  It need
+ * not be commutative: values are always combined in ascending key order.
+ *
+ * @see AggregateTreeMap
+ * @see BiFunction
+ */
+public interface Monoid {
+    /**
+     * Returns the identity element, the aggregate of no values.
+     *
+     * @return the identity element.
+     */
+    Object identity();
+
+    /**
+     * Combines two aggregates, the first of which covers keys lower than
+     * those of the second.
+     *
+     * @param a the aggregate of the lower keys.
+     * @param b the aggregate of the higher keys.
+     * @return the aggregate of both.
+     */
+    Object combine(Object a, Object b);
+}
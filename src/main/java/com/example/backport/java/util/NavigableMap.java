@@ -0,0 +1,173 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A <tt>SortedMap</tt> extended with navigation methods that return the
+ * closest matches for given search targets.  Methods <tt>lowerEntry</tt>,
+ * <tt>floorEntry</tt>, <tt>ceilingEntry</tt> and <tt>higherEntry</tt>
+ * return the mapping associated with the greatest key strictly less than,
+ * the greatest key less than or equal to, the least key greater than or
+ * equal to, and the least key strictly greater than the given key,
+ * respectively, or <tt>null</tt> if there is no such key.  The
+ * <tt>*Key</tt> methods return only the key.  Unlike the equivalent
+ * <tt>headMap</tt> or <tt>tailMap</tt> idioms, these methods create no
+ * views or iterators.<p>
+ *
+ * The entries returned by these methods are the map's own entries; their
+ * <tt>setValue</tt> methods write through to the map.
+ *
+ * @see TreeMap
+ * @see NavigableSet
+ * @see SortedMap
+ */
+public interface NavigableMap extends SortedMap {
+    /**
+     * Returns the mapping associated with the greatest key strictly less
+     * than the given key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the greatest key less than <tt>key</tt>, or
+     *	       <tt>null</tt> if there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Map.Entry lowerEntry(Object key);
+
+    /**
+     * Returns the greatest key strictly less than the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the greatest key less than <tt>key</tt>, or <tt>null</tt> if
+     *	       there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Object lowerKey(Object key);
+
+    /**
+     * Returns the mapping associated with the greatest key less than or
+     * equal to the given key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the greatest key less than or equal to
+     *	       <tt>key</tt>, or <tt>null</tt> if there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Map.Entry floorEntry(Object key);
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the greatest key less than or equal to <tt>key</tt>, or
+     *	       <tt>null</tt> if there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Object floorKey(Object key);
+
+    /**
+     * Returns the mapping associated with the least key greater than or
+     * equal to the given key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the least key greater than or equal to
+     *	       <tt>key</tt>, or <tt>null</tt> if there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Map.Entry ceilingEntry(Object key);
+
+    /**
+     * Returns the least key greater than or equal to the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the least key greater than or equal to <tt>key</tt>, or
+     *	       <tt>null</tt> if there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Object ceilingKey(Object key);
+
+    /**
+     * Returns the mapping associated with the least key strictly greater
+     * than the given key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the least key greater than <tt>key</tt>, or
+     *	       <tt>null</tt> if there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Map.Entry higherEntry(Object key);
+
+    /**
+     * Returns the least key strictly greater than the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the least key greater than <tt>key</tt>, or <tt>null</tt> if
+     *	       there is no such key.
+     * @throws ClassCastException if the key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map does
+     *		  not tolerate <tt>null</tt> keys.
+     */
+    Object higherKey(Object key);
+
+    /**
+     * Removes and returns the mapping associated with the least key in this
+     * map, or <tt>null</tt> if the map is empty.
+     *
+     * @return the removed first entry of this map, or <tt>null</tt> if the
+     *	       map is empty.
+     */
+    Map.Entry pollFirstEntry();
+
+    /**
+     * Removes and returns the mapping associated with the greatest key in
+     * this map, or <tt>null</tt> if the map is empty.
+     *
+     * @return the removed last entry of this map, or <tt>null</tt> if the
+     *	       map is empty.
+     */
+    Map.Entry pollLastEntry();
+
+    /**
+     * Returns an iterator over the mappings in this map in descending key
+     * order.  Each element returned is a <tt>Map.Entry</tt>.  The iterator
+     * supports the <tt>remove</tt> operation.
+     *
+     * @return an iterator over the entries of this map, greatest key first.
+     */
+    Iterator descendingIterator();
+
+    /**
+     * Returns an iterator over the keys in this map in descending order.
+     * The iterator supports the <tt>remove</tt> operation.
+     *
+     * @return an iterator over the keys of this map, greatest first.
+     */
+    Iterator descendingKeyIterator();
+}
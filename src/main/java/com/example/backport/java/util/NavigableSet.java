@@ -0,0 +1,100 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * A <tt>SortedSet</tt> extended with navigation methods reporting closest
+ * matches for given search targets.  Methods <tt>lower</tt>,
+ * <tt>floor</tt>, <tt>ceiling</tt> and <tt>higher</tt> return the greatest
+ * element strictly less than, the greatest element less than or equal to,
+ * the least element greater than or equal to, and the least element
+ * strictly greater than the given element, respectively, or <tt>null</tt>
+ * if there is no such element.  Because <tt>null</tt> doubles as the "not
+ * found" result, these methods cannot distinguish a <tt>null</tt> element
+ * from an absent one.
+ *
+ * @see TreeSet
+ * @see NavigableMap
+ * @see SortedSet
+ */
+public interface NavigableSet extends SortedSet {
+    /**
+     * Returns the greatest element in this set strictly less than the given
+     * element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the greatest element less than <tt>o</tt>, or <tt>null</tt>.
+     * @throws ClassCastException if the element cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  does not tolerate <tt>null</tt> elements.
+     */
+    Object lower(Object o);
+
+    /**
+     * Returns the greatest element in this set less than or equal to the
+     * given element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the greatest element less than or equal to <tt>o</tt>, or
+     *	       <tt>null</tt>.
+     * @throws ClassCastException if the element cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  does not tolerate <tt>null</tt> elements.
+     */
+    Object floor(Object o);
+
+    /**
+     * Returns the least element in this set greater than or equal to the
+     * given element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the least element greater than or equal to <tt>o</tt>, or
+     *	       <tt>null</tt>.
+     * @throws ClassCastException if the element cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  does not tolerate <tt>null</tt> elements.
+     */
+    Object ceiling(Object o);
+
+    /**
+     * Returns the least element in this set strictly greater than the given
+     * element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the least element greater than <tt>o</tt>, or <tt>null</tt>.
+     * @throws ClassCastException if the element cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  does not tolerate <tt>null</tt> elements.
+     */
+    Object higher(Object o);
+
+    /**
+     * Retrieves and removes the first (lowest) element, or returns
+     * <tt>null</tt> if this set is empty.
+     *
+     * @return the first element, or <tt>null</tt> if this set is empty.
+     */
+    Object pollFirst();
+
+    /**
+     * Retrieves and removes the last (highest) element, or returns
+     * <tt>null</tt> if this set is empty.
+     *
+     * @return the last element, or <tt>null</tt> if this set is empty.
+     */
+    Object pollLast();
+
+    /**
+     * Returns an iterator over the elements in this set, in descending
+     * order.  The iterator supports the <tt>remove</tt> operation.
+     *
+     * @return an iterator over the elements in this set, greatest first.
+     */
+    Iterator descendingIterator();
+}
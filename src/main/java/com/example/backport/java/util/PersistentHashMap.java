@@ -0,0 +1,908 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.NoSuchElementException;
+
+import com.example.backport.java.lang.UnsupportedOperationException;
+
+/**
+ * An immutable <tt>Map</tt> whose updates return new versions of the map,
+ * each sharing almost all of its structure with the version it was derived
+ * from.  The mappings are kept in a <i>hash array mapped trie</i>: a tree
+ * with up to 32 branches per node, in which a key is placed by successive
+ * five-bit slices of its hash code.  Each node holds a bitmap of the
+ * branches in use and an array exactly as long as the number of branches,
+ * so the trie has no empty slots and is rarely more than a few levels
+ * deep.<p>
+ *
+ * <tt>get</tt> and <tt>containsKey</tt> descend the trie, comparing the key
+ * with at most one key per node until the last.  <tt>with</tt> and
+ * <tt>without</tt> copy only the nodes on the path to the key, so they take
+ * time and space logarithmic, with base 32, in the size of the map, and
+ * leave this map unchanged.  Distinct keys with equal hash codes are kept
+ * together in a list at the bottom of the trie.  The map permits
+ * <tt>null</tt> keys and values.  The iteration order is unspecified.<p>
+ *
+ * Since a version never changes, a snapshot of a map that is being updated
+ * is simply a reference to its current version, and takes constant time.
+ * A typical use is a single writer publishing each new version through a
+ * <tt>volatile</tt> field, or a <tt>synchronized</tt> accessor, and any
+ * number of readers working on whichever version they last read, without
+ * locking and without ever seeing a partial update.<p>
+ *
+ * For bulk construction, <tt>builder</tt> returns a <tt>Builder</tt>, a
+ * mutable map that starts out with the mappings of this map and updates in
+ * place the nodes it has already copied, instead of copying them again for
+ * every update.  Its <tt>build</tt> method returns the resulting version in
+ * constant time.<p>
+ *
+ * The mutating operations of the <tt>Map</tt> interface, on the map and on
+ * its collection views, throw <tt>UnsupportedOperationException</tt>.  As
+ * with any hash based map, the keys' <tt>hashCode</tt> must not change
+ * while they are in the map.
+ *
+ * @see HashMap
+ * @see FrozenHashMap
+ */
+public class PersistentHashMap extends AbstractMap implements Serializable {
+    private static final long serialVersionUID = 5367049727126154342L;
+
+    /**
+     * The number of hash code bits consumed by each level of the trie.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * The greatest depth of the trie: a node for each slice of a hash code,
+     * and a collision list.
+     */
+    private static final int MAX_DEPTH = (32 + BITS - 1) / BITS + 1;
+
+    /**
+     * Returned by lookups that find no mapping, since <tt>null</tt> is a
+     * valid value.
+     */
+    private static final Object NOT_FOUND = new Object();
+
+    private static final BitmapNode EMPTY_NODE = new BitmapNode(null, 0, 0, new Object[0]);
+
+    private transient Node root;
+
+    private transient int size;
+
+    /**
+     * Constructs an empty map.
+     */
+    public PersistentHashMap() {
+	this.root = EMPTY_NODE;
+	this.size = 0;
+    }
+
+    /**
+     * Constructs a map with the same mappings as the given map.
+     *
+     * @param m the map whose mappings are to be placed in this map.
+     */
+    public PersistentHashMap(final Map m) {
+	final Builder b = new Builder(EMPTY_NODE, 0);
+	b.putAll(m);
+	this.root = b.root;
+	this.size = b.size;
+    }
+
+    private PersistentHashMap(final Node root, final int size) {
+	this.root = root;
+	this.size = size;
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for this key.  A return
+     * value of <tt>null</tt> does not <i>necessarily</i> indicate that the
+     * map contains no mapping for the key; it's also possible that the map
+     * explicitly maps the key to <tt>null</tt>.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key.
+     */
+    public Object get(final Object key) {
+	final Object value = this.root.get(key, hash(key), 0);
+	return value == NOT_FOUND ? null : value;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     */
+    public boolean containsKey(final Object key) {
+	return this.root.get(key, hash(key), 0) != NOT_FOUND;
+    }
+
+    /**
+     * Returns a map with the mappings of this map and a mapping from the
+     * specified key to the specified value, which replaces any mapping of
+     * the key in this map.  This map is not changed.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return a map with the mappings of this map, and the key mapped to
+     *         the value; this map itself if it already was.
+     */
+    public PersistentHashMap with(final Object key, final Object value) {
+	final Change change = new Change();
+	final Node newRoot = this.root.put(null, key, value, hash(key), 0, change);
+	if (newRoot == this.root) {
+	    return this;
+	}
+	return new PersistentHashMap(newRoot, change.oldValue == NOT_FOUND ? this.size + 1 : this.size);
+    }
+
+    /**
+     * Returns a map with the mappings of this map except that of the
+     * specified key.  This map is not changed.
+     *
+     * @param key key whose mapping is to be left out.
+     * @return a map with the mappings of this map except that of the key;
+     *         this map itself if it has no mapping for the key.
+     */
+    public PersistentHashMap without(final Object key) {
+	final Change change = new Change();
+	final Node newRoot = this.root.remove(null, key, hash(key), 0, change);
+	if (change.oldValue == NOT_FOUND) {
+	    return this;
+	}
+	return new PersistentHashMap(newRoot, this.size - 1);
+    }
+
+    /**
+     * Returns a new builder holding the mappings of this map.  This method
+     * takes constant time; the builder copies the nodes of this map only as
+     * it updates them.
+     *
+     * @return a new builder holding the mappings of this map.
+     */
+    public Builder builder() {
+	return new Builder(this.root, this.size);
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     *
+     * @see #with(Object, Object)
+     */
+    public Object put(final Object key, final Object value) {
+	throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     *
+     * @see #without(Object)
+     */
+    public Object remove(final Object key) {
+	throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     */
+    public void putAll(final Map t) {
+	throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Always throws <tt>UnsupportedOperationException</tt>.
+     */
+    public void clear() {
+	throw new UnsupportedOperationException();
+    }
+
+    private transient Set entrySet = null;
+
+    /**
+     * Returns an unmodifiable set view of the mappings contained in this
+     * map.  Each element in the returned set is a <tt>Map.Entry</tt>.
+     *
+     * @return a set view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new EntryIterator(PersistentHashMap.this.root, PersistentHashMap.this.size);
+		}
+
+		public int size() {
+		    return PersistentHashMap.this.size;
+		}
+
+		public boolean contains(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry e = (Map.Entry) o;
+		    final Object key = e.getKey();
+		    final Object value = PersistentHashMap.this.root.get(key, hash(key), 0);
+		    return value != NOT_FOUND && TreeMap.valEquals(value, e.getValue());
+		}
+
+		public boolean remove(final Object o) {
+		    throw new UnsupportedOperationException();
+		}
+
+		public void clear() {
+		    throw new UnsupportedOperationException();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * A mutable map for building a <tt>PersistentHashMap</tt> by a series
+     * of updates.  Nodes the builder creates are marked as its own, and
+     * are updated in place by later updates; other nodes, which it shares
+     * with the map it was created from, are copied first.  A builder is
+     * not a <tt>Map</tt>, and is not synchronized.
+     *
+     * @see PersistentHashMap#builder()
+     */
+    public static final class Builder {
+	/**
+	 * The mark of the nodes this builder may update in place.  It is
+	 * replaced whenever a map is built, which then owns the nodes.
+	 */
+	private Object edit = new Object();
+
+	private Node root;
+
+	private int size;
+
+	private final Change change = new Change();
+
+	Builder(final Node root, final int size) {
+	    this.root = root;
+	    this.size = size;
+	}
+
+	/**
+	 * Returns the number of key-value mappings in this builder.
+	 *
+	 * @return the number of key-value mappings in this builder.
+	 */
+	public int size() {
+	    return this.size;
+	}
+
+	/**
+	 * Returns the value to which this builder maps the specified key, or
+	 * <tt>null</tt> if it contains no mapping for this key.
+	 *
+	 * @param key key whose associated value is to be returned.
+	 * @return the value to which this builder maps the specified key.
+	 */
+	public Object get(final Object key) {
+	    final Object value = this.root.get(key, hash(key), 0);
+	    return value == NOT_FOUND ? null : value;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if this builder contains a mapping for the
+	 * specified key.
+	 *
+	 * @param key key whose presence is to be tested.
+	 * @return <tt>true</tt> if this builder contains a mapping for the
+	 *         specified key.
+	 */
+	public boolean containsKey(final Object key) {
+	    return this.root.get(key, hash(key), 0) != NOT_FOUND;
+	}
+
+	/**
+	 * Associates the specified value with the specified key, replacing
+	 * any previous mapping of the key.
+	 *
+	 * @param key key with which the specified value is to be associated.
+	 * @param value value to be associated with the specified key.
+	 * @return previous value associated with specified key, or
+	 *         <tt>null</tt> if there was no mapping for key.
+	 */
+	public Object put(final Object key, final Object value) {
+	    this.change.oldValue = NOT_FOUND;
+	    this.root = this.root.put(this.edit, key, value, hash(key), 0, this.change);
+	    final Object oldValue = this.change.oldValue;
+	    if (oldValue == NOT_FOUND) {
+		this.size++;
+		return null;
+	    }
+	    return oldValue;
+	}
+
+	/**
+	 * Copies all of the mappings from the specified map to this builder.
+	 *
+	 * @param t mappings to be stored in this builder.
+	 */
+	public void putAll(final Map t) {
+	    for (final Iterator i = t.entrySet().iterator(); i.hasNext(); ) {
+		final Map.Entry e = (Map.Entry) i.next();
+		this.put(e.getKey(), e.getValue());
+	    }
+	}
+
+	/**
+	 * Removes the mapping for the specified key, if present.
+	 *
+	 * @param key key whose mapping is to be removed.
+	 * @return previous value associated with specified key, or
+	 *         <tt>null</tt> if there was no mapping for key.
+	 */
+	public Object remove(final Object key) {
+	    this.change.oldValue = NOT_FOUND;
+	    this.root = this.root.remove(this.edit, key, hash(key), 0, this.change);
+	    final Object oldValue = this.change.oldValue;
+	    if (oldValue == NOT_FOUND) {
+		return null;
+	    }
+	    this.size--;
+	    return oldValue;
+	}
+
+	/**
+	 * Returns a map with the mappings currently in this builder, in
+	 * constant time.  The builder remains usable, and later updates to it
+	 * do not affect the returned map.
+	 *
+	 * @return a map with the mappings currently in this builder.
+	 */
+	public PersistentHashMap build() {
+	    this.edit = new Object();
+	    return new PersistentHashMap(this.root, this.size);
+	}
+    }
+
+    /**
+     * Reports the value a key was mapped to before an update, or
+     * <tt>NOT_FOUND</tt>.
+     */
+    private static final class Change {
+	Object oldValue = NOT_FOUND;
+
+	Change() {
+	    // empty
+	}
+    }
+
+    static int hash(final Object key) {
+	return key == null ? 0 : key.hashCode();
+    }
+
+    /**
+     * Returns the bit standing for the branch of the given hash code at the
+     * given level.
+     */
+    static int bit(final int hash, final int shift) {
+	return 1 << (hash >>> shift & (1 << BITS) - 1);
+    }
+
+    /**
+     * Returns the number of bits set in the bitmap below the given bit,
+     * which is the index of the bit's branch among those in use.
+     */
+    static int index(final int bitmap, final int bit) {
+	return bitCount(bitmap & bit - 1);
+    }
+
+    static int bitCount(int i) {
+	i = i - (i >>> 1 & 0x55555555);
+	i = (i & 0x33333333) + (i >>> 2 & 0x33333333);
+	i = i + (i >>> 4) & 0x0f0f0f0f;
+	i = i + (i >>> 8);
+	i = i + (i >>> 16);
+	return i & 0x3f;
+    }
+
+    /**
+     * Returns a node holding the two given mappings, whose keys are
+     * distinct and have the same branch at all levels above shift.
+     */
+    static Node merge(final Object edit, final Object k1, final Object v1, final int h1,
+		      final Object k2, final Object v2, final int h2, final int shift) {
+	if (h1 == h2) {
+	    return new CollisionNode(edit, h1, new Object[] {k1, v1, k2, v2});
+	}
+	final int b1 = bit(h1, shift);
+	final int b2 = bit(h2, shift);
+	if (b1 == b2) {
+	    return new BitmapNode(edit, 0, b1,
+				  new Object[] {merge(edit, k1, v1, h1, k2, v2, h2, shift + BITS)});
+	}
+	// Compare the branches as unsigned, since bit 31 is negative.
+	return new BitmapNode(edit, b1 | b2, 0, (b1 - 1 & b2) != 0
+			      ? new Object[] {k2, v2, k1, v1} : new Object[] {k1, v1, k2, v2});
+    }
+
+    /**
+     * A node of the trie.  The updating methods return the updated node:
+     * the node itself if there was nothing to update, or if it is marked
+     * with the given <tt>edit</tt> and could be updated in place, and
+     * otherwise a copy marked with <tt>edit</tt>.  A node other than the
+     * root always holds at least two mappings, counting those below it.
+     */
+    abstract static class Node {
+	/**
+	 * Returns the value of the key, or <tt>NOT_FOUND</tt>.
+	 */
+	abstract Object get(Object key, int hash, int shift);
+
+	abstract Node put(Object edit, Object key, Object value, int hash, int shift, Change change);
+
+	abstract Node remove(Object edit, Object key, int hash, int shift, Change change);
+
+	/**
+	 * Returns the number of mappings held in this node itself.
+	 */
+	abstract int payloadArity();
+
+	abstract Object keyAt(int i);
+
+	abstract Object valueAt(int i);
+
+	/**
+	 * Returns the number of nodes below this one.
+	 */
+	abstract int nodeArity();
+
+	abstract Node nodeAt(int i);
+    }
+
+    /**
+     * A node with a branch for each five-bit slice of a hash code.  The
+     * branches in use hold either a single mapping, with its bit set in
+     * <tt>dataMap</tt>, or a node, with its bit set in <tt>nodeMap</tt>.
+     * <tt>content</tt> holds the key and value of each mapping, in branch
+     * order, followed by the nodes, in reverse branch order.
+     */
+    static final class BitmapNode extends Node {
+	private final Object edit;
+	private int dataMap;
+	private int nodeMap;
+	private Object[] content;
+
+	BitmapNode(final Object edit, final int dataMap, final int nodeMap, final Object[] content) {
+	    this.edit = edit;
+	    this.dataMap = dataMap;
+	    this.nodeMap = nodeMap;
+	    this.content = content;
+	}
+
+	Object get(final Object key, final int hash, final int shift) {
+	    final int bit = bit(hash, shift);
+	    if ((this.dataMap & bit) != 0) {
+		final int i = 2 * index(this.dataMap, bit);
+		return TreeMap.valEquals(key, this.content[i]) ? this.content[i + 1] : NOT_FOUND;
+	    }
+	    if ((this.nodeMap & bit) != 0) {
+		final Node sub = (Node) this.content[this.content.length - 1 - index(this.nodeMap, bit)];
+		return sub.get(key, hash, shift + BITS);
+	    }
+	    return NOT_FOUND;
+	}
+
+	Node put(final Object edit, final Object key, final Object value,
+		 final int hash, final int shift, final Change change) {
+	    final int bit = bit(hash, shift);
+	    if ((this.dataMap & bit) != 0) {
+		final int i = 2 * index(this.dataMap, bit);
+		final Object k = this.content[i];
+		if (TreeMap.valEquals(key, k)) {
+		    final Object v = this.content[i + 1];
+		    change.oldValue = v;
+		    if (v == value) {
+			return this;
+		    }
+		    final BitmapNode n = this.editable(edit);
+		    n.content[i + 1] = value;
+		    return n;
+		}
+		final Node sub = merge(edit, k, this.content[i + 1], hash(k),
+				       key, value, hash, shift + BITS);
+		return this.dataToNode(edit, bit, i, sub);
+	    }
+	    if ((this.nodeMap & bit) != 0) {
+		final int j = this.content.length - 1 - index(this.nodeMap, bit);
+		final Node sub = (Node) this.content[j];
+		final Node newSub = sub.put(edit, key, value, hash, shift + BITS, change);
+		if (newSub == sub) {
+		    return this;
+		}
+		final BitmapNode n = this.editable(edit);
+		n.content[j] = newSub;
+		return n;
+	    }
+	    return this.insertData(edit, bit, key, value);
+	}
+
+	Node remove(final Object edit, final Object key, final int hash,
+		    final int shift, final Change change) {
+	    final int bit = bit(hash, shift);
+	    if ((this.dataMap & bit) != 0) {
+		final int i = 2 * index(this.dataMap, bit);
+		if (!TreeMap.valEquals(key, this.content[i])) {
+		    return this;
+		}
+		change.oldValue = this.content[i + 1];
+		return this.removeData(edit, bit, i);
+	    }
+	    if ((this.nodeMap & bit) != 0) {
+		final int idx = index(this.nodeMap, bit);
+		final int j = this.content.length - 1 - idx;
+		final Node sub = (Node) this.content[j];
+		final Node newSub = sub.remove(edit, key, hash, shift + BITS, change);
+		if (change.oldValue == NOT_FOUND) {
+		    return this;
+		}
+		// Keep the trie canonical: a node left with a single mapping
+		// is replaced by the mapping.
+		if (newSub.nodeArity() == 0 && newSub.payloadArity() == 1) {
+		    return this.nodeToData(edit, bit, idx, newSub.keyAt(0), newSub.valueAt(0));
+		}
+		if (newSub == sub) {
+		    return this;
+		}
+		final BitmapNode n = this.editable(edit);
+		n.content[j] = newSub;
+		return n;
+	    }
+	    return this;
+	}
+
+	int payloadArity() {
+	    return bitCount(this.dataMap);
+	}
+
+	Object keyAt(final int i) {
+	    return this.content[2 * i];
+	}
+
+	Object valueAt(final int i) {
+	    return this.content[2 * i + 1];
+	}
+
+	int nodeArity() {
+	    return bitCount(this.nodeMap);
+	}
+
+	Node nodeAt(final int i) {
+	    return (Node) this.content[this.content.length - 1 - i];
+	}
+
+	private BitmapNode editable(final Object edit) {
+	    if (edit != null && this.edit == edit) {
+		return this;
+	    }
+	    return new BitmapNode(edit, this.dataMap, this.nodeMap, (Object[]) this.content.clone());
+	}
+
+	private BitmapNode with(final Object edit, final int dataMap, final int nodeMap,
+				final Object[] content) {
+	    if (edit != null && this.edit == edit) {
+		this.dataMap = dataMap;
+		this.nodeMap = nodeMap;
+		this.content = content;
+		return this;
+	    }
+	    return new BitmapNode(edit, dataMap, nodeMap, content);
+	}
+
+	private BitmapNode insertData(final Object edit, final int bit,
+				      final Object key, final Object value) {
+	    final Object[] old = this.content;
+	    final int i = 2 * index(this.dataMap, bit);
+	    final Object[] c = new Object[old.length + 2];
+	    System.arraycopy(old, 0, c, 0, i);
+	    c[i] = key;
+	    c[i + 1] = value;
+	    System.arraycopy(old, i, c, i + 2, old.length - i);
+	    return this.with(edit, this.dataMap | bit, this.nodeMap, c);
+	}
+
+	private BitmapNode removeData(final Object edit, final int bit, final int i) {
+	    final Object[] old = this.content;
+	    final Object[] c = new Object[old.length - 2];
+	    System.arraycopy(old, 0, c, 0, i);
+	    System.arraycopy(old, i + 2, c, i, old.length - i - 2);
+	    return this.with(edit, this.dataMap ^ bit, this.nodeMap, c);
+	}
+
+	/**
+	 * Replaces the mapping at i with the node sub, on the same branch.
+	 */
+	private BitmapNode dataToNode(final Object edit, final int bit, final int i, final Node sub) {
+	    final Object[] old = this.content;
+	    final int idx = index(this.nodeMap, bit);
+	    final Object[] c = new Object[old.length - 1];
+	    System.arraycopy(old, 0, c, 0, i);
+	    System.arraycopy(old, i + 2, c, i, old.length - idx - i - 2);
+	    c[c.length - 1 - idx] = sub;
+	    System.arraycopy(old, old.length - idx, c, c.length - idx, idx);
+	    return this.with(edit, this.dataMap ^ bit, this.nodeMap | bit, c);
+	}
+
+	/**
+	 * Replaces the node at index idx with a mapping, on the same branch.
+	 */
+	private BitmapNode nodeToData(final Object edit, final int bit, final int idx,
+				      final Object key, final Object value) {
+	    final Object[] old = this.content;
+	    final int i = 2 * index(this.dataMap, bit);
+	    final Object[] c = new Object[old.length + 1];
+	    System.arraycopy(old, 0, c, 0, i);
+	    c[i] = key;
+	    c[i + 1] = value;
+	    System.arraycopy(old, i, c, i + 2, old.length - idx - 1 - i);
+	    System.arraycopy(old, old.length - idx, c, c.length - idx, idx);
+	    return this.with(edit, this.dataMap | bit, this.nodeMap ^ bit, c);
+	}
+    }
+
+    /**
+     * A list of the mappings of distinct keys with the same hash code.
+     */
+    static final class CollisionNode extends Node {
+	private final Object edit;
+	private final int hash;
+	private Object[] content;
+
+	CollisionNode(final Object edit, final int hash, final Object[] content) {
+	    this.edit = edit;
+	    this.hash = hash;
+	    this.content = content;
+	}
+
+	private int find(final Object key) {
+	    for (int i = 0; i < this.content.length; i += 2) {
+		if (TreeMap.valEquals(key, this.content[i])) {
+		    return i;
+		}
+	    }
+	    return -1;
+	}
+
+	Object get(final Object key, final int hash, final int shift) {
+	    if (hash == this.hash) {
+		final int i = this.find(key);
+		if (i >= 0) {
+		    return this.content[i + 1];
+		}
+	    }
+	    return NOT_FOUND;
+	}
+
+	Node put(final Object edit, final Object key, final Object value,
+		 final int hash, final int shift, final Change change) {
+	    if (hash != this.hash) {
+		// Push this node down a level, next to the new mapping.
+		final Node n = new BitmapNode(edit, 0, bit(this.hash, shift), new Object[] {this});
+		return n.put(edit, key, value, hash, shift, change);
+	    }
+	    final int i = this.find(key);
+	    if (i >= 0) {
+		final Object v = this.content[i + 1];
+		change.oldValue = v;
+		if (v == value) {
+		    return this;
+		}
+		final Object[] c = this.owned(edit) ? this.content : (Object[]) this.content.clone();
+		c[i + 1] = value;
+		return this.with(edit, c);
+	    }
+	    final Object[] c = new Object[this.content.length + 2];
+	    System.arraycopy(this.content, 0, c, 0, this.content.length);
+	    c[this.content.length] = key;
+	    c[this.content.length + 1] = value;
+	    return this.with(edit, c);
+	}
+
+	Node remove(final Object edit, final Object key, final int hash,
+		    final int shift, final Change change) {
+	    final int i = hash == this.hash ? this.find(key) : -1;
+	    if (i < 0) {
+		return this;
+	    }
+	    change.oldValue = this.content[i + 1];
+	    final Object[] c = new Object[this.content.length - 2];
+	    System.arraycopy(this.content, 0, c, 0, i);
+	    System.arraycopy(this.content, i + 2, c, i, c.length - i);
+	    return this.with(edit, c);
+	}
+
+	int payloadArity() {
+	    return this.content.length / 2;
+	}
+
+	Object keyAt(final int i) {
+	    return this.content[2 * i];
+	}
+
+	Object valueAt(final int i) {
+	    return this.content[2 * i + 1];
+	}
+
+	int nodeArity() {
+	    return 0;
+	}
+
+	Node nodeAt(final int i) {
+	    throw new IndexOutOfBoundsException();
+	}
+
+	private boolean owned(final Object edit) {
+	    return edit != null && this.edit == edit;
+	}
+
+	private CollisionNode with(final Object edit, final Object[] content) {
+	    if (this.owned(edit)) {
+		this.content = content;
+		return this;
+	    }
+	    return new CollisionNode(edit, this.hash, content);
+	}
+    }
+
+    /**
+     * Iterates over the trie depth first, over the mappings of each node
+     * before the nodes below it.
+     */
+    private static class EntryIterator implements Iterator {
+	private final Node[] nodes = new Node[MAX_DEPTH];
+	private final int[] nextData = new int[MAX_DEPTH];
+	private final int[] nextNode = new int[MAX_DEPTH];
+	private int depth = 0;
+	private int remaining;
+
+	EntryIterator(final Node root, final int size) {
+	    this.nodes[0] = root;
+	    this.remaining = size;
+	}
+
+	public boolean hasNext() {
+	    return this.remaining > 0;
+	}
+
+	public Object next() {
+	    if (this.remaining == 0) {
+		throw new NoSuchElementException();
+	    }
+	    this.remaining--;
+	    while (true) {
+		final Node n = this.nodes[this.depth];
+		if (this.nextData[this.depth] < n.payloadArity()) {
+		    final int i = this.nextData[this.depth]++;
+		    return new ImmutableEntry(n.keyAt(i), n.valueAt(i));
+		}
+		if (this.nextNode[this.depth] < n.nodeArity()) {
+		    final Node sub = n.nodeAt(this.nextNode[this.depth]++);
+		    this.depth++;
+		    this.nodes[this.depth] = sub;
+		    this.nextData[this.depth] = 0;
+		    this.nextNode[this.depth] = 0;
+		} else {
+		    this.nodes[this.depth] = null;
+		    this.depth--;
+		}
+	    }
+	}
+
+	public void remove() {
+	    throw new UnsupportedOperationException();
+	}
+    }
+
+    /**
+     * An immutable key-value pair.
+     */
+    private static class ImmutableEntry implements Map.Entry {
+	private final Object key;
+	private final Object value;
+
+	ImmutableEntry(final Object key, final Object value) {
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    throw new UnsupportedOperationException();
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return TreeMap.valEquals(this.key, e.getKey())
+		&& TreeMap.valEquals(this.value, e.getValue());
+	}
+
+	public int hashCode() {
+	    return (this.key == null ? 0 : this.key.hashCode())
+		^ (this.value == null ? 0 : this.value.hashCode());
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+    /**
+     * Save the state of the <tt>PersistentHashMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *             mappings) is emitted (int), followed by the key (Object)
+     *             and value (Object) for each key-value mapping.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException
+    {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (final Iterator i = new EntryIterator(this.root, this.size); i.hasNext(); ) {
+	    final Map.Entry e = (Map.Entry) i.next();
+	    s.writeObject(e.getKey());
+	    s.writeObject(e.getValue());
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>PersistentHashMap</tt> instance from a stream
+     * (i.e., deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException
+    {
+	s.defaultReadObject();
+	final Builder b = new Builder(EMPTY_NODE, 0);
+	for (int n = s.readInt(); n > 0; n--) {
+	    final Object key = s.readObject();
+	    b.put(key, s.readObject());
+	}
+	this.root = b.root;
+	this.size = b.size;
+    }
+}
@@ -0,0 +1,1015 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Radix trie (PATRICIA trie) based implementation of the <tt>SortedMap</tt>
+ * interface for <tt>String</tt> keys.  The keys are kept in the natural
+ * order of <tt>String</tt>, which is the order of their characters.<p>
+ *
+ * Each node of the trie stands for a prefix shared by all keys below it,
+ * and is labelled with the characters that extend its parent's prefix;
+ * nodes with a single child and no mapping are merged into it.  A shared
+ * prefix is therefore stored once, and a lookup examines each character of
+ * the key at most once, instead of comparing the key against a whole key at
+ * every level as <tt>TreeMap</tt> does.  <tt>containsKey</tt>,
+ * <tt>get</tt>, <tt>put</tt> and <tt>remove</tt> run in time proportional
+ * to the length of the key, plus a binary search over the children of each
+ * node visited.  The map does not permit <tt>null</tt> keys; it does permit
+ * <tt>null</tt> values.<p>
+ *
+ * In addition to the <tt>SortedMap</tt> views, <tt>prefixMap</tt>
+ * returns a view of the mappings whose keys start with a given prefix, in
+ * time proportional to the length of the prefix; iterating over it takes
+ * time proportional to the number of mappings in it.  This makes the map
+ * a good fit for hierarchical names, such as fully qualified class names or
+ * dotted property names.<p>
+ *
+ * <b>Note that this implementation is not synchronized.</b> If multiple
+ * threads access a map concurrently, and at least one of the threads
+ * modifies the map structurally, it <i>must</i> be synchronized
+ * externally.<p>
+ *
+ * The iterators returned by all of this class's "collection view methods"
+ * are <i>fail-fast</i>: if the map is structurally modified at any time
+ * after the iterator is created, in any way except through the iterator's
+ * own <tt>remove</tt> method, the iterator throws a
+ * <tt>ConcurrentModificationException</tt>.
+ *
+ * @see Map
+ * @see SortedMap
+ * @see TreeMap
+ */
+public class RadixTreeMap extends AbstractMap
+			  implements SortedMap, Cloneable, java.io.Serializable
+{
+    private static final long serialVersionUID = -3524628318437529474L;
+
+    /**
+     * The root of the trie, which stands for the empty prefix.
+     */
+    private transient Node root = new Node("", null);
+
+    /**
+     * The number of entries in the trie.
+     */
+    private transient int size = 0;
+
+    /**
+     * The number of structural modifications to the trie.
+     */
+    private transient int modCount = 0;
+
+    /**
+     * Constructs a new, empty map.
+     */
+    public RadixTreeMap() {
+    }
+
+    /**
+     * Constructs a new map containing the same mappings as the given map.
+     *
+     * @param m the map whose mappings are to be placed in this map.
+     * @throws ClassCastException if a key in m is not a <tt>String</tt>.
+     * @throws NullPointerException if m contains a <tt>null</tt> key.
+     */
+    public RadixTreeMap(final Map m) {
+	this.putAll(m);
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     * @throws ClassCastException if the key is not a <tt>String</tt>.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public boolean containsKey(final Object key) {
+	return this.getNode((String) key) != null;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for the key.  A return
+     * value of <tt>null</tt> does not <i>necessarily</i> indicate that the
+     * map contains no mapping for the key; it's also possible that the map
+     * explicitly maps the key to <tt>null</tt>.  The <tt>containsKey</tt>
+     * operation may be used to distinguish these two cases.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key, or
+     *         <tt>null</tt> if the map contains no mapping for the key.
+     * @throws ClassCastException if the key is not a <tt>String</tt>.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object get(final Object key) {
+	final Node p = this.getNode((String) key);
+	return p == null ? null : p.value;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old
+     * value is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.  A <tt>null</tt> return can
+     *         also indicate that the map previously associated <tt>null</tt>
+     *         with the specified key.
+     * @throws ClassCastException if the key is not a <tt>String</tt>.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object put(final Object key, final Object value) {
+	final String k = (String) key;
+	final int length = k.length();
+	Node p = this.root;
+	int pos = 0;
+	for (;;) {
+	    if (pos == length) {
+		if (p.key != null) {
+		    return p.setValue(value);
+		}
+		p.key = k;
+		p.value = value;
+		this.size++;
+		this.modCount++;
+		return null;
+	    }
+
+	    final int i = p.indexOf(k.charAt(pos));
+	    if (i < 0) {
+		final Node leaf = new Node(k.substring(pos), p);
+		leaf.key = k;
+		leaf.value = value;
+		p.insertChild(-(i + 1), leaf);
+		this.size++;
+		this.modCount++;
+		return null;
+	    }
+
+	    final Node child = p.children[i];
+	    final int common = commonLength(child.label, k, pos);
+	    pos += common;
+	    if (common == child.label.length()) {
+		p = child;
+		continue;
+	    }
+
+	    // Split the child's label where the key diverges from it
+	    final Node mid = new Node(child.label.substring(0, common), p);
+	    child.label = child.label.substring(common);
+	    child.parent = mid;
+	    mid.children = new Node[] {child, null};
+	    mid.childCount = 1;
+	    p.children[i] = mid;
+	    p = mid;
+	}
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *         if there was no mapping for key.  A <tt>null</tt> return can
+     *         also indicate that the map previously associated <tt>null</tt>
+     *         with the specified key.
+     * @throws ClassCastException if the key is not a <tt>String</tt>.
+     * @throws NullPointerException if the key is <tt>null</tt>.
+     */
+    public Object remove(final Object key) {
+	final Node p = this.getNode((String) key);
+	if (p == null) {
+	    return null;
+	}
+	final Object oldValue = p.value;
+	this.deleteNode(p);
+	return oldValue;
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	this.modCount++;
+	this.size = 0;
+	this.root = new Node("", null);
+    }
+
+    /**
+     * Returns a shallow copy of this <tt>RadixTreeMap</tt> instance.  (The
+     * keys and values themselves are not cloned.)
+     *
+     * @return a shallow copy of this map.
+     */
+    public Object clone() {
+	return new RadixTreeMap(this);
+    }
+
+
+    // SortedMap operations
+
+    /**
+     * Returns <tt>null</tt>, as this map uses the natural ordering of its
+     * <tt>String</tt> keys.
+     *
+     * @return <tt>null</tt>.
+     */
+    public Comparator comparator() {
+	return null;
+    }
+
+    /**
+     * Returns the first (lowest) key currently in this sorted map.
+     *
+     * @return the first (lowest) key currently in this sorted map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public Object firstKey() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return firstNode(this.root).key;
+    }
+
+    /**
+     * Returns the last (highest) key currently in this sorted map.
+     *
+     * @return the last (highest) key currently in this sorted map.
+     * @throws    NoSuchElementException Map is empty.
+     */
+    public Object lastKey() {
+	if (this.size == 0) {
+	    throw new NoSuchElementException();
+	}
+	return lastNode(this.root).key;
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys start with the
+     * specified prefix.  The returned sorted map is backed by this map, so
+     * changes in the returned sorted map are reflected in this map, and
+     * vice-versa.  The returned sorted map supports all optional map
+     * operations; it throws an <tt>IllegalArgumentException</tt> if the user
+     * attempts to insert a key that does not start with the prefix.<p>
+     *
+     * Locating the mappings of the view takes time proportional to the
+     * length of the prefix, however many mappings the map holds.
+     *
+     * @param prefix the prefix of the keys in the returned map.
+     * @return a view of the portion of this map whose keys start with
+     *         <tt>prefix</tt>.
+     * @throws NullPointerException if <tt>prefix</tt> is <tt>null</tt>.
+     */
+    public SortedMap prefixMap(final String prefix) {
+	if (prefix == null) {
+	    throw new NullPointerException();
+	}
+	return new SubMap(null, null, prefix);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys range from
+     * <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.  The
+     * returned sorted map is backed by this map, so changes in the returned
+     * sorted map are reflected in this map, and vice-versa.  The returned
+     * sorted map supports all optional map operations; it throws an
+     * <tt>IllegalArgumentException</tt> if the user attempts to insert a
+     * key outside the specified range.
+     *
+     * @param fromKey low endpoint (inclusive) of the subMap.
+     * @param toKey high endpoint (exclusive) of the subMap.
+     * @return a view of the portion of this map whose keys range from
+     *         <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.
+     * @throws ClassCastException if <tt>fromKey</tt> or <tt>toKey</tt> is
+     *         not a <tt>String</tt>.
+     * @throws IllegalArgumentException if <tt>fromKey</tt> is greater than
+     *         <tt>toKey</tt>.
+     * @throws NullPointerException if <tt>fromKey</tt> or <tt>toKey</tt> is
+     *         <tt>null</tt>.
+     */
+    public SortedMap subMap(final Object fromKey, final Object toKey) {
+	return new SubMap(nonNull((String) fromKey), nonNull((String) toKey), null);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are strictly
+     * less than <tt>toKey</tt>.
+     *
+     * @param toKey high endpoint (exclusive) of the headMap.
+     * @return a view of the portion of this map whose keys are strictly
+     *         less than <tt>toKey</tt>.
+     * @throws ClassCastException if <tt>toKey</tt> is not a
+     *         <tt>String</tt>.
+     * @throws NullPointerException if <tt>toKey</tt> is <tt>null</tt>.
+     */
+    public SortedMap headMap(final Object toKey) {
+	return new SubMap(null, nonNull((String) toKey), null);
+    }
+
+    /**
+     * Returns a view of the portion of this map whose keys are greater than
+     * or equal to <tt>fromKey</tt>.
+     *
+     * @param fromKey low endpoint (inclusive) of the tailMap.
+     * @return a view of the portion of this map whose keys are greater
+     *         than or equal to <tt>fromKey</tt>.
+     * @throws ClassCastException if <tt>fromKey</tt> is not a
+     *         <tt>String</tt>.
+     * @throws NullPointerException if <tt>fromKey</tt> is <tt>null</tt>.
+     */
+    public SortedMap tailMap(final Object fromKey) {
+	return new SubMap(nonNull((String) fromKey), null, null);
+    }
+
+    private static String nonNull(final String key) {
+	if (key == null) {
+	    throw new NullPointerException();
+	}
+	return key;
+    }
+
+
+    // Trie navigation
+
+    /**
+     * Returns the length of the common prefix of the label and the part of
+     * the key from <tt>pos</tt> on.
+     */
+    private static int commonLength(final String label, final String key, final int pos) {
+	final int n = Math.min(label.length(), key.length() - pos);
+	int i = 0;
+	while (i < n && label.charAt(i) == key.charAt(pos + i)) {
+	    i++;
+	}
+	return i;
+    }
+
+    /**
+     * Returns the node holding the mapping for the specified key, or
+     * <tt>null</tt> if there is none.
+     */
+    private Node getNode(final String key) {
+	final int length = key.length();
+	Node p = this.root;
+	int pos = 0;
+	while (pos < length) {
+	    final int i = p.indexOf(key.charAt(pos));
+	    if (i < 0) {
+		return null;
+	    }
+	    p = p.children[i];
+	    if (!key.regionMatches(pos, p.label, 0, p.label.length())) {
+		return null;
+	    }
+	    pos += p.label.length();
+	}
+	return p.key != null ? p : null;
+    }
+
+    /**
+     * Returns the highest node whose prefix starts with the specified
+     * string, or <tt>null</tt> if there is none.  The keys in the subtree of
+     * that node are exactly the keys of the map starting with the string.
+     */
+    Node locate(final String s) {
+	final int length = s.length();
+	Node p = this.root;
+	int pos = 0;
+	while (pos < length) {
+	    final int i = p.indexOf(s.charAt(pos));
+	    if (i < 0) {
+		return null;
+	    }
+	    final Node child = p.children[i];
+	    final int common = commonLength(child.label, s, pos);
+	    if (common < child.label.length() && pos + common < length) {
+		return null;
+	    }
+	    pos += common;
+	    p = child;
+	}
+	return p;
+    }
+
+    /**
+     * Returns the first node in the subtree of p holding a mapping.
+     */
+    static Node firstNode(Node p) {
+	while (p.key == null && p.childCount > 0) {
+	    p = p.children[0];
+	}
+	return p.key != null ? p : null;
+    }
+
+    /**
+     * Returns the last node in the subtree of p holding a mapping.
+     */
+    static Node lastNode(Node p) {
+	while (p.childCount > 0) {
+	    p = p.children[p.childCount - 1];
+	}
+	return p.key != null ? p : null;
+    }
+
+    /**
+     * Returns the first node holding a mapping that follows the whole
+     * subtree of p, or <tt>null</tt>.
+     */
+    static Node nextAfter(Node p) {
+	for (Node q = p.parent; q != null; p = q, q = q.parent) {
+	    final int i = q.indexOf(p.label.charAt(0));
+	    if (i + 1 < q.childCount) {
+		return firstNode(q.children[i + 1]);
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the successor of the specified node holding a mapping, or
+     * <tt>null</tt> if no such.
+     */
+    static Node successor(final Node p) {
+	return p.childCount > 0 ? firstNode(p.children[0]) : nextAfter(p);
+    }
+
+    /**
+     * Returns the last node holding a mapping that precedes p and its
+     * subtree, or <tt>null</tt>.
+     */
+    static Node predecessor(Node p) {
+	for (Node q = p.parent; q != null; p = q, q = q.parent) {
+	    final int i = q.indexOf(p.label.charAt(0));
+	    if (i > 0) {
+		return lastNode(q.children[i - 1]);
+	    }
+	    if (q.key != null) {
+		return q;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Returns the first node holding a mapping whose key is greater than
+     * or equal to the specified key, or <tt>null</tt> if no such.
+     */
+    Node getCeilNode(final String key) {
+	final int length = key.length();
+	Node p = this.root;
+	int pos = 0;
+	for (;;) {
+	    if (pos == length) {
+		return p.key != null ? p : successor(p);
+	    }
+	    final char c = key.charAt(pos);
+	    int i = p.indexOf(c);
+	    if (i < 0) {
+		i = -(i + 1);
+		return i < p.childCount ? firstNode(p.children[i]) : nextAfter(p);
+	    }
+	    final Node child = p.children[i];
+	    final int common = commonLength(child.label, key, pos);
+	    if (common == child.label.length()) {
+		p = child;
+		pos += common;
+	    } else if (pos + common == length ||
+		       child.label.charAt(common) > key.charAt(pos + common)) {
+		return firstNode(child);
+	    } else {
+		return nextAfter(child);
+	    }
+	}
+    }
+
+    /**
+     * Returns the last node holding a mapping whose key is strictly less
+     * than the specified key, or <tt>null</tt> if no such.
+     */
+    Node getLowerNode(final String key) {
+	final int length = key.length();
+	Node p = this.root;
+	int pos = 0;
+	for (;;) {
+	    if (pos == length) {
+		return predecessor(p);
+	    }
+	    final char c = key.charAt(pos);
+	    int i = p.indexOf(c);
+	    if (i < 0) {
+		i = -(i + 1);
+		if (i > 0) {
+		    return lastNode(p.children[i - 1]);
+		}
+		return p.key != null ? p : predecessor(p);
+	    }
+	    final Node child = p.children[i];
+	    final int common = commonLength(child.label, key, pos);
+	    if (common == child.label.length()) {
+		p = child;
+		pos += common;
+	    } else if (pos + common == length ||
+		       child.label.charAt(common) > key.charAt(pos + common)) {
+		return predecessor(child);
+	    } else {
+		return lastNode(child);
+	    }
+	}
+    }
+
+    /**
+     * Deletes the mapping of node p, and merges p into its parent or its
+     * only child where that leaves a node with no mapping and fewer than
+     * two children.  Nodes holding mappings are never moved, so iterators
+     * positioned on them stay valid.
+     */
+    void deleteNode(final Node p) {
+	this.modCount++;
+	this.size--;
+	p.key = null;
+	p.value = null;
+
+	final Node parent = p.parent;
+	if (parent == null) {
+	    return;
+	}
+	if (p.childCount == 0) {
+	    parent.removeChild(parent.indexOf(p.label.charAt(0)));
+	    if (parent.key == null && parent.childCount == 1 && parent.parent != null) {
+		parent.mergeWithChild();
+	    }
+	} else if (p.childCount == 1) {
+	    p.mergeWithChild();
+	}
+    }
+
+
+    // Views
+
+    // Types of Iterators
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    /**
+     * This field is initialized to contain an instance of the entry set
+     * view the first time this view is requested.  The view is stateless,
+     * so there's no reason to create more than one.
+     */
+    private transient Set entrySet = null;
+
+    /**
+     * Returns a set view of the mappings contained in this map.  The set's
+     * iterator returns the mappings in ascending key order.  Each element
+     * in the returned set is a <tt>Map.Entry</tt>.  The set is backed by
+     * this map, so changes to this map are reflected in the set, and
+     * vice-versa.  The set supports element removal, which removes the
+     * corresponding mapping from the map, but not element addition.
+     *
+     * @return a set view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new EntrySetView(null);
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * Entry set of the whole map, or of the range of a <tt>SubMap</tt>.
+     */
+    private class EntrySetView extends AbstractSet {
+	private final SubMap range;
+
+	EntrySetView(final SubMap range) {
+	    this.range = range;
+	}
+
+	public Iterator iterator() {
+	    if (this.range == null) {
+		return new EntryIterator(ENTRIES, firstNode(RadixTreeMap.this.root), null);
+	    }
+	    return this.range.iterator(ENTRIES);
+	}
+
+	public int size() {
+	    return this.range == null ? RadixTreeMap.this.size : this.range.size();
+	}
+
+	public boolean contains(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Node p = this.find((Map.Entry) o);
+	    return p != null;
+	}
+
+	public boolean remove(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Node p = this.find((Map.Entry) o);
+	    if (p == null) {
+		return false;
+	    }
+	    RadixTreeMap.this.deleteNode(p);
+	    return true;
+	}
+
+	private Node find(final Map.Entry entry) {
+	    final Object key = entry.getKey();
+	    if (!(key instanceof String) ||
+		this.range != null && !this.range.inRange((String) key)) {
+		return null;
+	    }
+	    final Node p = RadixTreeMap.this.getNode((String) key);
+	    return p != null && TreeMap.valEquals(p.value, entry.getValue()) ? p : null;
+	}
+
+	public void clear() {
+	    if (this.range == null) {
+		RadixTreeMap.this.clear();
+	    } else {
+		super.clear();
+	    }
+	}
+    }
+
+    /**
+     * A range of the map, bounded by a low key (inclusive), a high key
+     * (exclusive) and a prefix, each of which may be <tt>null</tt> for no
+     * bound.
+     */
+    private class SubMap extends AbstractMap implements SortedMap, java.io.Serializable {
+	private static final long serialVersionUID = 4275815305478823519L;
+
+	private final String fromKey;
+	private final String toKey;
+	private final String prefix;
+
+	SubMap(final String fromKey, final String toKey, final String prefix) {
+	    if (fromKey != null && toKey != null && fromKey.compareTo(toKey) > 0) {
+		throw new IllegalArgumentException("fromKey > toKey");
+	    }
+	    this.fromKey = fromKey;
+	    this.toKey = toKey;
+	    this.prefix = prefix;
+	}
+
+	boolean inRange(final String key) {
+	    return (this.fromKey == null || key.compareTo(this.fromKey) >= 0) &&
+		   (this.toKey == null || key.compareTo(this.toKey) < 0) &&
+		   (this.prefix == null || key.startsWith(this.prefix));
+	}
+
+	// This form allows the high endpoint (as well as all legit keys)
+	private boolean inRange2(final String key) {
+	    return (this.fromKey == null || key.compareTo(this.fromKey) >= 0) &&
+		   (this.toKey == null || key.compareTo(this.toKey) <= 0) &&
+		   (this.prefix == null || key.startsWith(this.prefix));
+	}
+
+	/**
+	 * Returns an iterator from the first node in range to the first
+	 * node past the range.  The prefix is located once, by walking down
+	 * the trie; the other bounds by a ceiling search.
+	 */
+	Iterator iterator(final int type) {
+	    Node first;
+	    Node end;
+	    if (this.prefix != null) {
+		final Node p = RadixTreeMap.this.locate(this.prefix);
+		if (p == null) {
+		    return new EntryIterator(type, null, null);
+		}
+		first = firstNode(p);
+		end = nextAfter(p);
+	    } else {
+		first = firstNode(RadixTreeMap.this.root);
+		end = null;
+	    }
+	    if (this.fromKey != null && first != null &&
+		((String) first.key).compareTo(this.fromKey) < 0) {
+		first = RadixTreeMap.this.getCeilNode(this.fromKey);
+	    }
+	    if (this.toKey != null &&
+		(end == null || ((String) end.key).compareTo(this.toKey) > 0)) {
+		end = RadixTreeMap.this.getCeilNode(this.toKey);
+	    }
+	    if (first == null || end != null &&
+		((String) first.key).compareTo((String) end.key) > 0) {
+		first = end;
+	    }
+	    return new EntryIterator(type, first, end);
+	}
+
+	public boolean containsKey(final Object key) {
+	    return this.inRange((String) key) && RadixTreeMap.this.containsKey(key);
+	}
+
+	public Object get(final Object key) {
+	    if (!this.inRange((String) key)) {
+		return null;
+	    }
+	    return RadixTreeMap.this.get(key);
+	}
+
+	public Object put(final Object key, final Object value) {
+	    if (!this.inRange((String) key)) {
+		throw new IllegalArgumentException("key out of range");
+	    }
+	    return RadixTreeMap.this.put(key, value);
+	}
+
+	public Object remove(final Object key) {
+	    if (!this.inRange((String) key)) {
+		return null;
+	    }
+	    return RadixTreeMap.this.remove(key);
+	}
+
+	public Comparator comparator() {
+	    return null;
+	}
+
+	public Object firstKey() {
+	    final Iterator i = this.iterator(KEYS);
+	    if (!i.hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    return i.next();
+	}
+
+	public Object lastKey() {
+	    Node last;
+	    if (this.prefix != null) {
+		final Node p = RadixTreeMap.this.locate(this.prefix);
+		last = p == null ? null : lastNode(p);
+	    } else {
+		last = lastNode(RadixTreeMap.this.root);
+	    }
+	    if (last != null && this.toKey != null &&
+		((String) last.key).compareTo(this.toKey) >= 0) {
+		last = RadixTreeMap.this.getLowerNode(this.toKey);
+	    }
+	    if (last == null || !this.inRange((String) last.key)) {
+		throw new NoSuchElementException();
+	    }
+	    return last.key;
+	}
+
+	public int size() {
+	    int n = 0;
+	    for (final Iterator i = this.iterator(KEYS); i.hasNext(); i.next()) {
+		n++;
+	    }
+	    return n;
+	}
+
+	public boolean isEmpty() {
+	    return !this.iterator(KEYS).hasNext();
+	}
+
+	private transient Set entrySet = null;
+
+	public Set entrySet() {
+	    if (this.entrySet == null) {
+		this.entrySet = new EntrySetView(this);
+	    }
+	    return this.entrySet;
+	}
+
+	public SortedMap subMap(final Object fromKey, final Object toKey) {
+	    if (!this.inRange((String) fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    if (!this.inRange2((String) toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    return new SubMap((String) fromKey, (String) toKey, this.prefix);
+	}
+
+	public SortedMap headMap(final Object toKey) {
+	    if (!this.inRange2((String) toKey)) {
+		throw new IllegalArgumentException("toKey out of range");
+	    }
+	    return new SubMap(this.fromKey, (String) toKey, this.prefix);
+	}
+
+	public SortedMap tailMap(final Object fromKey) {
+	    if (!this.inRange((String) fromKey)) {
+		throw new IllegalArgumentException("fromKey out of range");
+	    }
+	    return new SubMap((String) fromKey, this.toKey, this.prefix);
+	}
+    }
+
+    /**
+     * RadixTreeMap Iterator, from a first node, inclusive, to an end node,
+     * exclusive.
+     */
+    private class EntryIterator implements Iterator {
+	private final int type;
+	private final Node end;
+	private int expectedModCount = RadixTreeMap.this.modCount;
+	private Node lastReturned = null;
+	private Node next;
+
+	EntryIterator(final int type, final Node first, final Node end) {
+	    this.type = type;
+	    this.next = first;
+	    this.end = end;
+	}
+
+	public boolean hasNext() {
+	    return this.next != this.end;
+	}
+
+	public Object next() {
+	    if (this.next == this.end) {
+		throw new NoSuchElementException();
+	    }
+	    if (RadixTreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    this.lastReturned = this.next;
+	    this.next = successor(this.next);
+	    return this.type == KEYS ? this.lastReturned.key :
+		   this.type == VALUES ? this.lastReturned.value : this.lastReturned;
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    if (RadixTreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    RadixTreeMap.this.deleteNode(this.lastReturned);
+	    this.expectedModCount++;
+	    this.lastReturned = null;
+	}
+    }
+
+    /**
+     * Node in the trie.  A node holding a mapping has a non-<tt>null</tt>
+     * key, and is the entry of that mapping.  Its children are kept in the
+     * order of the first characters of their labels, which are distinct.
+     */
+    static final class Node implements Map.Entry {
+	/**
+	 * The characters that extend the parent's prefix to this node's.
+	 */
+	String label;
+	Node parent;
+	Node[] children = null;
+	int childCount = 0;
+
+	Object key = null;
+	Object value = null;
+
+	Node(final String label, final Node parent) {
+	    this.label = label;
+	    this.parent = parent;
+	}
+
+	/**
+	 * Returns the index of the child whose label starts with c;
+	 * otherwise, <tt>(-(<i>insertion point</i>) - 1)</tt>.
+	 */
+	int indexOf(final char c) {
+	    int lo = 0;
+	    int hi = this.childCount - 1;
+	    while (lo <= hi) {
+		final int mid = (lo + hi) >>> 1;
+		final char midVal = this.children[mid].label.charAt(0);
+		if (midVal < c) {
+		    lo = mid + 1;
+		} else if (midVal > c) {
+		    hi = mid - 1;
+		} else {
+		    return mid;
+		}
+	    }
+	    return -(lo + 1);
+	}
+
+	void insertChild(final int i, final Node child) {
+	    if (this.children == null) {
+		this.children = new Node[2];
+	    } else if (this.childCount == this.children.length) {
+		final Node[] newChildren = new Node[this.childCount * 2];
+		System.arraycopy(this.children, 0, newChildren, 0, this.childCount);
+		this.children = newChildren;
+	    }
+	    System.arraycopy(this.children, i, this.children, i + 1, this.childCount - i);
+	    this.children[i] = child;
+	    this.childCount++;
+	}
+
+	void removeChild(final int i) {
+	    this.childCount--;
+	    System.arraycopy(this.children, i + 1, this.children, i, this.childCount - i);
+	    this.children[this.childCount] = null;
+	}
+
+	/**
+	 * Replaces this node, which holds no mapping, by its only child.
+	 */
+	void mergeWithChild() {
+	    final Node child = this.children[0];
+	    child.label = this.label + child.label;
+	    child.parent = this.parent;
+	    this.parent.children[this.parent.indexOf(this.label.charAt(0))] = child;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = this.value;
+	    this.value = value;
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+
+	    return TreeMap.valEquals(this.key, e.getKey()) && TreeMap.valEquals(this.value, e.getValue());
+	}
+
+	public int hashCode() {
+	    final int keyHash = this.key == null ? 0 : this.key.hashCode();
+	    final int valueHash = this.value == null ? 0 : this.value.hashCode();
+	    return keyHash ^ valueHash;
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+
+    /**
+     * Save the state of the <tt>RadixTreeMap</tt> instance to a stream
+     * (i.e., serialize it).
+     *
+     * @serialData The <i>size</i> of the map (the number of key-value
+     *             mappings) is emitted (int), followed by the key (String)
+     *             and value (Object) for each key-value mapping, in key
+     *             order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (Node p = firstNode(this.root); p != null; p = successor(p)) {
+	    s.writeObject(p.key);
+	    s.writeObject(p.value);
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>RadixTreeMap</tt> instance from a stream (i.e.,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	this.root = new Node("", null);
+	for (int n = s.readInt(); n > 0; n--) {
+	    final Object key = s.readObject();
+	    this.put(key, s.readObject());
+	}
+    }
+}
@@ -0,0 +1,420 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash table based implementation of the <tt>Map</tt> interface, with
+ * <i>soft values</i>.  The keys are held strongly, but the values only
+ * through soft references, which the garbage collector clears when memory
+ * runs low, oldest and least recently used first.  Once the value of a
+ * mapping has been cleared, the mapping is effectively removed from the
+ * map.  This makes the class suitable for memory-sensitive caches of data
+ * that is expensive to compute but can be recomputed on demand.<p>
+ *
+ * The soft references are registered with a <tt>ReferenceQueue</tt>
+ * private to the map, which is drained at the start of every operation
+ * that reads or writes the map.  Each cleared mapping is thus removed
+ * exactly once, in constant expected time, by whichever operation happens to
+ * find its reference on the queue; no thread is needed, and no operation
+ * ever scans the map for cleared values.<p>
+ *
+ * Both <tt>null</tt> values and the <tt>null</tt> key are supported; a
+ * <tt>null</tt> value is never cleared.  The mappings are kept in a
+ * <tt>HashMap</tt>, with the same efficiency parameters of <i>initial
+ * capacity</i> and <i>load factor</i>.  Like most collection classes, this
+ * class is not synchronized.<p>
+ *
+ * Because the garbage collector may clear values at any time, the map may
+ * behave as though an unknown thread is silently removing entries, exactly
+ * as a <tt>WeakHashMap</tt> does.  The iterators returned by the collection
+ * view methods hold the value of the mapping they will return next
+ * strongly, skip the mappings whose values have been cleared, and are
+ * <i>fail-fast</i> with respect to modifications made through the map.<p>
+ *
+ * This class requires the <tt>java.lang.ref</tt> package of the Java 2
+ * platform.
+ *
+ * @see WeakHashMap
+ * @see LRUCache
+ * @see java.lang.ref.SoftReference
+ */
+public class SoftValueHashMap extends AbstractMap {
+    /**
+     * Value representing <tt>null</tt> inside the soft references, which
+     * cannot tell a cleared referent from a <tt>null</tt> one.
+     */
+    private static final Object NULL_VALUE = new Object();
+
+    /**
+     * The mappings from keys to <tt>SoftValue</tt>s.
+     */
+    private final HashMap map;
+
+    /**
+     * Reference queue for cleared values.
+     */
+    private final ReferenceQueue queue = new ReferenceQueue();
+
+    /**
+     * Constructs a new, empty <tt>SoftValueHashMap</tt> with the given
+     * initial capacity and the given load factor.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  loadFactor      the load factor.
+     * @throws IllegalArgumentException if the initial capacity is less than
+     *         zero, or if the load factor is nonpositive.
+     */
+    public SoftValueHashMap(final int initialCapacity, final float loadFactor) {
+	this.map = new HashMap(initialCapacity, loadFactor);
+    }
+
+    /**
+     * Constructs a new, empty <tt>SoftValueHashMap</tt> with the given
+     * initial capacity and the default load factor, which is <tt>0.75</tt>.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @throws IllegalArgumentException if the initial capacity is less than
+     *         zero.
+     */
+    public SoftValueHashMap(final int initialCapacity) {
+	this(initialCapacity, 0.75f);
+    }
+
+    /**
+     * Constructs a new, empty <tt>SoftValueHashMap</tt> with the default
+     * initial capacity and the default load factor, which is <tt>0.75</tt>.
+     */
+    public SoftValueHashMap() {
+	this(101, 0.75f);
+    }
+
+    /**
+     * Constructs a new <tt>SoftValueHashMap</tt> with the same mappings as the
+     * specified <tt>Map</tt>, a capacity of twice the number of mappings in
+     * the specified map or 11 (whichever is greater), and the default load
+     * factor, which is <tt>0.75</tt>.
+     *
+     * @param t the map whose mappings are to be placed in this map.
+     */
+    public SoftValueHashMap(final Map t) {
+	this(Math.max(2*t.size(), 11), 0.75f);
+	this.putAll(t);
+    }
+
+    private static Object maskNull(final Object value) {
+	return value == null ? NULL_VALUE : value;
+    }
+
+    private static Object unmaskNull(final Object value) {
+	return value == NULL_VALUE ? null : value;
+    }
+
+    /**
+     * Removes the mappings whose values have been cleared.  A mapping is
+     * removed only if it still holds the cleared reference; it may have
+     * been replaced or removed since.
+     */
+    private void expungeStaleEntries() {
+	SoftValue sv;
+	while ((sv = (SoftValue) this.queue.poll()) != null) {
+	    final HashMap.Entry e = this.map.getEntry(sv.key);
+	    if (e != null && e.value == sv) {
+		this.map.removeEntryForKey(sv.key);
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.  This result is
+     * a snapshot, and may count mappings whose values have been cleared but
+     * not yet enqueued.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	this.expungeStaleEntries();
+	return this.map.size();
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	return this.size() == 0;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for this key or its value
+     * has been cleared.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key.
+     */
+    public Object get(final Object key) {
+	this.expungeStaleEntries();
+	final SoftValue sv = (SoftValue) this.map.get(key);
+	return sv == null ? null : unmaskNull(sv.get());
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key whose value has not been cleared.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     */
+    public boolean containsKey(final Object key) {
+	this.expungeStaleEntries();
+	final SoftValue sv = (SoftValue) this.map.get(key);
+	return sv != null && sv.get() != null;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value.
+     */
+    public boolean containsValue(final Object value) {
+	this.expungeStaleEntries();
+	final Object v = maskNull(value);
+	for (final Iterator i = this.map.newIterator(HashMap.VALUES); i.hasNext(); ) {
+	    if (v.equals(((SoftValue) i.next()).get())) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old value
+     * is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *	       if there was no mapping for key or its value had been cleared.
+     */
+    public Object put(final Object key, final Object value) {
+	this.expungeStaleEntries();
+	final SoftValue old = (SoftValue) this.map.put(key,
+		new SoftValue(maskNull(value), key, this.queue));
+	return old == null ? null : unmaskNull(old.get());
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *	       if there was no mapping for key or its value had been cleared.
+     */
+    public Object remove(final Object key) {
+	this.expungeStaleEntries();
+	final SoftValue old = (SoftValue) this.map.remove(key);
+	return old == null ? null : unmaskNull(old.get());
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	this.map.clear();
+	// The references enqueued so far belong to removed mappings.
+	while (this.queue.poll() != null) {
+	    // empty
+	}
+    }
+
+    private transient Set entrySet = null;
+
+    /**
+     * Returns a collection view of the mappings contained in this map.  Each
+     * element in the returned collection is a <tt>Map.Entry</tt>.  The
+     * collection is backed by the map, so changes to the map are reflected
+     * in the collection, and vice-versa.  The collection supports element
+     * removal, which removes the corresponding mapping from the map, via the
+     * <tt>Iterator.remove</tt>, <tt>Collection.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt> operations.
+     * It does not support the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a collection view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new SoftIterator();
+		}
+
+		public boolean contains(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry entry = (Map.Entry) o;
+		    final Object key = entry.getKey();
+		    return SoftValueHashMap.this.containsKey(key)
+			&& TreeMap.valEquals(SoftValueHashMap.this.get(key), entry.getValue());
+		}
+
+		public boolean remove(final Object o) {
+		    if (!this.contains(o)) {
+			return false;
+		    }
+		    SoftValueHashMap.this.remove(((Map.Entry) o).getKey());
+		    return true;
+		}
+
+		public int size() {
+		    return SoftValueHashMap.this.size();
+		}
+
+		public void clear() {
+		    SoftValueHashMap.this.clear();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of the hash
+     * table holding this map's mappings, taken after expunging the mappings
+     * whose values have been cleared.
+     *
+     * @return the statistics of this map's hash table.
+     * @see HashMap#statistics()
+     */
+    public HashStatistics statistics() {
+	this.expungeStaleEntries();
+	return this.map.statistics();
+    }
+
+    /**
+     * A soft reference to a (masked) value, which remembers the key it is
+     * mapped from so that the mapping can be found when it is enqueued.
+     */
+    private static class SoftValue extends SoftReference {
+	final Object key;
+
+	SoftValue(final Object value, final Object key, final ReferenceQueue queue) {
+	    super(value, queue);
+	    this.key = key;
+	}
+    }
+
+    /**
+     * A mapping returned by the entry set iterator, holding its value
+     * strongly.  <tt>setValue</tt> writes through to the map.
+     */
+    private class SoftEntry implements Map.Entry {
+	private final Object key;
+	private Object value;
+
+	SoftEntry(final Object key, final Object value) {
+	    this.key = key;
+	    this.value = value;
+	}
+
+	public Object getKey() {
+	    return this.key;
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = this.value;
+	    this.value = value;
+	    SoftValueHashMap.this.map.put(this.key,
+		    new SoftValue(maskNull(value), this.key, SoftValueHashMap.this.queue));
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return TreeMap.valEquals(this.key, e.getKey())
+		&& TreeMap.valEquals(this.value, e.getValue());
+	}
+
+	public int hashCode() {
+	    return (this.key == null ? 0 : this.key.hashCode())
+		^ (this.value == null ? 0 : this.value.hashCode());
+	}
+
+	public String toString() {
+	    return this.key + "=" + this.value;
+	}
+    }
+
+    /**
+     * Iterates over the underlying map, skipping cleared values.  Since
+     * <tt>hasNext</tt> has to look ahead in the underlying iteration,
+     * <tt>remove</tt> removes the last returned mapping by key.
+     */
+    private class SoftIterator implements Iterator {
+	private final HashMap.HashIterator i = SoftValueHashMap.this.map.new HashIterator(HashMap.ENTRIES);
+
+	/**
+	 * The entry to be returned next, with its value held strongly, or
+	 * <tt>null</tt> if not yet found.
+	 */
+	private SoftEntry next = null;
+
+	private SoftEntry lastReturned = null;
+
+	SoftIterator() {
+	    // empty
+	}
+
+	public boolean hasNext() {
+	    while (this.next == null && this.i.hasNext()) {
+		final HashMap.Entry e = (HashMap.Entry) this.i.next();
+		final Object value = ((SoftValue) e.value).get();
+		if (value != null) {
+		    this.next = new SoftEntry(e.key, unmaskNull(value));
+		}
+	    }
+	    return this.next != null;
+	}
+
+	public Object next() {
+	    if (!this.hasNext()) {
+		throw new NoSuchElementException();
+	    }
+	    final SoftEntry e = this.lastReturned = this.next;
+	    this.next = null;
+	    return e;
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    final HashMap m = SoftValueHashMap.this.map;
+	    if (m.modCount != this.i.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    m.removeEntryForKey(this.lastReturned.key);
+	    this.i.expectedModCount = m.modCount;
+	    this.lastReturned = null;
+	}
+    }
+}
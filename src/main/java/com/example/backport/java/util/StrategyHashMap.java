@@ -0,0 +1,108 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+/**
+ * Hash table based implementation of the <tt>Map</tt> interface that hashes
+ * and compares its keys with a <tt>HashingStrategy</tt> supplied at
+ * construction, rather than with the keys' own <tt>hashCode</tt> and
+ * <tt>equals</tt> methods.  Maps keyed case-insensitively, by identity, or
+ * by the contents of arrays can thus be queried with the raw key, and no
+ * wrapper object or case-folded copy is allocated per lookup:
+ * <pre>
+ *     Map m = new StrategyHashMap(HashingStrategies.CASE_INSENSITIVE);
+ *     m.put("Content-Type", "text/html");
+ *     m.get("content-type");	// returns "text/html"
+ * </pre><p>
+ *
+ * <b>This class is <i>not</i> a general-purpose <tt>Map</tt>
+ * implementation!</b> Unless the strategy agrees with <tt>equals</tt>, it
+ * intentionally violates the general contract of <tt>Map</tt>, which
+ * mandates the use of the <tt>equals</tt> method when comparing keys.  The
+ * <tt>null</tt> key is permitted and is never passed to the strategy.<p>
+ *
+ * In all other respects, including performance, fail-fast iterators,
+ * cloning and lack of synchronization, this class behaves exactly like
+ * <tt>HashMap</tt>.  The map is serializable if its strategy is.
+ *
+ * @see HashingStrategy
+ * @see HashingStrategies
+ * @see HashMap
+ */
+public class StrategyHashMap extends HashMap {
+    private static final long serialVersionUID = 6447926424367935215L;
+
+    /**
+     * Constructs an empty map with the specified initial capacity, load
+     * factor and hashing strategy.
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  loadFactor      the load factor.
+     * @param  strategy        the hashing strategy for the keys.
+     * @throws IllegalArgumentException if the initial capacity is negative
+     *         or the load factor is nonpositive.
+     * @throws NullPointerException if the strategy is <tt>null</tt>.
+     */
+    public StrategyHashMap(final int initialCapacity, final float loadFactor,
+			   final HashingStrategy strategy) {
+	super(initialCapacity, loadFactor, checkStrategy(strategy));
+    }
+
+    /**
+     * Constructs an empty map with the specified initial capacity and
+     * hashing strategy, and a default load factor (0.75).
+     *
+     * @param  initialCapacity the initial capacity.
+     * @param  strategy        the hashing strategy for the keys.
+     * @throws IllegalArgumentException if the initial capacity is negative.
+     * @throws NullPointerException if the strategy is <tt>null</tt>.
+     */
+    public StrategyHashMap(final int initialCapacity, final HashingStrategy strategy) {
+	this(initialCapacity, 0.75f, strategy);
+    }
+
+    /**
+     * Constructs an empty map with the specified hashing strategy, and a
+     * default capacity and load factor (0.75).
+     *
+     * @param  strategy the hashing strategy for the keys.
+     * @throws NullPointerException if the strategy is <tt>null</tt>.
+     */
+    public StrategyHashMap(final HashingStrategy strategy) {
+	this(101, 0.75f, strategy);
+    }
+
+    /**
+     * Constructs a map with the specified hashing strategy and the mappings
+     * of the given map.  Keys of the given map that are equivalent under the
+     * strategy collapse into one mapping, whose value is the last one
+     * encountered in the given map's iteration order.
+     *
+     * @param  m        the map whose mappings are to be placed in this map.
+     * @param  strategy the hashing strategy for the keys.
+     * @throws NullPointerException if the strategy is <tt>null</tt>.
+     */
+    public StrategyHashMap(final Map m, final HashingStrategy strategy) {
+	this(Math.max(2*m.size(), 11), 0.75f, strategy);
+	this.putAll(m);
+    }
+
+    private static HashingStrategy checkStrategy(final HashingStrategy strategy) {
+	if (strategy == null) {
+	    throw new NullPointerException();
+	}
+	return strategy;
+    }
+
+    /**
+     * Returns the hashing strategy this map hashes and compares its keys
+     * with.
+     *
+     * @return the hashing strategy of this map.
+     */
+    public HashingStrategy getHashingStrategy() {
+	return this.strategy;
+    }
+}
@@ -0,0 +1,448 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.io.IOException;
+import java.io.Serializable;
+
+/**
+ * <i>Tiered vector</i> implementation of the <tt>List</tt> interface, for
+ * large lists that are edited in the middle.  Implements all optional list
+ * operations, and permits all elements, including <tt>null</tt>.<p>
+ *
+ * The elements are stored in a sequence of chunks, each a circular array of
+ * the same power-of-two length k.  All chunks but the last are full, so the
+ * chunk holding an index is found with a shift, and the element within it
+ * with an addition and a mask: <tt>get</tt> and <tt>set</tt> run in
+ * constant time.  Inserting or removing an element moves the elements on
+ * the shorter side of it within its chunk, and then moves a single element
+ * between each pair of following chunks, by rotating their heads.  The
+ * chunk length is kept near the square root of the size of the list,
+ * doubling or halving as the list grows or shrinks, so <tt>add</tt> and
+ * <tt>remove</tt> at an arbitrary index run in O(sqrt(n)) time, instead of
+ * the O(n) of <tt>ArrayList</tt>.  <tt>removeRange</tt>, and so
+ * <tt>clear</tt> on a <tt>subList</tt> view, runs in time proportional to
+ * the number of elements after the range.<p>
+ *
+ * <strong>Note that this implementation is not synchronized.</strong> If
+ * multiple threads access a list concurrently, and at least one of the
+ * threads modifies the list structurally, it <i>must</i> be synchronized
+ * externally, for instance by wrapping it with
+ * <tt>Collections.synchronizedList</tt>.<p>
+ *
+ * The iterators returned by this class's <tt>iterator</tt> and
+ * <tt>listIterator</tt> methods are <i>fail-fast</i>: if the list is
+ * structurally modified at any time after the iterator is created, in any
+ * way except through the iterator's own remove or add methods, the
+ * iterator throws a <tt>ConcurrentModificationException</tt>.
+ *
+ * @see List
+ * @see ArrayList
+ * @see ArrayDeque
+ */
+public class TieredList extends AbstractList implements Cloneable, Serializable {
+    private static final long serialVersionUID = 2930516297741630462L;
+
+    /**
+     * The base two logarithm of the least chunk length.
+     */
+    private static final int MIN_SHIFT = 4;
+
+    /**
+     * The chunks in use, followed by unused <tt>null</tt> entries.
+     */
+    private transient Object[][] chunks;
+
+    /**
+     * The index, within each chunk, of its first element.
+     */
+    private transient int[] heads;
+
+    /**
+     * The number of chunks in use.  Only the last may be partly full.
+     */
+    private transient int chunkCount = 0;
+
+    /**
+     * The base two logarithm of the chunk length.
+     */
+    private transient int shift = MIN_SHIFT;
+
+    private transient int size = 0;
+
+    /**
+     * Constructs an empty list.
+     */
+    public TieredList() {
+	this.chunks = new Object[4][];
+	this.heads = new int[4];
+    }
+
+    /**
+     * Constructs a list containing the elements of the specified
+     * collection, in the order they are returned by the collection's
+     * iterator.
+     *
+     * @param c the collection whose elements are to be placed into this
+     *          list.
+     */
+    public TieredList(final Collection c) {
+	this();
+	this.addAll(c);
+    }
+
+    /**
+     * Returns the number of elements in this list.
+     *
+     * @return  the number of elements in this list.
+     */
+    public int size() {
+	return this.size;
+    }
+
+    /**
+     * Tests if this list has no elements.
+     *
+     * @return  <tt>true</tt> if this list has no elements;
+     *          <tt>false</tt> otherwise.
+     */
+    public boolean isEmpty() {
+	return this.size == 0;
+    }
+
+    // Positional Access Operations
+
+    /**
+     * Returns the element at the specified position in this list.
+     *
+     * @param  index index of element to return.
+     * @return the element at the specified position in this list.
+     * @throws    IndexOutOfBoundsException if index is out of range <tt>(index
+     * 		  &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object get(final int index) {
+	this.RangeCheck(index);
+
+	final int c = index >>> this.shift;
+	return this.chunks[c][this.heads[c] + index & (1 << this.shift) - 1];
+    }
+
+    /**
+     * Replaces the element at the specified position in this list with
+     * the specified element.
+     *
+     * @param index index of element to replace.
+     * @param element element to be stored at the specified position.
+     * @return the element previously at the specified position.
+     * @throws    IndexOutOfBoundsException if index out of range
+     *		  <tt>(index &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object set(final int index, final Object element) {
+	this.RangeCheck(index);
+
+	final int c = index >>> this.shift;
+	final int i = this.heads[c] + index & (1 << this.shift) - 1;
+	final Object oldValue = this.chunks[c][i];
+	this.chunks[c][i] = element;
+	return oldValue;
+    }
+
+    /**
+     * Appends the specified element to the end of this list.
+     *
+     * @param o element to be appended to this list.
+     * @return <tt>true</tt> (as per the general contract of Collection.add).
+     */
+    public boolean add(final Object o) {
+	this.add(this.size, o);
+	return true;
+    }
+
+    /**
+     * Inserts the specified element at the specified position in this
+     * list. Shifts the element currently at that position (if any) and
+     * any subsequent elements to the right (adds one to their indices).
+     *
+     * @param index index at which the specified element is to be inserted.
+     * @param element element to be inserted.
+     * @throws    IndexOutOfBoundsException if index is out of range
+     *		  <tt>(index &lt; 0 || index &gt; size())</tt>.
+     */
+    public void add(final int index, final Object element) {
+	if (index > this.size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+this.size);
+	}
+
+	this.modCount++;
+	if (this.size == this.chunkCount << this.shift) {
+	    if (this.chunkCount == 2 << this.shift) {
+		this.rebuild(this.shift + 1);
+	    }
+	    this.addChunk();
+	}
+
+	final int mask = (1 << this.shift) - 1;
+	final int last = this.chunkCount - 1;
+	final int c = index >>> this.shift;
+	if (c == last) {
+	    this.insert(c, index & mask, this.size - (last << this.shift), element);
+	} else {
+	    // Make room in chunk c by passing its last element on to the next
+	    // chunk, and so on to the last chunk, which has room.
+	    Object carry = this.chunks[c][this.heads[c] + mask & mask];
+	    this.insert(c, index & mask, mask, element);
+	    for (int d = c + 1; d < last; d++) {
+		final int h = this.heads[d] - 1 & mask;
+		final Object out = this.chunks[d][h];
+		this.chunks[d][h] = carry;
+		this.heads[d] = h;
+		carry = out;
+	    }
+	    this.insert(last, 0, this.size - (last << this.shift), carry);
+	}
+	this.size++;
+    }
+
+    /**
+     * Removes the element at the specified position in this list.
+     * Shifts any subsequent elements to the left (subtracts one from their
+     * indices).
+     *
+     * @param index the index of the element to removed.
+     * @return the element that was removed from the list.
+     * @throws    IndexOutOfBoundsException if index out of range <tt>(index
+     * 		  &lt; 0 || index &gt;= size())</tt>.
+     */
+    public Object remove(final int index) {
+	this.RangeCheck(index);
+
+	this.modCount++;
+	final int mask = (1 << this.shift) - 1;
+	final int last = this.chunkCount - 1;
+	final int c = index >>> this.shift;
+	final Object oldValue;
+	if (c == last) {
+	    oldValue = this.delete(c, index & mask, this.size - (last << this.shift));
+	} else {
+	    // Fill the gap at the end of chunk c with the first element of
+	    // the next chunk, and so on to the last chunk.
+	    oldValue = this.delete(c, index & mask, mask + 1);
+	    for (int d = c; d < last; d++) {
+		final Object[] next = this.chunks[d + 1];
+		final int h = this.heads[d + 1];
+		this.chunks[d][this.heads[d] + mask & mask] = next[h];
+		next[h] = null;
+		this.heads[d + 1] = h + 1 & mask;
+	    }
+	}
+	this.size--;
+	this.trimChunks();
+	return oldValue;
+    }
+
+    /**
+     * Removes all of the elements from this list.  The list will
+     * be empty after this call returns.
+     */
+    public void clear() {
+	this.modCount++;
+	this.chunks = new Object[4][];
+	this.heads = new int[4];
+	this.chunkCount = 0;
+	this.shift = MIN_SHIFT;
+	this.size = 0;
+    }
+
+    /**
+     * Removes from this list all of the elements whose index is between
+     * fromIndex, inclusive and toIndex, exclusive.  Shifts any succeeding
+     * elements to the left (reduces their index).
+     *
+     * @param fromIndex index of first element to be removed.
+     * @param toIndex index after last element to be removed.
+     */
+    protected void removeRange(final int fromIndex, final int toIndex) {
+	this.modCount++;
+	final int mask = (1 << this.shift) - 1;
+	for (int i = fromIndex, j = toIndex; j < this.size; i++, j++) {
+	    final int ci = i >>> this.shift;
+	    final int cj = j >>> this.shift;
+	    this.chunks[ci][this.heads[ci] + i & mask] = this.chunks[cj][this.heads[cj] + j & mask];
+	}
+
+	// Let gc do its work
+	final int newSize = this.size - (toIndex - fromIndex);
+	for (int i = newSize; i < this.size; i++) {
+	    final int c = i >>> this.shift;
+	    this.chunks[c][this.heads[c] + i & mask] = null;
+	}
+	this.size = newSize;
+	this.trimChunks();
+    }
+
+    /**
+     * Inserts the element at index i of chunk c, which holds n elements
+     * and has room for one more, moving the elements before or after i,
+     * whichever are fewer.
+     */
+    private void insert(final int c, final int i, final int n, final Object element) {
+	final Object[] chunk = this.chunks[c];
+	final int mask = chunk.length - 1;
+	int h = this.heads[c];
+	if (i < n / 2) {
+	    h = h - 1 & mask;
+	    for (int j = 0; j < i; j++) {
+		chunk[h + j & mask] = chunk[h + j + 1 & mask];
+	    }
+	    this.heads[c] = h;
+	} else {
+	    for (int j = n; j > i; j--) {
+		chunk[h + j & mask] = chunk[h + j - 1 & mask];
+	    }
+	}
+	chunk[h + i & mask] = element;
+    }
+
+    /**
+     * Removes and returns the element at index i of chunk c, which holds
+     * n elements, moving the elements before or after i, whichever are
+     * fewer.  Either way, the freed slot follows the last element.
+     */
+    private Object delete(final int c, final int i, final int n) {
+	final Object[] chunk = this.chunks[c];
+	final int mask = chunk.length - 1;
+	final int h = this.heads[c];
+	final Object oldValue = chunk[h + i & mask];
+	if (i < n / 2) {
+	    for (int j = i; j > 0; j--) {
+		chunk[h + j & mask] = chunk[h + j - 1 & mask];
+	    }
+	    chunk[h] = null; // Let gc do its work
+	    this.heads[c] = h + 1 & mask;
+	} else {
+	    for (int j = i; j < n - 1; j++) {
+		chunk[h + j & mask] = chunk[h + j + 1 & mask];
+	    }
+	    chunk[h + n - 1 & mask] = null; // Let gc do its work
+	}
+	return oldValue;
+    }
+
+    private void addChunk() {
+	if (this.chunkCount == this.chunks.length) {
+	    final Object[][] newChunks = new Object[this.chunkCount * 2][];
+	    System.arraycopy(this.chunks, 0, newChunks, 0, this.chunkCount);
+	    this.chunks = newChunks;
+	    final int[] newHeads = new int[this.chunkCount * 2];
+	    System.arraycopy(this.heads, 0, newHeads, 0, this.chunkCount);
+	    this.heads = newHeads;
+	}
+	this.chunks[this.chunkCount] = new Object[1 << this.shift];
+	this.heads[this.chunkCount] = 0;
+	this.chunkCount++;
+    }
+
+    /**
+     * Releases the chunks left empty at the end, and halves the chunk
+     * length if there are now few chunks for it.
+     */
+    private void trimChunks() {
+	final int needed = this.size + (1 << this.shift) - 1 >>> this.shift;
+	while (this.chunkCount > needed) {
+	    this.chunks[--this.chunkCount] = null;
+	}
+	if (this.shift > MIN_SHIFT && this.chunkCount < 1 << this.shift - 2) {
+	    this.rebuild(this.shift - 1);
+	}
+    }
+
+    /**
+     * Copies the elements, in order, into chunks of length
+     * <tt>1 &lt;&lt; newShift</tt>.
+     */
+    private void rebuild(final int newShift) {
+	final int length = 1 << newShift;
+	final int count = this.size + length - 1 >>> newShift;
+	final Object[][] newChunks = new Object[Math.max(count * 2, 4)][];
+	for (int c = 0; c < count; c++) {
+	    newChunks[c] = new Object[length];
+	}
+	final int mask = (1 << this.shift) - 1;
+	for (int i = 0; i < this.size; i++) {
+	    final int c = i >>> this.shift;
+	    newChunks[i >>> newShift][i & length - 1] = this.chunks[c][this.heads[c] + i & mask];
+	}
+	this.chunks = newChunks;
+	this.heads = new int[newChunks.length];
+	this.chunkCount = count;
+	this.shift = newShift;
+    }
+
+    /**
+     * Returns a shallow copy of this list.  (The elements themselves are
+     * not copied.)
+     *
+     * @return  a clone of this list.
+     */
+    public Object clone() {
+	try {
+	    final TieredList v = (TieredList)super.clone();
+	    v.chunks = new Object[this.chunks.length][];
+	    for (int c = 0; c < this.chunkCount; c++) {
+		v.chunks[c] = (Object[]) this.chunks[c].clone();
+	    }
+	    v.heads = (int[]) this.heads.clone();
+	    v.modCount = 0;
+	    return v;
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+    }
+
+    /**
+     * Check if the given index is in range.  If not, throw an appropriate
+     * runtime exception.
+     */
+    private void RangeCheck(final int index) {
+	if (index >= this.size || index < 0) {
+	    throw new IndexOutOfBoundsException(
+		"Index: "+index+", Size: "+this.size);
+	}
+    }
+
+    /**
+     * Save the state of the <tt>TieredList</tt> instance to a stream (that
+     * is, serialize it).
+     *
+     * @serialData The number of elements in the list is emitted (int),
+     *             followed by all of its elements (each an
+     *             <tt>Object</tt>) in the proper order.
+     */
+    private void writeObject(final java.io.ObjectOutputStream s)
+	throws IOException {
+	s.defaultWriteObject();
+	s.writeInt(this.size);
+	for (int i = 0; i < this.size; i++) {
+	    s.writeObject(this.get(i));
+	}
+    }
+
+    /**
+     * Reconstitute the <tt>TieredList</tt> instance from a stream (that is,
+     * deserialize it).
+     */
+    private void readObject(final java.io.ObjectInputStream s)
+	throws IOException, ClassNotFoundException {
+	s.defaultReadObject();
+	this.chunks = new Object[4][];
+	this.heads = new int[4];
+	this.shift = MIN_SHIFT;
+	for (int n = s.readInt(); n > 0; n--) {
+	    this.add(s.readObject());
+	}
+    }
+}
@@ -23,7 +23,17 @@ import com.example.backport.java.lang.Comparable;
  * This implementation provides guaranteed log(n) time cost for the
  * <tt>containsKey</tt>, <tt>get</tt>, <tt>put</tt> and <tt>remove</tt>
  * operations.  Algorithms are adaptations of those in Corman, Leiserson, and
- * Rivest's <I>Introduction to Algorithms</I>.<p>
+ * Rivest's <I>Introduction to Algorithms</I>.  The <tt>NavigableMap</tt>
+ * operations (<tt>floorKey</tt>, <tt>ceilingKey</tt>, <tt>pollFirstEntry</tt>
+ * and the like) descend the tree once and allocate nothing.  Each node also
+ * records the size of its subtree, so the <tt>rank</tt> and <tt>select</tt>
+ * operations, and the <tt>size</tt> of subMap, headMap and tailMap views,
+ * take log(n) time as well.  A <tt>Cursor</tt> searches from its current
+ * position rather than from the root (a <i>finger search</i>).  A single
+ * seek still takes up to log(n) time, since two adjacent keys may only
+ * meet at the root, but a sweep of m lookups in ascending order, as made by
+ * <tt>getAll</tt> or a merge join, takes time proportional to
+ * m log(n/m) + m + log(n) in total, rather than m log(n).<p>
  *
  * Note that the ordering maintained by a sorted map (whether or not an
  * explicit comparator is provided) must be <i>consistent with equals</i> if
@@ -73,7 +83,7 @@ import com.example.backport.java.lang.Comparable;
  */
 
 public class TreeMap extends AbstractMap
-	             implements SortedMap, Cloneable, java.io.Serializable
+	             implements NavigableMap, Cloneable, java.io.Serializable
 {
     /**
      * The Comparator used to maintain order in this TreeMap, or
@@ -83,7 +93,7 @@ public class TreeMap extends AbstractMap
      */
     Comparator comparator = null;
 
-    private transient Entry root = null;
+    transient Entry root = null;
 
     /**
      * The number of entries in the tree
@@ -282,6 +292,142 @@ public class TreeMap extends AbstractMap
         return key(this.lastEntry());
     }
 
+    /**
+     * Returns the entry for the greatest key strictly less than the given
+     * key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the greatest key less than <tt>key</tt>, or
+     *         <tt>null</tt> if there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Map.Entry lowerEntry(final Object key) {
+	return this.getPrecedingEntry(key);
+    }
+
+    /**
+     * Returns the greatest key strictly less than the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the greatest key less than <tt>key</tt>, or <tt>null</tt> if
+     *         there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object lowerKey(final Object key) {
+	return keyOrNull(this.getPrecedingEntry(key));
+    }
+
+    /**
+     * Returns the entry for the greatest key less than or equal to the given
+     * key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the greatest key less than or equal to
+     *         <tt>key</tt>, or <tt>null</tt> if there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Map.Entry floorEntry(final Object key) {
+	return this.getFloorEntry(key);
+    }
+
+    /**
+     * Returns the greatest key less than or equal to the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the greatest key less than or equal to <tt>key</tt>, or
+     *         <tt>null</tt> if there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object floorKey(final Object key) {
+	return keyOrNull(this.getFloorEntry(key));
+    }
+
+    /**
+     * Returns the entry for the least key greater than or equal to the given
+     * key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the least key greater than or equal to
+     *         <tt>key</tt>, or <tt>null</tt> if there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Map.Entry ceilingEntry(final Object key) {
+	return this.getCeilEntry(key);
+    }
+
+    /**
+     * Returns the least key greater than or equal to the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the least key greater than or equal to <tt>key</tt>, or
+     *         <tt>null</tt> if there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object ceilingKey(final Object key) {
+	return keyOrNull(this.getCeilEntry(key));
+    }
+
+    /**
+     * Returns the entry for the least key strictly greater than the given
+     * key, or <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the entry with the least key greater than <tt>key</tt>, or
+     *         <tt>null</tt> if there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Map.Entry higherEntry(final Object key) {
+	return this.getHigherEntry(key);
+    }
+
+    /**
+     * Returns the least key strictly greater than the given key, or
+     * <tt>null</tt> if there is no such key.
+     *
+     * @param key the key.
+     * @return the least key greater than <tt>key</tt>, or <tt>null</tt> if
+     *         there is no such key.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object higherKey(final Object key) {
+	return keyOrNull(this.getHigherEntry(key));
+    }
+
     /**
      * Copies all of the mappings from the specified map to this map.  These
      * mappings replace any mappings that this map had for any of the keys
@@ -414,6 +560,53 @@ public class TreeMap extends AbstractMap
 	}
     }
 
+    /**
+     * Returns the entry for the greatest key less than or equal to the
+     * specified key; if no such entry exists, returns <tt>null</tt>.
+     */
+    Entry getFloorEntry(final Object key) {
+	Entry p = this.root;
+	Entry floor = null;
+	while (p != null) {
+	    final int cmp = this.compare(key, p.key);
+	    if (cmp == 0) {
+		return p;
+	    } else if (cmp < 0) {
+		p = p.left;
+	    } else {
+		floor = p;
+		p = p.right;
+	    }
+	}
+	return floor;
+    }
+
+    /**
+     * Returns the entry for the least key strictly greater than the
+     * specified key; if no such entry exists, returns <tt>null</tt>.
+     */
+    Entry getHigherEntry(final Object key) {
+	Entry p = this.root;
+	Entry higher = null;
+	while (p != null) {
+	    if (this.compare(key, p.key) < 0) {
+		higher = p;
+		p = p.left;
+	    } else {
+		p = p.right;
+	    }
+	}
+	return higher;
+    }
+
+    /**
+     * Returns the key corresponding to the specified Entry, or <tt>null</tt>
+     * if the Entry is <tt>null</tt>.
+     */
+    static Object keyOrNull(final Entry e) {
+	return e==null ? null : e.key;
+    }
+
     /**
      * Returns the key corresonding to the specified Entry.  Throw
      * NoSuchElementException if the Entry is <tt>null</tt>.
@@ -448,7 +641,7 @@ public class TreeMap extends AbstractMap
 
 	if (t == null) {
 	    this.incrementSize();
-	    this.root = new Entry(key, value, null);
+	    this.root = this.newEntry(key, value, null);
 	    return null;
 	}
 
@@ -461,7 +654,9 @@ public class TreeMap extends AbstractMap
 		    t = t.left;
 		} else {
 		    this.incrementSize();
-		    t.left = new Entry(key, value, t);
+		    t.left = this.newEntry(key, value, t);
+		    adjustSizes(t, 1);
+		    this.augmentPath(t);
 		    this.fixAfterInsertion(t.left);
 		    return null;
 		}
@@ -470,7 +665,9 @@ public class TreeMap extends AbstractMap
 		    t = t.right;
 		} else {
 		    this.incrementSize();
-		    t.right = new Entry(key, value, t);
+		    t.right = this.newEntry(key, value, t);
+		    adjustSizes(t, 1);
+		    this.augmentPath(t);
 		    this.fixAfterInsertion(t.right);
 		    return null;
 		}
@@ -503,6 +700,340 @@ public class TreeMap extends AbstractMap
 	return oldValue;
     }
 
+    /**
+     * Removes and returns the entry for the least key in this map, or
+     * returns <tt>null</tt> if the map is empty.  The returned entry is no
+     * longer backed by the map.
+     *
+     * @return the removed first entry of this map, or <tt>null</tt> if the
+     *         map is empty.
+     */
+    public Map.Entry pollFirstEntry() {
+	final Entry p = this.firstEntry();
+	if (p != null) {
+	    this.deleteEntry(p);
+	}
+	return p;
+    }
+
+    /**
+     * Removes and returns the entry for the greatest key in this map, or
+     * returns <tt>null</tt> if the map is empty.  The returned entry is no
+     * longer backed by the map.
+     *
+     * @return the removed last entry of this map, or <tt>null</tt> if the
+     *         map is empty.
+     */
+    public Map.Entry pollLastEntry() {
+	final Entry p = this.lastEntry();
+	if (p != null) {
+	    this.deleteEntry(p);
+	}
+	return p;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>defaultValue</tt> if the map contains no mapping for the key.
+     * Unlike <tt>containsKey</tt> followed by <tt>get</tt>, this method
+     * descends the tree only once.
+     *
+     * @param key key whose associated value is to be returned.
+     * @param defaultValue the value to return if the key is not mapped.
+     * @return the value to which this map maps the specified key, or
+     *	       <tt>defaultValue</tt>.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+	final Entry p = this.getEntry(key);
+	return p==null ? defaultValue : p.value;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-<tt>null</tt> value,
+     * computes its value with the given function and enters it into this
+     * map unless it is <tt>null</tt>.  The tree is descended only once,
+     * whether or not a mapping is added.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key with which the computed value is to be associated.
+     * @param function the function computing the value.
+     * @return the current (existing or computed) value associated with the
+     *	       key, or <tt>null</tt> if the computed value is <tt>null</tt>.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object computeIfAbsent(final Object key, final Function function) {
+	Entry parent = null;
+	int cmp = 0;
+	Entry t = this.root;
+	while (t != null) {
+	    parent = t;
+	    cmp = this.compare(key, t.key);
+	    if (cmp == 0) {
+		break;
+	    }
+	    t = cmp < 0 ? t.left : t.right;
+	}
+	if (t != null && t.value != null) {
+	    return t.value;
+	}
+
+	final int expectedModCount = this.modCount;
+	final Object value = function.apply(key);
+	if (this.modCount != expectedModCount) {
+	    throw new ConcurrentModificationException();
+	}
+	if (value != null) {
+	    if (t != null) {
+		t.setValue(value);
+	    } else {
+		this.insertEntry(parent, cmp, key, value);
+	    }
+	}
+	return value;
+    }
+
+    /**
+     * If the specified key is mapped to a non-<tt>null</tt> value, computes
+     * a new value from the key and that value with the given function, and
+     * replaces the mapping with it, or removes the mapping if the new value
+     * is <tt>null</tt>.  The tree is descended only once.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key whose mapping is to be updated.
+     * @param function the function computing the new value.
+     * @return the new value associated with the key, or <tt>null</tt> if
+     *	       there is none.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object computeIfPresent(final Object key, final BiFunction function) {
+	final Entry p = this.getEntry(key);
+	if (p == null || p.value == null) {
+	    return null;
+	}
+	final int expectedModCount = this.modCount;
+	return this.update(p, function.apply(key, p.value), expectedModCount);
+    }
+
+    /**
+     * Computes a new value for the specified key from the key and its
+     * current value (<tt>null</tt> if there is none) with the given
+     * function.  If the new value is <tt>null</tt>, the mapping is removed
+     * (or remains absent); otherwise, the key is mapped to it.  The tree is
+     * descended only once.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key with which the computed value is to be associated.
+     * @param function the function computing the new value.
+     * @return the new value associated with the key, or <tt>null</tt> if
+     *	       there is none.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public Object compute(final Object key, final BiFunction function) {
+	Entry parent = null;
+	int cmp = 0;
+	Entry t = this.root;
+	while (t != null) {
+	    parent = t;
+	    cmp = this.compare(key, t.key);
+	    if (cmp == 0) {
+		break;
+	    }
+	    t = cmp < 0 ? t.left : t.right;
+	}
+
+	final int expectedModCount = this.modCount;
+	if (t != null) {
+	    return this.update(t, function.apply(key, t.value), expectedModCount);
+	}
+	final Object value = function.apply(key, null);
+	if (this.modCount != expectedModCount) {
+	    throw new ConcurrentModificationException();
+	}
+	if (value != null) {
+	    this.insertEntry(parent, cmp, key, value);
+	}
+	return value;
+    }
+
+    /**
+     * If the specified key is not mapped to a non-<tt>null</tt> value, maps
+     * it to the given value; otherwise, combines the current value and the
+     * given one with the given function, and replaces the mapping with the
+     * result, or removes the mapping if the result is <tt>null</tt>.  The
+     * tree is descended only once.<p>
+     *
+     * The function must not modify this map; if it does, this method throws
+     * <tt>ConcurrentModificationException</tt>.
+     *
+     * @param key key with which the resulting value is to be associated.
+     * @param value the non-<tt>null</tt> value to merge in.
+     * @param function the function combining the current and given values.
+     * @return the new value associated with the key, or <tt>null</tt> if
+     *	       there is none.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException <tt>value</tt> is <tt>null</tt>, or key
+     *		  is <tt>null</tt> and this map uses natural order, or its
+     *		  comparator does not tolerate <tt>null</tt> keys.
+     */
+    public Object merge(final Object key, final Object value, final BiFunction function) {
+	if (value == null) {
+	    throw new NullPointerException();
+	}
+	Entry parent = null;
+	int cmp = 0;
+	Entry t = this.root;
+	while (t != null) {
+	    parent = t;
+	    cmp = this.compare(key, t.key);
+	    if (cmp == 0) {
+		break;
+	    }
+	    t = cmp < 0 ? t.left : t.right;
+	}
+
+	if (t == null) {
+	    this.insertEntry(parent, cmp, key, value);
+	    return value;
+	}
+	if (t.value == null) {
+	    t.setValue(value);
+	    return value;
+	}
+	final int expectedModCount = this.modCount;
+	return this.update(t, function.apply(t.value, value), expectedModCount);
+    }
+
+    /**
+     * Adds a new entry as the child of <tt>parent</tt> on the side given by
+     * the sign of <tt>cmp</tt>, the result of comparing the key with the
+     * parent's key, or as the root if <tt>parent</tt> is <tt>null</tt>.
+     */
+    private void insertEntry(final Entry parent, final int cmp, final Object key, final Object value) {
+	this.incrementSize();
+	final Entry e = this.newEntry(key, value, parent);
+	if (parent == null) {
+	    this.root = e;
+	    return;
+	}
+	if (cmp < 0) {
+	    parent.left = e;
+	} else {
+	    parent.right = e;
+	}
+	adjustSizes(parent, 1);
+	this.augmentPath(parent);
+	this.fixAfterInsertion(e);
+    }
+
+    /**
+     * Stores a value computed for the specified entry, or deletes the entry
+     * if the value is <tt>null</tt>.  Throws
+     * <tt>ConcurrentModificationException</tt> if the computation modified
+     * the map.
+     */
+    private Object update(final Entry p, final Object value, final int expectedModCount) {
+	if (this.modCount != expectedModCount) {
+	    throw new ConcurrentModificationException();
+	}
+	if (value == null) {
+	    this.deleteEntry(p);
+	} else {
+	    p.setValue(value);
+	}
+	return value;
+    }
+
+    /**
+     * Returns the number of keys in this map that are strictly less than the
+     * specified key, that is, the index the key has or would have in the
+     * map's ascending key order.  This operation runs in log(n) time.
+     *
+     * @param key the key whose rank is to be returned.
+     * @return the number of keys in this map less than <tt>key</tt>.
+     * @throws    ClassCastException key cannot be compared with the keys
+     *		  currently in the map.
+     * @throws NullPointerException key is <tt>null</tt> and this map uses
+     *		  natural order, or its comparator does not tolerate
+     *		  <tt>null</tt> keys.
+     */
+    public int rank(final Object key) {
+	int rank = 0;
+	Entry p = this.root;
+	while (p != null) {
+	    final int cmp = this.compare(key, p.key);
+	    if (cmp == 0) {
+		return rank + sizeOf(p.left);
+	    } else if (cmp < 0) {
+		p = p.left;
+	    } else {
+		rank += sizeOf(p.left) + 1;
+		p = p.right;
+	    }
+	}
+	return rank;
+    }
+
+    /**
+     * Returns the key at the specified index in this map's ascending key
+     * order, so that <tt>select(0)</tt> is the first key and
+     * <tt>select(size()-1)</tt> the last.  This operation runs in log(n)
+     * time.
+     *
+     * @param index index of the key to return.
+     * @return the key at the specified index.
+     * @throws    IndexOutOfBoundsException index is out of range (<tt>index
+     *		  &lt; 0 || index &gt;= size()</tt>).
+     */
+    public Object select(final int index) {
+	return this.getEntryAt(index).key;
+    }
+
+    /**
+     * Returns the entry at the specified index in key order, descending the
+     * tree by subtree sizes.
+     */
+    Entry getEntryAt(int index) {
+	if (index < 0 || index >= this.size) {
+	    throw new IndexOutOfBoundsException("Index: "+index+", Size: "+this.size);
+	}
+	Entry p = this.root;
+	while (true) {
+	    final int leftSize = sizeOf(p.left);
+	    if (index < leftSize) {
+		p = p.left;
+	    } else if (index > leftSize) {
+		index -= leftSize + 1;
+		p = p.right;
+	    } else {
+		return p;
+	    }
+	}
+    }
+
     /**
      * Removes all mappings from this TreeMap.
      */
@@ -519,7 +1050,33 @@ public class TreeMap extends AbstractMap
      * @return a shallow copy of this Map.
      */
     public Object clone() {
-        return new TreeMap(this);
+	TreeMap clone = null;
+	try {
+	    clone = (TreeMap) super.clone();
+	} catch (final CloneNotSupportedException e) {
+	    // this shouldn't happen, since we are Cloneable
+	    throw new InternalError();
+	}
+
+	// Put clone into "virgin" state
+	clone.root = null;
+	clone.size = 0;
+	clone.modCount = 0;
+	clone.keySet = null;
+	clone.entrySet = null;
+	clone.values = null;
+
+	// Initialize clone with our mappings.  The entries are created and
+	// augmented through the clone's own hooks.
+	try {
+	    clone.buildFromSorted(this.size, this.entrySet().iterator(), null, null);
+	} catch (final IOException cannotHappen) {
+	    // ignore
+	} catch (final ClassNotFoundException cannotHappen) {
+	    // ignore
+	}
+
+	return clone;
     }
 
 
@@ -681,6 +1238,68 @@ public class TreeMap extends AbstractMap
 	return this.entrySet;
     }
 
+    /**
+     * Returns an iterator over the mappings in this map in descending key
+     * order.  Each element returned is a <tt>Map.Entry</tt>.  The iterator
+     * is <i>fail-fast</i> and supports the <tt>remove</tt> operation.
+     *
+     * @return an iterator over the entries of this map, greatest key first.
+     */
+    public com.example.backport.java.util.Iterator descendingIterator() {
+	return new Iterator(ENTRIES, this.lastEntry(), null, true);
+    }
+
+    /**
+     * Returns an iterator over the keys in this map in descending order.
+     * The iterator is <i>fail-fast</i> and supports the <tt>remove</tt>
+     * operation.
+     *
+     * @return an iterator over the keys of this map, greatest first.
+     */
+    public com.example.backport.java.util.Iterator descendingKeyIterator() {
+	return new Iterator(KEYS, this.lastEntry(), null, true);
+    }
+
+    /**
+     * Returns a new cursor over this map, positioned before the first
+     * mapping.
+     *
+     * @return a new cursor over this map.
+     */
+    public Cursor cursor() {
+	return new Cursor();
+    }
+
+    /**
+     * Returns the values to which this map maps the specified keys, in the
+     * order of the keys, with <tt>null</tt> for each key the map contains
+     * no mapping for.  The keys are looked up by a single cursor, so if
+     * they are in ascending order, each lookup starts where the previous
+     * one ended, and m keys take time proportional to
+     * m log(n/m) + m + log(n) in total, rather than log(n) per key.
+     *
+     * @param keys the keys whose associated values are to be returned,
+     *             preferably in ascending order.
+     * @return an array of the values to which this map maps the keys.
+     * @throws ClassCastException if a key cannot be compared with the keys
+     *         currently in the map.
+     * @throws NullPointerException if a key is <tt>null</tt> and this map
+     *         uses natural order, or its comparator does not tolerate
+     *         <tt>null</tt> keys.
+     */
+    public Object[] getAll(final Collection keys) {
+	final Object[] result = new Object[keys.size()];
+	final Cursor c = new Cursor();
+	int i = 0;
+	for (final com.example.backport.java.util.Iterator it = keys.iterator(); it.hasNext(); i++) {
+	    final Object key = it.next();
+	    if (c.seekCeiling(key) && this.compare(key, c.entry.key) == 0) {
+		result[i] = c.entry.value;
+	    }
+	}
+	return result;
+    }
+
     /**
      * Returns a view of the portion of this map whose keys range from
      * <tt>fromKey</tt>, inclusive, to <tt>toKey</tt>, exclusive.  (If
@@ -795,7 +1414,7 @@ public class TreeMap extends AbstractMap
     }
 
     private class SubMap extends AbstractMap
-    			 implements SortedMap, java.io.Serializable {
+    			 implements NavigableMap, java.io.Serializable {
         private static final long serialVersionUID = -6520786458950516097L;
 
         /**
@@ -868,6 +1487,99 @@ public class TreeMap extends AbstractMap
             return key(this.toEnd ? TreeMap.this.lastEntry() : TreeMap.this.getPrecedingEntry(this.toKey));
         }
 
+	public Map.Entry lowerEntry(final Object key) {
+	    return this.tooHigh(key) ? this.highest() : this.clip(TreeMap.this.getPrecedingEntry(key));
+        }
+
+	public Object lowerKey(final Object key) {
+	    return keyOrNull((TreeMap.Entry) this.lowerEntry(key));
+        }
+
+	public Map.Entry floorEntry(final Object key) {
+	    return this.tooHigh(key) ? this.highest() : this.clip(TreeMap.this.getFloorEntry(key));
+        }
+
+	public Object floorKey(final Object key) {
+	    return keyOrNull((TreeMap.Entry) this.floorEntry(key));
+        }
+
+	public Map.Entry ceilingEntry(final Object key) {
+	    return this.tooLow(key) ? this.lowest() : this.clip(TreeMap.this.getCeilEntry(key));
+        }
+
+	public Object ceilingKey(final Object key) {
+	    return keyOrNull((TreeMap.Entry) this.ceilingEntry(key));
+        }
+
+	public Map.Entry higherEntry(final Object key) {
+	    return this.tooLow(key) ? this.lowest() : this.clip(TreeMap.this.getHigherEntry(key));
+        }
+
+	public Object higherKey(final Object key) {
+	    return keyOrNull((TreeMap.Entry) this.higherEntry(key));
+        }
+
+	public Map.Entry pollFirstEntry() {
+	    final TreeMap.Entry p = this.lowest();
+	    if (p != null) {
+		TreeMap.this.deleteEntry(p);
+	    }
+	    return p;
+        }
+
+	public Map.Entry pollLastEntry() {
+	    final TreeMap.Entry p = this.highest();
+	    if (p != null) {
+		TreeMap.this.deleteEntry(p);
+	    }
+	    return p;
+        }
+
+	public com.example.backport.java.util.Iterator descendingIterator() {
+	    return this.descendingIterator(ENTRIES);
+        }
+
+	public com.example.backport.java.util.Iterator descendingKeyIterator() {
+	    return this.descendingIterator(KEYS);
+        }
+
+	private com.example.backport.java.util.Iterator descendingIterator(final int type) {
+	    return new Iterator(type,
+		this.toEnd     ? TreeMap.this.lastEntry() : TreeMap.this.getPrecedingEntry(this.toKey),
+		this.fromStart ? null                     : TreeMap.this.getPrecedingEntry(this.fromKey),
+		true);
+        }
+
+	/**
+	 * Returns the entry for the least key in range, or <tt>null</tt>.
+	 */
+	private TreeMap.Entry lowest() {
+	    return this.clip(this.fromStart ? TreeMap.this.firstEntry() : TreeMap.this.getCeilEntry(this.fromKey));
+        }
+
+	/**
+	 * Returns the entry for the greatest key in range, or <tt>null</tt>.
+	 */
+	private TreeMap.Entry highest() {
+	    return this.clip(this.toEnd ? TreeMap.this.lastEntry() : TreeMap.this.getPrecedingEntry(this.toKey));
+        }
+
+	/**
+	 * Returns the given entry if its key is in range, <tt>null</tt>
+	 * otherwise.
+	 */
+	private TreeMap.Entry clip(final TreeMap.Entry e) {
+	    return e == null || this.tooLow(e.key) || this.tooHigh(e.key) ? null : e;
+        }
+
+	private boolean tooLow(final Object key) {
+	    return !this.fromStart && TreeMap.this.compare(key, this.fromKey) < 0;
+        }
+
+	private boolean tooHigh(final Object key) {
+	    return !this.toEnd && TreeMap.this.compare(key, this.toKey) >= 0;
+        }
+
 	private transient Set entrySet = new EntrySetView();
 
 	public Set entrySet() {
@@ -875,22 +1587,18 @@ public class TreeMap extends AbstractMap
 	}
 
 	private class EntrySetView extends AbstractSet {
-	    private transient int size = -1, sizeModCount;
-
 	EntrySetView() {
 		// empty
 	}
 
-	public int size() {
-		if (this.size == -1 || this.sizeModCount != TreeMap.this.modCount) {
-		    this.size = 0;  this.sizeModCount = TreeMap.this.modCount;
-		    final com.example.backport.java.util.Iterator i = this.iterator();
-		    while (i.hasNext()) {
-			this.size++;
-			i.next();
-		    }
-		}
-		return this.size;
+	    /**
+	     * Counts the entries in range as the difference of the ranks of
+	     * the endpoints, without iterating.
+	     */
+	    public int size() {
+		final int from = SubMap.this.fromStart ? 0 : TreeMap.this.rank(SubMap.this.fromKey);
+		final int to = SubMap.this.toEnd ? TreeMap.this.size : TreeMap.this.rank(SubMap.this.toKey);
+		return to - from;
 	    }
 
 	    public boolean isEmpty() {
@@ -981,20 +1689,25 @@ public class TreeMap extends AbstractMap
      */
     private class Iterator implements com.example.backport.java.util.Iterator {
 	private final int type;
+	private final boolean descending;
 	private int expectedModCount = TreeMap.this.modCount;
 	private Entry lastReturned = null;
 	private Entry next;
 	private Entry firstExcluded = null;
 
 	Iterator(final int type) {
-	    this.type = type;
-	    this.next = TreeMap.this.firstEntry();
+	    this(type, TreeMap.this.firstEntry(), null, false);
 	}
 
 	Iterator(final Entry first, final Entry firstExcluded) {
-	    this.type = ENTRIES;
+	    this(ENTRIES, first, firstExcluded, false);
+	}
+
+	Iterator(final int type, final Entry first, final Entry firstExcluded, final boolean descending) {
+	    this.type = type;
 	    this.next = first;
 	    this.firstExcluded = firstExcluded;
+	    this.descending = descending;
 	}
 
 	public boolean hasNext() {
@@ -1010,7 +1723,7 @@ public class TreeMap extends AbstractMap
 	}
 
 	    this.lastReturned = this.next;
-	    this.next = TreeMap.successor(this.next);
+	    this.next = this.descending ? TreeMap.predecessor(this.next) : TreeMap.successor(this.next);
 	    return this.type == KEYS ? this.lastReturned.key :
 		    this.type == VALUES ? this.lastReturned.value : this.lastReturned;
 	}
@@ -1029,6 +1742,306 @@ public class TreeMap extends AbstractMap
 	}
     }
 
+    /**
+     * Returns the first entry at or after the finger x whose key is greater
+     * than or equal to the specified key (or strictly greater, if
+     * <tt>strict</tt>), or at or before x if x itself qualifies.  The
+     * search climbs from x only as far as the subtree that must contain
+     * the result, and then descends from there.  That is at most twice the
+     * height of the tree, and much less when x and the result share a low
+     * ancestor; in a sweep over ascending keys, no entry is descended
+     * through by more than one search.
+     */
+    private Entry getCeilEntry(final Entry x, final Object key, final boolean strict) {
+	Entry p = x;
+	Entry best = null;
+	if (this.atOrAbove(x, key, strict)) {
+	    // Seeking backward: stop below the first lower ancestor that
+	    // does not qualify.
+	    while (p.parent != null &&
+		   (p == p.parent.left || this.atOrAbove(p.parent, key, strict))) {
+		p = p.parent;
+	    }
+	} else {
+	    // Seeking forward: stop below the first higher ancestor, which
+	    // then bounds the result.
+	    while (p.parent != null) {
+		if (p == p.parent.left && this.atOrAbove(p.parent, key, strict)) {
+		    best = p.parent;
+		    break;
+		}
+		p = p.parent;
+	    }
+	}
+
+	while (p != null) {
+	    if (this.atOrAbove(p, key, strict)) {
+		best = p;
+		p = p.left;
+	    } else {
+		p = p.right;
+	    }
+	}
+	return best;
+    }
+
+    private boolean atOrAbove(final Entry p, final Object key, final boolean strict) {
+	final int cmp = this.compare(p.key, key);
+	return strict ? cmp > 0 : cmp >= 0;
+    }
+
+    /**
+     * A position in a <tt>TreeMap</tt>, either on a mapping or off either
+     * end of the map.  A cursor is positioned by one of its <tt>seek</tt>
+     * methods or by <tt>first</tt> or <tt>last</tt>, all of which return
+     * whether it ended up on a mapping, and is then moved mapping by mapping
+     * with <tt>next</tt> and <tt>previous</tt>.  The <tt>seek</tt> methods
+     * start from the current position: one seek takes at most log(n) time,
+     * and a sweep of m seeks in ascending order takes time proportional to
+     * m log(n/m) + m + log(n) in total.  The value of the current
+     * mapping can be replaced, and the mapping removed, without another
+     * search.<p>
+     *
+     * Like the iterators of the map, cursors are <i>fail-fast</i>: if the
+     * map is structurally modified after a cursor was positioned, in any way
+     * except through the cursor's own <tt>remove</tt> method, the cursor
+     * throws a <tt>ConcurrentModificationException</tt> until it is
+     * positioned again.
+     */
+    public final class Cursor {
+	/**
+	 * The current entry, or <tt>null</tt> if the cursor is off the end
+	 * of the map given by <tt>beforeFirst</tt>.
+	 */
+	Entry entry = null;
+	private boolean beforeFirst = true;
+	private int expectedModCount = TreeMap.this.modCount;
+
+	Cursor() {
+	}
+
+	private boolean moveTo(final Entry e, final boolean beforeFirst) {
+	    this.entry = e;
+	    this.beforeFirst = beforeFirst;
+	    this.expectedModCount = TreeMap.this.modCount;
+	    return e != null;
+	}
+
+	private void check() {
+	    if (TreeMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	}
+
+	/**
+	 * Returns the entry to search from: the current one if it is still
+	 * in the map, and otherwise the root.
+	 */
+	private Entry finger() {
+	    return this.entry != null && TreeMap.this.modCount == this.expectedModCount ?
+		   this.entry : TreeMap.this.root;
+	}
+
+	/**
+	 * Returns <tt>true</tt> if the cursor is on a mapping.
+	 *
+	 * @return <tt>true</tt> if the cursor is on a mapping.
+	 */
+	public boolean isValid() {
+	    return this.entry != null;
+	}
+
+	/**
+	 * Moves to the first (lowest) mapping.
+	 *
+	 * @return <tt>true</tt> if the map is not empty.
+	 */
+	public boolean first() {
+	    return this.moveTo(TreeMap.this.firstEntry(), true);
+	}
+
+	/**
+	 * Moves to the last (highest) mapping.
+	 *
+	 * @return <tt>true</tt> if the map is not empty.
+	 */
+	public boolean last() {
+	    return this.moveTo(TreeMap.this.lastEntry(), false);
+	}
+
+	/**
+	 * Moves to the mapping with the least key greater than or equal to
+	 * the specified key, if there is one, and otherwise past the end of
+	 * the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 * @throws ClassCastException if the key cannot be compared with the
+	 *         keys currently in the map.
+	 */
+	public boolean seekCeiling(final Object key) {
+	    return this.seekUp(key, false);
+	}
+
+	/**
+	 * Moves to the mapping with the least key strictly greater than the
+	 * specified key, if there is one, and otherwise past the end of
+	 * the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 * @throws ClassCastException if the key cannot be compared with the
+	 *         keys currently in the map.
+	 */
+	public boolean seekHigher(final Object key) {
+	    return this.seekUp(key, true);
+	}
+
+	/**
+	 * Moves to the mapping with the greatest key less than or equal to
+	 * the specified key, if there is one, and otherwise before the
+	 * start of the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 * @throws ClassCastException if the key cannot be compared with the
+	 *         keys currently in the map.
+	 */
+	public boolean seekFloor(final Object key) {
+	    return this.seekDown(key, true);
+	}
+
+	/**
+	 * Moves to the mapping with the greatest key strictly less than the
+	 * specified key, if there is one, and otherwise before the start
+	 * of the map.
+	 *
+	 * @param key the key to search for.
+	 * @return <tt>true</tt> if there is such a mapping.
+	 * @throws ClassCastException if the key cannot be compared with the
+	 *         keys currently in the map.
+	 */
+	public boolean seekLower(final Object key) {
+	    return this.seekDown(key, false);
+	}
+
+	private boolean seekUp(final Object key, final boolean strict) {
+	    final Entry x = this.finger();
+	    return this.moveTo(x == null ? null : TreeMap.this.getCeilEntry(x, key, strict), false);
+	}
+
+	/**
+	 * The greatest entry at or below the key is the predecessor of the
+	 * least entry above it (or at or above it, if not inclusive).
+	 */
+	private boolean seekDown(final Object key, final boolean inclusive) {
+	    final Entry x = this.finger();
+	    if (x == null) {
+		return this.moveTo(null, true);
+	    }
+	    final Entry above = TreeMap.this.getCeilEntry(x, key, inclusive);
+	    return this.moveTo(above == null ? TreeMap.this.lastEntry() : predecessor(above), true);
+	}
+
+	/**
+	 * Moves to the next mapping in ascending key order.  From before
+	 * the start of the map, moves to the first mapping.
+	 *
+	 * @return <tt>true</tt> if there is a next mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public boolean next() {
+	    this.check();
+	    if (this.entry == null) {
+		return this.beforeFirst ? this.first() : false;
+	    }
+	    return this.moveTo(successor(this.entry), false);
+	}
+
+	/**
+	 * Moves to the previous mapping in ascending key order.  From past
+	 * the end of the map, moves to the last mapping.
+	 *
+	 * @return <tt>true</tt> if there is a previous mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public boolean previous() {
+	    this.check();
+	    if (this.entry == null) {
+		return this.beforeFirst ? false : this.last();
+	    }
+	    return this.moveTo(predecessor(this.entry), true);
+	}
+
+	/**
+	 * Returns the key of the current mapping.
+	 *
+	 * @return the key of the current mapping.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public Object key() {
+	    return this.current().key;
+	}
+
+	/**
+	 * Returns the value of the current mapping.
+	 *
+	 * @return the value of the current mapping.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public Object value() {
+	    return this.current().value;
+	}
+
+	/**
+	 * Replaces the value of the current mapping.  This is not a
+	 * structural modification, so other cursors and iterators remain
+	 * usable.
+	 *
+	 * @param value new value to be stored in the current mapping.
+	 * @return the old value of the current mapping.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public Object setValue(final Object value) {
+	    return this.current().setValue(value);
+	}
+
+	/**
+	 * Removes the current mapping from the map, and moves to the
+	 * mapping that followed it.
+	 *
+	 * @return <tt>true</tt> if there is a mapping following the removed
+	 *         one.
+	 * @throws NoSuchElementException if the cursor is not on a mapping.
+	 * @throws ConcurrentModificationException if the map was modified
+	 *         since the cursor was positioned.
+	 */
+	public boolean remove() {
+	    final Entry p = this.current();
+	    // deleteEntry relinks entries rather than moving mappings
+	    // between them, so the successor stays valid.
+	    final Entry next = successor(p);
+	    TreeMap.this.deleteEntry(p);
+	    return this.moveTo(next, false);
+	}
+
+	private Entry current() {
+	    this.check();
+	    if (this.entry == null) {
+		throw new NoSuchElementException();
+	    }
+	    return this.entry;
+	}
+    }
+
     /**
      * Compares two keys using the correct comparison method for this TreeMap.
      */
@@ -1061,6 +2074,12 @@ public class TreeMap extends AbstractMap
 	Entry parent;
 	boolean color = BLACK;
 
+	/**
+	 * The number of entries in the subtree rooted at this entry,
+	 * including itself.
+	 */
+	int size = 1;
+
 	/**
 	 * Make a new cell with given key, value, and parent, and with <tt>null</tt>
 	 * child links, and BLACK color.
@@ -1173,6 +2192,29 @@ public class TreeMap extends AbstractMap
 	}
     }
 
+    /**
+     * Returns the predecessor of the specified Entry, or null if no such.
+     */
+    static Entry predecessor(final Entry t) {
+	if (t == null) {
+	    return null;
+	} else if (t.left != null) {
+	    Entry p = t.left;
+	    while (p.right != null) {
+		p = p.right;
+	    }
+	    return p;
+	} else {
+	    Entry p = t.parent;
+	    Entry ch = t;
+	    while (p != null && ch == p.left) {
+		ch = p;
+		p = p.parent;
+	    }
+	    return p;
+	}
+    }
+
     /**
      * Balancing operations.
      *
@@ -1205,6 +2247,46 @@ public class TreeMap extends AbstractMap
 	return p == null? null: p.right;
     }
 
+    private static int sizeOf(final Entry p) {
+	return p == null ? 0 : p.size;
+    }
+
+    /**
+     * Creates the entry for a new mapping.  Subclasses that keep more data
+     * per entry than the subtree size override this method, together with
+     * <tt>augment</tt> and <tt>augmentPath</tt>.
+     */
+    Entry newEntry(final Object key, final Object value, final Entry parent) {
+	return new Entry(key, value, parent);
+    }
+
+    /**
+     * Recomputes the data a subclass keeps for the subtree of p from p and
+     * its children.  Called whenever the children of p change, children
+     * first; rotations call it for the two entries they move.
+     */
+    void augment(final Entry p) {
+	// nothing to maintain but the subtree sizes
+    }
+
+    /**
+     * Recomputes the subclass data of p and of each of its ancestors, after
+     * an entry was linked below p or unlinked from below it.
+     */
+    void augmentPath(final Entry p) {
+	// nothing to maintain but the subtree sizes
+    }
+
+    /**
+     * Adds delta to the subtree sizes of p and of each of its ancestors.
+     */
+    private static void adjustSizes(Entry p, final int delta) {
+	while (p != null) {
+	    p.size += delta;
+	    p = p.parent;
+	}
+    }
+
     /** From CLR **/
     private void rotateLeft(final Entry p) {
 	final Entry r = p.right;
@@ -1222,6 +2304,10 @@ public class TreeMap extends AbstractMap
 	}
 	r.left = p;
 	p.parent = r;
+	r.size = p.size;
+	p.size = sizeOf(p.left) + sizeOf(p.right) + 1;
+	this.augment(p);
+	this.augment(r);
     }
 
     /** From CLR **/
@@ -1241,6 +2327,10 @@ public class TreeMap extends AbstractMap
 	}
 	l.right = p;
 	p.parent = l;
+	l.size = p.size;
+	p.size = sizeOf(p.left) + sizeOf(p.right) + 1;
+	this.augment(p);
+	this.augment(l);
     }
 
 
@@ -1306,6 +2396,8 @@ public class TreeMap extends AbstractMap
 	final Entry replacement = p.left != null ? p.left : p.right;
 
 	if (replacement != null) {
+	    adjustSizes(p.parent, -1);
+
 	    // Link replacement to parent
 	    replacement.parent = p.parent;
 	    if (p.parent == null) {
@@ -1316,6 +2408,8 @@ public class TreeMap extends AbstractMap
 		p.parent.right = replacement;
 	}
 
+	    this.augmentPath(replacement.parent);
+
 	    // Null out links so they are OK to use by fixAfterDeletion.
 	    p.left = p.right = p.parent = null;
 
@@ -1331,11 +2425,14 @@ public class TreeMap extends AbstractMap
 	}
 
 	    if (p.parent != null) {
+		// The phantom stays counted until the rotations are done.
+		adjustSizes(p.parent, -1);
 		if (p == p.parent.left) {
 			p.parent.left = null;
 		} else if (p == p.parent.right) {
 			p.parent.right = null;
 		}
+		this.augmentPath(p.parent);
 		p.parent = null;
 	    }
 	}
@@ -1473,10 +2570,13 @@ public class TreeMap extends AbstractMap
 		y.right.parent = y;
 	}
 
-	// Swap colors
+	// Swap colors and subtree sizes, which belong to the positions
 	final boolean c = x.color;
 	x.color = y.color;
 	y.color = c;
+	final int n = x.size;
+	x.size = y.size;
+	y.size = n;
 
 	// Check if root changed
 	if (this.root == x) {
@@ -1542,8 +2642,13 @@ public class TreeMap extends AbstractMap
 
     /** Intended to be called only from TreeSet.addAll **/
     void addAllForTreeSet(final SortedSet set, final Object defaultVal) {
+	this.addAllForTreeSet(set.size(), set.iterator(), defaultVal);
+    }
+
+    /** Intended to be called only from TreeSet's set operations **/
+    void addAllForTreeSet(final int size, final com.example.backport.java.util.Iterator it, final Object defaultVal) {
       try {
-          this.buildFromSorted(set.size(), set.iterator(), null, defaultVal);
+	  this.buildFromSorted(size, it, null, defaultVal);
       } catch (final IOException cannotHappen) {
 	      // empty
       } catch (final ClassNotFoundException cannotHappen) {
@@ -1605,7 +2710,7 @@ public class TreeMap extends AbstractMap
      * @param redLevel the level at which nodes should be red.
      *        Must be equal to computeRedLevel for tree of this size.
      */
-    private static Entry buildFromSorted(final int level, final int lo, final int hi,
+    private Entry buildFromSorted(final int level, final int lo, final int hi,
                                          final int redLevel,
                                          final com.example.backport.java.util.Iterator it,
                                          final java.io.ObjectInputStream str,
@@ -1652,7 +2757,8 @@ public class TreeMap extends AbstractMap
             value = defaultVal != null ? defaultVal : str.readObject();
         }
 
-        final Entry middle =  new Entry(key, value, null);
+	final Entry middle =  this.newEntry(key, value, null);
+        middle.size = hi - lo + 1;
 
         // color nodes in non-full bottommost level red
         if (level == redLevel) {
@@ -1670,6 +2776,7 @@ public class TreeMap extends AbstractMap
             middle.right = right;
             right.parent = middle;
         }
+	this.augment(middle);
 
         return middle;
     }
@@ -1683,7 +2790,7 @@ public class TreeMap extends AbstractMap
      * node.  (The answer is ~lg(N), but in any case must be computed by same
      * quick O(lg(N)) loop.)
      */
-    private static int computeRedLevel(final int sz) {
+    static int computeRedLevel(final int sz) {
         int level = 0;
         for (int m = sz - 1; m >= 0; m = m / 2 - 1) {
 		level++;
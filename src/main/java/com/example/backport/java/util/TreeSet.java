@@ -19,7 +19,10 @@ import com.example.backport.java.lang.Comparable;
  * set creation time, depending on which constructor is used.<p>
  *
  * This implementation provides guaranteed log(n) time cost for the basic
- * operations (<tt>add</tt>, <tt>remove</tt> and <tt>contains</tt>).<p>
+ * operations (<tt>add</tt>, <tt>remove</tt> and <tt>contains</tt>), and for
+ * the <tt>NavigableSet</tt> operations (<tt>floor</tt>, <tt>ceiling</tt>,
+ * <tt>pollFirst</tt> and the like), which neither create views nor
+ * iterators.<p>
  *
  * Note that the ordering maintained by a set (whether or not an explicit
  * comparator is provided) must be <i>consistent with equals</i> if it is to
@@ -64,10 +67,10 @@ import com.example.backport.java.lang.Comparable;
  */
 
 public class TreeSet extends AbstractSet
-		     implements SortedSet, Cloneable, java.io.Serializable
+		     implements NavigableSet, Cloneable, java.io.Serializable
 {
 	private static final long serialVersionUID = 3765904234577041592L;
-    private transient SortedMap m;	 // The backing Map
+    private transient NavigableMap m; // The backing Map
     private transient Set      	keySet;  // The keySet view of the backing Map
 
     // Dummy value to associate with an Object in the backing Map
@@ -77,7 +80,7 @@ public class TreeSet extends AbstractSet
      * Constructs a set backed by the given sorted map.
      */
     private TreeSet(final SortedMap m) {
-        this.m = m;
+	this.m = (NavigableMap) m;  // a TreeMap or one of its subMaps
         this.keySet = m.keySet();
     }
 
@@ -241,6 +244,159 @@ public class TreeSet extends AbstractSet
         return super.addAll(c);
     }
 
+    // Set algebra
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+    private static final int SYMMETRIC_DIFFERENCE = 3;
+
+    /**
+     * Returns a new set containing the elements that are in either of the
+     * specified sorted sets, ordered by the comparator of <tt>s1</tt>.<p>
+     *
+     * If the two sets use the same ordering, the result is computed by a
+     * single merge of their iterators and built as a balanced tree in
+     * linear time, O(m+n) overall.  Otherwise the elements of <tt>s2</tt>
+     * are inserted one at a time.
+     *
+     * @param s1 the first set.
+     * @param s2 the second set.
+     * @return the union of the two sets.
+     * @throws ClassCastException if the elements of the two sets cannot be
+     *		  compared with one another.
+     */
+    public static TreeSet union(final SortedSet s1, final SortedSet s2) {
+	return merge(s1, s2, UNION);
+    }
+
+    /**
+     * Returns a new set containing the elements that are in both of the
+     * specified sorted sets, ordered by the comparator of <tt>s1</tt>.  If
+     * the two sets use the same ordering, this runs in O(m+n) time, as
+     * described for <tt>union</tt>.
+     *
+     * @param s1 the first set.
+     * @param s2 the second set.
+     * @return the intersection of the two sets.
+     * @throws ClassCastException if the elements of the two sets cannot be
+     *		  compared with one another.
+     * @see #union(SortedSet, SortedSet)
+     */
+    public static TreeSet intersection(final SortedSet s1, final SortedSet s2) {
+	return merge(s1, s2, INTERSECTION);
+    }
+
+    /**
+     * Returns a new set containing the elements of <tt>s1</tt> that are not
+     * in <tt>s2</tt>, ordered by the comparator of <tt>s1</tt>.  If the two
+     * sets use the same ordering, this runs in O(m+n) time, as described for
+     * <tt>union</tt>.
+     *
+     * @param s1 the first set.
+     * @param s2 the set whose elements are to be excluded.
+     * @return the difference of the two sets.
+     * @throws ClassCastException if the elements of the two sets cannot be
+     *		  compared with one another.
+     * @see #union(SortedSet, SortedSet)
+     */
+    public static TreeSet difference(final SortedSet s1, final SortedSet s2) {
+	return merge(s1, s2, DIFFERENCE);
+    }
+
+    /**
+     * Returns a new set containing the elements that are in exactly one of
+     * the specified sorted sets, ordered by the comparator of <tt>s1</tt>.
+     * If the two sets use the same ordering, this runs in O(m+n) time, as
+     * described for <tt>union</tt>.
+     *
+     * @param s1 the first set.
+     * @param s2 the second set.
+     * @return the symmetric difference of the two sets.
+     * @throws ClassCastException if the elements of the two sets cannot be
+     *		  compared with one another.
+     * @see #union(SortedSet, SortedSet)
+     */
+    public static TreeSet symmetricDifference(final SortedSet s1, final SortedSet s2) {
+	return merge(s1, s2, SYMMETRIC_DIFFERENCE);
+    }
+
+    /**
+     * Computes the given set operation by merging the two sets in order
+     * into an array, from which the result's tree is built bottom-up.
+     */
+    private static TreeSet merge(final SortedSet s1, final SortedSet s2, final int op) {
+	final Comparator c = s1.comparator();
+	final Comparator c2 = s2.comparator();
+	final TreeSet result = new TreeSet(c);
+	if (!(c==c2 || c != null && c.equals(c2))) {
+	    result.addAll(s1);
+	    if (op == UNION) {
+		result.addAll(s2);
+	    } else if (op == INTERSECTION) {
+		result.retainAll(s2);
+	    } else if (op == DIFFERENCE) {
+		result.removeAll(s2);
+	    } else {
+		for (final Iterator i = s2.iterator(); i.hasNext(); ) {
+		    final Object o = i.next();
+		    if (!s1.contains(o)) {
+			result.add(o);
+		    } else {
+			result.remove(o);
+		    }
+		}
+	    }
+	    return result;
+	}
+
+	final int size1 = s1.size();
+	final int size2 = s2.size();
+	final Object[] merged = new Object[op == INTERSECTION ? Math.min(size1, size2)
+					 : op == DIFFERENCE ? size1 : size1 + size2];
+	final boolean keep1 = op != INTERSECTION;
+	final boolean keep2 = op == UNION || op == SYMMETRIC_DIFFERENCE;
+	final boolean keepBoth = op == UNION || op == INTERSECTION;
+	int n = 0;
+
+	final Iterator i1 = s1.iterator();
+	final Iterator i2 = s2.iterator();
+	boolean has1 = i1.hasNext();
+	boolean has2 = i2.hasNext();
+	Object e1 = has1 ? i1.next() : null;
+	Object e2 = has2 ? i2.next() : null;
+	while (has1 && has2) {
+	    final int cmp = c==null ? ((Comparable)e1).compareTo(e2) : c.compare(e1, e2);
+	    if (cmp <= 0) {
+		if (cmp < 0 ? keep1 : keepBoth) {
+		    merged[n++] = e1;
+		}
+		has1 = i1.hasNext();
+		e1 = has1 ? i1.next() : null;
+	    }
+	    if (cmp >= 0) {
+		if (cmp > 0 && keep2) {
+		    merged[n++] = e2;
+		}
+		has2 = i2.hasNext();
+		e2 = has2 ? i2.next() : null;
+	    }
+	}
+	while (has1 && keep1) {
+	    merged[n++] = e1;
+	    has1 = i1.hasNext();
+	    e1 = has1 ? i1.next() : null;
+	}
+	while (has2 && keep2) {
+	    merged[n++] = e2;
+	    has2 = i2.hasNext();
+	    e2 = has2 ? i2.next() : null;
+	}
+
+	((TreeMap) result.m).addAllForTreeSet(n, Arrays.asList(merged).iterator(), PRESENT);
+	return result;
+    }
+
     /**
      * Returns a view of the portion of this set whose elements range from
      * <tt>fromElement</tt>, inclusive, to <tt>toElement</tt>, exclusive.  (If
@@ -384,6 +540,104 @@ public class TreeSet extends AbstractSet
         return this.m.lastKey();
     }
 
+    /**
+     * Returns the greatest element in this set strictly less than the given
+     * element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the greatest element less than <tt>o</tt>, or <tt>null</tt>.
+     * @throws    ClassCastException <tt>o</tt> cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  uses natural ordering, or its comparator does not
+     *		  tolerate <tt>null</tt> elements.
+     */
+    public Object lower(final Object o) {
+	return this.m.lowerKey(o);
+    }
+
+    /**
+     * Returns the greatest element in this set less than or equal to the
+     * given element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the greatest element less than or equal to <tt>o</tt>, or
+     *         <tt>null</tt>.
+     * @throws    ClassCastException <tt>o</tt> cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  uses natural ordering, or its comparator does not
+     *		  tolerate <tt>null</tt> elements.
+     */
+    public Object floor(final Object o) {
+	return this.m.floorKey(o);
+    }
+
+    /**
+     * Returns the least element in this set greater than or equal to the
+     * given element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the least element greater than or equal to <tt>o</tt>, or
+     *         <tt>null</tt>.
+     * @throws    ClassCastException <tt>o</tt> cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  uses natural ordering, or its comparator does not
+     *		  tolerate <tt>null</tt> elements.
+     */
+    public Object ceiling(final Object o) {
+	return this.m.ceilingKey(o);
+    }
+
+    /**
+     * Returns the least element in this set strictly greater than the given
+     * element, or <tt>null</tt> if there is no such element.
+     *
+     * @param o the value to match.
+     * @return the least element greater than <tt>o</tt>, or <tt>null</tt>.
+     * @throws    ClassCastException <tt>o</tt> cannot be compared with the
+     *		  elements currently in the set.
+     * @throws NullPointerException <tt>o</tt> is <tt>null</tt> and this set
+     *		  uses natural ordering, or its comparator does not
+     *		  tolerate <tt>null</tt> elements.
+     */
+    public Object higher(final Object o) {
+	return this.m.higherKey(o);
+    }
+
+    /**
+     * Retrieves and removes the first (lowest) element, or returns
+     * <tt>null</tt> if this set is empty.
+     *
+     * @return the first element, or <tt>null</tt> if this set is empty.
+     */
+    public Object pollFirst() {
+	final Map.Entry e = this.m.pollFirstEntry();
+	return e == null ? null : e.getKey();
+    }
+
+    /**
+     * Retrieves and removes the last (highest) element, or returns
+     * <tt>null</tt> if this set is empty.
+     *
+     * @return the last element, or <tt>null</tt> if this set is empty.
+     */
+    public Object pollLast() {
+	final Map.Entry e = this.m.pollLastEntry();
+	return e == null ? null : e.getKey();
+    }
+
+    /**
+     * Returns an iterator over the elements in this set, in descending
+     * order.
+     *
+     * @return an iterator over the elements in this set, greatest first.
+     */
+    public Iterator descendingIterator() {
+	return this.m.descendingKeyIterator();
+    }
+
     /**
      * Returns a shallow copy of this <tt>TreeSet</tt> instance. (The elements
      * themselves are not cloned.)
@@ -0,0 +1,623 @@
+/*-
+ * $Id$
+ */
+
+package com.example.backport.java.util;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash table based implementation of the <tt>Map</tt> interface, with
+ * <i>weak keys</i>.  An entry in a <tt>WeakHashMap</tt> will automatically be
+ * removed when its key is no longer in ordinary use.  More precisely, the
+ * presence of a mapping for a given key will not prevent the key from being
+ * discarded by the garbage collector, that is, made finalizable, finalized,
+ * and then reclaimed.  When a key has been discarded its entry is
+ * effectively removed from the map, so this class behaves somewhat
+ * differently than other <tt>Map</tt> implementations.  This makes it
+ * suitable for caching data about objects, such as classes, whose lifetime
+ * the cache must not extend.<p>
+ *
+ * Entries whose keys have been reclaimed are enqueued by the garbage
+ * collector on a <tt>ReferenceQueue</tt> private to the map, which is
+ * drained at the start of every operation that reads or writes the table.
+ * Each discarded entry is thus unlinked exactly once, in constant time, by
+ * whichever operation happens to find it on the queue; no thread is needed,
+ * and no operation ever scans the table for stale entries.<p>
+ *
+ * Both <tt>null</tt> values and the <tt>null</tt> key are supported.  This
+ * class has performance characteristics similar to those of the
+ * <tt>HashMap</tt> class, and has the same efficiency parameters of
+ * <i>initial capacity</i> and <i>load factor</i>.  Like most collection
+ * classes, this class is not synchronized.<p>
+ *
+ * The value objects in a <tt>WeakHashMap</tt> are held by ordinary strong
+ * references.  Thus care should be taken to ensure that value objects do not
+ * strongly refer to their own keys, either directly or indirectly, since
+ * that will prevent the keys from being discarded.<p>
+ *
+ * Because the garbage collector may discard keys at any time, the map may
+ * behave as though an unknown thread is silently removing entries: the
+ * <tt>size</tt> method may return smaller values over time, and
+ * <tt>containsKey</tt> may return <tt>false</tt> for a key it returned
+ * <tt>true</tt> for before.  The iterators returned by the collection view
+ * methods hold the key of the entry they will return next strongly, and are
+ * <i>fail-fast</i> with respect to modifications made through the map, but
+ * not with respect to entries discarded by the garbage collector, which
+ * they simply skip.<p>
+ *
+ * This class requires the <tt>java.lang.ref</tt> package of the Java 2
+ * platform.
+ *
+ * @see HashMap
+ * @see SoftValueHashMap
+ * @see java.lang.ref.WeakReference
+ */
+public class WeakHashMap extends AbstractMap {
+    /**
+     * Value representing the <tt>null</tt> key inside the table.
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * The hash table data.
+     */
+    private Entry table[];
+
+    /**
+     * The number of mappings in the hash table, including those whose keys
+     * have been discarded but not yet expunged.
+     */
+    private int count;
+
+    /**
+     * The table is rehashed when its size exceeds this threshold.  (The
+     * value of this field is (int)(capacity * loadFactor).)
+     */
+    private int threshold;
+
+    /**
+     * The load factor for the hash table.
+     */
+    private final float loadFactor;
+
+    /**
+     * Reference queue for discarded keys.
+     */
+    private final ReferenceQueue queue = new ReferenceQueue();
+
+    /**
+     * The number of times this map has been structurally modified through
+     * its own methods.  Expunging discarded entries does not count.
+     */
+    int modCount = 0;
+
+    /**
+     * The number of times this map has been rehashed, and the total time in
+     * milliseconds those rehashes took.  Reported by statistics().
+     */
+    private int resizeCount;
+    private long resizeMillis;
+
+    /**
+     * Constructs a new, empty <tt>WeakHashMap</tt> with the given initial
+     * capacity and the given load factor.
+     *
+     * @param  initialCapacity the initial capacity of the
+     *         <tt>WeakHashMap</tt>.
+     * @param  loadFactor      the load factor of the <tt>WeakHashMap</tt>.
+     * @throws IllegalArgumentException if the initial capacity is less than
+     *         zero, or if the load factor is nonpositive.
+     */
+    public WeakHashMap(int initialCapacity, final float loadFactor) {
+	if (initialCapacity < 0) {
+	    throw new IllegalArgumentException("Illegal Initial Capacity: "+
+					       initialCapacity);
+	}
+	if (loadFactor <= 0) {
+	    throw new IllegalArgumentException("Illegal Load factor: "+
+					       loadFactor);
+	}
+	if (initialCapacity == 0) {
+	    initialCapacity = 1;
+	}
+	this.loadFactor = loadFactor;
+	this.table = new Entry[initialCapacity];
+	this.threshold = (int)(initialCapacity * loadFactor);
+    }
+
+    /**
+     * Constructs a new, empty <tt>WeakHashMap</tt> with the given initial
+     * capacity and the default load factor, which is <tt>0.75</tt>.
+     *
+     * @param  initialCapacity the initial capacity of the
+     *         <tt>WeakHashMap</tt>.
+     * @throws IllegalArgumentException if the initial capacity is less than
+     *         zero.
+     */
+    public WeakHashMap(final int initialCapacity) {
+	this(initialCapacity, 0.75f);
+    }
+
+    /**
+     * Constructs a new, empty <tt>WeakHashMap</tt> with the default initial
+     * capacity and the default load factor, which is <tt>0.75</tt>.
+     */
+    public WeakHashMap() {
+	this(101, 0.75f);
+    }
+
+    /**
+     * Constructs a new <tt>WeakHashMap</tt> with the same mappings as the
+     * specified <tt>Map</tt>.  The <tt>WeakHashMap</tt> is created with a
+     * capacity of twice the number of mappings in the specified map or 11
+     * (whichever is greater), and a default load factor, which is
+     * <tt>0.75</tt>.
+     *
+     * @param t the map whose mappings are to be placed in this map.
+     */
+    public WeakHashMap(final Map t) {
+	this(Math.max(2*t.size(), 11), 0.75f);
+	this.putAll(t);
+    }
+
+    private static Object maskNull(final Object key) {
+	return key == null ? NULL_KEY : key;
+    }
+
+    static Object unmaskNull(final Object key) {
+	return key == NULL_KEY ? null : key;
+    }
+
+    /**
+     * Removes the entries whose keys have been discarded from the table.
+     */
+    private void expungeStaleEntries() {
+	Entry e;
+	while ((e = (Entry) this.queue.poll()) != null) {
+	    final Entry tab[] = this.table;
+	    final int index = (e.hash & 0x7FFFFFFF) % tab.length;
+	    for (Entry p = tab[index], prev = null; p != null; prev = p, p = p.next) {
+		if (p == e) {
+		    if (prev != null) {
+			prev.next = e.next;
+		    } else {
+			tab[index] = e.next;
+		    }
+		    // The next link is left alone: an iterator may be standing
+		    // on the discarded entry.
+		    e.value = null;
+		    this.count--;
+		    break;
+		}
+	    }
+	}
+    }
+
+    /**
+     * Returns the number of key-value mappings in this map.  This result is
+     * a snapshot, and may not reflect entries whose keys will be discarded
+     * before next attempted access.
+     *
+     * @return the number of key-value mappings in this map.
+     */
+    public int size() {
+	if (this.count == 0) {
+	    return 0;
+	}
+	this.expungeStaleEntries();
+	return this.count;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains no key-value mappings.
+     *
+     * @return <tt>true</tt> if this map contains no key-value mappings.
+     */
+    public boolean isEmpty() {
+	return this.size() == 0;
+    }
+
+    /**
+     * Returns the value to which this map maps the specified key, or
+     * <tt>null</tt> if the map contains no mapping for this key.
+     *
+     * @param key key whose associated value is to be returned.
+     * @return the value to which this map maps the specified key.
+     */
+    public Object get(final Object key) {
+	final Entry e = this.getEntry(key);
+	return e == null ? null : e.value;
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map contains a mapping for the specified
+     * key.
+     *
+     * @param key key whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map contains a mapping for the specified
+     *         key.
+     */
+    public boolean containsKey(final Object key) {
+	return this.getEntry(key) != null;
+    }
+
+    /**
+     * Returns the entry associated with the specified key, or <tt>null</tt>
+     * if the map contains no mapping for this key.
+     */
+    Entry getEntry(final Object key) {
+	this.expungeStaleEntries();
+	final Object k = maskNull(key);
+	final int hash = k.hashCode();
+	final Entry tab[] = this.table;
+	for (Entry e = tab[(hash & 0x7FFFFFFF) % tab.length]; e != null; e = e.next) {
+	    if (e.hash == hash && eq(k, e.get())) {
+		return e;
+	    }
+	}
+	return null;
+    }
+
+    private static boolean eq(final Object x, final Object y) {
+	return x == y || x.equals(y);
+    }
+
+    /**
+     * Associates the specified value with the specified key in this map.
+     * If the map previously contained a mapping for this key, the old value
+     * is replaced.
+     *
+     * @param key key with which the specified value is to be associated.
+     * @param value value to be associated with the specified key.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *	       if there was no mapping for key.
+     */
+    public Object put(final Object key, final Object value) {
+	this.expungeStaleEntries();
+	final Object k = maskNull(key);
+	final int hash = k.hashCode();
+	Entry tab[] = this.table;
+	int index = (hash & 0x7FFFFFFF) % tab.length;
+
+	for (Entry e = tab[index]; e != null; e = e.next) {
+	    if (e.hash == hash && eq(k, e.get())) {
+		final Object old = e.value;
+		e.value = value;
+		return old;
+	    }
+	}
+
+	this.modCount++;
+	if (this.count >= this.threshold) {
+	    this.rehash();
+	    tab = this.table;
+	    index = (hash & 0x7FFFFFFF) % tab.length;
+	}
+	tab[index] = new Entry(k, value, this.queue, hash, tab[index]);
+	this.count++;
+	return null;
+    }
+
+    /**
+     * Rehashes the contents of this map into a larger table, dropping the
+     * entries whose keys have been discarded.
+     */
+    private void rehash() {
+	final long start = System.currentTimeMillis();
+	final Entry oldMap[] = this.table;
+	final int newCapacity = oldMap.length * 2 + 1;
+	final Entry newMap[] = new Entry[newCapacity];
+
+	for (int i = oldMap.length; i-- > 0; ) {
+	    for (Entry old = oldMap[i]; old != null; ) {
+		final Entry e = old;
+		old = old.next;
+		if (e.get() == null) {
+		    e.value = null;
+		    this.count--;
+		} else {
+		    final int index = (e.hash & 0x7FFFFFFF) % newCapacity;
+		    e.next = newMap[index];
+		    newMap[index] = e;
+		}
+	    }
+	}
+
+	// Entries dropped above may be enqueued later; expunging them then
+	// finds nothing to unlink.
+	this.table = newMap;
+	this.threshold = (int)(newCapacity * this.loadFactor);
+	this.resizeCount++;
+	this.resizeMillis += System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Removes the mapping for this key from this map if present.
+     *
+     * @param key key whose mapping is to be removed from the map.
+     * @return previous value associated with specified key, or <tt>null</tt>
+     *	       if there was no mapping for key.
+     */
+    public Object remove(final Object key) {
+	this.expungeStaleEntries();
+	final Object k = maskNull(key);
+	final int hash = k.hashCode();
+	final Entry tab[] = this.table;
+	final int index = (hash & 0x7FFFFFFF) % tab.length;
+
+	for (Entry e = tab[index], prev = null; e != null; prev = e, e = e.next) {
+	    if (e.hash == hash && eq(k, e.get())) {
+		this.modCount++;
+		if (prev != null) {
+		    prev.next = e.next;
+		} else {
+		    tab[index] = e.next;
+		}
+		this.count--;
+		final Object oldValue = e.value;
+		e.value = null;
+		return oldValue;
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Removes all mappings from this map.
+     */
+    public void clear() {
+	this.modCount++;
+	final Entry tab[] = this.table;
+	for (int index = tab.length; --index >= 0; ) {
+	    tab[index] = null;
+	}
+	this.count = 0;
+
+	// The entries enqueued so far are gone along with the table; those
+	// enqueued later will not be found in it.
+	while (this.queue.poll() != null) {
+	    // empty
+	}
+    }
+
+    /**
+     * Returns <tt>true</tt> if this map maps one or more keys to the
+     * specified value.
+     *
+     * @param value value whose presence in this map is to be tested.
+     * @return <tt>true</tt> if this map maps one or more keys to the
+     *         specified value.
+     */
+    public boolean containsValue(final Object value) {
+	this.expungeStaleEntries();
+	final Entry tab[] = this.table;
+	for (int i = tab.length; i-- > 0; ) {
+	    for (Entry e = tab[i]; e != null; e = e.next) {
+		if (e.get() != null && TreeMap.valEquals(value, e.value)) {
+		    return true;
+		}
+	    }
+	}
+	return false;
+    }
+
+    private transient Set entrySet = null;
+
+    /**
+     * Returns a collection view of the mappings contained in this map.  Each
+     * element in the returned collection is a <tt>Map.Entry</tt>.  The
+     * collection is backed by the map, so changes to the map are reflected
+     * in the collection, and vice-versa.  The collection supports element
+     * removal, which removes the corresponding mapping from the map, via the
+     * <tt>Iterator.remove</tt>, <tt>Collection.remove</tt>,
+     * <tt>removeAll</tt>, <tt>retainAll</tt>, and <tt>clear</tt> operations.
+     * It does not support the <tt>add</tt> or <tt>addAll</tt> operations.
+     *
+     * @return a collection view of the mappings contained in this map.
+     */
+    public Set entrySet() {
+	if (this.entrySet == null) {
+	    this.entrySet = new AbstractSet() {
+		public Iterator iterator() {
+		    return new HashIterator(ENTRIES);
+		}
+
+		public boolean contains(final Object o) {
+		    if (!(o instanceof Map.Entry)) {
+			return false;
+		    }
+		    final Map.Entry entry = (Map.Entry) o;
+		    final Entry e = WeakHashMap.this.getEntry(entry.getKey());
+		    return e != null && TreeMap.valEquals(e.value, entry.getValue());
+		}
+
+		public boolean remove(final Object o) {
+		    if (!this.contains(o)) {
+			return false;
+		    }
+		    WeakHashMap.this.remove(((Map.Entry) o).getKey());
+		    return true;
+		}
+
+		public int size() {
+		    return WeakHashMap.this.size();
+		}
+
+		public void clear() {
+		    WeakHashMap.this.clear();
+		}
+	    };
+	}
+	return this.entrySet;
+    }
+
+    /**
+     * Returns a snapshot of the occupancy and quality figures of this map's
+     * hash table, taken after expunging the entries whose keys have been
+     * discarded.
+     *
+     * @return the statistics of this map's hash table.
+     * @see HashMap#statistics()
+     */
+    public HashStatistics statistics() {
+	this.expungeStaleEntries();
+	final Entry tab[] = this.table;
+	final HashStatistics statistics = new HashStatistics(tab.length, this.loadFactor);
+	int hashes[] = new int[8];
+	for (int index = 0; index < tab.length; index++) {
+	    int length = 0;
+	    for (Entry e = tab[index]; e != null; e = e.next) {
+		if (length == hashes.length) {
+		    final int newHashes[] = new int[length * 2];
+		    System.arraycopy(hashes, 0, newHashes, 0, length);
+		    hashes = newHashes;
+		}
+		hashes[length++] = e.hash;
+	    }
+	    statistics.addChain(hashes, length);
+	}
+	statistics.addResizes(this.resizeCount, this.resizeMillis);
+	return statistics;
+    }
+
+    /**
+     * The entries in this hash table extend <tt>WeakReference</tt>, using the
+     * (masked) key as the referent.
+     */
+    private static class Entry extends WeakReference implements Map.Entry {
+	Object value;
+	final int hash;
+	Entry next;
+
+	Entry(final Object key, final Object value, final ReferenceQueue queue,
+	      final int hash, final Entry next) {
+	    super(key, queue);
+	    this.value = value;
+	    this.hash = hash;
+	    this.next = next;
+	}
+
+	public Object getKey() {
+	    return unmaskNull(this.get());
+	}
+
+	public Object getValue() {
+	    return this.value;
+	}
+
+	public Object setValue(final Object value) {
+	    final Object oldValue = this.value;
+	    this.value = value;
+	    return oldValue;
+	}
+
+	public boolean equals(final Object o) {
+	    if (!(o instanceof Map.Entry)) {
+		return false;
+	    }
+	    final Map.Entry e = (Map.Entry) o;
+	    return TreeMap.valEquals(this.getKey(), e.getKey())
+		&& TreeMap.valEquals(this.value, e.getValue());
+	}
+
+	public int hashCode() {
+	    final Object k = this.getKey();
+	    return (k == null ? 0 : k.hashCode())
+		^ (this.value == null ? 0 : this.value.hashCode());
+	}
+
+	public String toString() {
+	    return this.getKey() + "=" + this.value;
+	}
+    }
+
+    // Types of Iterators
+    private static final int KEYS = 0;
+    private static final int VALUES = 1;
+    private static final int ENTRIES = 2;
+
+    private class HashIterator implements Iterator {
+	private final int type;
+	private int index = WeakHashMap.this.table.length;
+	private Entry entry = null;
+	private Entry lastReturned = null;
+
+	/**
+	 * Strong reference needed to avoid disappearance of the key between
+	 * hasNext and next.
+	 */
+	private Object nextKey = null;
+
+	/**
+	 * Strong reference needed to avoid disappearance of the key between
+	 * next and remove.
+	 */
+	private Object currentKey = null;
+
+	/**
+	 * The modCount value that the iterator believes that the backing
+	 * map should have.  If this expectation is violated, the iterator
+	 * has detected concurrent modification.
+	 */
+	private int expectedModCount = WeakHashMap.this.modCount;
+
+	HashIterator(final int type) {
+	    this.type = type;
+	}
+
+	public boolean hasNext() {
+	    final Entry tab[] = WeakHashMap.this.table;
+	    while (this.nextKey == null) {
+		Entry e = this.entry;
+		int i = this.index;
+		while (e == null && i > 0) {
+		    e = tab[--i];
+		}
+		this.entry = e;
+		this.index = i;
+		if (e == null) {
+		    this.currentKey = null;
+		    return false;
+		}
+		this.nextKey = e.get();
+		if (this.nextKey == null) {
+		    this.entry = e.next;
+		}
+	    }
+	    return true;
+	}
+
+	public Object next() {
+	    if (WeakHashMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+	    if (this.nextKey == null && !this.hasNext()) {
+		throw new NoSuchElementException();
+	    }
+
+	    final Entry e = this.lastReturned = this.entry;
+	    this.entry = e.next;
+	    this.currentKey = this.nextKey;
+	    this.nextKey = null;
+	    return this.type == KEYS ? unmaskNull(this.currentKey)
+		: this.type == VALUES ? e.value : e;
+	}
+
+	public void remove() {
+	    if (this.lastReturned == null) {
+		throw new IllegalStateException();
+	    }
+	    if (WeakHashMap.this.modCount != this.expectedModCount) {
+		throw new ConcurrentModificationException();
+	    }
+
+	    WeakHashMap.this.remove(unmaskNull(this.currentKey));
+	    this.expectedModCount = WeakHashMap.this.modCount;
+	    this.lastReturned = null;
+	    this.currentKey = null;
+	}
+    }
+}